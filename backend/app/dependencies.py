@@ -2,12 +2,13 @@ from functools import lru_cache
 from fastapi import Header, HTTPException, status
 
 from app.hardware import DoorbellManager, CameraService
-from app.services import S3Service, DoorbellService
+from app.services import S3Service, DoorbellService, VisitEventBus
 from app.config import settings
 
 _doorbell_manager = None
 _camera_service = None
 _s3_service = None
+_event_bus = None
 
 def get_doorbell_manager() -> DoorbellManager:
     global _doorbell_manager
@@ -27,11 +28,18 @@ def get_s3_service() -> S3Service:
         _s3_service = S3Service()
     return _s3_service
 
+def get_event_bus() -> VisitEventBus:
+    global _event_bus
+    if _event_bus is None:
+        _event_bus = VisitEventBus()
+    return _event_bus
+
 def get_doorbell_service() -> DoorbellService:
     return DoorbellService(
         doorbell_manager=get_doorbell_manager(),
         camera_service=get_camera_service(),
-        s3_service=get_s3_service()
+        s3_service=get_s3_service(),
+        event_bus=get_event_bus()
     )
 
 def verify_api_key(x_api_key: str = Header(None)):
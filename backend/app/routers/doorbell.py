@@ -1,16 +1,72 @@
-from typing import List
-from fastapi import APIRouter, Depends, HTTPException
-from fastapi.responses import StreamingResponse
+import asyncio
+import hashlib
+from email.utils import format_datetime, parsedate_to_datetime
+from datetime import timezone
+from typing import List, Optional
+from fastapi import APIRouter, Depends, Header, HTTPException, Query
+from fastapi.concurrency import run_in_threadpool
+from fastapi.responses import Response, StreamingResponse
 from sqlalchemy.ext.asyncio import AsyncSession
-import io
 
 from app.models import get_db
 from app.schemas import VisitResponse
-from app.dependencies import get_doorbell_service, get_s3_service, verify_api_key
-from app.services import DoorbellService, S3Service
+from app.dependencies import get_doorbell_service, get_event_bus, get_s3_service, verify_api_key
+from app.services import DoorbellService, S3Service, VisitEventBus, visit_codec
 
 router = APIRouter(prefix="/doorbell", tags=["doorbell"])
 
+EVENTS_REPLAY_LIMIT = 100
+EVENTS_KEEPALIVE_SECONDS = 15
+# Объект фото в MinIO после записи не меняется, поэтому клиенту можно хранить его сколько угодно
+PHOTO_CACHE_CONTROL = "public, max-age=31536000, immutable"
+# Страница истории меняется с новыми звонками: клиент хранит ее, но каждый раз сверяет ETag
+HISTORY_CACHE_CONTROL = "no-cache"
+
+
+def _etag_matches(if_none_match: Optional[str], etag: str) -> bool:
+    if not if_none_match:
+        return False
+    if if_none_match.strip() == "*":
+        return True
+    candidates = (tag.strip() for tag in if_none_match.split(","))
+    return any(tag.removeprefix("W/") == etag for tag in candidates)
+
+
+def _not_modified_since(if_modified_since: Optional[str], last_modified) -> bool:
+    if not if_modified_since:
+        return False
+    try:
+        since = parsedate_to_datetime(if_modified_since)
+    except (TypeError, ValueError):
+        return False
+    return _as_utc(last_modified).replace(microsecond=0) <= _as_utc(since)
+
+
+# Время визитов в базе - naive UTC (datetime.utcnow)
+def _as_utc(moment):
+    if moment.tzinfo is None:
+        return moment.replace(tzinfo=timezone.utc)
+    return moment.astimezone(timezone.utc)
+
+
+def _http_date(moment) -> str:
+    return format_datetime(_as_utc(moment), usegmt=True)
+
+
+def _is_not_modified(etag: str, last_modified, if_none_match: Optional[str],
+                     if_modified_since: Optional[str]) -> bool:
+    # If-None-Match важнее: If-Modified-Since смотрим, только если ETag не прислали
+    if if_none_match is not None:
+        return _etag_matches(if_none_match, etag)
+    return last_modified is not None and _not_modified_since(if_modified_since, last_modified)
+
+
+def _cache_headers(etag: str, last_modified, cache_control: str) -> dict:
+    headers = {"ETag": etag, "Cache-Control": cache_control}
+    if last_modified is not None:
+        headers["Last-Modified"] = _http_date(last_modified)
+    return headers
+
 
 @router.post("/ring", response_model=VisitResponse)
 async def ring_doorbell(
@@ -34,16 +90,87 @@ async def unlock_door(
 async def get_history(
     limit: int = 20,
     offset: int = 0,
+    before_id: Optional[int] = None,
+    after_id: Optional[int] = None,
+    accept: Optional[str] = Header(None),
+    if_none_match: Optional[str] = Header(None),
+    if_modified_since: Optional[str] = Header(None),
     db: AsyncSession = Depends(get_db),
     doorbell_service: DoorbellService = Depends(get_doorbell_service)
 ):
-    visits = await doorbell_service.get_visit_history(db, limit, offset)
-    return visits
+    visits = await doorbell_service.get_visit_history(db, limit, offset, before_id, after_id)
+    # Приложение просит компактный формат через Accept; остальным клиентам - JSON как раньше
+    if visit_codec.accepts_binary(accept):
+        media_type = visit_codec.MEDIA_TYPE
+        content = visit_codec.encode_visit_page(visits)
+    else:
+        media_type = "application/json"
+        content = ("[" + ",".join(VisitResponse.model_validate(visit).model_dump_json() for visit in visits) + "]").encode()
+    etag = '"' + hashlib.sha1(content).hexdigest() + '"'
+    last_modified = max((visit.timestamp for visit in visits), default=None)
+    headers = _cache_headers(etag, last_modified, HISTORY_CACHE_CONTROL)
+    headers["Vary"] = "Accept"
+    if _is_not_modified(etag, last_modified, if_none_match, if_modified_since):
+        return Response(status_code=304, headers=headers)
+    return Response(content=content, media_type=media_type, headers=headers)
+
+
+@router.get("/events")
+async def visit_events(
+    last_id: Optional[int] = None,
+    last_event_id: Optional[str] = Header(None),
+    db: AsyncSession = Depends(get_db),
+    doorbell_service: DoorbellService = Depends(get_doorbell_service),
+    event_bus: VisitEventBus = Depends(get_event_bus)
+):
+    if last_id is None and last_event_id and last_event_id.isdigit():
+        last_id = int(last_event_id)
+
+    # Подписываемся до чтения пропущенного, чтобы визит между запросом и подпиской не потерялся
+    queue = event_bus.subscribe()
+    missed = []
+    if last_id is not None:
+        visits = await doorbell_service.get_visits_after(db, last_id, EVENTS_REPLAY_LIMIT)
+        missed = [(visit.id, VisitResponse.model_validate(visit).model_dump_json()) for visit in visits]
+
+    async def stream():
+        sent_id = last_id if last_id is not None else 0
+        try:
+            for visit_id, payload in missed:
+                sent_id = visit_id
+                yield f"id: {visit_id}\nevent: visit\ndata: {payload}\n\n"
+            if len(missed) == EVENTS_REPLAY_LIMIT:
+                # Пропущено больше пачки: клиент переподключится и дочитает с нового last_id
+                return
+            while True:
+                try:
+                    event = await asyncio.wait_for(queue.get(), EVENTS_KEEPALIVE_SECONDS)
+                except asyncio.TimeoutError:
+                    yield ": keepalive\n\n"
+                    continue
+                if event is None:
+                    return
+                visit_id, payload = event
+                if visit_id <= sent_id:
+                    continue
+                sent_id = visit_id
+                yield f"id: {visit_id}\nevent: visit\ndata: {payload}\n\n"
+        finally:
+            event_bus.unsubscribe(queue)
+
+    return StreamingResponse(
+        stream(),
+        media_type="text/event-stream",
+        headers={"Cache-Control": "no-store", "X-Accel-Buffering": "no"}
+    )
 
 
 @router.get("/visit/{visit_id}/photo")
 async def get_photo(
     visit_id: int,
+    size: Optional[int] = Query(None, ge=32, le=1920),
+    if_none_match: Optional[str] = Header(None),
+    if_modified_since: Optional[str] = Header(None),
     db: AsyncSession = Depends(get_db),
     s3_service: S3Service = Depends(get_s3_service)
 ):
@@ -56,18 +183,20 @@ async def get_photo(
     if not visit:
         raise HTTPException(status_code=404, detail="Visit not found")
 
+    # Имя объекта уникально и не переиспользуется, так что ETag считается без чтения MinIO
+    etag = '"' + hashlib.sha1(f"{visit.photo_url}:{size or 0}".encode()).hexdigest() + '"'
+    headers = _cache_headers(etag, visit.timestamp, PHOTO_CACHE_CONTROL)
+    if _is_not_modified(etag, visit.timestamp, if_none_match, if_modified_since):
+        return Response(status_code=304, headers=headers)
+
+    # Чтение MinIO и сжатие превью блокируют: в цикле событий они задержали бы все остальные запросы
     try:
-        photo_data = s3_service.client.get_object(
-            s3_service.bucket_name,
-            visit.photo_url
-        )
-
-        return StreamingResponse(
-            io.BytesIO(photo_data.read()),
-            media_type="image/jpeg",
-            headers={
-                "Content-Disposition": f"inline; filename=visit_{visit_id}.jpg"
-            }
-        )
+        if size:
+            photo_data = await run_in_threadpool(s3_service.get_thumbnail, visit.photo_url, size)
+        else:
+            photo_data = await run_in_threadpool(s3_service.read_object, visit.photo_url)
     except Exception as e:
-        raise HTTPException(status_code=404, detail=f"Photo not found: {e}")
\ No newline at end of file
+        raise HTTPException(status_code=404, detail=f"Photo not found: {e}")
+
+    headers["Content-Disposition"] = f"inline; filename=visit_{visit_id}.jpg"
+    return Response(content=photo_data, media_type="image/jpeg", headers=headers)
@@ -1,4 +1,6 @@
 from app.services.s3 import S3Service
 from app.services.doorbell_service import DoorbellService
+from app.services.events import VisitEventBus
+from app.services import visit_codec
 
-__all__ = ["S3Service", "DoorbellService"]
\ No newline at end of file
+__all__ = ["S3Service", "DoorbellService", "VisitEventBus", "visit_codec"]
\ No newline at end of file
@@ -1,11 +1,14 @@
 import logging
 from datetime import datetime
+from typing import Optional
 from sqlalchemy.ext.asyncio import AsyncSession
 from sqlalchemy import select
 
 from app.hardware import DoorbellManager, CameraService
 from app.services.s3 import S3Service
+from app.services.events import VisitEventBus
 from app.models import Visit
+from app.schemas import VisitResponse
 
 logger = logging.getLogger(__name__)
 
@@ -15,11 +18,13 @@ class DoorbellService:
         self,
         doorbell_manager: DoorbellManager,
         camera_service: CameraService,
-        s3_service: S3Service
+        s3_service: S3Service,
+        event_bus: VisitEventBus
     ):
         self.doorbell_manager = doorbell_manager
         self.camera_service = camera_service
         self.s3_service = s3_service
+        self.event_bus = event_bus
 
     async def handle_doorbell_press(self, db: AsyncSession):
         logger.info("Handling doorbell press")
@@ -38,13 +43,35 @@ class DoorbellService:
 
         logger.info(f"Visit recorded: ID={visit.id}, URL={photo_url}")
 
+        self.event_bus.publish(visit.id, VisitResponse.model_validate(visit).model_dump_json())
+
         return visit
 
     async def unlock_door(self):
         await self.doorbell_manager.unlock_door()
 
-    async def get_visit_history(self, db: AsyncSession, limit: int = 50, offset: int = 0):
-        result = await db.execute(
-            select(Visit).order_by(Visit.timestamp.desc()).limit(limit).offset(offset)
-        )
+    async def get_visit_history(
+        self,
+        db: AsyncSession,
+        limit: int = 50,
+        offset: int = 0,
+        before_id: Optional[int] = None,
+        after_id: Optional[int] = None
+    ):
+        # Все страницы в одном порядке по id: первая страница без курсора стыкуется с последующими.
+        # Курсор по id не сдвигается от новых звонков и не требует OFFSET-скана
+        query = select(Visit).order_by(Visit.id.desc()).limit(limit)
+        if before_id is not None:
+            query = query.where(Visit.id < before_id)
+        if after_id is not None:
+            query = query.where(Visit.id > after_id)
+        if before_id is None and after_id is None:
+            # offset остается только для старых клиентов без курсора
+            query = query.offset(offset)
+        result = await db.execute(query)
+        return result.scalars().all()
+
+    async def get_visits_after(self, db: AsyncSession, after_id: int, limit: int):
+        query = select(Visit).where(Visit.id > after_id).order_by(Visit.id).limit(limit)
+        result = await db.execute(query)
         return result.scalars().all()
\ No newline at end of file
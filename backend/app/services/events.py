@@ -0,0 +1,36 @@
+import asyncio
+import logging
+from typing import Set
+
+logger = logging.getLogger(__name__)
+
+SUBSCRIBER_QUEUE_SIZE = 100
+
+
+class VisitEventBus:
+    """Раздает новые визиты открытым потокам событий в памяти процесса."""
+
+    def __init__(self):
+        self._subscribers: Set[asyncio.Queue] = set()
+
+    def subscribe(self) -> asyncio.Queue:
+        queue = asyncio.Queue(maxsize=SUBSCRIBER_QUEUE_SIZE)
+        self._subscribers.add(queue)
+        logger.info(f"Event subscriber added, total={len(self._subscribers)}")
+        return queue
+
+    def unsubscribe(self, queue: asyncio.Queue):
+        self._subscribers.discard(queue)
+        logger.info(f"Event subscriber removed, total={len(self._subscribers)}")
+
+    def publish(self, visit_id: int, payload: str):
+        for queue in list(self._subscribers):
+            try:
+                queue.put_nowait((visit_id, payload))
+            except asyncio.QueueFull:
+                # Отстающий клиент переподключится и дочитает пропущенное по last_id
+                logger.warning("Event subscriber is too slow, dropping it")
+                self._subscribers.discard(queue)
+                while not queue.empty():
+                    queue.get_nowait()
+                queue.put_nowait(None)
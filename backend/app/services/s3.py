@@ -4,11 +4,15 @@ import io
 from datetime import datetime, timedelta
 from minio import Minio
 from minio.error import S3Error
+from PIL import Image
 
 from app.config import settings
 
 logger = logging.getLogger(__name__)
 
+THUMBNAIL_SIZE_STEP = 160
+THUMBNAIL_QUALITY = 80
+
 class S3Service:
     def __init__(self):
         self.client = Minio(
@@ -85,4 +89,45 @@ class S3Service:
             return object_name
         except S3Error as e:
             logger.error(f"Error uploading photo to S3: {e}")
-            raise
\ No newline at end of file
+            raise
+
+    def read_object(self, object_name: str) -> bytes:
+        response = self.client.get_object(self.bucket_name, object_name)
+        try:
+            return response.read()
+        finally:
+            response.close()
+            response.release_conn()
+
+    def get_thumbnail(self, object_name: str, size: int) -> bytes:
+        # Округляем размер, чтобы число вариантов превью в бакете было ограничено
+        size = min(1920, -(-size // THUMBNAIL_SIZE_STEP) * THUMBNAIL_SIZE_STEP)
+        thumbnail_name = f"thumbnails/{size}/{object_name}"
+
+        try:
+            return self.read_object(thumbnail_name)
+        except S3Error:
+            pass
+
+        image = Image.open(io.BytesIO(self.read_object(object_name)))
+        scale = size / min(image.width, image.height)
+        if scale < 1:
+            image = image.resize((round(image.width * scale), round(image.height * scale)), Image.LANCZOS)
+
+        thumbnail_stream = io.BytesIO()
+        image.convert("RGB").save(thumbnail_stream, format="JPEG", quality=THUMBNAIL_QUALITY, optimize=True)
+        thumbnail_bytes = thumbnail_stream.getvalue()
+
+        try:
+            self.client.put_object(
+                bucket_name=self.bucket_name,
+                object_name=thumbnail_name,
+                data=io.BytesIO(thumbnail_bytes),
+                length=len(thumbnail_bytes),
+                content_type="image/jpeg"
+            )
+            logger.info(f"Thumbnail stored: {thumbnail_name} ({len(thumbnail_bytes)} bytes)")
+        except S3Error as e:
+            logger.warning(f"Could not store thumbnail {thumbnail_name}: {e}")
+
+        return thumbnail_bytes
@@ -0,0 +1,73 @@
+import calendar
+import os
+from typing import Iterable, List
+
+from app.config import settings
+
+# Компактная страница истории, пара к VisitBinaryCodec в приложении:
+#   заголовок: b"VP", версия, число визитов, общий префикс photo_url,
+#              префикс и суффикс photo_download_url (адрес собирается из id)
+#   визит:     id и время (мс от эпохи) - разницей с предыдущим в zigzag varint,
+#              остаток photo_url после префикса (длина + 1, 0 - нет фото)
+MEDIA_TYPE = "application/x-doorbell-visits"
+VERSION = 1
+DOWNLOAD_SUFFIX = "/photo"
+
+
+def accepts_binary(accept: str) -> bool:
+    return bool(accept) and any(part.split(";")[0].strip() == MEDIA_TYPE for part in accept.split(","))
+
+
+def download_prefix() -> str:
+    # Тот же адрес, что строит VisitResponse.photo_download_url
+    return f"{settings.public_api_url}/doorbell/visit/" if settings.public_api_url else "/doorbell/visit/"
+
+
+def encode_visit_page(visits: List) -> bytes:
+    photo_urls = [visit.photo_url for visit in visits if visit.photo_url is not None]
+    photo_prefix = os.path.commonprefix(photo_urls) if photo_urls else ""
+
+    out = bytearray(b"VP")
+    out.append(VERSION)
+    _write_varint(out, len(visits))
+    _write_string(out, photo_prefix)
+    _write_string(out, download_prefix())
+    _write_string(out, DOWNLOAD_SUFFIX)
+
+    previous_id = 0
+    previous_millis = 0
+    for visit in visits:
+        millis = _epoch_millis(visit.timestamp)
+        _write_varint(out, _zigzag(visit.id - previous_id))
+        _write_varint(out, _zigzag(millis - previous_millis))
+        previous_id = visit.id
+        previous_millis = millis
+        if visit.photo_url is None:
+            _write_varint(out, 0)
+        else:
+            rest = visit.photo_url[len(photo_prefix):].encode()
+            _write_varint(out, len(rest) + 1)
+            out += rest
+    return bytes(out)
+
+
+# datetime.utcnow() в базе - naive UTC
+def _epoch_millis(moment) -> int:
+    return calendar.timegm(moment.utctimetuple()) * 1000 + moment.microsecond // 1000
+
+
+def _zigzag(value: int) -> int:
+    return value * 2 if value >= 0 else -value * 2 - 1
+
+
+def _write_varint(out: bytearray, value: int) -> None:
+    while value > 0x7F:
+        out.append((value & 0x7F) | 0x80)
+        value >>= 7
+    out.append(value)
+
+
+def _write_string(out: bytearray, value: str) -> None:
+    data = value.encode()
+    _write_varint(out, len(data))
+    out += data
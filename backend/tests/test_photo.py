@@ -0,0 +1,114 @@
+import asyncio
+from datetime import datetime
+from types import SimpleNamespace
+
+from fastapi import FastAPI
+from fastapi.testclient import TestClient
+
+from app.dependencies import get_s3_service
+from app.models import get_db
+from app.routers import doorbell_router
+
+PHOTO_KEY = "photos/20261018_063015_123456.jpg"
+
+
+class FakeResult:
+    def __init__(self, visit):
+        self._visit = visit
+
+    def scalar_one_or_none(self):
+        return self._visit
+
+
+class FakeSession:
+    def __init__(self, visit):
+        self._visit = visit
+
+    async def execute(self, query):
+        return FakeResult(self._visit)
+
+
+class FakeS3Service:
+    def __init__(self):
+        self.calls = []
+
+    def get_thumbnail(self, object_name: str, size: int) -> bytes:
+        self.calls.append(("thumbnail", object_name, size, _on_event_loop()))
+        return b"thumbnail-bytes"
+
+    def read_object(self, object_name: str) -> bytes:
+        self.calls.append(("original", object_name, None, _on_event_loop()))
+        return b"original-bytes"
+
+
+def _on_event_loop() -> bool:
+    try:
+        asyncio.get_running_loop()
+        return True
+    except RuntimeError:
+        return False
+
+
+def _client(visit, s3_service) -> TestClient:
+    app = FastAPI()
+    app.include_router(doorbell_router)
+
+    async def fake_db():
+        yield FakeSession(visit)
+
+    app.dependency_overrides[get_db] = fake_db
+    app.dependency_overrides[get_s3_service] = lambda: s3_service
+    return TestClient(app)
+
+
+def _visit():
+    return SimpleNamespace(id=42, photo_url=PHOTO_KEY, timestamp=datetime(2026, 10, 18, 6, 30, 15))
+
+
+def test_size_returns_thumbnail_built_off_the_event_loop():
+    s3_service = FakeS3Service()
+    response = _client(_visit(), s3_service).get("/doorbell/visit/42/photo", params={"size": 320})
+
+    assert response.status_code == 200
+    assert response.content == b"thumbnail-bytes"
+    assert response.headers["content-type"] == "image/jpeg"
+    # Превью собирается в пуле потоков: цикл событий свободен для других запросов
+    assert s3_service.calls == [("thumbnail", PHOTO_KEY, 320, False)]
+
+
+def test_without_size_returns_original_read_off_the_event_loop():
+    s3_service = FakeS3Service()
+    response = _client(_visit(), s3_service).get("/doorbell/visit/42/photo")
+
+    assert response.status_code == 200
+    assert response.content == b"original-bytes"
+    assert s3_service.calls == [("original", PHOTO_KEY, None, False)]
+
+
+def test_thumbnail_etag_differs_by_size_and_revalidates():
+    s3_service = FakeS3Service()
+    client = _client(_visit(), s3_service)
+    small = client.get("/doorbell/visit/42/photo", params={"size": 160})
+    large = client.get("/doorbell/visit/42/photo", params={"size": 640})
+    assert small.headers["etag"] != large.headers["etag"]
+
+    cached = client.get("/doorbell/visit/42/photo", params={"size": 160},
+                        headers={"If-None-Match": small.headers["etag"]})
+    assert cached.status_code == 304
+    assert len(s3_service.calls) == 2
+
+
+def test_size_outside_limits_is_rejected():
+    s3_service = FakeS3Service()
+    response = _client(_visit(), s3_service).get("/doorbell/visit/42/photo", params={"size": 4000})
+
+    assert response.status_code == 422
+    assert s3_service.calls == []
+
+
+def test_unknown_visit_is_not_found():
+    s3_service = FakeS3Service()
+    response = _client(None, s3_service).get("/doorbell/visit/7/photo", params={"size": 320})
+
+    assert response.status_code == 404
+    assert s3_service.calls == []
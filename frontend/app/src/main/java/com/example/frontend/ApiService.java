@@ -1,39 +1,149 @@
 package com.example.frontend;
 
+import android.content.Context;
+import android.content.res.Resources;
 import android.os.Handler;
 import android.os.Looper;
-import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
 
+import com.google.gson.stream.JsonReader;
+
+import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
 
 public class ApiService {
     private static final String TAG = "ApiService";
+    private static final AppLog LOG = AppLog.get(TAG);
     public static final String BASE_URL = "http://192.168.0.110:8000";
     private static final String API_KEY = "my-super-secret-key-12345";
+    private static final String MAIN_DOOR_NAME = "Главный вход";
+    // Входы со своими Pi из res/values/doors.xml. Первый - основной: звонок, открытие и поток событий
+    // главного экрана идут к нему, история собирается со всех. До init() - один вход по BASE_URL
+    private static volatile List<Door> configuredDoors =
+            Collections.singletonList(new Door(0, MAIN_DOOR_NAME, BASE_URL));
 
-    private final OkHttpClient client;
-    private final Gson gson;
-    private final ExecutorService executorService;
-    private final Handler mainHandler;
+    private final String baseUrl;
+    private final List<Door> doors;
+    private final VisitJsonAdapter visitAdapter;
+    private final RequestScheduler scheduler;
+    private final Executor callbackExecutor;
+    // Ключи вытеснения запросов истории: у каждого входа свои
+    private final Map<String, Object> historyKeys = new ConcurrentHashMap<>();
+    private final Map<String, Object> refreshKeys = new ConcurrentHashMap<>();
+    private final long unlockCoalesceMillis;
+    // Все незавершенные запросы и открытые потоки событий: shutdown() отменяет их разом
+    private final Set<RequestHandle> activeRequests = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Set<VisitEventStream> eventStreams = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile boolean shutdown;
 
     public ApiService() {
-        this.client = new OkHttpClient();
-        this.gson = new Gson();
-        this.executorService = Executors.newSingleThreadExecutor();
-        this.mainHandler = new Handler(Looper.getMainLooper());
+        this(configuredDoors, new Handler(Looper.getMainLooper())::post, UNLOCK_COALESCE_MILLIS);
+    }
+
+    // Сервис живет не дольше экрана: на ON_DESTROY все запросы отменяются
+    public ApiService(LifecycleOwner owner) {
+        this();
+        owner.getLifecycle().addObserver((LifecycleEventObserver) (source, event) -> {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                shutdown();
+            }
+        });
+    }
+
+    // Вызывается из DoorbellApplication до первого экрана
+    public static void init(Context context) {
+        Resources resources = context.getResources();
+        configuredDoors = doors(resources.getStringArray(R.array.door_names),
+                resources.getStringArray(R.array.door_urls));
+    }
+
+    public static List<Door> configuredDoors() {
+        return configuredDoors;
+    }
+
+    // Номер входа - его позиция в настройках
+    static List<Door> doors(String[] names, String[] urls) {
+        if (names.length == 0 || names.length != urls.length) {
+            throw new IllegalArgumentException("door_names and door_urls must be non-empty and of equal length: "
+                    + names.length + " vs " + urls.length);
+        }
+        List<Door> doors = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            doors.add(new Door(i, names[i], urls[i].replaceAll("/+$", "")));
+        }
+        return Collections.unmodifiableList(doors);
+    }
+
+    ApiService(String baseUrl, Executor callbackExecutor) {
+        this(baseUrl, callbackExecutor, UNLOCK_COALESCE_MILLIS);
+    }
+
+    ApiService(String baseUrl, Executor callbackExecutor, long unlockCoalesceMillis) {
+        this(Collections.singletonList(new Door(0, MAIN_DOOR_NAME, baseUrl)), callbackExecutor, unlockCoalesceMillis);
+    }
+
+    ApiService(List<Door> doors, Executor callbackExecutor, long unlockCoalesceMillis) {
+        this.doors = doors;
+        this.baseUrl = doors.get(0).getBaseUrl();
+        this.visitAdapter = new VisitJsonAdapter();
+        this.scheduler = RequestScheduler.shared();
+        this.callbackExecutor = callbackExecutor;
+        this.unlockCoalesceMillis = unlockCoalesceMillis;
+    }
+
+    private static final int THUMBNAIL_SIZE_STEP = 160;
+    private static final String HISTORY_ACCEPT = VisitBinaryCodec.MEDIA_TYPE + ", application/json;q=0.5";
+    // Дольше биометрический диалог обычно не висит; после этого запрос собирается заново
+    private static final long PREPARED_UNLOCK_TTL_SECONDS = 30;
+    // Повторное открытие сразу после успешного (двойное нажатие, поворот, уведомление) получает тот же ответ
+    private static final long UNLOCK_COALESCE_MILLIS = 2000;
+
+    // Звонок и открытие меняют состояние на Pi: одинаковые запросы со всех экранов уходят одним вызовом.
+    // Общий вызов доводится до конца, даже если все подписчики ушли: после поворота экрана
+    // новый вызов присоединится к нему, а не заставит Pi снимать и загружать второй кадр
+    private static final SingleFlight<Visit> RINGS = new SingleFlight<>();
+    private static final SingleFlight<String> UNLOCKS = new SingleFlight<>();
+
+    // Относительный адрес фото считается от бэкенда того входа, с которого пришел визит
+    public static String photoUrl(Visit visit) {
+        String photoUrl = visit.getPhotoUrl();
+        if (photoUrl != null && photoUrl.startsWith("/")) {
+            Door door = visit.getDoor();
+            photoUrl = (door != null ? door.getBaseUrl() : BASE_URL) + photoUrl;
+        }
+        return photoUrl;
+    }
+
+    // Превью под размер ячейки списка: бэкенд уменьшает кадр так, чтобы меньшая сторона была не меньше size
+    public static String thumbnailUrl(Visit visit, int sizePx) {
+        String downloadUrl = visit.getPhotoDownloadUrl();
+        if (downloadUrl == null || downloadUrl.isEmpty()) {
+            return photoUrl(visit);
+        }
+        int size = (sizePx + THUMBNAIL_SIZE_STEP - 1) / THUMBNAIL_SIZE_STEP * THUMBNAIL_SIZE_STEP;
+        return photoUrl(visit) + (downloadUrl.indexOf('?') >= 0 ? "&size=" : "?size=") + size;
     }
 
     public interface ApiCallback<T> {
@@ -41,82 +151,450 @@ public class ApiService {
         void onError(String error);
     }
 
-    public void ringDoorbell(ApiCallback<Visit> callback) {
-        executorService.execute(() -> {
-            try {
-                RequestBody body = RequestBody.create("", MediaType.get("application/json; charset=utf-8"));
-                Request request = new Request.Builder()
-                        .url(BASE_URL + "/doorbell/ring")
-                        .post(body)
-                        .build();
+    public RequestHandle ringDoorbell(ApiCallback<Visit> callback) {
+        return joinFlight(RINGS, "/doorbell/ring", 0, ClientMetrics.Endpoint.RING, callback,
+                done -> scheduler.submit(RequestScheduler.Priority.RING, handle -> shared(done, () -> ring(handle, done))));
+    }
 
-                try (Response response = client.newCall(request).execute()) {
-                    if (response.isSuccessful() && response.body() != null) {
-                        String jsonResponse = response.body().string();
-                        Log.d(TAG, "Response from backend: " + jsonResponse);
-                        Visit visit = gson.fromJson(jsonResponse, Visit.class);
-                        Log.d(TAG, "Photo URL: " + visit.getPhotoUrl());
-                        mainHandler.post(() -> callback.onSuccess(visit));
-                    } else {
-                        mainHandler.post(() -> callback.onError("Ошибка сервера: " + response.code()));
+    private void ring(RequestHandle handle, ApiCallback<Visit> done) {
+        try {
+            RequestBody body = RequestBody.create("", MediaType.get("application/json; charset=utf-8"));
+            Request request = new Request.Builder()
+                    .url(baseUrl + "/doorbell/ring")
+                    .post(body)
+                    .tag(ClientMetrics.Endpoint.class, ClientMetrics.Endpoint.RING)
+                    .build();
+
+            Call call = HttpClientProvider.slow().newCall(request);
+            handle.attach(call);
+            try (Response response = call.execute()) {
+                if (response.isSuccessful() && response.body() != null) {
+                    long parseStart = ClientMetrics.start();
+                    Visit visit = visitAdapter.read(new JsonReader(response.body().charStream()));
+                    ClientMetrics.record(ClientMetrics.Endpoint.RING, ClientMetrics.Phase.PARSE, parseStart);
+                    if (visit == null) {
+                        done.onError("Пустой ответ сервера");
+                        return;
                     }
+                    LOG.d("Visit from backend: id={}, photo URL: {}", visit.getId(), visit.getPhotoUrl());
+                    VisitStatistics.forBackend(baseUrl).add(visit);
+                    done.onSuccess(visit);
+                } else {
+                    done.onError("Ошибка сервера: " + response.code());
                 }
-            } catch (IOException e) {
-                mainHandler.post(() -> callback.onError("Ошибка сети: " + e.getMessage()));
+            }
+        } catch (IOException e) {
+            done.onError(networkError(e));
+        }
+    }
+
+    public RequestHandle unlockDoor(ApiCallback<String> callback) {
+        return unlockDoor(null, callback);
+    }
+
+    // Подготовленный запрос уходит по прогретому соединению; если подготовка истекла - обычный путь.
+    // Если открытие уже идет, подготовка не нужна: ждем общий ответ
+    public RequestHandle unlockDoor(PreparedUnlock prepared, ApiCallback<String> callback) {
+        boolean[] used = new boolean[1];
+        RequestHandle handle = joinFlight(UNLOCKS, "/doorbell/unlock", unlockCoalesceMillis,
+                ClientMetrics.Endpoint.UNLOCK, callback, done -> {
+                    Request request = prepared != null ? prepared.take() : null;
+                    used[0] = request != null;
+                    String mode = used[0] ? "prewarmed" : "cold";
+                    Request unlock = used[0] ? request : unlockRequest();
+                    long requestedAt = System.nanoTime();
+                    scheduler.submit(RequestScheduler.Priority.UNLOCK, h ->
+                            shared(done, () -> executeUnlock(unlock, h, done, requestedAt, mode)));
+                });
+        if (prepared != null && !used[0]) {
+            prepared.cancel();
+        }
+        return handle;
+    }
+
+    // Пока пользователь прикладывает палец, открываем соединение и собираем запрос.
+    // Прогрев идет асинхронно через диспетчер OkHttp: слот UNLOCK и поток планировщика свободны
+    public PreparedUnlock prepareUnlock() {
+        PreparedUnlock prepared = new PreparedUnlock(unlockRequest(),
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(PREPARED_UNLOCK_TTL_SECONDS));
+        if (shutdown) {
+            prepared.cancel();
+            return prepared;
+        }
+        RequestHandle handle = prepared.handle;
+        Request warmup = new Request.Builder().url(baseUrl + "/").get().build();
+        Call warmupCall = HttpClientProvider.quick().newCall(warmup);
+        activeRequests.add(handle);
+        handle.onCancel(() -> activeRequests.remove(handle));
+        handle.attach(warmupCall);
+        warmupCall.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                LOG.d("Unlock connection warmed: {}", response.code());
+                warmed();
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LOG.d("Unlock warm-up failed: {}", e.getMessage());
+                warmed();
+            }
+
+            private void warmed() {
+                handle.finish();
+                activeRequests.remove(handle);
             }
         });
+        return prepared;
+    }
+
+    private Request unlockRequest() {
+        RequestBody body = RequestBody.create("", MediaType.get("application/json; charset=utf-8"));
+        return new Request.Builder()
+                .url(baseUrl + "/doorbell/unlock")
+                .header("X-Api-Key", API_KEY)
+                .tag(ClientMetrics.Endpoint.class, ClientMetrics.Endpoint.UNLOCK)
+                .post(body)
+                .build();
+    }
+
+    // Результат уходит в общий полет прямо с рабочего потока, подписчикам его доставит joinFlight
+    private void executeUnlock(Request request, RequestHandle handle, ApiCallback<String> done,
+                               long requestedAt, String mode) {
+        try {
+            Call call = HttpClientProvider.quick().newCall(request);
+            handle.attach(call);
+            try (Response response = call.execute()) {
+                LOG.d("Unlock response in {} ms ({})", (System.nanoTime() - requestedAt) / 1_000_000, mode);
+                if (response.isSuccessful()) {
+                    done.onSuccess("Дверь открыта!");
+                } else {
+                    done.onError("Ошибка открытия двери: " + response.code());
+                }
+            }
+        } catch (IOException e) {
+            done.onError(networkError(e));
+        }
+    }
+
+    // beforeId - id последнего уже полученного визита, null для первой страницы
+    public RequestHandle getVisitHistory(int limit, Integer beforeId, ApiCallback<List<Visit>> callback) {
+        return getVisitHistory(limit, beforeId, null, callback);
     }
 
-    public void unlockDoor(ApiCallback<String> callback) {
-        executorService.execute(() -> {
+    // afterId ограничивает выборку визитами новее уже сохраненных.
+    // Запрос диапазона (обе границы) ничего не вытесняет: такие запросы идут строго по одному
+    public RequestHandle getVisitHistory(int limit, Integer beforeId, Integer afterId, ApiCallback<List<Visit>> callback) {
+        return getVisitHistory(null, limit, beforeId, afterId, callback);
+    }
+
+    public List<Door> getDoors() {
+        return doors;
+    }
+
+    // История одного входа; визиты помечаются этим входом. id у каждого Pi свои, курсоры тоже.
+    // Запросы к разным входам идут параллельно: лимиты планировщика считаются по бэкенду,
+    // и молчащий вход держит только свои слоты
+    public RequestHandle getVisitHistory(Door door, int limit, Integer beforeId, Integer afterId,
+                                         ApiCallback<List<Visit>> callback) {
+        String base = door != null ? door.getBaseUrl() : baseUrl;
+        Object supersedeKey = afterId == null ? historyKeys.computeIfAbsent(base, key -> new Object())
+                : beforeId == null ? refreshKeys.computeIfAbsent(base, key -> new Object()) : null;
+        return history(door, limit, beforeId, afterId, supersedeKey, callback);
+    }
+
+    // Страница для VisitSearch: ничего не вытесняет и сама не вытесняется. С ключами ленты пропуск
+    // без afterId отменял бы догрузку старых страниц, а без beforeId - обновление, и наоборот.
+    // Прежний поиск VisitSearch отменяет сам
+    public RequestHandle searchVisitHistory(int limit, Integer beforeId, Integer afterId,
+                                            ApiCallback<List<Visit>> callback) {
+        return history(null, limit, beforeId, afterId, null, callback);
+    }
+
+    private RequestHandle history(Door door, int limit, Integer beforeId, Integer afterId, Object supersedeKey,
+                                  ApiCallback<List<Visit>> callback) {
+        String base = door != null ? door.getBaseUrl() : baseUrl;
+        Object lane = base.equals(baseUrl) ? null : base;
+        return submit(RequestScheduler.Priority.HISTORY, lane, supersedeKey, callback, (handle, cb) -> {
             try {
-                RequestBody body = RequestBody.create("", MediaType.get("application/json; charset=utf-8"));
+                String url = base + "/doorbell/history?limit=" + limit;
+                if (beforeId != null) {
+                    url += "&before_id=" + beforeId;
+                }
+                if (afterId != null) {
+                    url += "&after_id=" + afterId;
+                }
                 Request request = new Request.Builder()
-                        .url(BASE_URL + "/doorbell/unlock")
-                        .header("X-Api-Key", API_KEY)
-                        .post(body)
+                        .url(url)
+                        .get()
+                        .header("Accept", HISTORY_ACCEPT)
+                        .tag(ClientMetrics.Endpoint.class, ClientMetrics.Endpoint.HISTORY)
                         .build();
 
-                try (Response response = client.newCall(request).execute()) {
-                    if (response.isSuccessful()) {
-                        mainHandler.post(() -> callback.onSuccess("Дверь открыта!"));
+                Call call = HttpClientProvider.get().newCall(request);
+                handle.attach(call);
+                try (Response response = call.execute()) {
+                    if (response.isSuccessful() && response.body() != null) {
+                        long parseStart = ClientMetrics.start();
+                        List<Visit> visits = readVisitPage(response.body());
+                        ClientMetrics.record(ClientMetrics.Endpoint.HISTORY, ClientMetrics.Phase.PARSE, parseStart);
+                        if (door != null) {
+                            for (Visit visit : visits) {
+                                visit.setDoor(door);
+                            }
+                        }
+                        LOG.d("History page: {} visits", visits.size());
+                        // Счетчики статистики обновляются еще в рабочем потоке, до доставки страницы
+                        VisitStatistics.forBackend(base).addAll(visits);
+                        deliver(handle, ClientMetrics.Endpoint.HISTORY, () -> cb.onSuccess(visits));
                     } else {
-                        mainHandler.post(() -> callback.onError("Ошибка открытия двери: " + response.code()));
+                        deliver(handle, ClientMetrics.Endpoint.HISTORY, () -> cb.onError("Ошибка сервера: " + response.code()));
                     }
                 }
             } catch (IOException e) {
-                mainHandler.post(() -> callback.onError("Ошибка сети: " + e.getMessage()));
+                deliver(handle, ClientMetrics.Endpoint.HISTORY, () -> cb.onError(networkError(e)));
             }
         });
     }
 
-    public void getVisitHistory(int limit, int offset, ApiCallback<List<Visit>> callback) {
-        executorService.execute(() -> {
+    // Фото для PhotoExport: тело ответа идет потоком прямо в файл, не собираясь в памяти.
+    // Пишется во временный .part и переименовывается, так что готовый файл всегда целый
+    RequestHandle downloadPhoto(Visit visit, File file, ApiCallback<Long> callback) {
+        Door door = visit.getDoor();
+        String base = door != null ? door.getBaseUrl() : baseUrl;
+        Object lane = base.equals(baseUrl) ? null : base;
+        return submit(RequestScheduler.Priority.EXPORT, lane, null, callback, (handle, cb) -> {
+            File part = new File(file.getPath() + PhotoExport.PART_SUFFIX);
             try {
-                String url = BASE_URL + "/doorbell/history?limit=" + limit + "&offset=" + offset;
                 Request request = new Request.Builder()
-                        .url(url)
+                        .url(base + "/doorbell/visit/" + visit.getId() + "/photo")
                         .get()
+                        .tag(ClientMetrics.Endpoint.class, ClientMetrics.Endpoint.PHOTO)
                         .build();
 
-                try (Response response = client.newCall(request).execute()) {
-                    if (response.isSuccessful() && response.body() != null) {
-                        String jsonResponse = response.body().string();
-                        Log.d(TAG, "History response: " + jsonResponse);
-                        Type listType = new TypeToken<List<Visit>>(){}.getType();
-                        List<Visit> visits = gson.fromJson(jsonResponse, listType);
-                        mainHandler.post(() -> callback.onSuccess(visits));
-                    } else {
-                        mainHandler.post(() -> callback.onError("Ошибка сервера: " + response.code()));
+                Call call = HttpClientProvider.bulk().newCall(request);
+                handle.attach(call);
+                try (Response response = call.execute()) {
+                    if (!response.isSuccessful() || response.body() == null) {
+                        deliver(handle, ClientMetrics.Endpoint.PHOTO, () -> cb.onError("Ошибка сервера: " + response.code()));
+                        return;
+                    }
+                    long written;
+                    try (BufferedSink sink = Okio.buffer(Okio.sink(part))) {
+                        written = sink.writeAll(response.body().source());
+                    }
+                    if (!part.renameTo(file)) {
+                        throw new IOException("Cannot rename " + part + " to " + file.getName());
                     }
+                    deliver(handle, ClientMetrics.Endpoint.PHOTO, () -> cb.onSuccess(written));
                 }
             } catch (IOException e) {
-                mainHandler.post(() -> callback.onError("Ошибка сети: " + e.getMessage()));
+                part.delete();
+                deliver(handle, ClientMetrics.Endpoint.PHOTO, () -> cb.onError(networkError(e)));
+            }
+        });
+    }
+
+    // Выгрузка фото визитов в папку или в target с расширением .zip; повторный вызов с тем же
+    // target продолжает прерванную выгрузку
+    public PhotoExport exportPhotos(List<Visit> visits, File target, PhotoExport.Listener listener) {
+        PhotoExport export = new PhotoExport(visits, target, this::downloadPhoto,
+                task -> submit(RequestScheduler.Priority.EXPORT, null, null, handle -> task.run()),
+                callbackExecutor, listener);
+        export.start();
+        return export;
+    }
+
+    // Предохранитель TransportPolicy отказал сразу, не ходя в сеть: бэкенд лежит уже какое-то время
+    private static String networkError(IOException e) {
+        if (e instanceof TransportPolicy.CircuitOpenException) {
+            return "Сервер недоступен, повторите позже";
+        }
+        return "Ошибка сети: " + e.getMessage();
+    }
+
+    // Старый бэкенд бинарный формат не знает и ответит JSON - читаем по Content-Type
+    private List<Visit> readVisitPage(ResponseBody body) throws IOException {
+        MediaType type = body.contentType();
+        if (type != null && VisitBinaryCodec.MEDIA_TYPE.equals(type.type() + "/" + type.subtype())) {
+            return VisitBinaryCodec.readList(body.source());
+        }
+        // Читаем визиты прямо из потока ответа, не собирая тело в строку
+        return visitAdapter.readList(new JsonReader(body.charStream()));
+    }
+
+    // lastSeenId - id последнего показанного визита, null если пропущенные не нужны
+    public VisitEventStream openEventStream(Integer lastSeenId, VisitEventStream.Listener listener) {
+        return openEventStream(null, lastSeenId, listener);
+    }
+
+    public VisitEventStream openEventStream(Door door, Integer lastSeenId, VisitEventStream.Listener listener) {
+        String base = door != null ? door.getBaseUrl() : baseUrl;
+        // Новые звонки из потока сразу попадают в статистику входа
+        VisitStatistics statistics = VisitStatistics.forBackend(base);
+        VisitEventStream.Listener counting = new VisitEventStream.Listener() {
+            @Override
+            public void onVisit(Visit visit) {
+                statistics.add(visit);
+                listener.onVisit(visit);
+            }
+
+            @Override
+            public void onConnectionChanged(boolean connected) {
+                listener.onConnectionChanged(connected);
+            }
+        };
+        VisitEventStream stream = new VisitEventStream(base + "/doorbell/events", HttpClientProvider.stream(),
+                visitAdapter, lastSeenId, counting, callbackExecutor,
+                VisitEventStream.RECONNECT_BASE_MILLIS, VisitEventStream.RECONNECT_MAX_MILLIS, new Random());
+        eventStreams.removeIf(VisitEventStream::isStopped);
+        eventStreams.add(stream);
+        if (shutdown) {
+            stream.stop();
+        } else {
+            stream.start();
+        }
+        return stream;
+    }
+
+    // Подписка на общий полет: у каждого вызывающего свой handle, отмена только отписывает,
+    // а результат доставляется через callbackExecutor этого сервиса
+    private <T> RequestHandle joinFlight(SingleFlight<T> flights, String path, long lingerMillis,
+                                         ClientMetrics.Endpoint endpoint, ApiCallback<T> callback,
+                                         SingleFlight.Work<T> work) {
+        RequestHandle handle = new RequestHandle();
+        if (shutdown) {
+            handle.cancel();
+            return handle;
+        }
+        ReleasableCallback<T> released = new ReleasableCallback<>(callback);
+        activeRequests.add(handle);
+        handle.onCancel(() -> {
+            released.release();
+            activeRequests.remove(handle);
+        });
+        flights.join(baseUrl + path, lingerMillis, new ApiCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                activeRequests.remove(handle);
+                deliver(handle, endpoint, () -> released.onSuccess(result));
+            }
+
+            @Override
+            public void onError(String error) {
+                activeRequests.remove(handle);
+                deliver(handle, endpoint, () -> released.onError(error));
+            }
+        }, work);
+        return handle;
+    }
+
+    // Упавшая с исключением работа не должна оставить полет висеть: подписчики получат ошибку
+    private static <T> void shared(ApiCallback<T> done, Runnable work) {
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            done.onError("Ошибка обработки ответа: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private interface CallbackJob<T> {
+        void run(RequestHandle handle, ApiCallback<T> callback);
+    }
+
+    // Задача видит колбэк только через обертку, которую отмена обнуляет: даже пока запрос
+    // ждет в очереди планировщика или доставка стоит в очереди главного потока, экран не удерживается
+    private <T> RequestHandle submit(RequestScheduler.Priority priority, Object lane, Object supersedeKey,
+                                     ApiCallback<T> callback, CallbackJob<T> job) {
+        ReleasableCallback<T> released = new ReleasableCallback<>(callback);
+        RequestHandle handle = submit(priority, lane, supersedeKey, h -> job.run(h, released));
+        handle.onCancel(released::release);
+        return handle;
+    }
+
+    private RequestHandle submit(RequestScheduler.Priority priority, Object lane, Object supersedeKey,
+                                 RequestScheduler.Job job) {
+        if (shutdown) {
+            RequestHandle handle = new RequestHandle();
+            handle.cancel();
+            return handle;
+        }
+        RequestHandle handle = scheduler.submit(priority, lane, supersedeKey, h -> {
+            try {
+                if (!shutdown) {
+                    job.run(h);
+                }
+            } finally {
+                h.finish();
+                activeRequests.remove(h);
+            }
+        });
+        activeRequests.add(handle);
+        // Отмененная в очереди задача не запускается, поэтому убираем ее и при отмене
+        handle.onCancel(() -> activeRequests.remove(handle));
+        if (handle.isFinished()) {
+            // Задача успела отработать раньше, чем мы ее зарегистрировали
+            activeRequests.remove(handle);
+        } else if (shutdown) {
+            handle.cancel();
+        }
+        return handle;
+    }
+
+    private void deliver(RequestHandle handle, ClientMetrics.Endpoint endpoint, Runnable action) {
+        handle.detach();
+        long postedAt = ClientMetrics.start();
+        callbackExecutor.execute(() -> {
+            if (!handle.isCancelled() && !shutdown) {
+                ClientMetrics.record(endpoint, ClientMetrics.Phase.HANDOFF, postedAt);
+                action.run();
             }
         });
     }
 
     public void shutdown() {
-        executorService.shutdown();
+        shutdown = true;
+        for (RequestHandle handle : activeRequests) {
+            handle.cancel();
+        }
+        activeRequests.clear();
+        for (VisitEventStream stream : eventStreams) {
+            stream.stop();
+        }
+        eventStreams.clear();
+    }
+
+    int activeRequestCount() {
+        return activeRequests.size();
+    }
+
+    private static final class ReleasableCallback<T> implements ApiCallback<T> {
+        private volatile ApiCallback<T> target;
+
+        ReleasableCallback(ApiCallback<T> target) {
+            this.target = target;
+        }
+
+        void release() {
+            target = null;
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            ApiCallback<T> current = target;
+            if (current != null) {
+                current.onSuccess(result);
+            }
+        }
+
+        @Override
+        public void onError(String error) {
+            ApiCallback<T> current = target;
+            if (current != null) {
+                current.onError(error);
+            }
+        }
     }
 }
\ No newline at end of file
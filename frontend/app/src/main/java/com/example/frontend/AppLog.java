@@ -0,0 +1,169 @@
+package com.example.frontend;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Логи вне горячего пути. Уровень тега читается один раз, как у ClientMetrics:
+// adb shell setprop log.tag.ApiService DEBUG. Выключенный уровень стоит одного сравнения:
+// строка не собирается, примитивы не упаковываются (для них свои перегрузки).
+// Подстановки {} заполняются только при включенном уровне, длинные значения (тела ответов,
+// адреса) обрезаются до MAX_VALUE_CHARS. sampled() пропускает каждое n-е сообщение частого события
+public final class AppLog {
+    static final int MAX_VALUE_CHARS = 200;
+
+    interface Sink {
+        void println(int priority, String tag, String message);
+    }
+
+    // Ленивое сообщение; лямбда без захваченных переменных создается один раз
+    public interface Message {
+        String build();
+    }
+
+    private static volatile Sink sink = Log::println;
+
+    private final String tag;
+    private final int sampleEvery;
+    private final AtomicInteger sampleCounter = new AtomicInteger();
+    private volatile int minLevel;
+
+    private AppLog(String tag, int sampleEvery) {
+        this.tag = tag;
+        this.sampleEvery = sampleEvery;
+        this.minLevel = resolveLevel(tag);
+    }
+
+    public static AppLog get(String tag) {
+        return new AppLog(tag, 1);
+    }
+
+    // Из частых отладочных сообщений в logcat попадает каждое every-е; предупреждения и ошибки - все
+    public static AppLog sampled(String tag, int every) {
+        return new AppLog(tag, every);
+    }
+
+    static void setSink(Sink newSink) {
+        sink = newSink != null ? newSink : Log::println;
+    }
+
+    void setLevel(int level) {
+        minLevel = level;
+    }
+
+    public boolean isDebug() {
+        return minLevel <= Log.DEBUG;
+    }
+
+    public void d(String message) {
+        if (shouldLog(Log.DEBUG)) {
+            sink.println(Log.DEBUG, tag, message);
+        }
+    }
+
+    public void d(String template, long value) {
+        if (shouldLog(Log.DEBUG)) {
+            sink.println(Log.DEBUG, tag, format(template, value, 0, null, null, 1));
+        }
+    }
+
+    public void d(String template, long first, long second) {
+        if (shouldLog(Log.DEBUG)) {
+            sink.println(Log.DEBUG, tag, format(template, first, second, null, null, 2));
+        }
+    }
+
+    public void d(String template, Object value) {
+        if (shouldLog(Log.DEBUG)) {
+            sink.println(Log.DEBUG, tag, format(template, 0, 0, value, null, 0));
+        }
+    }
+
+    public void d(String template, long first, Object second) {
+        if (shouldLog(Log.DEBUG)) {
+            sink.println(Log.DEBUG, tag, format(template, first, 0, second, null, 1));
+        }
+    }
+
+    public void d(String template, Object first, Object second) {
+        if (shouldLog(Log.DEBUG)) {
+            sink.println(Log.DEBUG, tag, format(template, 0, 0, first, second, 0));
+        }
+    }
+
+    public void d(Message message) {
+        if (shouldLog(Log.DEBUG)) {
+            sink.println(Log.DEBUG, tag, truncate(message.build(), MAX_VALUE_CHARS * 4));
+        }
+    }
+
+    public void w(String template, Object value, Throwable error) {
+        if (Log.WARN >= minLevel) {
+            sink.println(Log.WARN, tag, withStackTrace(format(template, 0, 0, value, null, 0), error));
+        }
+    }
+
+    public void e(String message, Throwable error) {
+        if (Log.ERROR >= minLevel) {
+            sink.println(Log.ERROR, tag, withStackTrace(message, error));
+        }
+    }
+
+    public void e(String template, Object value, Throwable error) {
+        if (Log.ERROR >= minLevel) {
+            sink.println(Log.ERROR, tag, withStackTrace(format(template, 0, 0, value, null, 0), error));
+        }
+    }
+
+    private boolean shouldLog(int level) {
+        if (level < minLevel) {
+            return false;
+        }
+        return sampleEvery <= 1 || sampleCounter.getAndIncrement() % sampleEvery == 0;
+    }
+
+    // Сначала подставляются longCount чисел, затем объекты
+    private static String format(String template, long firstLong, long secondLong,
+                                 Object firstObject, Object secondObject, int longCount) {
+        StringBuilder out = new StringBuilder(template.length() + 32);
+        int argument = 0;
+        int from = 0;
+        int at;
+        while ((at = template.indexOf("{}", from)) >= 0) {
+            out.append(template, from, at);
+            if (argument < longCount) {
+                out.append(argument == 0 ? firstLong : secondLong);
+            } else {
+                int objectIndex = argument - longCount;
+                if (objectIndex < 2) {
+                    out.append(truncate(String.valueOf(objectIndex == 0 ? firstObject : secondObject), MAX_VALUE_CHARS));
+                } else {
+                    out.append("{}");
+                }
+            }
+            argument++;
+            from = at + 2;
+        }
+        return out.append(template, from, template.length()).toString();
+    }
+
+    static String truncate(String value, int maxChars) {
+        if (value.length() <= maxChars) {
+            return value;
+        }
+        return value.substring(0, maxChars) + "…(+" + (value.length() - maxChars) + ")";
+    }
+
+    private static String withStackTrace(String message, Throwable error) {
+        return error != null ? message + '\n' + Log.getStackTraceString(error) : message;
+    }
+
+    private static int resolveLevel(String tag) {
+        for (int level = Log.VERBOSE; level < Log.ASSERT; level++) {
+            if (Log.isLoggable(tag, level)) {
+                return level;
+            }
+        }
+        return Log.ASSERT;
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.frontend;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+// Задержки на телефоне по запросам и фазам. Включается так же, как PhotoLoadLogger:
+// adb shell setprop log.tag.ClientMetrics DEBUG. Выключенные метрики не создают таблиц,
+// EventListener не подключается к вызовам, а таймеры сводятся к чтению volatile-флага
+public final class ClientMetrics {
+    static final String TAG = "ClientMetrics";
+
+    public enum Endpoint { RING, UNLOCK, HISTORY, EVENTS, PHOTO, OTHER }
+
+    public enum Phase {
+        DNS, CONNECT, TLS,
+        // От отправки заголовков запроса до первых байтов ответа
+        TTFB,
+        BODY,
+        // Разбор JSON прямо из потока ответа, поэтому включает и дочитывание тела
+        PARSE,
+        // От готового результата до колбэка на главном потоке
+        HANDOFF,
+        // От bind строки до готового bitmap в Glide
+        BIND,
+        CALL
+    }
+
+    private static final Endpoint[] ENDPOINTS = Endpoint.values();
+    private static final Phase[] PHASES = Phase.values();
+
+    private static volatile Table table;
+
+    static {
+        setEnabled(Log.isLoggable(TAG, Log.DEBUG));
+    }
+
+    private ClientMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return table != null;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        if (enabled && table == null) {
+            table = new Table();
+        } else if (!enabled) {
+            table = null;
+        }
+    }
+
+    // 0 - метрики выключены, record() такой замер пропустит
+    public static long start() {
+        return table != null ? System.nanoTime() : 0;
+    }
+
+    public static void record(Endpoint endpoint, Phase phase, long startNanos) {
+        Table current = table;
+        if (current != null && startNanos != 0) {
+            current.histogram(endpoint, phase).recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    static LatencyHistogram histogram(Endpoint endpoint, Phase phase) {
+        Table current = table;
+        return current != null ? current.histogram(endpoint, phase) : null;
+    }
+
+    static long calls(Endpoint endpoint) {
+        Table current = table;
+        return current != null ? current.calls.get(endpoint.ordinal()) : 0;
+    }
+
+    static long failures(Endpoint endpoint) {
+        Table current = table;
+        return current != null ? current.failures.get(endpoint.ordinal()) : 0;
+    }
+
+    static long bytes(Endpoint endpoint) {
+        Table current = table;
+        return current != null ? current.bytes.get(endpoint.ordinal()) : 0;
+    }
+
+    public static void reset() {
+        Table current = table;
+        if (current != null) {
+            current.reset();
+        }
+    }
+
+    // Один вызов - один слушатель; запросы без метки считаются за defaultEndpoint
+    public static EventListener.Factory eventListenerFactory(Endpoint defaultEndpoint) {
+        return call -> {
+            Table current = table;
+            if (current == null) {
+                return EventListener.NONE;
+            }
+            Endpoint endpoint = call.request().tag(Endpoint.class);
+            // Дублирующая попытка TransportPolicy: ее фазы пишем, а вызовом считается исходный запрос
+            boolean attempt = call.request().tag(TransportPolicy.Attempt.class) != null;
+            return new CallListener(current, endpoint != null ? endpoint : defaultEndpoint, !attempt);
+        };
+    }
+
+    public static String dump() {
+        Table current = table;
+        if (current == null) {
+            return "metrics disabled";
+        }
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "%-8s %-8s %7s %9s %9s %9s %9s%n",
+                "endpoint", "phase", "count", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (Endpoint endpoint : ENDPOINTS) {
+            int index = endpoint.ordinal();
+            long calls = current.calls.get(index);
+            boolean header = false;
+            for (Phase phase : PHASES) {
+                LatencyHistogram histogram = current.histogram(endpoint, phase);
+                if (histogram.count() == 0) {
+                    continue;
+                }
+                if (!header) {
+                    out.append(String.format(Locale.US, "%s: %d calls, %d failed, %d KB%n", endpoint,
+                            calls, current.failures.get(index), current.bytes.get(index) / 1024));
+                    header = true;
+                }
+                out.append(String.format(Locale.US, "%-8s %-8s %7d %9.2f %9.2f %9.2f %9.2f%n",
+                        endpoint, phase, histogram.count(),
+                        histogram.percentileMicros(50) / 1000.0, histogram.percentileMicros(90) / 1000.0,
+                        histogram.percentileMicros(99) / 1000.0, histogram.maxMicros() / 1000.0));
+            }
+        }
+        return out.toString();
+    }
+
+    public static void logSnapshot() {
+        if (!isEnabled()) {
+            return;
+        }
+        for (String line : dump().split("\n")) {
+            Log.i(TAG, line);
+        }
+    }
+
+    private static final class Table {
+        final LatencyHistogram[] histograms = new LatencyHistogram[ENDPOINTS.length * PHASES.length];
+        final AtomicLongArray calls = new AtomicLongArray(ENDPOINTS.length);
+        final AtomicLongArray failures = new AtomicLongArray(ENDPOINTS.length);
+        final AtomicLongArray bytes = new AtomicLongArray(ENDPOINTS.length);
+
+        Table() {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        LatencyHistogram histogram(Endpoint endpoint, Phase phase) {
+            return histograms[endpoint.ordinal() * PHASES.length + phase.ordinal()];
+        }
+
+        void reset() {
+            for (LatencyHistogram histogram : histograms) {
+                histogram.reset();
+            }
+            for (int i = 0; i < ENDPOINTS.length; i++) {
+                calls.set(i, 0);
+                failures.set(i, 0);
+                bytes.set(i, 0);
+            }
+        }
+    }
+
+    // Отметки времени одного вызова. Колбэки EventListener приходят последовательно,
+    // поэтому поля без синхронизации
+    private static final class CallListener extends EventListener {
+        private final Table table;
+        private final Endpoint endpoint;
+        private final boolean countCall;
+        private long callStart;
+        private long dnsStart;
+        private long connectStart;
+        private long secureConnectStart;
+        private long requestStart;
+        private long bodyStart;
+
+        CallListener(Table table, Endpoint endpoint, boolean countCall) {
+            this.table = table;
+            this.endpoint = endpoint;
+            this.countCall = countCall;
+        }
+
+        private void record(Phase phase, long startNanos) {
+            if (startNanos != 0) {
+                table.histogram(endpoint, phase).recordNanos(System.nanoTime() - startNanos);
+            }
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            record(Phase.DNS, dnsStart);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            record(Phase.TLS, secureConnectStart);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            record(Phase.CONNECT, connectStart);
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                                  Protocol protocol, IOException ioe) {
+            record(Phase.CONNECT, connectStart);
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            requestStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            record(Phase.TTFB, requestStart);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            if (!response.isSuccessful()) {
+                table.failures.incrementAndGet(endpoint.ordinal());
+            }
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            bodyStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            record(Phase.BODY, bodyStart);
+            table.bytes.addAndGet(endpoint.ordinal(), byteCount);
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            if (countCall) {
+                record(Phase.CALL, callStart);
+                table.calls.incrementAndGet(endpoint.ordinal());
+            }
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            if (countCall) {
+                record(Phase.CALL, callStart);
+                table.calls.incrementAndGet(endpoint.ordinal());
+                table.failures.incrementAndGet(endpoint.ordinal());
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.frontend;
+
+// Вход со своим Pi: имя подписывает визиты в общей ленте, baseUrl - корень его бэкенда.
+// id - номер входа в настройках, по нему различаются визиты разных Pi с одинаковым id
+public final class Door {
+    private final int id;
+    private final String name;
+    private final String baseUrl;
+
+    public Door(int id, String name, String baseUrl) {
+        this.id = id;
+        this.name = name;
+        this.baseUrl = baseUrl;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + baseUrl + ")";
+    }
+}
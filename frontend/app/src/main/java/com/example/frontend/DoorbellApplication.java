@@ -0,0 +1,14 @@
+package com.example.frontend;
+
+import android.app.Application;
+
+public class DoorbellApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Дисковый HTTP-кэш нужен общему клиенту раньше, чем его соберет первый экран или Glide
+        HttpClientProvider.init(this);
+        ApiService.init(this);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.frontend;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.module.AppGlideModule;
+
+import java.io.InputStream;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+// Фото грузятся через общий OkHttpClient: тот же пул соединений к бэкенду, что и у ApiService
+@GlideModule
+public final class DoorbellGlideModule extends AppGlideModule {
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        OkHttpClient.Builder builder = HttpClientProvider.get().newBuilder();
+        // Glide не ставит метку запроса, а TransportPolicy по ней решает, можно ли повторять
+        builder.interceptors().add(0, chain -> chain.proceed(chain.request().newBuilder()
+                .tag(ClientMetrics.Endpoint.class, ClientMetrics.Endpoint.PHOTO)
+                .build()));
+        OkHttpClient client = builder
+                .eventListenerFactory(ClientMetrics.eventListenerFactory(ClientMetrics.Endpoint.PHOTO))
+                .addNetworkInterceptor(chain -> {
+                    Response response = chain.proceed(chain.request());
+                    if (response.body() != null) {
+                        PhotoLoadLogger.LOG.d("{} B over the network: {}", response.body().contentLength(),
+                                chain.request().url());
+                    }
+                    return response;
+                })
+                .build();
+        registry.replace(GlideUrl.class, InputStream.class, new OkHttpUrlLoader.Factory(client));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
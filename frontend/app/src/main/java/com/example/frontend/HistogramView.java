@@ -0,0 +1,64 @@
+package com.example.frontend;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+// Столбцы по счетчикам, высота - доля от самого большого. Подпись рисуется под столбцом,
+// у которого она есть (null - без подписи). В onDraw ничего не создается
+public class HistogramView extends View {
+    private final Paint barPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private int[] counts = new int[0];
+    private String[] labels = new String[0];
+
+    public HistogramView(Context context) {
+        this(context, null);
+    }
+
+    public HistogramView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        barPaint.setColor(Color.parseColor("#4CAF50"));
+        labelPaint.setColor(Color.parseColor("#666666"));
+        labelPaint.setTextAlign(Paint.Align.CENTER);
+        labelPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 11,
+                getResources().getDisplayMetrics()));
+    }
+
+    public void setCounts(int[] counts, String[] labels) {
+        this.counts = counts;
+        this.labels = labels;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (counts.length == 0) {
+            return;
+        }
+        int max = 1;
+        for (int count : counts) {
+            max = Math.max(max, count);
+        }
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float labelHeight = labelPaint.getTextSize() * 1.5f;
+        float chartHeight = getHeight() - getPaddingTop() - getPaddingBottom() - labelHeight;
+        float barWidth = width / counts.length;
+        float gap = Math.min(barWidth * 0.15f, 4f);
+        for (int i = 0; i < counts.length; i++) {
+            float x = left + i * barWidth;
+            float barHeight = chartHeight * counts[i] / max;
+            canvas.drawRect(x + gap, top + chartHeight - barHeight, x + barWidth - gap, top + chartHeight, barPaint);
+            if (i < labels.length && labels[i] != null) {
+                canvas.drawText(labels[i], x + barWidth / 2, top + chartHeight + labelHeight, labelPaint);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.frontend;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+public final class HttpClientProvider {
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static final int MAX_REQUESTS = 8;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 5;
+    private static final long DEFAULT_READ_TIMEOUT_SECONDS = 15;
+
+    // /doorbell/unlock только переключает реле - долго ждать ответа нет смысла
+    private static final long QUICK_READ_TIMEOUT_SECONDS = 5;
+    private static final long QUICK_CALL_TIMEOUT_SECONDS = 10;
+
+    // /doorbell/ring снимает фото и загружает его в MinIO
+    private static final long SLOW_READ_TIMEOUT_SECONDS = 30;
+    private static final long SLOW_CALL_TIMEOUT_SECONDS = 45;
+
+    // /doorbell/events шлет keepalive раз в 15 секунд: три пропуска подряд - соединение мертво
+    private static final long STREAM_READ_TIMEOUT_SECONDS = 45;
+
+    // Страницы истории и превью: фото неизменяемы, страницы сверяются по ETag
+    private static final long CACHE_SIZE_BYTES = 50L * 1024 * 1024;
+
+    private static volatile File cacheDirectory;
+    private static volatile OkHttpClient client;
+    private static volatile OkHttpClient quickClient;
+    private static volatile OkHttpClient slowClient;
+    private static volatile OkHttpClient streamClient;
+    private static volatile OkHttpClient bulkClient;
+
+    private HttpClientProvider() {
+    }
+
+    // Вызывается из DoorbellApplication до первого запроса
+    public static void init(Context context) {
+        init(new File(context.getCacheDir(), "http"));
+    }
+
+    // Клиенты собираются заново уже с кэшем в directory; null - без дискового кэша
+    static synchronized void init(File directory) {
+        cacheDirectory = directory;
+        client = null;
+        quickClient = null;
+        slowClient = null;
+        streamClient = null;
+        bulkClient = null;
+    }
+
+    public static OkHttpClient get() {
+        OkHttpClient result = client;
+        if (result == null) {
+            synchronized (HttpClientProvider.class) {
+                result = client;
+                if (result == null) {
+                    result = createClient();
+                    client = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Клиенты ниже получены через newBuilder(), поэтому делят с get() пул соединений и диспетчер
+    public static OkHttpClient quick() {
+        OkHttpClient result = quickClient;
+        if (result == null) {
+            synchronized (HttpClientProvider.class) {
+                result = quickClient;
+                if (result == null) {
+                    result = get().newBuilder()
+                            .readTimeout(QUICK_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .writeTimeout(QUICK_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .callTimeout(QUICK_CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            // Открытие - POST: повтор после обрыва мог бы открыть дверь второй раз
+                            .retryOnConnectionFailure(false)
+                            .build();
+                    quickClient = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static OkHttpClient slow() {
+        OkHttpClient result = slowClient;
+        if (result == null) {
+            synchronized (HttpClientProvider.class) {
+                result = slowClient;
+                if (result == null) {
+                    result = get().newBuilder()
+                            .readTimeout(SLOW_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .callTimeout(SLOW_CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            // Каждый повтор звонка - еще один снимок и загрузка в MinIO
+                            .retryOnConnectionFailure(false)
+                            .build();
+                    slowClient = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static OkHttpClient stream() {
+        OkHttpClient result = streamClient;
+        if (result == null) {
+            synchronized (HttpClientProvider.class) {
+                result = streamClient;
+                if (result == null) {
+                    result = get().newBuilder()
+                            .readTimeout(STREAM_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                            .callTimeout(0, TimeUnit.SECONDS)
+                            // Бесконечный поток событий в дисковый кэш писать нельзя
+                            .cache(null)
+                            .build();
+                    streamClient = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Выгрузка фото пишет тела прямо в файлы: в дисковый кэш их класть незачем, он вытеснил бы превью.
+    // TransportPolicy здесь нет: у выгрузки свой повтор (докачка пропущенных фото), а сотни ее запросов
+    // подряд не должны открывать предохранитель для истории и превью того же Pi
+    public static OkHttpClient bulk() {
+        OkHttpClient result = bulkClient;
+        if (result == null) {
+            synchronized (HttpClientProvider.class) {
+                result = bulkClient;
+                if (result == null) {
+                    OkHttpClient.Builder builder = get().newBuilder()
+                            .cache(null);
+                    builder.interceptors().removeIf(interceptor -> interceptor instanceof TransportPolicy);
+                    result = builder.build();
+                    bulkClient = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static OkHttpClient createClient() {
+        // Параллельность ограничивает сам Dispatcher; потолок пула ниже него дает RejectedExecutionException,
+        // когда поток завершенного вызова еще не вернулся в пул, а следующий вызов уже отдан
+        ThreadPoolExecutor dispatcherExecutor = new ThreadPoolExecutor(
+                0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "OkHttp Dispatcher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Dispatcher dispatcher = new Dispatcher(dispatcherExecutor);
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        File directory = cacheDirectory;
+        return new OkHttpClient.Builder()
+                .cache(directory != null ? new Cache(directory, CACHE_SIZE_BYTES) : null)
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(DEFAULT_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(DEFAULT_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                // Дублирующие запросы истории уходят через этот же клиент
+                .addInterceptor(new TransportPolicy(request -> get().newCall(request)))
+                .eventListenerFactory(ClientMetrics.eventListenerFactory(ClientMetrics.Endpoint.OTHER))
+                .build();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.frontend;
+
+import java.util.Arrays;
+
+// Множество id как отсортированные интервалы [from, to]; пересекающиеся и соседние сливаются.
+// Визиты приходят страницами подряд, поэтому интервалов обычно единицы
+final class IdRanges {
+    static final long NONE = Long.MIN_VALUE;
+
+    private long[] from = new long[16];
+    private long[] to = new long[16];
+    private int count;
+
+    void add(long lo, long hi) {
+        // Первый интервал, который не кончается раньше lo - 1
+        int first = rangeAtOrBelow(lo - 1);
+        if (first < 0 || to[first] < lo - 1) {
+            first++;
+        }
+        int last = first;
+        while (last < count && from[last] <= hi + 1) {
+            lo = Math.min(lo, from[last]);
+            hi = Math.max(hi, to[last]);
+            last++;
+        }
+        int removed = last - first;
+        if (removed == 0) {
+            if (count == from.length) {
+                from = Arrays.copyOf(from, count * 2);
+                to = Arrays.copyOf(to, count * 2);
+            }
+            System.arraycopy(from, first, from, first + 1, count - first);
+            System.arraycopy(to, first, to, first + 1, count - first);
+            count++;
+        } else if (removed > 1) {
+            System.arraycopy(from, last, from, first + 1, count - last);
+            System.arraycopy(to, last, to, first + 1, count - last);
+            count -= removed - 1;
+        }
+        from[first] = lo;
+        to[first] = hi;
+    }
+
+    boolean contains(long id) {
+        int at = rangeAtOrBelow(id);
+        return at >= 0 && to[at] >= id;
+    }
+
+    // Наибольший id не больше atMost, которого в множестве нет
+    long highestMissing(long atMost) {
+        int at = rangeAtOrBelow(atMost);
+        return at >= 0 && to[at] >= atMost ? from[at] - 1 : atMost;
+    }
+
+    // Конец ближайшего интервала ниже id, которого в множестве нет; NONE, если ниже ничего
+    long endBelow(long id) {
+        int at = rangeAtOrBelow(id);
+        return at >= 0 ? to[at] : NONE;
+    }
+
+    int size() {
+        return count;
+    }
+
+    // Последний интервал, который начинается не выше id, или -1
+    private int rangeAtOrBelow(long id) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (from[mid] <= id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+}
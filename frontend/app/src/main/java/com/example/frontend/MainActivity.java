@@ -2,7 +2,7 @@ package com.example.frontend;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
+import android.os.SystemClock;
 import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
@@ -26,15 +26,19 @@ import com.bumptech.glide.request.target.Target;
 
 public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
+    private static final AppLog LOG = AppLog.get(TAG);
     private Button ringButton;
     private Button unlockButton;
     private Button historyButton;
+    private Button statisticsButton;
     private ImageView photoImageView;
     private ProgressBar loadingProgress;
     private TextView statusText;
     private CardView photoCard;
 
     private ApiService apiService;
+    private VisitEventStream eventStream;
+    private PreparedUnlock preparedUnlock;
     private Visit currentVisit;
 
     private BiometricPrompt biometricPrompt;
@@ -49,12 +53,13 @@ public class MainActivity extends AppCompatActivity {
         ringButton = findViewById(R.id.ringButton);
         unlockButton = findViewById(R.id.unlockButton);
         historyButton = findViewById(R.id.historyButton);
+        statisticsButton = findViewById(R.id.statisticsButton);
         photoImageView = findViewById(R.id.photoImageView);
         loadingProgress = findViewById(R.id.loadingProgress);
         statusText = findViewById(R.id.statusText);
         photoCard = findViewById(R.id.photoCard);
 
-        apiService = new ApiService();
+        apiService = new ApiService(this);
 
         setupBiometricAuthentication();
 
@@ -66,6 +71,15 @@ public class MainActivity extends AppCompatActivity {
             Intent intent = new Intent(MainActivity.this, VisitHistoryActivity.class);
             startActivity(intent);
         });
+
+        statisticsButton.setOnClickListener(v ->
+                startActivity(new Intent(MainActivity.this, StatisticsActivity.class)));
+
+        photoCard.setOnClickListener(v -> {
+            if (currentVisit != null) {
+                startActivity(PhotoViewerActivity.intent(MainActivity.this, currentVisit));
+            }
+        });
     }
 
     private void handleRingDoorbell() {
@@ -76,10 +90,8 @@ public class MainActivity extends AppCompatActivity {
         apiService.ringDoorbell(new ApiService.ApiCallback<Visit>() {
             @Override
             public void onSuccess(Visit visit) {
-                currentVisit = visit;
                 setLoadingState(false);
-                statusText.setText("Кто-то пришел!");
-                showVisitorInfo(visit);
+                showVisit(visit);
             }
 
             @Override
@@ -91,6 +103,46 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Звонок с кнопки у двери приходит событием, без опроса истории
+        eventStream = apiService.openEventStream(null, new VisitEventStream.Listener() {
+            @Override
+            public void onVisit(Visit visit) {
+                LOG.d("Visit event on screen {} ms after it was recorded",
+                        System.currentTimeMillis() - visit.getTimestampMillis());
+                showVisit(visit);
+            }
+
+            @Override
+            public void onConnectionChanged(boolean connected) {
+                LOG.d("Event stream {}", connected ? "connected" : "disconnected");
+            }
+        });
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (eventStream != null) {
+            eventStream.stop();
+            eventStream = null;
+        }
+        // Снимок метрик в logcat, когда приложение уходит с экрана
+        ClientMetrics.logSnapshot();
+    }
+
+    // Визит может прийти и ответом на звонок, и событием: показываем его один раз
+    private void showVisit(Visit visit) {
+        if (currentVisit != null && currentVisit.getId() == visit.getId()) {
+            return;
+        }
+        currentVisit = visit;
+        statusText.setText("Кто-то пришел!");
+        showVisitorInfo(visit);
+    }
+
     private void setupBiometricAuthentication() {
         executor = ContextCompat.getMainExecutor(this);
 
@@ -99,6 +151,7 @@ public class MainActivity extends AppCompatActivity {
                     @Override
                     public void onAuthenticationError(int errorCode, @NonNull CharSequence errString) {
                         super.onAuthenticationError(errorCode, errString);
+                        releasePreparedUnlock();
                         Toast.makeText(MainActivity.this,
                                 "Ошибка аутентификации: " + errString, Toast.LENGTH_SHORT).show();
                     }
@@ -130,7 +183,9 @@ public class MainActivity extends AppCompatActivity {
         BiometricManager biometricManager = BiometricManager.from(this);
         switch (biometricManager.canAuthenticate(BiometricManager.Authenticators.BIOMETRIC_STRONG | BiometricManager.Authenticators.DEVICE_CREDENTIAL)) {
             case BiometricManager.BIOMETRIC_SUCCESS:
-                Log.d(TAG, "App can authenticate using biometrics.");
+                LOG.d("App can authenticate using biometrics.");
+                releasePreparedUnlock();
+                preparedUnlock = apiService.prepareUnlock();
                 biometricPrompt.authenticate(promptInfo);
                 break;
             case BiometricManager.BIOMETRIC_ERROR_NO_HARDWARE:
@@ -152,7 +207,9 @@ public class MainActivity extends AppCompatActivity {
         unlockButton.setEnabled(false);
         statusText.setText("Открываем дверь...");
 
-        apiService.unlockDoor(new ApiService.ApiCallback<String>() {
+        PreparedUnlock prepared = preparedUnlock;
+        preparedUnlock = null;
+        apiService.unlockDoor(prepared, new ApiService.ApiCallback<String>() {
             @Override
             public void onSuccess(String message) {
                 statusText.setText(message);
@@ -174,29 +231,48 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    private void releasePreparedUnlock() {
+        if (preparedUnlock != null) {
+            preparedUnlock.cancel();
+            preparedUnlock = null;
+        }
+    }
+
     private void showVisitorInfo(Visit visit) {
         photoCard.setVisibility(View.VISIBLE);
         unlockButton.setVisibility(View.VISIBLE);
 
-        String photoUrl = visit.getPhotoUrl();
-        if (photoUrl != null && !photoUrl.isEmpty() && photoUrl.startsWith("/")) {
-            photoUrl = ApiService.BASE_URL + photoUrl;
-        }
-        final String finalPhotoUrl = photoUrl;
-        Log.d(TAG, "Loading photo from URL: " + finalPhotoUrl);
+        final String finalPhotoUrl = ApiService.photoUrl(visit);
+        LOG.d("Loading photo from URL: {}", finalPhotoUrl);
+        final long startedAt = SystemClock.elapsedRealtime();
 
+        // Пока качается полный кадр, в карточке уже видно превью - лицо различимо и на нем.
+        // Время до первого кадра и размер bitmap карточки пишутся в лог рядом с цифрами PhotoViewerActivity
         Glide.with(this)
                 .load(finalPhotoUrl)
+                .thumbnail(Glide.with(this).load(ApiService.thumbnailUrl(visit, PhotoViewerActivity.PREVIEW_SIZE))
+                        .listener(new RequestListener<android.graphics.drawable.Drawable>() {
+                            @Override
+                            public boolean onLoadFailed(GlideException e, Object model, Target<android.graphics.drawable.Drawable> target, boolean isFirstResource) {
+                                return false;
+                            }
+
+                            @Override
+                            public boolean onResourceReady(android.graphics.drawable.Drawable resource, Object model, Target<android.graphics.drawable.Drawable> target, com.bumptech.glide.load.DataSource dataSource, boolean isFirstResource) {
+                                LOG.d("card: preview shown after {} ms, bitmap {} B",
+                                        SystemClock.elapsedRealtime() - startedAt, bitmapBytes(resource));
+                                return false;
+                            }
+                        }))
                 .placeholder(android.R.drawable.ic_menu_camera)
                 .error(android.R.drawable.ic_menu_report_image)
                 .listener(new RequestListener<android.graphics.drawable.Drawable>() {
                     @Override
                     public boolean onLoadFailed(GlideException e, Object model, Target<android.graphics.drawable.Drawable> target, boolean isFirstResource) {
-                        Log.e(TAG, "Failed to load image from: " + finalPhotoUrl, e);
-                        Log.e(TAG, "Error details: " + (e != null ? e.getMessage() : "null"));
+                        LOG.e("Failed to load image from: {}", finalPhotoUrl, e);
                         if (e != null && e.getRootCauses() != null) {
                             for (Throwable t : e.getRootCauses()) {
-                                Log.e(TAG, "Root cause: " + t.getMessage(), t);
+                                LOG.e("Root cause: {}", t.getMessage(), t);
                             }
                         }
                         Toast.makeText(MainActivity.this, "Ошибка загрузки фото: " + (e != null ? e.getMessage() : "unknown"), Toast.LENGTH_LONG).show();
@@ -205,13 +281,22 @@ public class MainActivity extends AppCompatActivity {
 
                     @Override
                     public boolean onResourceReady(android.graphics.drawable.Drawable resource, Object model, Target<android.graphics.drawable.Drawable> target, com.bumptech.glide.load.DataSource dataSource, boolean isFirstResource) {
-                        Log.d(TAG, "Image loaded successfully from: " + finalPhotoUrl);
+                        LOG.d("card: full frame shown after {} ms, bitmap {} B, from {}",
+                                SystemClock.elapsedRealtime() - startedAt, bitmapBytes(resource), finalPhotoUrl);
                         return false;
                     }
                 })
                 .into(photoImageView);
     }
 
+    // Glide уменьшает кадр до размера карточки: в памяти bitmap размером с ImageView, а не с кадр
+    private static long bitmapBytes(android.graphics.drawable.Drawable drawable) {
+        if (drawable instanceof android.graphics.drawable.BitmapDrawable) {
+            return ((android.graphics.drawable.BitmapDrawable) drawable).getBitmap().getAllocationByteCount();
+        }
+        return -1;
+    }
+
     private void hideVisitorInfo() {
         photoCard.setVisibility(View.GONE);
         unlockButton.setVisibility(View.GONE);
@@ -227,8 +312,6 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (apiService != null) {
-            apiService.shutdown();
-        }
+        releasePreparedUnlock();
     }
 }
\ No newline at end of file
@@ -0,0 +1,409 @@
+package com.example.frontend;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+
+// Окно страниц истории: подгрузка заранее по скорости прокрутки, не больше одного запроса
+// на направление, вытеснение дальних страниц и повтор упавших с нарастающей паузой.
+// Без сети старые страницы берутся из запасного источника (локального кэша), если он задан.
+// Все методы и колбэки источника вызываются из одного (главного) потока.
+public class PagingEngine {
+    public enum Direction { OLDER, NEWER }
+
+    public interface PageSource {
+        RequestHandle load(int limit, Integer beforeId, Integer afterId, ApiService.ApiCallback<List<Visit>> callback);
+    }
+
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    public interface Clock {
+        long now();
+    }
+
+    public interface Listener {
+        void onWindowChanged(List<Visit> visits);
+
+        void onLoadFailed(Direction direction, String error);
+    }
+
+    static final int MIN_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = 100;
+    // Окно хранится по столбцам (VisitStore, ~45 Б на визит): 2400 строк занимают столько же,
+    // сколько прежние 300 объектов Visit, и вытесненные страницы реже приходится догружать
+    static final int MAX_WINDOW_ITEMS = 2400;
+    static final long RETRY_BASE_MILLIS = 500;
+    static final long RETRY_MAX_MILLIS = 8000;
+    static final int MAX_ATTEMPTS = 5;
+
+    // Страница должна покрывать около секунды прокрутки на текущей скорости
+    private static final long PAGE_BUDGET_MILLIS = 1000;
+    private static final long INITIAL_LATENCY_MILLIS = 500;
+
+    private final PageSource source;
+    private final PageSource fallback;
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final Listener listener;
+    private final int maxWindowItems;
+
+    // Страницы от новых к старым, каждая в своем VisitStore
+    private final ArrayDeque<List<Visit>> pages = new ArrayDeque<>();
+    // Вытесненные сверху страницы: первая примыкает к окну
+    private final ArrayDeque<DroppedRange> droppedNewer = new ArrayDeque<>();
+    private int windowSize;
+    private boolean olderExhausted;
+
+    private final Lane older = new Lane(Direction.OLDER);
+    private final Lane newer = new Lane(Direction.NEWER);
+    private int generation;
+
+    private int firstVisible;
+    private int lastVisible = -1;
+    private long lastScrollAt;
+    private double rowsPerSecond;
+    private long latencyMillis = INITIAL_LATENCY_MILLIS;
+
+    public PagingEngine(PageSource source, Scheduler scheduler, Clock clock, Listener listener) {
+        this(source, null, scheduler, clock, listener);
+    }
+
+    public PagingEngine(PageSource source, PageSource fallback, Scheduler scheduler, Clock clock, Listener listener) {
+        this(source, fallback, scheduler, clock, listener, MAX_WINDOW_ITEMS);
+    }
+
+    PagingEngine(PageSource source, PageSource fallback, Scheduler scheduler, Clock clock, Listener listener,
+                 int maxWindowItems) {
+        this.source = source;
+        this.fallback = fallback;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.listener = listener;
+        this.maxWindowItems = maxWindowItems;
+    }
+
+    public void start() {
+        if (windowSize == 0 && !olderExhausted) {
+            older.request();
+        }
+    }
+
+    // Окно из локального кэша: дальше листаем от его самого старого визита
+    public void seed(List<Visit> visits) {
+        pages.clear();
+        droppedNewer.clear();
+        windowSize = 0;
+        olderExhausted = false;
+        if (!visits.isEmpty()) {
+            List<Visit> page = VisitStore.copyOf(VisitMerge.merge(Collections.<Visit>emptyList(), visits));
+            pages.add(page);
+            windowSize = page.size();
+        }
+        publish();
+    }
+
+    // Новые визиты сверху; если голова окна вытеснена, они догрузятся вместе с ней
+    public void insertNewest(List<Visit> visits) {
+        if (visits.isEmpty()) {
+            return;
+        }
+        if (!droppedNewer.isEmpty()) {
+            DroppedRange newest = droppedNewer.peekLast();
+            for (Visit visit : visits) {
+                newest.newestId = Math.max(newest.newestId, visit.getId());
+            }
+            newest.count += visits.size();
+            return;
+        }
+        List<Visit> head = pages.isEmpty() ? Collections.<Visit>emptyList() : pages.pollFirst();
+        List<Visit> merged = VisitStore.copyOf(VisitMerge.merge(head, visits));
+        pages.addFirst(merged);
+        windowSize += merged.size() - head.size();
+        publish();
+    }
+
+    public void onScrolled(int first, int last, int itemCount) {
+        if (first < 0 || last < first) {
+            return;
+        }
+        long now = clock.now();
+        if (lastVisible >= 0 && now > lastScrollAt) {
+            double instant = Math.abs(first - firstVisible) * 1000.0 / (now - lastScrollAt);
+            rowsPerSecond = rowsPerSecond * 0.5 + instant * 0.5;
+        }
+        lastScrollAt = now;
+        firstVisible = first;
+        lastVisible = last;
+        maybeLoad();
+    }
+
+    public boolean hasMoreOlder() {
+        return !olderExhausted;
+    }
+
+    // Верхние страницы вытеснены и догрузятся при прокрутке вверх
+    public boolean hasMoreNewer() {
+        return !droppedNewer.isEmpty();
+    }
+
+    public void release() {
+        generation++;
+        older.reset();
+        newer.reset();
+    }
+
+    int pageSize() {
+        long rows = (long) Math.ceil(rowsPerSecond * PAGE_BUDGET_MILLIS / 1000.0);
+        return (int) Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, rows));
+    }
+
+    // Запрос должен успеть, пока пользователь пролистывает оставшиеся строки
+    int prefetchDistance() {
+        int visible = Math.max(1, lastVisible - firstVisible + 1);
+        return visible + (int) Math.ceil(rowsPerSecond * latencyMillis / 1000.0);
+    }
+
+    int windowSize() {
+        return windowSize;
+    }
+
+    private void maybeLoad() {
+        if (lastVisible < 0) {
+            return;
+        }
+        int distance = prefetchDistance();
+        if (!olderExhausted && windowSize - 1 - lastVisible <= distance) {
+            older.request();
+        }
+        if (!droppedNewer.isEmpty() && firstVisible <= distance) {
+            newer.request();
+        }
+    }
+
+    // Короткая страница из кэша значит только пропуск в кэше: конец истории отмечает лишь сервер
+    private void onOlderPage(List<Visit> visits, int limit, boolean fromNetwork) {
+        if (fromNetwork && visits.size() < limit) {
+            olderExhausted = true;
+        }
+        if (!visits.isEmpty()) {
+            List<Visit> page = VisitStore.copyOf(VisitMerge.merge(Collections.<Visit>emptyList(), visits));
+            pages.addLast(page);
+            windowSize += page.size();
+            trimNewer();
+        }
+        publish();
+    }
+
+    private void onNewerPage(DroppedRange range, List<Visit> visits) {
+        if (droppedNewer.peekFirst() != range) {
+            return;
+        }
+        droppedNewer.pollFirst();
+        if (!visits.isEmpty()) {
+            List<Visit> page = VisitStore.copyOf(VisitMerge.merge(Collections.<Visit>emptyList(), visits));
+            pages.addFirst(page);
+            windowSize += page.size();
+            firstVisible += page.size();
+            lastVisible += page.size();
+            trimOlder();
+        }
+        publish();
+    }
+
+    private void trimNewer() {
+        int margin = prefetchDistance();
+        while (windowSize > maxWindowItems && pages.size() > 1) {
+            List<Visit> head = pages.peekFirst();
+            if (head.size() > firstVisible - margin) {
+                return;
+            }
+            pages.pollFirst();
+            droppedNewer.addFirst(new DroppedRange(head));
+            windowSize -= head.size();
+            firstVisible -= head.size();
+            lastVisible -= head.size();
+        }
+    }
+
+    private void trimOlder() {
+        int margin = prefetchDistance();
+        while (windowSize > maxWindowItems && pages.size() > 1) {
+            List<Visit> tail = pages.peekLast();
+            if (windowSize - tail.size() <= lastVisible + margin) {
+                return;
+            }
+            pages.pollLast();
+            windowSize -= tail.size();
+            olderExhausted = false;
+        }
+    }
+
+    private void publish() {
+        VisitStore window = new VisitStore();
+        for (List<Visit> page : pages) {
+            window.appendAll(page);
+        }
+        listener.onWindowChanged(window);
+    }
+
+    private Integer oldestId() {
+        if (pages.isEmpty()) {
+            return null;
+        }
+        int oldest = Integer.MAX_VALUE;
+        for (Visit visit : pages.peekLast()) {
+            oldest = Math.min(oldest, visit.getId());
+        }
+        return oldest;
+    }
+
+    private static class DroppedRange {
+        int newestId = Integer.MIN_VALUE;
+        int oldestId = Integer.MAX_VALUE;
+        int count;
+
+        DroppedRange(List<Visit> page) {
+            for (Visit visit : page) {
+                newestId = Math.max(newestId, visit.getId());
+                oldestId = Math.min(oldestId, visit.getId());
+            }
+            count = page.size();
+        }
+    }
+
+    private class Lane {
+        private final Direction direction;
+        // Запрос в полете или ждет повтора
+        private boolean busy;
+        private int attempts;
+        private long blockedUntil;
+        private RequestHandle handle;
+
+        Lane(Direction direction) {
+            this.direction = direction;
+        }
+
+        void request() {
+            if (busy || clock.now() < blockedUntil) {
+                return;
+            }
+            busy = true;
+            attempts = 0;
+            send();
+        }
+
+        void reset() {
+            busy = false;
+            attempts = 0;
+            if (handle != null) {
+                handle.cancel();
+                handle = null;
+            }
+        }
+
+        private void send() {
+            int expectedGeneration = generation;
+            long startedAt = clock.now();
+            int limit;
+            Integer beforeId;
+            Integer afterId;
+            DroppedRange range = null;
+            if (direction == Direction.OLDER) {
+                limit = pageSize();
+                beforeId = oldestId();
+                afterId = null;
+            } else {
+                // Границы вытесненной страницы известны: забираем ровно ее, даже если сверху появились новые визиты
+                range = droppedNewer.peekFirst();
+                if (range == null) {
+                    busy = false;
+                    return;
+                }
+                limit = range.count;
+                beforeId = range.newestId + 1;
+                afterId = range.oldestId - 1;
+            }
+            DroppedRange requested = range;
+            handle = source.load(limit, beforeId, afterId, new ApiService.ApiCallback<List<Visit>>() {
+                @Override
+                public void onSuccess(List<Visit> visits) {
+                    if (expectedGeneration != generation) {
+                        return;
+                    }
+                    latencyMillis = (latencyMillis + clock.now() - startedAt) / 2;
+                    loaded(requested, visits, limit, true);
+                }
+
+                @Override
+                public void onError(String error) {
+                    if (expectedGeneration != generation) {
+                        return;
+                    }
+                    if (direction == Direction.OLDER && fallback != null && beforeId != null) {
+                        loadFallback(expectedGeneration, limit, beforeId, error);
+                    } else {
+                        failed(expectedGeneration, error);
+                    }
+                }
+            });
+        }
+
+        // Пустой ответ кэша ничем не лучше ошибки сети: повторяем запрос к серверу как обычно
+        private void loadFallback(int expectedGeneration, int limit, int beforeId, String networkError) {
+            handle = fallback.load(limit, beforeId, null, new ApiService.ApiCallback<List<Visit>>() {
+                @Override
+                public void onSuccess(List<Visit> visits) {
+                    if (expectedGeneration != generation) {
+                        return;
+                    }
+                    if (visits.isEmpty()) {
+                        failed(expectedGeneration, networkError);
+                    } else {
+                        loaded(null, visits, limit, false);
+                    }
+                }
+
+                @Override
+                public void onError(String error) {
+                    if (expectedGeneration == generation) {
+                        failed(expectedGeneration, networkError);
+                    }
+                }
+            });
+        }
+
+        private void loaded(DroppedRange requested, List<Visit> visits, int limit, boolean fromNetwork) {
+            handle = null;
+            busy = false;
+            attempts = 0;
+            if (direction == Direction.OLDER) {
+                onOlderPage(visits, limit, fromNetwork);
+            } else {
+                onNewerPage(requested, visits);
+            }
+            maybeLoad();
+        }
+
+        private void failed(int expectedGeneration, String error) {
+            handle = null;
+            attempts++;
+            if (attempts >= MAX_ATTEMPTS) {
+                busy = false;
+                blockedUntil = clock.now() + RETRY_MAX_MILLIS;
+                listener.onLoadFailed(direction, error);
+                return;
+            }
+            scheduler.schedule(() -> {
+                if (expectedGeneration == generation) {
+                    send();
+                }
+            }, retryDelay(attempts));
+        }
+    }
+
+    static long retryDelay(int attempt) {
+        return Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << (attempt - 1));
+    }
+}
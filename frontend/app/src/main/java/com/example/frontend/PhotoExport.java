@@ -0,0 +1,222 @@
+package com.example.frontend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+// Выгрузка фото визитов в папку или ZIP. Качается не больше PARALLELISM фото сразу, каждое
+// потоком прямо в файл visit_<id>.jpg. Прерванная выгрузка продолжается с того же места:
+// готовые файлы пропускаются, недокачанный .part качается заново.
+// ZIP нельзя писать из нескольких потоков и дописывать после обрыва, поэтому фото сначала
+// собираются в папку рядом с архивом и затем упаковываются потоком, файл за файлом.
+// start() и cancel() вызываются из главного потока, туда же приходят колбэки
+public class PhotoExport {
+    private static final String TAG = "PhotoExport";
+    private static final AppLog LOG = AppLog.get(TAG);
+
+    public interface PhotoSource {
+        RequestHandle download(Visit visit, File file, ApiService.ApiCallback<Long> callback);
+    }
+
+    public interface Listener {
+        void onProgress(Progress progress);
+
+        void onFinished(Progress progress, File result);
+
+        void onError(String error);
+    }
+
+    public static final class Progress {
+        public final int total;
+        public final int downloaded;
+        // Уже были на диске с прошлого запуска
+        public final int skipped;
+        public final int failed;
+        public final long bytes;
+        public final long bytesPerSecond;
+
+        Progress(int total, int downloaded, int skipped, int failed, long bytes, long bytesPerSecond) {
+            this.total = total;
+            this.downloaded = downloaded;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        public int completed() {
+            return downloaded + skipped + failed;
+        }
+    }
+
+    static final int PARALLELISM = RequestScheduler.Priority.EXPORT.maxConcurrent;
+    static final String PART_SUFFIX = ".part";
+    private static final String ZIP_SUFFIX = ".zip";
+
+    private final List<Visit> visits;
+    private final File target;
+    // Куда качаются фото: сама папка выгрузки или папка рядом с архивом
+    private final File directory;
+    private final boolean zip;
+    private final PhotoSource source;
+    private final Executor background;
+    private final Executor callbacks;
+    private final Listener listener;
+
+    private final Set<RequestHandle> running = new LinkedHashSet<>();
+    private int next;
+    private int downloaded;
+    private int skipped;
+    private int failed;
+    private long bytes;
+    private long startedAt;
+    private boolean cancelled;
+
+    public PhotoExport(List<Visit> visits, File target, PhotoSource source, Executor background,
+                       Executor callbacks, Listener listener) {
+        this.visits = visits;
+        this.target = target;
+        this.zip = target.getName().endsWith(ZIP_SUFFIX);
+        this.directory = zip ? new File(target.getPath() + ".files") : target;
+        this.source = source;
+        this.background = background;
+        this.callbacks = callbacks;
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            listener.onError("Не удалось создать папку " + directory);
+            return;
+        }
+        startedAt = System.nanoTime();
+        fill();
+    }
+
+    // Скачанные файлы остаются на диске: повторный запуск их пропустит
+    public void cancel() {
+        cancelled = true;
+        for (RequestHandle handle : running) {
+            handle.cancel();
+        }
+        running.clear();
+    }
+
+    // id уникальны только в пределах одного Pi: визиты других входов получают в имени номер входа
+    static String fileName(Visit visit) {
+        Door door = visit.getDoor();
+        return (door == null ? "visit_" : "door" + door.getId() + "_visit_") + visit.getId() + ".jpg";
+    }
+
+    private void fill() {
+        int skippedBefore = skipped;
+        while (!cancelled && running.size() < PARALLELISM && next < visits.size()) {
+            Visit visit = visits.get(next++);
+            File file = new File(directory, fileName(visit));
+            if (file.exists()) {
+                skipped++;
+                continue;
+            }
+            download(visit, file);
+        }
+        if (cancelled) {
+            return;
+        }
+        if (running.isEmpty() && next >= visits.size()) {
+            finish();
+        } else if (skipped != skippedBefore) {
+            listener.onProgress(progress());
+        }
+    }
+
+    private void download(Visit visit, File file) {
+        RequestHandle[] handle = new RequestHandle[1];
+        handle[0] = source.download(visit, file, new ApiService.ApiCallback<Long>() {
+            @Override
+            public void onSuccess(Long length) {
+                running.remove(handle[0]);
+                downloaded++;
+                bytes += length;
+                listener.onProgress(progress());
+                fill();
+            }
+
+            @Override
+            public void onError(String error) {
+                running.remove(handle[0]);
+                failed++;
+                LOG.d("Photo of visit {} not exported: {}", visit.getId(), error);
+                listener.onProgress(progress());
+                fill();
+            }
+        });
+        running.add(handle[0]);
+    }
+
+    private void finish() {
+        Progress progress = progress();
+        LOG.d("Export done: {} downloaded, {} skipped", downloaded, skipped);
+        if (!zip) {
+            listener.onFinished(progress, directory);
+            return;
+        }
+        background.execute(() -> {
+            try {
+                pack();
+                callbacks.execute(() -> {
+                    if (!cancelled) {
+                        listener.onFinished(progress, target);
+                    }
+                });
+            } catch (IOException e) {
+                LOG.e("Zip packing failed", e);
+                callbacks.execute(() -> listener.onError("Не удалось упаковать архив: " + e.getMessage()));
+            }
+        });
+    }
+
+    // JPEG уже сжат: записи кладутся без сжатия. Папка удаляется, только если все фото на месте -
+    // иначе повторный запуск докачает недостающие
+    private void pack() throws IOException {
+        File part = new File(target.getPath() + PART_SUFFIX);
+        try (BufferedSink sink = Okio.buffer(Okio.sink(part));
+             ZipOutputStream out = new ZipOutputStream(sink.outputStream())) {
+            out.setLevel(Deflater.NO_COMPRESSION);
+            for (Visit visit : visits) {
+                File file = new File(directory, fileName(visit));
+                if (!file.exists()) {
+                    continue;
+                }
+                out.putNextEntry(new ZipEntry(file.getName()));
+                try (BufferedSource in = Okio.buffer(Okio.source(file))) {
+                    in.readAll(Okio.sink(out));
+                }
+                out.closeEntry();
+            }
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("Cannot rename " + part + " to " + target.getName());
+        }
+        if (failed == 0) {
+            for (Visit visit : visits) {
+                new File(directory, fileName(visit)).delete();
+            }
+            directory.delete();
+        }
+    }
+
+    private Progress progress() {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startedAt) / 1_000_000);
+        return new Progress(visits.size(), downloaded, skipped, failed, bytes, bytes * 1000 / elapsedMillis);
+    }
+}
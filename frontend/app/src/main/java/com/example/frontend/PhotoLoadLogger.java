@@ -0,0 +1,51 @@
+package com.example.frontend;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+// Замер загрузки фото: размер декодированного bitmap и время от bind до готового ресурса
+public class PhotoLoadLogger implements RequestListener<Drawable> {
+    static final String TAG = "PhotoLoad";
+    static final AppLog LOG = AppLog.get(TAG);
+    // При быстрой прокрутке строки с фото из памяти идут десятками в секунду - в лог попадает каждая десятая
+    private static final AppLog READY_LOG = AppLog.sampled(TAG, 10);
+
+    private final int visitId;
+    private final long startedAt = SystemClock.elapsedRealtime();
+
+    public PhotoLoadLogger(int visitId) {
+        this.visitId = visitId;
+    }
+
+    public static boolean isEnabled() {
+        return LOG.isDebug();
+    }
+
+    @Override
+    public boolean onLoadFailed(GlideException e, Object model, Target<Drawable> target, boolean isFirstResource) {
+        LOG.d("visit {}: failed after {} ms", visitId, SystemClock.elapsedRealtime() - startedAt);
+        return false;
+    }
+
+    @Override
+    public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                   DataSource dataSource, boolean isFirstResource) {
+        long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        if (resource instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) resource).getBitmap();
+            READY_LOG.d(() -> "visit " + visitId + ": " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                    + " " + bitmap.getConfig() + ", " + bitmap.getAllocationByteCount() + " B bitmap, "
+                    + elapsed + " ms (" + dataSource + ")");
+        } else {
+            READY_LOG.d(() -> "visit " + visitId + ": " + elapsed + " ms (" + dataSource + ")");
+        }
+        return false;
+    }
+}
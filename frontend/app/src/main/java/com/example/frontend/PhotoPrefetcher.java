@@ -0,0 +1,112 @@
+package com.example.frontend;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+// Прогревает кэш фото для следующих строк по направлению прокрутки
+public class PhotoPrefetcher {
+    public interface Loader {
+        // Ключ фото в позиции (ключ строки: вход и id визита) или null, если грузить нечего
+        Long keyAt(int position);
+
+        // По завершении загрузчик обязан вызвать onPrefetchFinished(key)
+        void start(int position, long key);
+
+        void cancel(long key);
+    }
+
+    private final Loader loader;
+    private final int distance;
+    private final int maxInFlight;
+    private final Map<Long, Integer> inFlight = new HashMap<>();
+    private final Set<Long> completed = new HashSet<>();
+
+    private int direction = 1;
+    private int rangeStart;
+    private int rangeEnd;
+
+    public PhotoPrefetcher(Loader loader, int distance, int maxInFlight) {
+        this.loader = loader;
+        this.distance = distance;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void onScrolled(int firstVisible, int lastVisible, int itemCount, int dy) {
+        if (firstVisible < 0 || lastVisible < firstVisible) {
+            return;
+        }
+        if (dy > 0) {
+            direction = 1;
+        } else if (dy < 0) {
+            direction = -1;
+        }
+        // Догнавшая экран загрузка не отменяется: Glide присоединит к ней запрос видимой строки
+        int keepStart;
+        int keepEnd;
+        if (direction > 0) {
+            rangeStart = lastVisible + 1;
+            rangeEnd = Math.min(itemCount, lastVisible + 1 + distance);
+            keepStart = firstVisible;
+            keepEnd = rangeEnd;
+        } else {
+            rangeStart = Math.max(0, firstVisible - distance);
+            rangeEnd = firstVisible;
+            keepStart = rangeStart;
+            keepEnd = lastVisible + 1;
+        }
+
+        Iterator<Map.Entry<Long, Integer>> iterator = inFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Integer> entry = iterator.next();
+            int position = entry.getValue();
+            if (position < keepStart || position >= keepEnd) {
+                iterator.remove();
+                loader.cancel(entry.getKey());
+            }
+        }
+        if (completed.size() > distance * 8) {
+            completed.clear();
+        }
+        fill();
+    }
+
+    public void onPrefetchFinished(long key) {
+        if (inFlight.remove(key) != null) {
+            completed.add(key);
+            fill();
+        }
+    }
+
+    public void cancelAll() {
+        for (Long key : inFlight.keySet()) {
+            loader.cancel(key);
+        }
+        inFlight.clear();
+        completed.clear();
+    }
+
+    boolean isInFlight(long key) {
+        return inFlight.containsKey(key);
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    // Ближние к экрану строки идут первыми; лимит не дает прогреву занять все потоки загрузки
+    private void fill() {
+        int count = rangeEnd - rangeStart;
+        for (int i = 0; i < count && inFlight.size() < maxInFlight; i++) {
+            int position = direction > 0 ? rangeStart + i : rangeEnd - 1 - i;
+            Long key = loader.keyAt(position);
+            if (key == null || inFlight.containsKey(key) || completed.contains(key)) {
+                continue;
+            }
+            inFlight.put(key, position);
+            loader.start(position, key);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.frontend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Сетка тайлов кадра для TiledPhotoView. Целиком кадр декодируется только грубым базовым слоем
+// под размер экрана, а при увеличении в полном разрешении декодируются лишь тайлы, попавшие
+// на экран. Координаты - в пикселях исходного кадра
+final class PhotoTiles {
+    // Сторона тайла в пикселях декодированного bitmap
+    static final int TILE_SIZE = 256;
+    static final int BYTES_PER_PIXEL = 4;
+    // Пиксель bitmap на экране растягивается не больше чем в 1,25 раза - на глаз это незаметно,
+    // а кадр 1920x1080, вписанный в экран телефона, обходится выборкой 2 вместо полного декода
+    static final float MAX_UPSCALE = 1.25f;
+
+    static final class Tile {
+        final int sample;
+        final int left;
+        final int top;
+        final int right;
+        final int bottom;
+        final long key;
+
+        Tile(int sample, int column, int row, int left, int top, int right, int bottom) {
+            this.sample = sample;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.key = ((long) sample << 48) | ((long) column << 24) | row;
+        }
+
+        long bytes() {
+            return PhotoTiles.bytes(right - left, bottom - top, sample);
+        }
+    }
+
+    private final int imageWidth;
+    private final int imageHeight;
+
+    PhotoTiles(int imageWidth, int imageHeight) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+    }
+
+    // Наибольшая степень двойки, при которой bitmap на экране растягивается не больше MAX_UPSCALE;
+    // scale - пикселей экрана на пиксель кадра
+    static int sampleSize(float scale) {
+        int sample = 1;
+        while (sample < 1 << 10 && sample * 2 * scale <= MAX_UPSCALE) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    // Размер bitmap, в который BitmapRegionDecoder раскладывает width x height пикселей кадра
+    static long bytes(int width, int height, int sample) {
+        return (long) ((width + sample - 1) / sample) * ((height + sample - 1) / sample) * BYTES_PER_PIXEL;
+    }
+
+    long baseBytes(int sample) {
+        return bytes(imageWidth, imageHeight, sample);
+    }
+
+    // Тайлы выборки sample, пересекающие видимую часть кадра [left, right) x [top, bottom)
+    List<Tile> visible(int sample, float left, float top, float right, float bottom) {
+        List<Tile> tiles = new ArrayList<>();
+        int span = TILE_SIZE * sample;
+        int firstColumn = Math.max(0, (int) Math.floor(left / span));
+        int lastColumn = Math.min((imageWidth - 1) / span, (int) Math.ceil(right / span) - 1);
+        int firstRow = Math.max(0, (int) Math.floor(top / span));
+        int lastRow = Math.min((imageHeight - 1) / span, (int) Math.ceil(bottom / span) - 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                tiles.add(new Tile(sample, column, row, column * span, row * span,
+                        Math.min(imageWidth, (column + 1) * span), Math.min(imageHeight, (row + 1) * span)));
+            }
+        }
+        return tiles;
+    }
+}
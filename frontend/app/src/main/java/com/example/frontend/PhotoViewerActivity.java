@@ -0,0 +1,122 @@
+package com.example.frontend;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.transition.Transition;
+
+import java.io.File;
+
+// Фото визита на весь экран. Превью с бэкенда приходит за долю времени полного кадра и показывается
+// сразу; полный кадр Glide только скачивает в свой дисковый кэш (туда же, откуда его берет карточка
+// на главном экране), а декодирует его по частям TiledPhotoView
+public class PhotoViewerActivity extends AppCompatActivity {
+    private static final String TAG = "PhotoViewer";
+    private static final AppLog LOG = AppLog.get(TAG);
+    private static final String EXTRA_VISIT_ID = "visit_id";
+    private static final String EXTRA_PHOTO_URL = "photo_url";
+    private static final String EXTRA_PREVIEW_URL = "preview_url";
+    // Та же ступень превью, что у карточки на главном экране: второй раз оно не качается
+    static final int PREVIEW_SIZE = 480;
+
+    private TiledPhotoView photoView;
+    private ProgressBar loadingProgress;
+    private CustomTarget<Bitmap> previewTarget;
+    private int visitId;
+    private long openedAt;
+
+    public static Intent intent(Context context, Visit visit) {
+        return new Intent(context, PhotoViewerActivity.class)
+                .putExtra(EXTRA_VISIT_ID, visit.getId())
+                .putExtra(EXTRA_PHOTO_URL, ApiService.photoUrl(visit))
+                .putExtra(EXTRA_PREVIEW_URL, ApiService.thumbnailUrl(visit, PREVIEW_SIZE));
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        openedAt = SystemClock.elapsedRealtime();
+        setContentView(R.layout.activity_photo_viewer);
+
+        photoView = findViewById(R.id.photoView);
+        loadingProgress = findViewById(R.id.loadingProgress);
+        visitId = getIntent().getIntExtra(EXTRA_VISIT_ID, 0);
+        String photoUrl = getIntent().getStringExtra(EXTRA_PHOTO_URL);
+        String previewUrl = getIntent().getStringExtra(EXTRA_PREVIEW_URL);
+        // У визита без снимка смотреть нечего
+        if (photoUrl == null || photoUrl.isEmpty()) {
+            Toast.makeText(this, "Фото недоступно", Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+
+        photoView.setListener(new TiledPhotoView.Listener() {
+            @Override
+            public void onFullResolution() {
+                loadingProgress.setVisibility(View.GONE);
+                LOG.d("visit {}: full frame shown after {} ms", visitId, SystemClock.elapsedRealtime() - openedAt);
+                Glide.with(PhotoViewerActivity.this).clear(previewTarget);
+            }
+
+            @Override
+            public void onError(String error) {
+                loadingProgress.setVisibility(View.GONE);
+                Toast.makeText(PhotoViewerActivity.this, error, Toast.LENGTH_SHORT).show();
+            }
+        });
+
+        if (previewUrl != null && !previewUrl.equals(photoUrl)) {
+            previewTarget = Glide.with(this).asBitmap().load(previewUrl).into(new CustomTarget<Bitmap>() {
+                @Override
+                public void onResourceReady(@NonNull Bitmap bitmap, @Nullable Transition<? super Bitmap> transition) {
+                    LOG.d("visit {}: preview shown after {} ms", visitId, SystemClock.elapsedRealtime() - openedAt);
+                    photoView.setPreview(bitmap);
+                }
+
+                @Override
+                public void onLoadCleared(@Nullable Drawable placeholder) {
+                    photoView.setPreview(null);
+                }
+            });
+        }
+
+        Glide.with(this).downloadOnly().load(photoUrl).into(new CustomTarget<File>() {
+            @Override
+            public void onResourceReady(@NonNull File file, @Nullable Transition<? super File> transition) {
+                LOG.d("visit {}: frame downloaded after {} ms", visitId, SystemClock.elapsedRealtime() - openedAt);
+                photoView.setSource(file);
+            }
+
+            @Override
+            public void onLoadFailed(@Nullable Drawable errorDrawable) {
+                loadingProgress.setVisibility(View.GONE);
+                Toast.makeText(PhotoViewerActivity.this, "Ошибка загрузки фото", Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onLoadCleared(@Nullable Drawable placeholder) {
+            }
+        });
+    }
+
+    // Загрузки Glide отменяет сам вместе с экраном
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        LOG.d("visit {}: peak bitmap memory {} B", visitId, photoView.getPeakBitmapBytes());
+        photoView.release();
+    }
+}
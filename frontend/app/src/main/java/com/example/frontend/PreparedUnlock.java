@@ -0,0 +1,35 @@
+package com.example.frontend;
+
+import okhttp3.Request;
+
+// Открытие двери, подготовленное заранее: соединение прогрето, запрос собран.
+// Ни слот UNLOCK, ни поток не занимаются - обычное открытие никогда не ждет подготовку.
+// Запрос забирает unlockDoor(prepared, ...); по cancel() или истечении срока подготовка просто забывается
+public class PreparedUnlock {
+    private final Request request;
+    private final long expiresAtNanos;
+    private boolean used;
+    // Прогрев соединения; отмена подготовки обрывает его, если он еще идет
+    final RequestHandle handle = new RequestHandle();
+
+    PreparedUnlock(Request request, long expiresAtNanos) {
+        this.request = request;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    // null - подготовка уже использована, отменена или истекла: открываем обычным путем
+    synchronized Request take() {
+        if (used || handle.isCancelled() || System.nanoTime() - expiresAtNanos > 0) {
+            return null;
+        }
+        used = true;
+        return request;
+    }
+
+    public void cancel() {
+        synchronized (this) {
+            used = true;
+        }
+        handle.cancel();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.frontend;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+
+public class RequestHandle {
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+    private Call call;
+    private List<Runnable> cancelActions;
+
+    public void cancel() {
+        Call current;
+        List<Runnable> actions;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            current = call;
+            call = null;
+            actions = cancelActions;
+            cancelActions = null;
+        }
+        if (current != null) {
+            current.cancel();
+        }
+        if (actions != null) {
+            for (Runnable action : actions) {
+                action.run();
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    void attach(Call call) {
+        synchronized (this) {
+            if (!cancelled) {
+                this.call = call;
+                return;
+            }
+        }
+        call.cancel();
+    }
+
+    // Ответ уже прочитан: отмена не должна рвать соединение, которое вернется в пул
+    synchronized void detach() {
+        call = null;
+    }
+
+    // Действие при отмене; для уже отмененного запроса выполняется сразу
+    void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                if (cancelActions == null) {
+                    cancelActions = new ArrayList<>(1);
+                }
+                cancelActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    // Запрос отработал: ссылки на вызов и действия отмены больше не нужны
+    void finish() {
+        synchronized (this) {
+            finished = true;
+            call = null;
+            cancelActions = null;
+        }
+    }
+}
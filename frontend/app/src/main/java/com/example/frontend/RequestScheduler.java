@@ -0,0 +1,202 @@
+package com.example.frontend;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestScheduler {
+    // Порядок констант задает приоритет: чем раньше, тем важнее
+    public enum Priority {
+        UNLOCK(1, true),
+        RING(1, false),
+        HISTORY(2, false),
+        PREFETCH(2, false),
+        EXPORT(2, true);
+
+        final int maxConcurrent;
+        // Свои слоты вне общих: открытие двери не ждет слотов, занятых историей или фото,
+        // а долгая выгрузка фото не занимает слоты, нужные экрану
+        final boolean reserved;
+
+        Priority(int maxConcurrent, boolean reserved) {
+            this.maxConcurrent = maxConcurrent;
+            this.reserved = reserved;
+        }
+    }
+
+    public interface Job {
+        void run(RequestHandle handle);
+    }
+
+    private static final int MAX_SHARED_CONCURRENT = 3;
+
+    private static volatile RequestScheduler shared;
+
+    private final Executor workers;
+    private final int maxSharedConcurrent;
+    private final List<ArrayDeque<Task>> queues = new ArrayList<>();
+    // Лимиты считаются по линиям: у каждого входа свой Pi, молчащий бэкенд занимает только свои слоты
+    private final Map<Object, Lane> lanes = new HashMap<>();
+    private final Map<Object, RequestHandle> latestByKey = new HashMap<>();
+
+    public static RequestScheduler shared() {
+        RequestScheduler result = shared;
+        if (result == null) {
+            synchronized (RequestScheduler.class) {
+                result = shared;
+                if (result == null) {
+                    result = new RequestScheduler(createWorkers(), MAX_SHARED_CONCURRENT);
+                    shared = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    RequestScheduler(Executor workers, int maxSharedConcurrent) {
+        this.workers = workers;
+        this.maxSharedConcurrent = maxSharedConcurrent;
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new ArrayDeque<>());
+        }
+    }
+
+    public RequestHandle submit(Priority priority, Job job) {
+        return submit(priority, null, job);
+    }
+
+    // Новый запрос с тем же supersedeKey отменяет предыдущий, если тот еще не завершился
+    public RequestHandle submit(Priority priority, Object supersedeKey, Job job) {
+        return submit(priority, null, supersedeKey, job);
+    }
+
+    // lane - бэкенд, к которому идет запрос; null - основной
+    public RequestHandle submit(Priority priority, Object lane, Object supersedeKey, Job job) {
+        RequestHandle handle = new RequestHandle();
+        RequestHandle superseded = null;
+        synchronized (this) {
+            if (supersedeKey != null) {
+                superseded = latestByKey.put(supersedeKey, handle);
+            }
+            queues.get(priority.ordinal()).add(new Task(priority, lane(lane), supersedeKey, handle, job));
+        }
+        if (superseded != null) {
+            superseded.cancel();
+        }
+        dispatch();
+        return handle;
+    }
+
+    synchronized int queuedCount(Priority priority) {
+        return queues.get(priority.ordinal()).size();
+    }
+
+    private void dispatch() {
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            for (Priority priority : Priority.values()) {
+                // Задачи занятой линии ждут, не задерживая очередь для остальных
+                Iterator<Task> queue = queues.get(priority.ordinal()).iterator();
+                while (queue.hasNext()) {
+                    Task task = queue.next();
+                    if (task.handle.isCancelled()) {
+                        queue.remove();
+                        forget(task);
+                        continue;
+                    }
+                    if (!task.lane.hasCapacity(priority, maxSharedConcurrent)) {
+                        continue;
+                    }
+                    queue.remove();
+                    task.lane.running[priority.ordinal()]++;
+                    if (!priority.reserved) {
+                        task.lane.sharedRunning++;
+                    }
+                    ready.add(task);
+                }
+            }
+        }
+        for (Task task : ready) {
+            workers.execute(() -> run(task));
+        }
+    }
+
+    private Lane lane(Object key) {
+        Lane lane = lanes.get(key);
+        if (lane == null) {
+            lane = new Lane();
+            lanes.put(key, lane);
+        }
+        return lane;
+    }
+
+    private void run(Task task) {
+        try {
+            if (!task.handle.isCancelled()) {
+                task.job.run(task.handle);
+            }
+        } finally {
+            synchronized (this) {
+                task.lane.running[task.priority.ordinal()]--;
+                if (!task.priority.reserved) {
+                    task.lane.sharedRunning--;
+                }
+                forget(task);
+            }
+            dispatch();
+        }
+    }
+
+    private void forget(Task task) {
+        if (task.key != null && latestByKey.get(task.key) == task.handle) {
+            latestByKey.remove(task.key);
+        }
+    }
+
+    private static Executor createWorkers() {
+        AtomicInteger counter = new AtomicInteger();
+        // Число потоков ограничено лимитами классов, очередь держит сам планировщик
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ApiService-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private static class Lane {
+        final int[] running = new int[Priority.values().length];
+        int sharedRunning;
+
+        boolean hasCapacity(Priority priority, int maxSharedConcurrent) {
+            if (running[priority.ordinal()] >= priority.maxConcurrent) {
+                return false;
+            }
+            return priority.reserved || sharedRunning < maxSharedConcurrent;
+        }
+    }
+
+    private static class Task {
+        final Priority priority;
+        final Lane lane;
+        final Object key;
+        final RequestHandle handle;
+        final Job job;
+
+        Task(Priority priority, Lane lane, Object key, RequestHandle handle, Job job) {
+            this.priority = priority;
+            this.lane = lane;
+            this.key = key;
+            this.handle = handle;
+            this.job = job;
+        }
+    }
+}
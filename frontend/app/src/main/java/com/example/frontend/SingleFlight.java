@@ -0,0 +1,96 @@
+package com.example.frontend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Один запрос на ключ: пока он в пути, повторные вызовы не отправляют свой, а ждут общий результат.
+// Успешный результат можно отдавать еще linger после завершения - так схлопываются повторы сразу за ответом.
+// Ошибки не запоминаются: следующий вызов после ошибки идет в сеть
+final class SingleFlight<T> {
+    // Общая работа; done обязана вызвать хотя бы раз, лишние вызовы игнорируются
+    interface Work<T> {
+        void start(ApiService.ApiCallback<T> done);
+    }
+
+    private final Map<String, Flight<T>> flights = new HashMap<>();
+
+    // true - вызов сам запустил работу, false - присоединился к идущей или получил свежий результат
+    boolean join(String key, long lingerMillis, ApiService.ApiCallback<T> subscriber, Work<T> work) {
+        Flight<T> flight;
+        T recent = null;
+        boolean reuse = false;
+        synchronized (flights) {
+            flight = flights.get(key);
+            if (flight != null && !flight.done) {
+                flight.subscribers.add(subscriber);
+                return false;
+            }
+            if (flight != null && flight.succeeded
+                    && System.nanoTime() - flight.finishedAt < lingerMillis * 1_000_000L) {
+                recent = flight.result;
+                reuse = true;
+            } else {
+                flight = new Flight<>();
+                flight.subscribers.add(subscriber);
+                flights.put(key, flight);
+            }
+        }
+        if (reuse) {
+            subscriber.onSuccess(recent);
+            return false;
+        }
+        Flight<T> started = flight;
+        try {
+            work.start(new ApiService.ApiCallback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    finish(key, started, true, result, null);
+                }
+
+                @Override
+                public void onError(String error) {
+                    finish(key, started, false, null, error);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Полет уже зарегистрирован: без этого ключ навсегда остался бы занят недошедшей работой
+            finish(key, started, false, null, "Ошибка запуска запроса: " + e.getMessage());
+        }
+        return true;
+    }
+
+    private void finish(String key, Flight<T> flight, boolean succeeded, T result, String error) {
+        List<ApiService.ApiCallback<T>> subscribers;
+        synchronized (flights) {
+            if (flight.done) {
+                return;
+            }
+            flight.done = true;
+            flight.succeeded = succeeded;
+            flight.result = result;
+            flight.finishedAt = System.nanoTime();
+            subscribers = flight.subscribers;
+            flight.subscribers = null;
+            if (!succeeded) {
+                flights.remove(key, flight);
+            }
+        }
+        for (ApiService.ApiCallback<T> subscriber : subscribers) {
+            if (succeeded) {
+                subscriber.onSuccess(result);
+            } else {
+                subscriber.onError(error);
+            }
+        }
+    }
+
+    private static final class Flight<T> {
+        List<ApiService.ApiCallback<T>> subscribers = new ArrayList<>();
+        boolean done;
+        boolean succeeded;
+        T result;
+        long finishedAt;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.frontend;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Звонки по часам суток и по дням у каждого входа. Счетчики уже пополнены всем, что приложение
+// получало (история, поток событий, звонки); экран догружает только недостающую часть окна
+public class StatisticsActivity extends AppCompatActivity {
+    private static final String TAG = "StatisticsActivity";
+    private static final AppLog LOG = AppLog.get(TAG);
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private ApiService apiService;
+    private ProgressBar loadingProgress;
+    private final List<DoorSection> sections = new ArrayList<>();
+    private int backfillsRunning;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_statistics);
+
+        loadingProgress = findViewById(R.id.loadingProgress);
+        ViewGroup container = findViewById(R.id.statisticsContainer);
+        apiService = new ApiService(this);
+
+        LayoutInflater inflater = LayoutInflater.from(this);
+        for (Door door : apiService.getDoors()) {
+            View view = inflater.inflate(R.layout.statistics_door, container, false);
+            container.addView(view);
+            DoorSection section = new DoorSection(door, view);
+            sections.add(section);
+            section.render();
+        }
+        for (DoorSection section : sections) {
+            section.start();
+        }
+    }
+
+    private void onBackfillFinished() {
+        if (--backfillsRunning == 0) {
+            loadingProgress.setVisibility(View.GONE);
+        }
+    }
+
+    private final class DoorSection {
+        final Door door;
+        final VisitStatistics statistics;
+        final TextView summary;
+        final HistogramView hours;
+        final HistogramView days;
+        StatisticsBackfill backfill;
+        VisitEventStream events;
+
+        DoorSection(Door door, View view) {
+            this.door = door;
+            this.statistics = VisitStatistics.forDoor(door);
+            ((TextView) view.findViewById(R.id.doorName)).setText(door.getName());
+            summary = view.findViewById(R.id.doorSummary);
+            hours = view.findViewById(R.id.hourHistogram);
+            days = view.findViewById(R.id.dayHistogram);
+        }
+
+        void start() {
+            backfillsRunning++;
+            backfill = new StatisticsBackfill(statistics, (limit, beforeId, afterId, callback) ->
+                    apiService.getVisitHistory(door, limit, beforeId, afterId, callback));
+            backfill.start(new StatisticsBackfill.Listener() {
+                @Override
+                public void onProgress(int pages) {
+                    render();
+                }
+
+                @Override
+                public void onDone(int pages) {
+                    render();
+                    onBackfillFinished();
+                }
+
+                @Override
+                public void onError(String error) {
+                    onBackfillFinished();
+                    Toast.makeText(StatisticsActivity.this,
+                            door.getName() + ": статистика неполная, " + error, Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+
+        // Поток событий открыт ради счетчиков: новые звонки ApiService учитывает сам
+        void openEvents() {
+            events = apiService.openEventStream(door, null, new VisitEventStream.Listener() {
+                @Override
+                public void onVisit(Visit visit) {
+                    render();
+                }
+
+                @Override
+                public void onConnectionChanged(boolean connected) {
+                    LOG.d("Event stream {} {}", door.getName(), connected ? "connected" : "disconnected");
+                }
+            });
+        }
+
+        void closeEvents() {
+            if (events != null) {
+                events.stop();
+                events = null;
+            }
+        }
+
+        void render() {
+            int[] byHour = statistics.hourHistogram();
+            String[] hourLabels = new String[byHour.length];
+            int peak = 0;
+            for (int hour = 0; hour < byHour.length; hour++) {
+                if (hour % 6 == 0) {
+                    hourLabels[hour] = String.valueOf(hour);
+                }
+                if (byHour[hour] > byHour[peak]) {
+                    peak = hour;
+                }
+            }
+            hours.setCounts(byHour, hourLabels);
+
+            int[] byDay = statistics.dayHistogram();
+            String[] dayLabels = new String[byDay.length];
+            long newestDay = statistics.newestDayMillis();
+            if (!statistics.isEmpty()) {
+                // Подписан последний день и каждый седьмой перед ним: dd.MM
+                for (int i = byDay.length - 1; i >= 0; i -= 7) {
+                    long dayMillis = newestDay - (byDay.length - 1 - i) * MILLIS_PER_DAY;
+                    dayLabels[i] = VisitFormat.formatTimestamp(dayMillis).substring(0, 5);
+                }
+            }
+            days.setCounts(byDay, dayLabels);
+
+            int total = statistics.getTotal();
+            if (total == 0) {
+                summary.setText("Звонков пока нет");
+            } else {
+                summary.setText(total + " звонков за " + statistics.getWeeks() + " нед., чаще всего с "
+                        + peak + ":00 до " + (peak + 1) + ":00");
+            }
+        }
+    }
+
+    // Потоки открыты, пока экран виден; звонки, пришедшие в фоне, уже в счетчиках ApiService
+    @Override
+    protected void onStart() {
+        super.onStart();
+        for (DoorSection section : sections) {
+            section.render();
+            section.openEvents();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        for (DoorSection section : sections) {
+            section.closeEvents();
+        }
+    }
+
+    // Запросы отменяет сам ApiService на ON_DESTROY; остановленная догрузка не просит следующих страниц
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        for (DoorSection section : sections) {
+            if (section.backfill != null) {
+                section.backfill.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.frontend;
+
+import java.util.List;
+
+// Догрузка старой истории в статистику: страницы идут по before_id от новых к старым, каждая
+// сразу раскладывается по счетчикам и отпускается - в памяти не больше одной страницы.
+// Уже учтенные участки перепрыгиваются; догрузка заканчивается на начале окна или конце истории.
+// Вызывается из главного потока, как PagingEngine
+public class StatisticsBackfill {
+    private static final String TAG = "StatisticsBackfill";
+    private static final AppLog LOG = AppLog.get(TAG);
+
+    public interface Listener {
+        void onProgress(int pages);
+
+        void onDone(int pages);
+
+        void onError(String error);
+    }
+
+    static final int PAGE_SIZE = PagingEngine.MAX_PAGE_SIZE;
+
+    private final VisitStatistics statistics;
+    private final PagingEngine.PageSource source;
+    private RequestHandle handle;
+    private boolean cancelled;
+    private int pages;
+
+    public StatisticsBackfill(VisitStatistics statistics, PagingEngine.PageSource source) {
+        this.statistics = statistics;
+        this.source = source;
+    }
+
+    public void start(Listener listener) {
+        next(Integer.MAX_VALUE, listener);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        if (handle != null) {
+            handle.cancel();
+            handle = null;
+        }
+    }
+
+    // Самая новая страница запрашивается всегда: с ней приходят звонки, пропущенные, пока экран был закрыт
+    private void next(long below, Listener listener) {
+        long from = statistics.highestUncounted(below);
+        Integer beforeId = from >= Integer.MAX_VALUE ? null : (int) (from + 1);
+        handle = source.load(PAGE_SIZE, beforeId, null, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                if (cancelled) {
+                    return;
+                }
+                handle = null;
+                pages++;
+                statistics.addAll(visits);
+                long windowStart = statistics.windowStartMillis();
+                int oldestId = Integer.MAX_VALUE;
+                boolean reachedWindowStart = false;
+                for (int i = 0; i < visits.size(); i++) {
+                    Visit visit = visits.get(i);
+                    oldestId = Math.min(oldestId, visit.getId());
+                    long millis = visit.getTimestampMillis();
+                    reachedWindowStart |= millis != VisitFormat.INVALID_TIMESTAMP && millis < windowStart;
+                }
+                if (visits.size() < PAGE_SIZE || reachedWindowStart) {
+                    LOG.d("Backfill done after {} pages, {} visits in window", pages, statistics.getTotal());
+                    listener.onDone(pages);
+                    return;
+                }
+                listener.onProgress(pages);
+                next(oldestId - 1L, listener);
+            }
+
+            @Override
+            public void onError(String error) {
+                if (cancelled) {
+                    return;
+                }
+                handle = null;
+                listener.onError(error);
+            }
+        });
+    }
+}
@@ -0,0 +1,396 @@
+package com.example.frontend;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Фото на весь экран с увеличением. Сначала растягивается превью, затем его сменяет базовый слой -
+// весь кадр, декодированный с выборкой под экран. При увеличении поверх базового слоя рисуются тайлы
+// PhotoTiles: декодируются только видимые, ушедшие с экрана сразу освобождаются.
+// Декодирование идет в своем потоке, все остальное - в главном. В onDraw ничего не создается
+public class TiledPhotoView extends View {
+    private static final String TAG = "TiledPhotoView";
+    private static final AppLog LOG = AppLog.get(TAG);
+    // Ближе 1:1 кадр увеличивается еще вдвое: видны пиксели, больше смысла нет
+    private static final float MAX_SCALE = 2f;
+    private static final float DOUBLE_TAP_ZOOM = 3f;
+
+    public interface Listener {
+        void onFullResolution();
+
+        void onError(String error);
+    }
+
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF imageRect = new RectF();
+    private final RectF tileRect = new RectF();
+    private final Rect source = new Rect();
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+
+    private Listener listener;
+    private Bitmap preview;
+    private BitmapRegionDecoder decoder;
+    private PhotoTiles tiles;
+    private Bitmap base;
+    private int baseSample;
+    private boolean baseDecoding;
+    private List<PhotoTiles.Tile> visibleTiles = Collections.emptyList();
+    private final Map<Long, Bitmap> tileBitmaps = new HashMap<>();
+    // Тайлы, которые еще нужны экрану: поток декодирования пропускает остальные.
+    // Главный поток каждый раз публикует новый неизменяемый набор, так что поток декодирования
+    // не видит его пустым или собранным наполовину
+    private volatile Set<Long> wanted = Collections.emptySet();
+    private final Set<Long> decoding = new HashSet<>();
+
+    // Размер кадра: до декодера - размер превью
+    private int imageWidth;
+    private int imageHeight;
+    // Пикселей экрана на пиксель кадра и положение угла кадра на экране
+    private float scale;
+    private float offsetX;
+    private float offsetY;
+    private float fitScale;
+
+    private long bitmapBytes;
+    private long peakBitmapBytes;
+    private boolean released;
+
+    public TiledPhotoView(Context context) {
+        this(context, null);
+    }
+
+    public TiledPhotoView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoomTo(scale * detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                offsetX -= distanceX;
+                offsetY -= distanceY;
+                viewportChanged();
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                zoomTo(scale > fitScale * 1.01f ? fitScale : fitScale * DOUBLE_TAP_ZOOM, e.getX(), e.getY());
+                return true;
+            }
+        });
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Превью показывается, пока нет базового слоя; bitmap принадлежит Glide и здесь не освобождается
+    public void setPreview(Bitmap bitmap) {
+        if (base != null) {
+            return;
+        }
+        if (preview != null) {
+            bitmapBytes -= preview.getAllocationByteCount();
+        }
+        preview = bitmap;
+        if (bitmap != null) {
+            countBitmap(bitmap);
+            if (imageWidth == 0) {
+                setImageSize(bitmap.getWidth(), bitmap.getHeight());
+            }
+        }
+        invalidate();
+    }
+
+    // Полный кадр уже на диске: открываем декодер и собираем базовый слой
+    public void setSource(File file) {
+        decodeExecutor.execute(() -> {
+            BitmapRegionDecoder opened;
+            try {
+                opened = BitmapRegionDecoder.newInstance(file.getPath(), false);
+            } catch (IOException e) {
+                LOG.e("Cannot open region decoder for {}", file, e);
+                post(() -> {
+                    if (!released && listener != null) {
+                        listener.onError("Не удалось открыть фото");
+                    }
+                });
+                return;
+            }
+            post(() -> {
+                if (released) {
+                    opened.recycle();
+                    return;
+                }
+                decoder = opened;
+                tiles = new PhotoTiles(opened.getWidth(), opened.getHeight());
+                setImageSize(opened.getWidth(), opened.getHeight());
+                decodeBase();
+            });
+        });
+    }
+
+    public long getBitmapBytes() {
+        return bitmapBytes;
+    }
+
+    // Сколько памяти bitmap экран занимал самое большее: превью, базовый слой и тайлы вместе
+    public long getPeakBitmapBytes() {
+        return peakBitmapBytes;
+    }
+
+    public void release() {
+        released = true;
+        wanted = Collections.emptySet();
+        for (Bitmap bitmap : tileBitmaps.values()) {
+            bitmap.recycle();
+        }
+        tileBitmaps.clear();
+        visibleTiles = Collections.emptyList();
+        if (base != null) {
+            base.recycle();
+            base = null;
+        }
+        preview = null;
+        // Декодер закрывается в своем потоке, после уже начатого декода; ждущие тайлы пропускаются
+        BitmapRegionDecoder closing = decoder;
+        decoder = null;
+        if (closing != null) {
+            decodeExecutor.execute(closing::recycle);
+        }
+        decodeExecutor.shutdown();
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        if (imageWidth > 0) {
+            fit();
+        }
+        if (decoder != null && base == null && !baseDecoding) {
+            decodeBase();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (imageWidth == 0) {
+            return;
+        }
+        imageRect.set(offsetX, offsetY, offsetX + imageWidth * scale, offsetY + imageHeight * scale);
+        if (base != null) {
+            canvas.drawBitmap(base, null, imageRect, paint);
+        } else if (preview != null) {
+            canvas.drawBitmap(preview, null, imageRect, paint);
+        }
+        for (int i = 0; i < visibleTiles.size(); i++) {
+            PhotoTiles.Tile tile = visibleTiles.get(i);
+            Bitmap bitmap = tileBitmaps.get(tile.key);
+            if (bitmap == null) {
+                continue;
+            }
+            source.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            tileRect.set(offsetX + tile.left * scale, offsetY + tile.top * scale,
+                    offsetX + tile.right * scale, offsetY + tile.bottom * scale);
+            canvas.drawBitmap(bitmap, source, tileRect, paint);
+        }
+    }
+
+    // Превью сменяется кадром того же соотношения сторон: кадр остается на том же месте экрана
+    private void setImageSize(int width, int height) {
+        if (imageWidth > 0) {
+            scale = scale * imageWidth / width;
+            fitScale = fitScale * imageWidth / width;
+        }
+        imageWidth = width;
+        imageHeight = height;
+        if (fitScale == 0) {
+            fit();
+        }
+    }
+
+    private void fit() {
+        if (getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        fitScale = Math.min((float) getWidth() / imageWidth, (float) getHeight() / imageHeight);
+        scale = fitScale;
+        viewportChanged();
+    }
+
+    private void decodeBase() {
+        if (getWidth() == 0 || fitScale == 0) {
+            return;
+        }
+        BitmapRegionDecoder current = decoder;
+        baseDecoding = true;
+        int sample = PhotoTiles.sampleSize(fitScale);
+        int width = imageWidth;
+        int height = imageHeight;
+        decodeExecutor.execute(() -> {
+            Bitmap decoded = decode(current, new Rect(0, 0, width, height), sample);
+            post(() -> {
+                baseDecoding = false;
+                if (released || decoded == null) {
+                    if (decoded != null) {
+                        decoded.recycle();
+                    } else if (!released && listener != null) {
+                        listener.onError("Не удалось декодировать фото");
+                    }
+                    return;
+                }
+                base = decoded;
+                baseSample = sample;
+                if (preview != null) {
+                    bitmapBytes -= preview.getAllocationByteCount();
+                    preview = null;
+                }
+                countBitmap(decoded);
+                LOG.d("Base layer {}x{}", decoded.getWidth(), decoded.getHeight());
+                viewportChanged();
+                if (listener != null) {
+                    listener.onFullResolution();
+                }
+            });
+        });
+    }
+
+    private void zoomTo(float newScale, float focusX, float focusY) {
+        if (scale == 0) {
+            return;
+        }
+        newScale = Math.max(fitScale, Math.min(MAX_SCALE, newScale));
+        offsetX = focusX - (focusX - offsetX) * newScale / scale;
+        offsetY = focusY - (focusY - offsetY) * newScale / scale;
+        scale = newScale;
+        viewportChanged();
+    }
+
+    // Кадр не уезжает с экрана: сторона меньше экрана стоит по центру, большая - без полей по краям
+    private void viewportChanged() {
+        offsetX = clampOffset(offsetX, imageWidth * scale, getWidth());
+        offsetY = clampOffset(offsetY, imageHeight * scale, getHeight());
+        updateTiles();
+        invalidate();
+    }
+
+    private static float clampOffset(float offset, float size, int viewSize) {
+        if (size <= viewSize) {
+            return (viewSize - size) / 2;
+        }
+        return Math.max(viewSize - size, Math.min(0, offset));
+    }
+
+    private void updateTiles() {
+        if (base == null) {
+            return;
+        }
+        int sample = PhotoTiles.sampleSize(scale);
+        visibleTiles = sample < baseSample
+                ? tiles.visible(sample, -offsetX / scale, -offsetY / scale,
+                        (getWidth() - offsetX) / scale, (getHeight() - offsetY) / scale)
+                : Collections.emptyList();
+        Set<Long> keys = new HashSet<>();
+        for (PhotoTiles.Tile tile : visibleTiles) {
+            keys.add(tile.key);
+        }
+        wanted = Collections.unmodifiableSet(keys);
+        for (Iterator<Map.Entry<Long, Bitmap>> it = tileBitmaps.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Bitmap> entry = it.next();
+            if (!keys.contains(entry.getKey())) {
+                bitmapBytes -= entry.getValue().getAllocationByteCount();
+                entry.getValue().recycle();
+                it.remove();
+            }
+        }
+        for (PhotoTiles.Tile tile : visibleTiles) {
+            if (!tileBitmaps.containsKey(tile.key) && decoding.add(tile.key)) {
+                decodeTile(tile);
+            }
+        }
+    }
+
+    private void decodeTile(PhotoTiles.Tile tile) {
+        BitmapRegionDecoder current = decoder;
+        decodeExecutor.execute(() -> {
+            // Пока тайл ждал очереди, экран могли увести
+            boolean skipped = !wanted.contains(tile.key);
+            Bitmap decoded = skipped ? null
+                    : decode(current, new Rect(tile.left, tile.top, tile.right, tile.bottom), tile.sample);
+            post(() -> {
+                decoding.remove(tile.key);
+                if (skipped) {
+                    // Экран успел вернуться к тайлу, а updateTiles его не поставил: он еще числился в decoding
+                    if (!released && wanted.contains(tile.key) && !tileBitmaps.containsKey(tile.key)
+                            && decoding.add(tile.key)) {
+                        decodeTile(tile);
+                    }
+                    return;
+                }
+                if (decoded == null) {
+                    return;
+                }
+                if (released || !wanted.contains(tile.key)) {
+                    decoded.recycle();
+                    return;
+                }
+                tileBitmaps.put(tile.key, decoded);
+                countBitmap(decoded);
+                invalidate();
+            });
+        });
+    }
+
+    private static Bitmap decode(BitmapRegionDecoder decoder, Rect region, int sample) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sample;
+        return decoder.decodeRegion(region, options);
+    }
+
+    private void countBitmap(Bitmap bitmap) {
+        bitmapBytes += bitmap.getAllocationByteCount();
+        peakBitmapBytes = Math.max(peakBitmapBytes, bitmapBytes);
+    }
+}
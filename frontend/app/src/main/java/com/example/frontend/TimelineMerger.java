@@ -0,0 +1,256 @@
+package com.example.frontend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Общая лента нескольких входов. У каждого входа свой PagingEngine со своими курсорами по id,
+// повторами и вытеснением; окна входов сливаются k-путевым слиянием по времени, и лента
+// обновляется с каждой пришедшей страницей, не дожидаясь остальных входов.
+// Ниже горизонта - самого свежего конца окна среди входов, у которых есть визиты старше, -
+// могут не хватать визитов отстающего входа, такие строки придерживаются. Горизонт только
+// опускается: показанные строки не пропадают. Вход, который еще не ответил, молчит дольше
+// DOOR_DEADLINE_MILLIS или исчерпал повторы, горизонт не держит - его визиты встанут на свои
+// места, когда он ответит. Все методы вызываются из одного (главного) потока, как у PagingEngine
+public class TimelineMerger {
+    public interface SourceFactory {
+        PagingEngine.PageSource forDoor(Door door);
+    }
+
+    public interface Listener {
+        void onTimelineChanged(List<Visit> visits);
+
+        void onDoorFailed(Door door, String error);
+    }
+
+    static final long DOOR_DEADLINE_MILLIS = 2000;
+
+    private final List<DoorLane> lanes = new ArrayList<>();
+    private final PagingEngine.Scheduler scheduler;
+    private final PagingEngine.Clock clock;
+    private final Listener listener;
+    private boolean released;
+
+    private long horizon = Long.MAX_VALUE;
+    // Вход каждой строки ленты: по нему видимый диапазон переводится в строки окна входа
+    private byte[] laneOfRow = new byte[0];
+    private int rows;
+    // Сколько строк окна входа выше ленты (вытеснены у соседей) и сколько их до и внутри видимого диапазона
+    private final int[] firstShown;
+    private final int[] rowsBefore;
+    private final int[] rowsUpTo;
+
+    public TimelineMerger(List<Door> doors, SourceFactory sources, PagingEngine.Scheduler scheduler,
+                          PagingEngine.Clock clock, Listener listener) {
+        if (doors.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many doors: " + doors.size());
+        }
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.listener = listener;
+        for (Door door : doors) {
+            lanes.add(new DoorLane(door, sources.forDoor(door)));
+        }
+        firstShown = new int[doors.size()];
+        rowsBefore = new int[doors.size()];
+        rowsUpTo = new int[doors.size()];
+    }
+
+    // Первые страницы запрашиваются со всех входов сразу
+    public void start() {
+        for (DoorLane lane : lanes) {
+            lane.engine.start();
+        }
+    }
+
+    public void insertNewest(Door door, List<Visit> visits) {
+        for (DoorLane lane : lanes) {
+            if (lane.door == door) {
+                for (Visit visit : visits) {
+                    visit.setDoor(door);
+                }
+                lane.engine.insertNewest(visits);
+                return;
+            }
+        }
+    }
+
+    public void onScrolled(int first, int last, int itemCount) {
+        if (first < 0 || last < first) {
+            return;
+        }
+        for (int i = 0; i < lanes.size(); i++) {
+            rowsBefore[i] = 0;
+            rowsUpTo[i] = 0;
+        }
+        for (int row = 0; row < rows && row <= last; row++) {
+            int lane = laneOfRow[row];
+            if (row < first) {
+                rowsBefore[lane]++;
+            }
+            rowsUpTo[lane]++;
+        }
+        // Вход без видимых строк получает ближайшую к экрану: так он знает, что пора догружать
+        for (int i = 0; i < lanes.size(); i++) {
+            DoorLane lane = lanes.get(i);
+            int size = lane.window.size();
+            if (size == 0) {
+                continue;
+            }
+            int laneFirst = Math.min(size - 1, firstShown[i] + rowsBefore[i]);
+            int laneLast = Math.max(laneFirst, Math.min(size - 1, firstShown[i] + rowsUpTo[i] - 1));
+            lane.engine.onScrolled(laneFirst, laneLast, size);
+        }
+    }
+
+    public boolean hasMoreOlder() {
+        for (DoorLane lane : lanes) {
+            if (lane.engine.hasMoreOlder() && !lane.failed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void release() {
+        released = true;
+        for (DoorLane lane : lanes) {
+            lane.engine.release();
+        }
+    }
+
+    long horizon() {
+        return horizon;
+    }
+
+    private void publish() {
+        if (released) {
+            return;
+        }
+        long now = clock.now();
+        long candidate = Long.MIN_VALUE;
+        // Сверху обрезаем по самой старой из вытесненных голов: выше нее у того входа строк нет
+        long ceiling = Long.MAX_VALUE;
+        for (DoorLane lane : lanes) {
+            if (lane.window.isEmpty()) {
+                continue;
+            }
+            if (lane.holdsOrder(now)) {
+                candidate = Math.max(candidate, lane.window.get(lane.window.size() - 1).getTimestampMillis());
+            }
+            if (lane.engine.hasMoreNewer()) {
+                ceiling = Math.min(ceiling, lane.window.get(0).getTimestampMillis());
+            }
+        }
+        horizon = rows == 0 ? candidate : Math.min(horizon, candidate);
+
+        PriorityQueue<Head> heads = new PriorityQueue<>(lanes.size());
+        int total = 0;
+        for (int i = 0; i < lanes.size(); i++) {
+            List<Visit> window = lanes.get(i).window;
+            int start = 0;
+            while (start < window.size() && window.get(start).getTimestampMillis() > ceiling) {
+                start++;
+            }
+            firstShown[i] = start;
+            total += window.size() - start;
+            if (start < window.size()) {
+                heads.add(new Head(i, start, window.get(start)));
+            }
+        }
+        VisitStore merged = new VisitStore();
+        byte[] laneOf = new byte[total];
+        int count = 0;
+        Head head;
+        while ((head = heads.poll()) != null && head.visit.getTimestampMillis() >= horizon) {
+            merged.append(head.visit);
+            laneOf[count++] = (byte) head.lane;
+            List<Visit> window = lanes.get(head.lane).window;
+            if (++head.index < window.size()) {
+                head.visit = window.get(head.index);
+                heads.add(head);
+            }
+        }
+        laneOfRow = laneOf;
+        rows = count;
+        listener.onTimelineChanged(merged);
+    }
+
+    private static final class Head implements Comparable<Head> {
+        final int lane;
+        int index;
+        Visit visit;
+
+        Head(int lane, int index, Visit visit) {
+            this.lane = lane;
+            this.index = index;
+            this.visit = visit;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int order = VisitMerge.NEWEST_FIRST.compare(visit, other.visit);
+            return order != 0 ? order : Integer.compare(lane, other.lane);
+        }
+    }
+
+    private final class DoorLane implements PagingEngine.PageSource, PagingEngine.Listener {
+        final Door door;
+        final PagingEngine.PageSource source;
+        final PagingEngine engine;
+        List<Visit> window = Collections.emptyList();
+        boolean failed;
+        // С какого момента вход должен страницу (повторы не сбрасывают), -1 - ничего не должен
+        long waitingSince = -1;
+
+        DoorLane(Door door, PagingEngine.PageSource source) {
+            this.door = door;
+            this.source = source;
+            this.engine = new PagingEngine(this, scheduler, clock, this);
+        }
+
+        // Вход держит горизонт, пока у него есть визиты старше окна и он отвечает вовремя
+        boolean holdsOrder(long now) {
+            return !failed && engine.hasMoreOlder()
+                    && (waitingSince < 0 || now - waitingSince < DOOR_DEADLINE_MILLIS);
+        }
+
+        @Override
+        public RequestHandle load(int limit, Integer beforeId, Integer afterId,
+                                  ApiService.ApiCallback<List<Visit>> callback) {
+            if (waitingSince < 0) {
+                waitingSince = clock.now();
+                // Не ответит к сроку - перестанет держать горизонт
+                scheduler.schedule(TimelineMerger.this::publish, DOOR_DEADLINE_MILLIS);
+            }
+            return source.load(limit, beforeId, afterId, new ApiService.ApiCallback<List<Visit>>() {
+                @Override
+                public void onSuccess(List<Visit> visits) {
+                    waitingSince = -1;
+                    failed = false;
+                    callback.onSuccess(visits);
+                }
+
+                @Override
+                public void onError(String error) {
+                    callback.onError(error);
+                }
+            });
+        }
+
+        @Override
+        public void onWindowChanged(List<Visit> visits) {
+            window = visits;
+            publish();
+        }
+
+        @Override
+        public void onLoadFailed(PagingEngine.Direction direction, String error) {
+            failed = true;
+            waitingSince = -1;
+            listener.onDoorFailed(door, error);
+            publish();
+        }
+    }
+}
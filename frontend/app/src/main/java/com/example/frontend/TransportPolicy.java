@@ -0,0 +1,350 @@
+package com.example.frontend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Политика доставки по классам запросов. Pi сидит на нестабильном Wi-Fi:
+//   - идемпотентные GET (история, фото) повторяются с экспоненциальной паузой и полным джиттером;
+//   - страница истории, не ответившая за p95, дублируется вторым запросом, берется первый ответ.
+//     Попытки выполняются синхронно на своих потоках: очередь диспетчера с лимитом на хост делят
+//     все запросы и Glide, и в ней дубль ждал бы как раз тех, кто тормозит;
+//   - POST (звонок, открытие) не повторяются никогда: второй запрос - второй снимок или второе открытие;
+//   - предохранитель на хост: после серии отказов запросы сразу получают ошибку, а не копят таймауты,
+//     через OPEN_MILLIS один пробный запрос проверяет, поднялся ли бэкенд.
+// Поток событий сюда не попадает: у VisitEventStream свое переподключение.
+// Открытие двери тоже идет мимо: повторов у него нет, а отказ истории или фото не должен мешать
+// пробовать открыть дверь
+public final class TransportPolicy implements Interceptor {
+    static final int MAX_ATTEMPTS = 3;
+    static final long RETRY_BASE_MILLIS = 200;
+    static final long RETRY_MAX_MILLIS = 2000;
+    static final int FAILURE_THRESHOLD = 5;
+    static final long OPEN_MILLIS = 10_000;
+    // p95 считаем только по накопленной статистике; дублировать раньше HEDGE_MIN_MILLIS нет смысла даже в локальной сети
+    static final int HEDGE_MIN_SAMPLES = 20;
+    static final long HEDGE_MIN_MILLIS = 100;
+    static final long HEDGE_MAX_MILLIS = 3000;
+    // Как часто ожидание проверяет, не отменен ли вызов
+    private static final long CANCEL_POLL_MILLIS = 50;
+
+    // Метка запросов-попыток дублирования: они идут в сеть напрямую, без политики
+    static final class Attempt {
+        static final Attempt INSTANCE = new Attempt();
+
+        private Attempt() {
+        }
+    }
+
+    // Потоки попыток дублирования: их не больше двух на ожидающий ответа запрос истории
+    private static final ExecutorService ATTEMPT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Hedged attempt");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Call.Factory attempts;
+    private final long openMillis;
+    private final Random random;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final LatencyHistogram historyLatency = new LatencyHistogram();
+
+    // attempts - клиент с этой же политикой, через него уходят дублирующие запросы
+    public TransportPolicy(Call.Factory attempts) {
+        this(attempts, OPEN_MILLIS, new Random());
+    }
+
+    TransportPolicy(Call.Factory attempts, long openMillis, Random random) {
+        this.attempts = attempts;
+        this.openMillis = openMillis;
+        this.random = random;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        ClientMetrics.Endpoint endpoint = request.tag(ClientMetrics.Endpoint.class);
+        if (request.tag(Attempt.class) != null || endpoint == ClientMetrics.Endpoint.EVENTS
+                || endpoint == ClientMetrics.Endpoint.UNLOCK) {
+            return chain.proceed(request);
+        }
+        boolean idempotent = "GET".equals(request.method()) || "HEAD".equals(request.method());
+        boolean retried = idempotent
+                && (endpoint == ClientMetrics.Endpoint.HISTORY || endpoint == ClientMetrics.Endpoint.PHOTO);
+        int maxAttempts = retried ? MAX_ATTEMPTS : 1;
+        Breaker breaker = breaker(request.url());
+
+        for (int attempt = 1; ; attempt++) {
+            breaker.acquire(now());
+            long start = System.nanoTime();
+            long hedgeDelay = idempotent && endpoint == ClientMetrics.Endpoint.HISTORY ? hedgeDelayMillis() : 0;
+            Response response;
+            try {
+                response = hedgeDelay > 0 ? hedged(chain, hedgeDelay) : chain.proceed(request);
+            } catch (IOException e) {
+                if (chain.call().isCanceled()) {
+                    breaker.release();
+                    throw e;
+                }
+                breaker.onFailure(now());
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                pause(chain.call(), retryDelay(attempt));
+                continue;
+            } catch (RuntimeException e) {
+                breaker.release();
+                throw e;
+            }
+            if (isUnavailable(response.code())) {
+                breaker.onFailure(now());
+                if (attempt < maxAttempts) {
+                    response.close();
+                    pause(chain.call(), retryDelay(attempt));
+                    continue;
+                }
+                return response;
+            }
+            breaker.onSuccess();
+            if (endpoint == ClientMetrics.Endpoint.HISTORY) {
+                historyLatency.recordNanos(System.nanoTime() - start);
+            }
+            return response;
+        }
+    }
+
+    // 502-504 - прокси или uvicorn не достучались до приложения; остальные коды - ответ бэкенда
+    private static boolean isUnavailable(int code) {
+        return code == 502 || code == 503 || code == 504;
+    }
+
+    // Полный джиттер: клиенты после общего сбоя не приходят обратно одной волной
+    long retryDelay(int attempt) {
+        long cap = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << (attempt - 1));
+        return (long) (random.nextDouble() * cap);
+    }
+
+    long hedgeDelayMillis() {
+        if (historyLatency.count() < HEDGE_MIN_SAMPLES) {
+            return 0;
+        }
+        long p95 = historyLatency.percentileMicros(95) / 1000;
+        return Math.max(HEDGE_MIN_MILLIS, Math.min(HEDGE_MAX_MILLIS, p95));
+    }
+
+    boolean isOpen(HttpUrl url) {
+        return breaker(url).isOpen(now());
+    }
+
+    // Основной и дублирующий запросы - отдельные вызовы: отмена проигравшего не трогает исходный вызов
+    private Response hedged(Chain chain, long delayMillis) throws IOException {
+        Request request = chain.request().newBuilder().tag(Attempt.class, Attempt.INSTANCE).build();
+        Race race = new Race();
+        List<Call> calls = new ArrayList<>(2);
+        calls.add(attempts.newCall(request));
+        race.start(calls.get(0));
+        long hedgeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        int pending = 1;
+        IOException failure = null;
+        Call winner = null;
+        try {
+            while (pending > 0) {
+                if (chain.call().isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+                long wait = CANCEL_POLL_MILLIS;
+                if (calls.size() == 1) {
+                    wait = Math.min(wait, Math.max(0, TimeUnit.NANOSECONDS.toMillis(hedgeAt - System.nanoTime())));
+                }
+                Race.Outcome outcome = race.outcomes.poll(wait, TimeUnit.MILLISECONDS);
+                if (outcome == null) {
+                    if (calls.size() == 1 && System.nanoTime() >= hedgeAt) {
+                        Call backup = attempts.newCall(request);
+                        calls.add(backup);
+                        race.start(backup);
+                        pending++;
+                    }
+                    continue;
+                }
+                pending--;
+                if (outcome.response != null) {
+                    winner = outcome.call;
+                    return outcome.response;
+                }
+                // Основной запрос упал раньше срока дублирования: повторять будет внешний цикл
+                failure = outcome.failure;
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } finally {
+            race.settle();
+            for (Call call : calls) {
+                if (call != winner) {
+                    call.cancel();
+                }
+            }
+        }
+    }
+
+    private static void pause(Call call, long millis) throws IOException {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        try {
+            long left;
+            while ((left = until - System.nanoTime()) > 0) {
+                if (call.isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+                Thread.sleep(Math.min(CANCEL_POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(left) + 1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    private Breaker breaker(HttpUrl url) {
+        String key = url.host() + ":" + url.port();
+        Breaker breaker = breakers.get(key);
+        if (breaker == null) {
+            breaker = new Breaker(openMillis);
+            Breaker existing = breakers.putIfAbsent(key, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    public static final class CircuitOpenException extends IOException {
+        CircuitOpenException(long retryInMillis) {
+            super("Backend unavailable, next attempt in " + Math.max(1, (retryInMillis + 999) / 1000) + " s");
+        }
+    }
+
+    // Закрыт: считает отказы подряд. Открыт до openUntil: все сразу получают ошибку.
+    // После openUntil пропускает один пробный запрос; пока он идет, остальные тоже получают ошибку
+    private static final class Breaker {
+        private final long openMillis;
+        private int failures;
+        private long openUntil;
+        private boolean probing;
+
+        Breaker(long openMillis) {
+            this.openMillis = openMillis;
+        }
+
+        synchronized void acquire(long now) throws CircuitOpenException {
+            if (openUntil == 0) {
+                return;
+            }
+            if (now < openUntil || probing) {
+                throw new CircuitOpenException(Math.max(0, openUntil - now));
+            }
+            probing = true;
+        }
+
+        synchronized boolean isOpen(long now) {
+            return openUntil != 0 && (now < openUntil || probing);
+        }
+
+        synchronized void onSuccess() {
+            failures = 0;
+            openUntil = 0;
+            probing = false;
+        }
+
+        synchronized void onFailure(long now) {
+            failures++;
+            if (probing || failures >= FAILURE_THRESHOLD) {
+                openUntil = now + openMillis;
+            }
+            probing = false;
+        }
+
+        // Отмененный вызов ничего не говорит о бэкенде
+        synchronized void release() {
+            probing = false;
+        }
+    }
+
+    private static final class Race {
+        final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        private boolean settled;
+
+        // execute() не проходит через очередь диспетчера; cancel() из ожидающего потока обрывает и его
+        void start(Call call) {
+            ATTEMPT_EXECUTOR.execute(() -> {
+                Response response;
+                try {
+                    response = call.execute();
+                } catch (IOException e) {
+                    onFailure(call, e);
+                    return;
+                } catch (RuntimeException e) {
+                    onFailure(call, new IOException(e));
+                    return;
+                }
+                onResponse(call, response);
+            });
+        }
+
+        private void onResponse(Call call, Response response) {
+            synchronized (this) {
+                if (!settled) {
+                    outcomes.add(new Outcome(call, response, null));
+                    return;
+                }
+            }
+            response.close();
+        }
+
+        private void onFailure(Call call, IOException e) {
+            outcomes.add(new Outcome(call, null, e));
+        }
+
+        // Победитель выбран: ответы проигравших закрываем, чтобы соединения вернулись в пул
+        void settle() {
+            synchronized (this) {
+                settled = true;
+            }
+            Outcome late;
+            while ((late = outcomes.poll()) != null) {
+                if (late.response != null) {
+                    late.response.close();
+                }
+            }
+        }
+
+        static final class Outcome {
+            final Call call;
+            final Response response;
+            final IOException failure;
+
+            Outcome(Call call, Response response, IOException failure) {
+                this.call = call;
+                this.response = response;
+                this.failure = failure;
+            }
+        }
+    }
+}
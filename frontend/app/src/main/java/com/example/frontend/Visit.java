@@ -1,10 +1,17 @@
 package com.example.frontend;
 
+// Сеттеры - для разбора ответа (JSON, бинарный кодек, кэш) и метки входа на свежеразобранной странице.
+// Визит из VisitStore - представление строки хранилища: его сеттеры бросают UnsupportedOperationException,
+// поэтому визиты из окна, ленты и результатов поиска только читаются
 public class Visit {
     private int id;
     private String photo_url;
     private String photo_download_url;
     private String timestamp;
+    private transient long timestampMillis = VisitFormat.INVALID_TIMESTAMP;
+    private transient String displayTimestamp;
+    // Вход, с которого пришел визит; null - единственный (основной) бэкенд
+    private transient Door door;
 
     public Visit() {
     }
@@ -13,7 +20,7 @@ public class Visit {
         this.id = id;
         this.photo_url = photo_url;
         this.photo_download_url = photo_download_url;
-        this.timestamp = timestamp;
+        setTimestamp(timestamp);
     }
 
     public int getId() {
@@ -24,6 +31,7 @@ public class Visit {
         this.id = id;
     }
 
+    // Адрес для загрузки фото: ссылка на скачивание, у старых записей - имя объекта
     public String getPhotoUrl() {
         if (photo_download_url != null && !photo_download_url.isEmpty()) {
             return photo_download_url;
@@ -31,6 +39,11 @@ public class Visit {
         return photo_url;
     }
 
+    // Имя объекта в MinIO как пришло от бэкенда (поле photo_url)
+    public String getPhotoKey() {
+        return photo_url;
+    }
+
     public void setPhotoUrl(String photo_url) {
         this.photo_url = photo_url;
     }
@@ -44,10 +57,50 @@ public class Visit {
     }
 
     public String getTimestamp() {
+        if (timestamp == null && timestampMillis != VisitFormat.INVALID_TIMESTAMP) {
+            timestamp = VisitFormat.formatIsoTimestamp(timestampMillis);
+        }
         return timestamp;
     }
 
+    // Разбираем время один раз при получении данных, а не при каждом bind
     public void setTimestamp(String timestamp) {
         this.timestamp = timestamp;
+        this.timestampMillis = VisitFormat.parseTimestamp(timestamp);
+        this.displayTimestamp = null;
+    }
+
+    // Бинарный ответ передает время числом: строку ISO соберем, только если ее попросят
+    public void setTimestampMillis(long timestampMillis) {
+        this.timestamp = null;
+        this.timestampMillis = timestampMillis;
+        this.displayTimestamp = null;
+    }
+
+    // Gson через рефлексию заполняет только строку: тогда разбираем ее при первом обращении
+    public long getTimestampMillis() {
+        if (timestampMillis == VisitFormat.INVALID_TIMESTAMP && timestamp != null) {
+            timestampMillis = VisitFormat.parseTimestamp(timestamp);
+        }
+        return timestampMillis;
+    }
+
+    // Строка для показа собирается при первом bind на главном потоке, а не при разборе страницы
+    public String getDisplayTimestamp() {
+        String display = displayTimestamp;
+        if (display == null) {
+            long millis = getTimestampMillis();
+            display = millis != VisitFormat.INVALID_TIMESTAMP ? VisitFormat.formatTimestamp(millis) : timestamp;
+            displayTimestamp = display;
+        }
+        return display;
+    }
+
+    public Door getDoor() {
+        return door;
+    }
+
+    public void setDoor(Door door) {
+        this.door = door;
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.example.frontend;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,23 +9,60 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 
 public class VisitAdapter extends RecyclerView.Adapter<VisitAdapter.VisitViewHolder> {
+    static final int PAYLOAD_TIMESTAMP = 1;
+    static final int PAYLOAD_PHOTO = 1 << 1;
 
-    private List<Visit> visits = new ArrayList<>();
+    // Экран вмещает около восьми строк; три параллельных прогрева оставляют Glide поток под видимые фото
+    private static final int PREFETCH_DISTANCE = 6;
+    private static final int PREFETCH_MAX_IN_FLIGHT = 3;
+
+    static final DiffUtil.ItemCallback<Visit> DIFF_CALLBACK = new DiffUtil.ItemCallback<Visit>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Visit oldItem, @NonNull Visit newItem) {
+            return itemId(oldItem) == itemId(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Visit oldItem, @NonNull Visit newItem) {
+            return changedParts(oldItem, newItem) == 0;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Visit oldItem, @NonNull Visit newItem) {
+            return changedParts(oldItem, newItem);
+        }
+    };
+
+    private final AsyncListDiffer<Visit> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private final Context context;
+    private final int thumbnailSize;
+    private final PhotoPrefetcher prefetcher =
+            new PhotoPrefetcher(new GlidePrefetchLoader(), PREFETCH_DISTANCE, PREFETCH_MAX_IN_FLIGHT);
 
     public VisitAdapter(Context context) {
         this.context = context;
+        this.thumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.visit_thumbnail_size);
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -37,67 +75,205 @@ public class VisitAdapter extends RecyclerView.Adapter<VisitAdapter.VisitViewHol
 
     @Override
     public void onBindViewHolder(@NonNull VisitViewHolder holder, int position) {
-        Visit visit = visits.get(position);
+        Visit visit = differ.getCurrentList().get(position);
         holder.bind(visit);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull VisitViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        int changed = 0;
+        for (Object payload : payloads) {
+            changed |= (Integer) payload;
+        }
+        Visit visit = differ.getCurrentList().get(position);
+        if ((changed & PAYLOAD_TIMESTAMP) != 0) {
+            holder.bindTimestamp(visit);
+        }
+        if ((changed & PAYLOAD_PHOTO) != 0) {
+            holder.bindPhoto(visit);
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return itemId(differ.getCurrentList().get(position));
+    }
+
+    // id уникальны только в пределах одного Pi: в общей ленте ключ строки включает номер входа.
+    // Визит без входа (экран одного Pi) получает 0 и не совпадает с визитами входа с номером 0
+    static long itemId(Visit visit) {
+        Door door = visit.getDoor();
+        long doorBits = door == null ? 0 : door.getId() + 1L;
+        return doorBits << 32 | (visit.getId() & 0xFFFFFFFFL);
+    }
+
     @Override
     public int getItemCount() {
-        return visits.size();
+        return differ.getCurrentList().size();
+    }
+
+    public PhotoPrefetcher getPrefetcher() {
+        return prefetcher;
     }
 
-    public void addVisits(List<Visit> newVisits) {
-        int startPosition = visits.size();
-        visits.addAll(newVisits);
-        notifyItemRangeInserted(startPosition, newVisits.size());
+    // Ключ кэша Glide складывается из адреса, размера, формата и трансформации:
+    // прогрев и показ строки обязаны строить запрос одинаково, иначе прогрев не попадет в кэш
+    private RequestBuilder<Drawable> thumbnailRequest(Visit visit) {
+        return Glide.with(context)
+                .load(ApiService.thumbnailUrl(visit, thumbnailSize))
+                .override(thumbnailSize)
+                .format(DecodeFormat.PREFER_RGB_565)
+                .centerCrop();
     }
 
-    public void clearVisits() {
-        visits.clear();
-        notifyDataSetChanged();
+    // Окно уже слито и упорядочено PagingEngine; differ сам найдет вставки и вытеснения
+    public void setVisits(List<Visit> visits) {
+        differ.submitList(visits);
+    }
+
+    static int changedParts(Visit oldItem, Visit newItem) {
+        int changed = 0;
+        // Сравниваем то, что видно в строке: JSON и бинарный ответ пишут одно время разной строкой
+        if (!Objects.equals(oldItem.getDisplayTimestamp(), newItem.getDisplayTimestamp())) {
+            changed |= PAYLOAD_TIMESTAMP;
+        }
+        if (!Objects.equals(oldItem.getPhotoUrl(), newItem.getPhotoUrl())) {
+            changed |= PAYLOAD_PHOTO;
+        }
+        return changed;
     }
 
     class VisitViewHolder extends RecyclerView.ViewHolder {
         private final ImageView photoImageView;
         private final TextView timestampTextView;
         private final TextView idTextView;
+        private final TextView doorTextView;
+        private final char[] idLabel = new char[16];
 
         public VisitViewHolder(@NonNull View itemView) {
             super(itemView);
             photoImageView = itemView.findViewById(R.id.visitPhoto);
             timestampTextView = itemView.findViewById(R.id.visitTimestamp);
             idTextView = itemView.findViewById(R.id.visitId);
+            doorTextView = itemView.findViewById(R.id.visitDoor);
         }
 
         public void bind(Visit visit) {
-            try {
-                SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.getDefault());
-                SimpleDateFormat outputFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss", Locale.getDefault());
-                Date date = inputFormat.parse(visit.getTimestamp());
-                if (date != null) {
-                    timestampTextView.setText(outputFormat.format(date));
-                } else {
-                    timestampTextView.setText(visit.getTimestamp());
-                }
-            } catch (Exception e) {
-                timestampTextView.setText(visit.getTimestamp());
+            bindTimestamp(visit);
+
+            int idLength = VisitFormat.writeIdLabel(visit.getId(), idLabel);
+            idTextView.setText(idLabel, 0, idLength);
+
+            // Подпись входа нужна только в общей ленте нескольких входов
+            Door door = visit.getDoor();
+            if (door != null) {
+                doorTextView.setText(door.getName());
+                doorTextView.setVisibility(View.VISIBLE);
+            } else {
+                doorTextView.setVisibility(View.GONE);
             }
 
-            idTextView.setText("ID: " + visit.getId());
+            bindPhoto(visit);
+        }
+
+        void bindTimestamp(Visit visit) {
+            timestampTextView.setText(visit.getDisplayTimestamp());
+        }
 
+        // В списке хватает превью размером с ячейку: полный кадр 1920x1080 нужен только на главном экране
+        void bindPhoto(Visit visit) {
             String photoUrl = visit.getPhotoUrl();
             if (photoUrl != null && !photoUrl.isEmpty()) {
-                if (photoUrl.startsWith("/")) {
-                    photoUrl = ApiService.BASE_URL + photoUrl;
+                RequestBuilder<Drawable> request = thumbnailRequest(visit)
+                        .placeholder(android.R.drawable.ic_menu_camera)
+                        .error(android.R.drawable.ic_menu_report_image);
+                if (PhotoLoadLogger.isEnabled()) {
+                    request = request.listener(new PhotoLoadLogger(visit.getId()));
+                }
+                if (ClientMetrics.isEnabled()) {
+                    request = request.addListener(new BindTimer());
                 }
+                request.into(photoImageView);
+            }
+        }
+    }
 
-                Glide.with(context)
-                        .load(photoUrl)
-                        .placeholder(android.R.drawable.ic_menu_camera)
-                        .error(android.R.drawable.ic_menu_report_image)
-                        .centerCrop()
-                        .into(photoImageView);
+    // Время от bind до готового превью: попадания в кэш памяти дают нижние перцентили
+    private static class BindTimer implements RequestListener<Drawable> {
+        private final long startedAt = ClientMetrics.start();
+
+        @Override
+        public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                                    @NonNull Target<Drawable> target, boolean isFirstResource) {
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(@NonNull Drawable resource, @NonNull Object model, Target<Drawable> target,
+                                       @NonNull DataSource dataSource, boolean isFirstResource) {
+            ClientMetrics.record(ClientMetrics.Endpoint.PHOTO, ClientMetrics.Phase.BIND, startedAt);
+            return false;
+        }
+    }
+
+    private class GlidePrefetchLoader implements PhotoPrefetcher.Loader {
+        private final Map<Long, Target<Drawable>> targets = new HashMap<>();
+
+        @Override
+        public Long keyAt(int position) {
+            List<Visit> visits = differ.getCurrentList();
+            if (position < 0 || position >= visits.size()) {
+                return null;
             }
+            Visit visit = visits.get(position);
+            String photoUrl = visit.getPhotoUrl();
+            // Ключ строки целиком: его хеш в int совпадал бы у визитов разных входов
+            return photoUrl != null && !photoUrl.isEmpty() ? itemId(visit) : null;
+        }
+
+        @Override
+        public void start(int position, long key) {
+            Visit visit = differ.getCurrentList().get(position);
+            Target<Drawable> target = thumbnailRequest(visit)
+                    .priority(Priority.LOW)
+                    .listener(new RequestListener<Drawable>() {
+                        @Override
+                        public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                                                    @NonNull Target<Drawable> target, boolean isFirstResource) {
+                            finished(key);
+                            return false;
+                        }
+
+                        @Override
+                        public boolean onResourceReady(@NonNull Drawable resource, @NonNull Object model,
+                                                       Target<Drawable> target, @NonNull DataSource dataSource,
+                                                       boolean isFirstResource) {
+                            finished(key);
+                            return false;
+                        }
+                    })
+                    .preload(thumbnailSize, thumbnailSize);
+            // При попадании в память колбэк уже отработал внутри preload
+            if (prefetcher.isInFlight(key)) {
+                targets.put(key, target);
+            }
+        }
+
+        @Override
+        public void cancel(long key) {
+            Target<Drawable> target = targets.remove(key);
+            if (target != null) {
+                Glide.with(context).clear(target);
+            }
+        }
+
+        private void finished(long key) {
+            targets.remove(key);
+            prefetcher.onPrefetchFinished(key);
         }
     }
 }
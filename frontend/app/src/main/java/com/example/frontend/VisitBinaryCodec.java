@@ -0,0 +1,161 @@
+package com.example.frontend;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Utf8;
+
+// Компактная страница истории (application/x-doorbell-visits), пара к backend/app/services/visit_codec.py.
+//   заголовок: 'V' 'P' версия, число визитов, общий префикс photo_url,
+//              префикс и суффикс photo_download_url (адрес собирается из id)
+//   визит:     id и время (мс от эпохи) - разницей с предыдущим визитом в zigzag varint,
+//              остаток photo_url после префикса
+// Строки - varint длины + UTF-8; у photo_url длина + 1, 0 означает null
+public final class VisitBinaryCodec {
+    public static final String MEDIA_TYPE = "application/x-doorbell-visits";
+
+    private static final int MAGIC_0 = 'V';
+    private static final int MAGIC_1 = 'P';
+    private static final int VERSION = 1;
+    // Защита от испорченного ответа: больше бэкенд за раз не отдает
+    private static final int MAX_VISITS = 100_000;
+
+    private VisitBinaryCodec() {
+    }
+
+    public static List<Visit> readList(BufferedSource source) throws IOException {
+        if (source.readByte() != MAGIC_0 || source.readByte() != MAGIC_1) {
+            throw new ProtocolException("Not a visit page");
+        }
+        int version = source.readByte();
+        if (version != VERSION) {
+            throw new ProtocolException("Unsupported visit page version " + version);
+        }
+        long count = readVarint(source);
+        if (count > MAX_VISITS) {
+            throw new ProtocolException("Too many visits: " + count);
+        }
+        String photoPrefix = readString(source);
+        String downloadPrefix = readString(source);
+        String downloadSuffix = readString(source);
+
+        List<Visit> visits = new ArrayList<>((int) count);
+        StringBuilder downloadUrl = new StringBuilder(downloadPrefix.length() + downloadSuffix.length() + 10);
+        long id = 0;
+        long millis = 0;
+        for (int i = 0; i < count; i++) {
+            id += zigzagDecode(readVarint(source));
+            millis += zigzagDecode(readVarint(source));
+            long photoLength = readVarint(source);
+
+            Visit visit = new Visit();
+            visit.setId((int) id);
+            visit.setTimestampMillis(millis);
+            if (photoLength > 0) {
+                visit.setPhotoUrl(photoPrefix.concat(source.readUtf8(photoLength - 1)));
+            }
+            downloadUrl.setLength(0);
+            visit.setPhotoDownloadUrl(downloadUrl.append(downloadPrefix).append(id).append(downloadSuffix).toString());
+            visits.add(visit);
+        }
+        return visits;
+    }
+
+    // Кодировщик нужен тестам и сверке с бэкендом; приложение страницы только читает
+    static void writeList(List<Visit> visits, String downloadPrefix, String downloadSuffix,
+                          BufferedSink sink) throws IOException {
+        String photoPrefix = commonPhotoPrefix(visits);
+        sink.writeByte(MAGIC_0).writeByte(MAGIC_1).writeByte(VERSION);
+        writeVarint(sink, visits.size());
+        writeString(sink, photoPrefix);
+        writeString(sink, downloadPrefix);
+        writeString(sink, downloadSuffix);
+
+        long id = 0;
+        long millis = 0;
+        for (Visit visit : visits) {
+            writeVarint(sink, zigzagEncode(visit.getId() - id));
+            writeVarint(sink, zigzagEncode(visit.getTimestampMillis() - millis));
+            id = visit.getId();
+            millis = visit.getTimestampMillis();
+            String photoUrl = visit.getPhotoKey();
+            if (photoUrl == null) {
+                writeVarint(sink, 0);
+            } else {
+                String rest = photoUrl.substring(photoPrefix.length());
+                writeVarint(sink, Utf8.size(rest) + 1);
+                sink.writeUtf8(rest);
+            }
+        }
+    }
+
+    private static String commonPhotoPrefix(List<Visit> visits) {
+        String prefix = null;
+        for (Visit visit : visits) {
+            String photoUrl = visit.getPhotoKey();
+            if (photoUrl == null) {
+                continue;
+            }
+            if (prefix == null) {
+                prefix = photoUrl;
+                continue;
+            }
+            int length = 0;
+            int max = Math.min(prefix.length(), photoUrl.length());
+            while (length < max && prefix.charAt(length) == photoUrl.charAt(length)) {
+                length++;
+            }
+            prefix = prefix.substring(0, length);
+        }
+        if (prefix == null) {
+            return "";
+        }
+        // Не режем суррогатную пару пополам
+        int length = prefix.length();
+        if (length > 0 && Character.isHighSurrogate(prefix.charAt(length - 1))) {
+            prefix = prefix.substring(0, length - 1);
+        }
+        return prefix;
+    }
+
+    private static String readString(BufferedSource source) throws IOException {
+        return source.readUtf8(readVarint(source));
+    }
+
+    private static void writeString(BufferedSink sink, String value) throws IOException {
+        writeVarint(sink, Utf8.size(value));
+        sink.writeUtf8(value);
+    }
+
+    static long readVarint(BufferedSource source) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = source.readByte();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new ProtocolException("Malformed varint");
+    }
+
+    static void writeVarint(BufferedSink sink, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            sink.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        sink.writeByte((int) value);
+    }
+
+    private static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
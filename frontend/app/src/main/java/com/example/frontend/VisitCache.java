@@ -0,0 +1,270 @@
+package com.example.frontend;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class VisitCache {
+    private static final String TAG = "VisitCache";
+    private static final AppLog LOG = AppLog.get(TAG);
+    private static final String DATABASE_NAME = "visits.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final int MAX_VISITS = 2000;
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private static final String[] COLUMNS = {"id", "timestamp", "photo_url", "photo_download_url"};
+
+    private static volatile VisitCache instance;
+
+    // Хранилище визитов: SQLite на устройстве, в тестах - список в памяти
+    interface Store {
+        List<Visit> query(Integer beforeId, int limit);
+
+        void write(List<Visit> visits);
+
+        // Вытесняем по возрасту визита и по общему числу записей
+        void evict(long oldestAllowedMillis, int maxCount);
+    }
+
+    public interface RefreshListener {
+        // Сохраненные визиты; пустой список - кэш пуст и первую страницу надо грузить из сети
+        void onCached(List<Visit> cached);
+
+        // Очередная страница визитов новее сохраненных
+        void onRefreshed(List<Visit> visits);
+
+        void onRefreshFailed(String error);
+    }
+
+    private final Store store;
+    private final Executor executor;
+    private final Executor callbackExecutor;
+
+    public static VisitCache get(Context context) {
+        VisitCache result = instance;
+        if (result == null) {
+            synchronized (VisitCache.class) {
+                result = instance;
+                if (result == null) {
+                    result = new VisitCache(new SqliteStore(context.getApplicationContext()),
+                            Executors.newSingleThreadExecutor(), new Handler(Looper.getMainLooper())::post);
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    VisitCache(Store store, Executor executor, Executor callbackExecutor) {
+        this.store = store;
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    // Отмена handle только отписывает колбэк: чтение из SQLite короткое, прерывать его незачем
+    public RequestHandle loadNewest(int limit, ApiService.ApiCallback<List<Visit>> callback) {
+        return read(null, limit, callback);
+    }
+
+    public RequestHandle loadBefore(int beforeId, int limit, ApiService.ApiCallback<List<Visit>> callback) {
+        return read(beforeId, limit, callback);
+    }
+
+    // Сначала сохраненные визиты, затем с сервера только более новые, страницами по pageSize.
+    // Отмена handle останавливает и чтение кэша, и догрузку
+    public RequestHandle loadNewestThenRefresh(int cachedLimit, int pageSize, PagingEngine.PageSource network,
+                                               RefreshListener listener) {
+        RequestHandle handle = new RequestHandle();
+        RequestHandle read = loadNewest(cachedLimit, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> cached) {
+                listener.onCached(cached);
+                if (!cached.isEmpty()) {
+                    refresh(handle, newestId(cached), null, pageSize, network, listener);
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                listener.onCached(Collections.<Visit>emptyList());
+            }
+        });
+        handle.onCancel(read::cancel);
+        return handle;
+    }
+
+    private void refresh(RequestHandle handle, int newestCachedId, Integer beforeId, int pageSize,
+                         PagingEngine.PageSource network, RefreshListener listener) {
+        if (handle.isCancelled()) {
+            return;
+        }
+        RequestHandle page = network.load(pageSize, beforeId, newestCachedId, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                if (handle.isCancelled()) {
+                    return;
+                }
+                putAll(visits);
+                listener.onRefreshed(visits);
+                if (visits.size() == pageSize) {
+                    // Новых визитов больше страницы - продолжаем, пока не дойдем до сохраненных
+                    refresh(handle, newestCachedId, oldestId(visits), pageSize, network, listener);
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                if (!handle.isCancelled()) {
+                    listener.onRefreshFailed(error);
+                }
+            }
+        });
+        handle.onCancel(page::cancel);
+    }
+
+    public void putAll(List<Visit> visits) {
+        if (visits.isEmpty()) {
+            return;
+        }
+        List<Visit> snapshot = new ArrayList<>(visits);
+        executor.execute(() -> {
+            try {
+                store.write(snapshot);
+                store.evict(System.currentTimeMillis() - MAX_AGE_MILLIS, MAX_VISITS);
+            } catch (RuntimeException e) {
+                LOG.e("Failed to cache visits", e);
+            }
+        });
+    }
+
+    private RequestHandle read(Integer beforeId, int limit, ApiService.ApiCallback<List<Visit>> callback) {
+        RequestHandle handle = new RequestHandle();
+        executor.execute(() -> {
+            if (handle.isCancelled()) {
+                return;
+            }
+            try {
+                List<Visit> visits = store.query(beforeId, limit);
+                deliver(handle, () -> callback.onSuccess(visits));
+            } catch (RuntimeException e) {
+                LOG.e("Failed to read cached visits", e);
+                deliver(handle, () -> callback.onError("Ошибка кэша: " + e.getMessage()));
+            }
+        });
+        return handle;
+    }
+
+    private void deliver(RequestHandle handle, Runnable action) {
+        callbackExecutor.execute(() -> {
+            if (!handle.isCancelled()) {
+                handle.finish();
+                action.run();
+            }
+        });
+    }
+
+    private static int newestId(List<Visit> visits) {
+        int newest = Integer.MIN_VALUE;
+        for (Visit visit : visits) {
+            newest = Math.max(newest, visit.getId());
+        }
+        return newest;
+    }
+
+    private static int oldestId(List<Visit> visits) {
+        int oldest = Integer.MAX_VALUE;
+        for (Visit visit : visits) {
+            oldest = Math.min(oldest, visit.getId());
+        }
+        return oldest;
+    }
+
+    private static final class SqliteStore extends SQLiteOpenHelper implements Store {
+        SqliteStore(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE visits ("
+                    + "id INTEGER PRIMARY KEY, "
+                    + "timestamp_millis INTEGER NOT NULL, "
+                    + "timestamp TEXT, "
+                    + "photo_url TEXT, "
+                    + "photo_download_url TEXT, "
+                    + "cached_at INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX visits_timestamp ON visits (timestamp_millis DESC, id DESC)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS visits");
+            onCreate(db);
+        }
+
+        @Override
+        public List<Visit> query(Integer beforeId, int limit) {
+            String selection = null;
+            String[] args = null;
+            if (beforeId != null) {
+                selection = "id < ?";
+                args = new String[]{String.valueOf(beforeId)};
+            }
+            List<Visit> visits = new ArrayList<>();
+            try (Cursor cursor = getReadableDatabase().query("visits", COLUMNS, selection, args,
+                    null, null, "timestamp_millis DESC, id DESC", String.valueOf(limit))) {
+                while (cursor.moveToNext()) {
+                    visits.add(new Visit(cursor.getInt(0), cursor.getString(2), cursor.getString(3), cursor.getString(1)));
+                }
+            }
+            return visits;
+        }
+
+        @Override
+        public void write(List<Visit> visits) {
+            SQLiteDatabase db = getWritableDatabase();
+            long now = System.currentTimeMillis();
+            db.beginTransaction();
+            try {
+                ContentValues values = new ContentValues();
+                for (Visit visit : visits) {
+                    values.clear();
+                    values.put("id", visit.getId());
+                    values.put("timestamp_millis", visit.getTimestampMillis());
+                    values.put("timestamp", visit.getTimestamp());
+                    values.put("photo_url", visit.getPhotoKey());
+                    values.put("photo_download_url", visit.getPhotoDownloadUrl());
+                    values.put("cached_at", now);
+                    db.insertWithOnConflict("visits", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        @Override
+        public void evict(long oldestAllowedMillis, int maxCount) {
+            SQLiteDatabase db = getWritableDatabase();
+            db.delete("visits", "timestamp_millis < ?", new String[]{String.valueOf(oldestAllowedMillis)});
+            SQLiteStatement trim = db.compileStatement("DELETE FROM visits WHERE id NOT IN "
+                    + "(SELECT id FROM visits ORDER BY timestamp_millis DESC, id DESC LIMIT ?)");
+            trim.bindLong(1, maxCount);
+            trim.executeUpdateDelete();
+            trim.close();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.frontend;
+
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.BufferedSource;
+
+// Поток новых визитов с /doorbell/events. Читаем его на своем потоке через execute(),
+// чтобы долгий запрос не занимал слот диспетчера OkHttp, общий с Glide
+public class VisitEventStream {
+    private static final String TAG = "VisitEventStream";
+    private static final AppLog LOG = AppLog.get(TAG);
+
+    static final long RECONNECT_BASE_MILLIS = 1000;
+    static final long RECONNECT_MAX_MILLIS = 30000;
+
+    public interface Listener {
+        void onVisit(Visit visit);
+
+        void onConnectionChanged(boolean connected);
+    }
+
+    private final String url;
+    private final OkHttpClient client;
+    private final VisitJsonAdapter visitAdapter;
+    // Обнуляется в stop(): остановленный поток не держит экран, который на него подписан
+    private volatile Listener listener;
+    private final Executor callbackExecutor;
+    private final long reconnectBaseMillis;
+    private final long reconnectMaxMillis;
+    private final Random random;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean stopped;
+    private volatile Call call;
+    private volatile int lastEventId;
+    private volatile boolean hasLastEventId;
+    // Меняется только на потоке executor
+    private int attempts;
+
+    VisitEventStream(String url, OkHttpClient client, VisitJsonAdapter visitAdapter, Integer lastSeenId,
+                     Listener listener, Executor callbackExecutor,
+                     long reconnectBaseMillis, long reconnectMaxMillis, Random random) {
+        this.url = url;
+        this.client = client;
+        this.visitAdapter = visitAdapter;
+        this.listener = listener;
+        this.callbackExecutor = callbackExecutor;
+        this.reconnectBaseMillis = reconnectBaseMillis;
+        this.reconnectMaxMillis = reconnectMaxMillis;
+        this.random = random;
+        if (lastSeenId != null) {
+            lastEventId = lastSeenId;
+            hasLastEventId = true;
+        }
+    }
+
+    void start() {
+        executor.execute(this::connect);
+    }
+
+    public void stop() {
+        stopped = true;
+        listener = null;
+        Call current = call;
+        if (current != null) {
+            current.cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    private void connect() {
+        if (stopped) {
+            return;
+        }
+        Request.Builder builder = new Request.Builder()
+                .header("Accept", "text/event-stream")
+                .tag(ClientMetrics.Endpoint.class, ClientMetrics.Endpoint.EVENTS);
+        if (hasLastEventId) {
+            // Сервер дошлет пропущенные визиты, начиная со следующего за последним увиденным
+            builder.url(url + "?last_id=" + lastEventId)
+                    .header("Last-Event-ID", String.valueOf(lastEventId));
+        } else {
+            builder.url(url);
+        }
+        Call current = client.newCall(builder.build());
+        call = current;
+        boolean opened = false;
+        int seenBefore = lastEventId;
+        long startedAt = System.currentTimeMillis();
+        try (Response response = current.execute()) {
+            if (response.isSuccessful() && response.body() != null) {
+                opened = true;
+                callbackExecutor.execute(() -> {
+                    Listener target = listener;
+                    if (!stopped && target != null) {
+                        target.onConnectionChanged(true);
+                    }
+                });
+                readEvents(response.body().source());
+            } else {
+                LOG.d("Event stream rejected: {}", response.code());
+            }
+        } catch (IOException e) {
+            LOG.d("Event stream failed: {}", e.getMessage());
+        }
+        if (opened) {
+            // Паузу сбрасываем только после живого соединения: сервер, который принимает
+            // и сразу рвет подключение, не должен получать переподключения без задержки
+            if (lastEventId != seenBefore || System.currentTimeMillis() - startedAt >= reconnectMaxMillis) {
+                attempts = 0;
+            }
+            callbackExecutor.execute(() -> {
+                Listener target = listener;
+                if (!stopped && target != null) {
+                    target.onConnectionChanged(false);
+                }
+            });
+        }
+        scheduleReconnect();
+    }
+
+    // Разбор text/event-stream: поля до пустой строки, комментарии с ':' - keepalive
+    private void readEvents(BufferedSource source) throws IOException {
+        String id = null;
+        String event = null;
+        StringBuilder data = new StringBuilder();
+        String line;
+        while (!stopped && (line = source.readUtf8Line()) != null) {
+            if (line.isEmpty()) {
+                if (data.length() > 0 && (event == null || "visit".equals(event))) {
+                    onVisitEvent(id, data.toString());
+                }
+                id = null;
+                event = null;
+                data.setLength(0);
+            } else if (line.startsWith("id:")) {
+                id = fieldValue(line, 3);
+            } else if (line.startsWith("event:")) {
+                event = fieldValue(line, 6);
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(fieldValue(line, 5));
+            }
+        }
+    }
+
+    private static String fieldValue(String line, int start) {
+        return line.startsWith(" ", start) ? line.substring(start + 1) : line.substring(start);
+    }
+
+    private void onVisitEvent(String id, String data) {
+        Visit visit;
+        try {
+            visit = visitAdapter.fromJson(data);
+        } catch (IOException | RuntimeException e) {
+            LOG.w("Skipping malformed visit event {}", id, e);
+            return;
+        }
+        if (visit == null || (hasLastEventId && visit.getId() <= lastEventId)) {
+            return;
+        }
+        lastEventId = visit.getId();
+        hasLastEventId = true;
+        callbackExecutor.execute(() -> {
+            Listener target = listener;
+            if (!stopped && target != null) {
+                target.onVisit(visit);
+            }
+        });
+    }
+
+    // Полный случайный разброс: после перезапуска сервера клиенты не приходят одной волной
+    private void scheduleReconnect() {
+        if (stopped) {
+            return;
+        }
+        long ceiling = Math.min(reconnectMaxMillis, reconnectBaseMillis << Math.min(attempts, 16));
+        attempts++;
+        long delay = (long) (random.nextDouble() * ceiling);
+        try {
+            executor.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Поток уже остановлен
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.frontend;
+
+// Период [fromMillis, toMillis) и окно времени суток [fromMinute, toMinute) в минутах от полуночи.
+// Окно может переходить через полночь (22:00-06:00). Время в UTC, как его пишет бэкенд и показывает VisitFormat
+public final class VisitFilter {
+    public static final int ANY_TIME = -1;
+    static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    private static final long MILLIS_PER_DAY = MINUTES_PER_DAY * MILLIS_PER_MINUTE;
+
+    private final long fromMillis;
+    private final long toMillis;
+    private final int fromMinute;
+    private final int toMinute;
+
+    public VisitFilter(long fromMillis, long toMillis) {
+        this(fromMillis, toMillis, ANY_TIME, ANY_TIME);
+    }
+
+    public VisitFilter(long fromMillis, long toMillis, int fromMinute, int toMinute) {
+        if (fromMillis > toMillis) {
+            throw new IllegalArgumentException("Empty period: " + fromMillis + " > " + toMillis);
+        }
+        if ((fromMinute == ANY_TIME) != (toMinute == ANY_TIME)
+                || fromMinute < ANY_TIME || fromMinute >= MINUTES_PER_DAY
+                || toMinute < ANY_TIME || toMinute >= MINUTES_PER_DAY) {
+            throw new IllegalArgumentException("Bad time of day: " + fromMinute + "-" + toMinute);
+        }
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.fromMinute = fromMinute;
+        this.toMinute = toMinute;
+    }
+
+    // Календарные дни с first по last включительно; месяц с 1
+    public static VisitFilter days(int year, int month, int day, int lastYear, int lastMonth, int lastDay,
+                                   int fromMinute, int toMinute) {
+        return new VisitFilter(VisitFormat.daysFromCivil(year, month, day) * MILLIS_PER_DAY,
+                (VisitFormat.daysFromCivil(lastYear, lastMonth, lastDay) + 1) * MILLIS_PER_DAY,
+                fromMinute, toMinute);
+    }
+
+    public VisitFilter withTimeOfDay(int fromMinute, int toMinute) {
+        return new VisitFilter(fromMillis, toMillis, fromMinute, toMinute);
+    }
+
+    public long getFromMillis() {
+        return fromMillis;
+    }
+
+    public long getToMillis() {
+        return toMillis;
+    }
+
+    public int getFromMinute() {
+        return fromMinute;
+    }
+
+    public int getToMinute() {
+        return toMinute;
+    }
+
+    public boolean matches(long millis) {
+        return millis >= fromMillis && millis < toMillis && matchesTimeOfDay(millis);
+    }
+
+    public boolean matchesTimeOfDay(long millis) {
+        if (fromMinute == ANY_TIME) {
+            return true;
+        }
+        int minute = (int) (Math.floorMod(millis, MILLIS_PER_DAY) / MILLIS_PER_MINUTE);
+        if (fromMinute <= toMinute) {
+            return minute >= fromMinute && minute < toMinute;
+        }
+        return minute >= fromMinute || minute < toMinute;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.frontend;
+
+public final class VisitFormat {
+    public static final long INVALID_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final char[] ID_PREFIX = {'I', 'D', ':', ' '};
+
+    private VisitFormat() {
+    }
+
+    // Бэкенд пишет datetime.utcnow() без зоны, поэтому время без смещения считаем UTC
+    public static long parseTimestamp(String iso) {
+        if (iso == null || iso.length() < 19
+                || iso.charAt(4) != '-' || iso.charAt(7) != '-' || iso.charAt(10) != 'T'
+                || iso.charAt(13) != ':' || iso.charAt(16) != ':') {
+            return INVALID_TIMESTAMP;
+        }
+        int year = digits(iso, 0, 4);
+        int month = digits(iso, 5, 2);
+        int day = digits(iso, 8, 2);
+        int hour = digits(iso, 11, 2);
+        int minute = digits(iso, 14, 2);
+        int second = digits(iso, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return INVALID_TIMESTAMP;
+        }
+
+        int pos = 19;
+        int millis = 0;
+        if (pos < iso.length() && iso.charAt(pos) == '.') {
+            pos++;
+            int scale = 100;
+            while (pos < iso.length() && isDigit(iso.charAt(pos))) {
+                millis += (iso.charAt(pos) - '0') * scale;
+                scale /= 10;
+                pos++;
+            }
+        }
+
+        int offsetMinutes = 0;
+        if (pos < iso.length()) {
+            char zone = iso.charAt(pos);
+            if (zone == '+' || zone == '-') {
+                if (iso.length() < pos + 6 || iso.charAt(pos + 3) != ':') {
+                    return INVALID_TIMESTAMP;
+                }
+                int offsetHours = digits(iso, pos + 1, 2);
+                int offsetMins = digits(iso, pos + 4, 2);
+                if (offsetHours < 0 || offsetMins < 0) {
+                    return INVALID_TIMESTAMP;
+                }
+                offsetMinutes = (offsetHours * 60 + offsetMins) * (zone == '-' ? -1 : 1);
+            } else if (zone != 'Z') {
+                return INVALID_TIMESTAMP;
+            }
+        }
+
+        long days = daysFromCivil(year, month, day);
+        long secondsOfDay = hour * 3600L + minute * 60L + second;
+        return days * MILLIS_PER_DAY + secondsOfDay * 1000L + millis - offsetMinutes * 60_000L;
+    }
+
+    // Формат "dd.MM.yyyy HH:mm:ss", как раньше выводил VisitAdapter
+    public static String formatTimestamp(long epochMillis) {
+        long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+        int secondsOfDay = millisOfDay / 1000;
+        long civil = civilFromDays(days);
+        int year = (int) (civil / 10000);
+        int month = (int) (civil / 100 % 100);
+        int day = (int) (civil % 100);
+
+        char[] out = new char[19];
+        writeTwoDigits(out, 0, day);
+        out[2] = '.';
+        writeTwoDigits(out, 3, month);
+        out[5] = '.';
+        writeTwoDigits(out, 6, year / 100);
+        writeTwoDigits(out, 8, year % 100);
+        out[10] = ' ';
+        writeTwoDigits(out, 11, secondsOfDay / 3600);
+        out[13] = ':';
+        writeTwoDigits(out, 14, (secondsOfDay / 60) % 60);
+        out[16] = ':';
+        writeTwoDigits(out, 17, secondsOfDay % 60);
+        return new String(out);
+    }
+
+    // Обратно к виду бэкенда "yyyy-MM-ddTHH:mm:ss.SSS" (UTC без зоны) для визитов из бинарного ответа
+    public static String formatIsoTimestamp(long epochMillis) {
+        long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+        int secondsOfDay = millisOfDay / 1000;
+        long civil = civilFromDays(days);
+        int year = (int) (civil / 10000);
+
+        char[] out = new char[23];
+        writeTwoDigits(out, 0, year / 100);
+        writeTwoDigits(out, 2, year % 100);
+        out[4] = '-';
+        writeTwoDigits(out, 5, (int) (civil / 100 % 100));
+        out[7] = '-';
+        writeTwoDigits(out, 8, (int) (civil % 100));
+        out[10] = 'T';
+        writeTwoDigits(out, 11, secondsOfDay / 3600);
+        out[13] = ':';
+        writeTwoDigits(out, 14, (secondsOfDay / 60) % 60);
+        out[16] = ':';
+        writeTwoDigits(out, 17, secondsOfDay % 60);
+        out[19] = '.';
+        int millis = millisOfDay % 1000;
+        out[20] = (char) ('0' + millis / 100);
+        writeTwoDigits(out, 21, millis % 100);
+        return new String(out);
+    }
+
+    // Пишет "ID: <id>" в переиспользуемый буфер и возвращает длину
+    public static int writeIdLabel(int id, char[] out) {
+        System.arraycopy(ID_PREFIX, 0, out, 0, ID_PREFIX.length);
+        int pos = ID_PREFIX.length;
+        long value = id;
+        if (value < 0) {
+            out[pos++] = '-';
+            value = -value;
+        }
+        int length = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            length++;
+        }
+        for (int i = pos + length - 1; i >= pos; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + length;
+    }
+
+    // Дата как yyyyMMdd в одном long, чтобы не заводить объект
+    private static long civilFromDays(long days) {
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(String s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static void writeTwoDigits(char[] out, int pos, int value) {
+        out[pos] = (char) ('0' + value / 10);
+        out[pos + 1] = (char) ('0' + value % 10);
+    }
+}
@@ -1,7 +1,13 @@
 package com.example.frontend;
 
+import android.app.DatePickerDialog;
+import android.app.TimePickerDialog;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.view.View;
+import android.widget.Button;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -11,31 +17,71 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
+import java.util.TimeZone;
 
 public class VisitHistoryActivity extends AppCompatActivity {
+    private static final String TAG = "VisitHistoryActivity";
+    private static final AppLog LOG = AppLog.get(TAG);
     private RecyclerView recyclerView;
     private VisitAdapter adapter;
     private ProgressBar loadingProgress;
     private TextView errorText;
     private ApiService apiService;
+    private VisitCache visitCache;
+    // Чтение кэша и догрузка новых визитов при открытии экрана
+    private RequestHandle cacheRead;
+    private PagingEngine pagingEngine;
+    // Лента нескольких входов; при одном входе null и работает pagingEngine
+    private TimelineMerger timeline;
+    // Потоки событий открыты, пока экран виден: между onStop и onStart соединения не держим
+    private VisitEventStream eventStream;
+    private final List<VisitEventStream> doorStreams = new ArrayList<>();
+    private boolean started;
+    private boolean windowShown;
+    // Время всех полученных визитов: по нему фильтр по периоду отвечает без прокрутки по сети
+    private final VisitTimeIndex timeIndex = new VisitTimeIndex();
+    private VisitSearch search;
+    // Пока фильтр включен, на экране результаты поиска, а окно пейджинга только запоминается
+    private VisitFilter filter;
+    private List<Visit> window = Collections.emptyList();
+    private Button filterResetButton;
+    // Поиск остановился на лимите страниц: результат неполный, продолжить можно вручную
+    private Button searchMoreButton;
+    // Фото найденных визитов выгружаются в ZIP, пока экран открыт
+    private Button exportButton;
+    private List<Visit> found = Collections.emptyList();
+    private PhotoExport export;
 
-    private static final int PAGE_SIZE = 20;
-    private int currentOffset = 0;
-    private boolean isLoading = false;
-    private boolean hasMoreData = true;
+    private static final int REFRESH_PAGE_SIZE = 20;
+    private static final int CACHED_PAGE_SIZE = 100;
+
+    private long openedAt;
+    private boolean firstRowShown = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        openedAt = SystemClock.elapsedRealtime();
         setContentView(R.layout.activity_visit_history);
 
         recyclerView = findViewById(R.id.visitsRecyclerView);
         loadingProgress = findViewById(R.id.loadingProgress);
         errorText = findViewById(R.id.errorText);
 
-        apiService = new ApiService();
+        apiService = new ApiService(this);
+        visitCache = VisitCache.get(this);
         adapter = new VisitAdapter(this);
+        if (apiService.getDoors().size() > 1) {
+            timeline = createTimeline();
+        } else {
+            pagingEngine = createPagingEngine();
+        }
+        setUpFilter();
 
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         recyclerView.setLayoutManager(layoutManager);
@@ -49,74 +95,486 @@ public class VisitHistoryActivity extends AppCompatActivity {
                 LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
                 if (layoutManager == null) return;
 
-                int visibleItemCount = layoutManager.getChildCount();
                 int totalItemCount = layoutManager.getItemCount();
                 int firstVisibleItemPosition = layoutManager.findFirstVisibleItemPosition();
+                int lastVisibleItemPosition = layoutManager.findLastVisibleItemPosition();
 
-                if (!isLoading && hasMoreData) {
-                    if ((visibleItemCount + firstVisibleItemPosition) >= totalItemCount - 5
-                            && firstVisibleItemPosition >= 0) {
-                        loadMoreVisits();
-                    }
+                adapter.getPrefetcher().onScrolled(firstVisibleItemPosition,
+                        lastVisibleItemPosition, totalItemCount, dy);
+                if (timeline != null) {
+                    timeline.onScrolled(firstVisibleItemPosition, lastVisibleItemPosition, totalItemCount);
+                } else if (filter == null) {
+                    pagingEngine.onScrolled(firstVisibleItemPosition, lastVisibleItemPosition, totalItemCount);
                 }
             }
         });
 
-        loadVisits();
+        if (timeline != null) {
+            showTimeline();
+        } else {
+            showCachedVisits();
+        }
     }
 
-    private void loadVisits() {
-        isLoading = true;
-        loadingProgress.setVisibility(View.VISIBLE);
-        errorText.setVisibility(View.GONE);
+    private PagingEngine createPagingEngine() {
+        return new PagingEngine(this::loadPage, this::loadCachedPage, new Handler(Looper.getMainLooper())::postDelayed,
+                SystemClock::uptimeMillis, new PagingEngine.Listener() {
+            @Override
+            public void onWindowChanged(List<Visit> visits) {
+                showWindow(visits);
+            }
 
-        apiService.getVisitHistory(PAGE_SIZE, currentOffset, new ApiService.ApiCallback<List<Visit>>() {
             @Override
-            public void onSuccess(List<Visit> visits) {
+            public void onLoadFailed(PagingEngine.Direction direction, String error) {
                 loadingProgress.setVisibility(View.GONE);
-                isLoading = false;
+                if (adapter.getItemCount() == 0) {
+                    errorText.setText("Ошибка загрузки: " + error);
+                    errorText.setVisibility(View.VISIBLE);
+                } else {
+                    Toast.makeText(VisitHistoryActivity.this,
+                            "Ошибка загрузки: " + error, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
 
-                if (visits.isEmpty()) {
-                    if (currentOffset == 0) {
-                        errorText.setText("Нет визитов");
-                        errorText.setVisibility(View.VISIBLE);
-                    }
-                    hasMoreData = false;
+    // Локальный кэш хранит визиты по id, а id у каждого Pi свои: общая лента идет только из сети
+    private TimelineMerger createTimeline() {
+        return new TimelineMerger(apiService.getDoors(),
+                door -> (limit, beforeId, afterId, callback) ->
+                        apiService.getVisitHistory(door, limit, beforeId, afterId, callback),
+                new Handler(Looper.getMainLooper())::postDelayed, SystemClock::uptimeMillis,
+                new TimelineMerger.Listener() {
+            @Override
+            public void onTimelineChanged(List<Visit> visits) {
+                if (!visits.isEmpty()) {
+                    reportFirstRow("network");
+                }
+                showWindow(visits);
+            }
+
+            @Override
+            public void onDoorFailed(Door door, String error) {
+                if (adapter.getItemCount() == 0 && !timeline.hasMoreOlder()) {
+                    loadingProgress.setVisibility(View.GONE);
+                    errorText.setText("Ошибка загрузки: " + error);
+                    errorText.setVisibility(View.VISIBLE);
                 } else {
-                    adapter.addVisits(visits);
-                    currentOffset += visits.size();
+                    Toast.makeText(VisitHistoryActivity.this,
+                            door.getName() + " недоступен: " + error, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    // id у каждого Pi свои, а индекс ведется по id: фильтр есть только при одном входе
+    private void setUpFilter() {
+        View filterBar = findViewById(R.id.filterBar);
+        if (timeline != null) {
+            filterBar.setVisibility(View.GONE);
+            return;
+        }
+        search = new VisitSearch(timeIndex, this::loadSearchPage);
+        filterResetButton = findViewById(R.id.filterResetButton);
+        findViewById(R.id.filterDateButton).setOnClickListener(v -> pickPeriod());
+        findViewById(R.id.filterTimeButton).setOnClickListener(v -> pickTimeOfDay());
+        filterResetButton.setOnClickListener(v -> resetFilter());
+        searchMoreButton = findViewById(R.id.searchMoreButton);
+        searchMoreButton.setOnClickListener(v -> searchMore());
+        exportButton = findViewById(R.id.exportButton);
+        exportButton.setOnClickListener(v -> exportPhotos());
+    }
 
-                    if (visits.size() < PAGE_SIZE) {
-                        hasMoreData = false;
+    // Первый и последний день периода - два диалога подряд; даты в UTC, как время визитов на экране
+    private void pickPeriod() {
+        Calendar today = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        new DatePickerDialog(this, (first, year, month, day) ->
+                new DatePickerDialog(this, (last, lastYear, lastMonth, lastDay) -> {
+                    VisitFilter period;
+                    try {
+                        period = VisitFilter.days(year, month + 1, day, lastYear, lastMonth + 1, lastDay,
+                                VisitFilter.ANY_TIME, VisitFilter.ANY_TIME);
+                    } catch (IllegalArgumentException e) {
+                        Toast.makeText(this, "Конец периода раньше начала", Toast.LENGTH_SHORT).show();
+                        return;
                     }
+                    applyFilter(filter == null ? period
+                            : period.withTimeOfDay(filter.getFromMinute(), filter.getToMinute()));
+                }, year, month, day).show(),
+                today.get(Calendar.YEAR), today.get(Calendar.MONTH), today.get(Calendar.DAY_OF_MONTH)).show();
+    }
+
+    // Начало и конец окна времени суток; без периода ищем по всей истории
+    private void pickTimeOfDay() {
+        new TimePickerDialog(this, (first, hour, minute) ->
+                new TimePickerDialog(this, (last, lastHour, lastMinute) -> {
+                    VisitFilter period = filter != null ? filter : new VisitFilter(Long.MIN_VALUE, Long.MAX_VALUE);
+                    applyFilter(period.withTimeOfDay(hour * 60 + minute, lastHour * 60 + lastMinute));
+                }, Math.min(23, hour + 6), minute, true).show(),
+                12, 0, true).show();
+    }
+
+    private void applyFilter(VisitFilter newFilter) {
+        filter = newFilter;
+        filterResetButton.setVisibility(View.VISIBLE);
+        exportButton.setVisibility(View.GONE);
+        searchMoreButton.setVisibility(View.GONE);
+        loadingProgress.setVisibility(View.VISIBLE);
+        search.search(newFilter, new VisitSearch.Listener() {
+            private boolean empty;
+
+            @Override
+            public void onResults(List<Visit> visits, boolean complete) {
+                empty = visits.isEmpty();
+                if (complete) {
+                    loadingProgress.setVisibility(View.GONE);
+                    searchMoreButton.setVisibility(View.GONE);
+                    found = visits;
+                    exportButton.setVisibility(visits.isEmpty() ? View.GONE : View.VISIBLE);
+                }
+                if (visits.isEmpty() && complete) {
+                    errorText.setText("Нет визитов за выбранный период");
+                    errorText.setVisibility(View.VISIBLE);
+                } else {
+                    errorText.setVisibility(View.GONE);
+                }
+                adapter.setVisits(visits);
+            }
+
+            // Экспорт неполного списка не предлагаем: он молча потерял бы часть фото
+            @Override
+            public void onPageLimit() {
+                loadingProgress.setVisibility(View.GONE);
+                searchMoreButton.setVisibility(View.VISIBLE);
+                if (empty) {
+                    errorText.setText("Пока ничего не найдено, проверена не вся история");
+                    errorText.setVisibility(View.VISIBLE);
                 }
             }
 
             @Override
             public void onError(String error) {
                 loadingProgress.setVisibility(View.GONE);
-                isLoading = false;
+                searchMoreButton.setVisibility(View.VISIBLE);
+                Toast.makeText(VisitHistoryActivity.this,
+                        "Ошибка загрузки: " + error, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
 
-                if (currentOffset == 0) {
-                    errorText.setText("Ошибка загрузки: " + error);
-                    errorText.setVisibility(View.VISIBLE);
-                } else {
-                    Toast.makeText(VisitHistoryActivity.this,
-                            "Ошибка загрузки: " + error, Toast.LENGTH_SHORT).show();
+    private void searchMore() {
+        searchMoreButton.setVisibility(View.GONE);
+        errorText.setVisibility(View.GONE);
+        loadingProgress.setVisibility(View.VISIBLE);
+        search.loadMore();
+    }
+
+    private void resetFilter() {
+        search.cancel();
+        filter = null;
+        filterResetButton.setVisibility(View.GONE);
+        exportButton.setVisibility(View.GONE);
+        searchMoreButton.setVisibility(View.GONE);
+        showWindow(window);
+    }
+
+    // Архив назван по периоду фильтра: повторный экспорт того же периода докачивает прерванный
+    private void exportPhotos() {
+        if (export != null) {
+            return;
+        }
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            Toast.makeText(this, "Хранилище недоступно", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        exportButton.setEnabled(false);
+        File archive = new File(directory, exportFileName(filter));
+        export = apiService.exportPhotos(new ArrayList<>(found), archive, new PhotoExport.Listener() {
+            @Override
+            public void onProgress(PhotoExport.Progress progress) {
+                exportButton.setText(String.format("Экспорт %d/%d, %d КБ/с",
+                        progress.completed(), progress.total, progress.bytesPerSecond >> 10));
+            }
+
+            @Override
+            public void onFinished(PhotoExport.Progress progress, File result) {
+                exportDone(progress.failed == 0 ? "Фото сохранены: " + result.getPath()
+                        : "Не выгружено фото: " + progress.failed + ", повторите экспорт");
+            }
+
+            @Override
+            public void onError(String error) {
+                exportDone(error);
+            }
+        });
+    }
+
+    private void exportDone(String message) {
+        export = null;
+        exportButton.setEnabled(true);
+        exportButton.setText("Экспорт фото");
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+    }
+
+    // visits_<с>_<по>[_<мин>-<мин>].zip; граница "по" в фильтре исключающая, в имени - последний день
+    private static String exportFileName(VisitFilter filter) {
+        long toMillis = filter.getToMillis();
+        String name = "visits_" + exportName(filter.getFromMillis())
+                + "_" + exportName(toMillis == Long.MAX_VALUE ? toMillis : toMillis - 1);
+        if (filter.getFromMinute() != VisitFilter.ANY_TIME) {
+            name += "_" + filter.getFromMinute() + "-" + filter.getToMinute();
+        }
+        return name + ".zip";
+    }
+
+    private static String exportName(long millis) {
+        if (millis == Long.MIN_VALUE || millis == Long.MAX_VALUE) {
+            return "all";
+        }
+        return VisitFormat.formatIsoTimestamp(millis).substring(0, 10);
+    }
+
+    // Страницы поиска тоже сохраняем в кэш; ответы кэша для поиска не годятся - в них могут быть пропуски
+    private RequestHandle loadSearchPage(int limit, Integer beforeId, Integer afterId,
+                                         ApiService.ApiCallback<List<Visit>> callback) {
+        return apiService.searchVisitHistory(limit, beforeId, afterId, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                visitCache.putAll(visits);
+                callback.onSuccess(visits);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    // Каждый вход шлет свои события; отстающий вход не задерживает остальные
+    private void showTimeline() {
+        loadingProgress.setVisibility(View.VISIBLE);
+        timeline.start();
+    }
+
+    // После возврата на экран поток каждого входа досылает пропущенное после самого нового визита окна
+    private void openDoorStreams() {
+        for (Door door : apiService.getDoors()) {
+            doorStreams.add(apiService.openEventStream(door, newestId(window, door), new VisitEventStream.Listener() {
+                @Override
+                public void onVisit(Visit visit) {
+                    timeline.insertNewest(door, Collections.singletonList(visit));
+                }
+
+                @Override
+                public void onConnectionChanged(boolean connected) {
+                    LOG.d("Event stream {} {}", door.getName(), connected ? "connected" : "disconnected");
+                }
+            }));
+        }
+    }
+
+    // Сначала показываем сохраненные визиты, затем догружаем с сервера только более новые
+    private void showCachedVisits() {
+        loadingProgress.setVisibility(View.VISIBLE);
+
+        cacheRead = visitCache.loadNewestThenRefresh(CACHED_PAGE_SIZE, REFRESH_PAGE_SIZE,
+                (limit, beforeId, afterId, callback) ->
+                        apiService.getVisitHistory(limit, beforeId, afterId, new ApiService.ApiCallback<List<Visit>>() {
+                            @Override
+                            public void onSuccess(List<Visit> visits) {
+                                timeIndex.addPage(visits, beforeId, afterId, limit);
+                                callback.onSuccess(visits);
+                            }
+
+                            @Override
+                            public void onError(String error) {
+                                callback.onError(error);
+                            }
+                        }),
+                new VisitCache.RefreshListener() {
+            @Override
+            public void onCached(List<Visit> cached) {
+                if (cached.isEmpty()) {
+                    loadFirstPage();
+                    return;
                 }
+                reportFirstRow("cache");
+                timeIndex.addAll(cached);
+                pagingEngine.seed(cached);
+            }
+
+            @Override
+            public void onRefreshed(List<Visit> visits) {
+                pagingEngine.insertNewest(visits);
+            }
+
+            @Override
+            public void onRefreshFailed(String error) {
+                LOG.d("Revalidation failed: {}", error);
+                Toast.makeText(VisitHistoryActivity.this,
+                        "Нет связи с сервером, показаны сохраненные визиты", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void loadFirstPage() {
+        errorText.setVisibility(View.GONE);
+        pagingEngine.start();
+    }
+
+    // Страницы с сервера сохраняем в кэш
+    private RequestHandle loadPage(int limit, Integer beforeId, Integer afterId,
+                                   ApiService.ApiCallback<List<Visit>> callback) {
+        return apiService.getVisitHistory(limit, beforeId, afterId, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                visitCache.putAll(visits);
+                timeIndex.addPage(visits, beforeId, afterId, limit);
+                if (!visits.isEmpty()) {
+                    reportFirstRow("network");
+                }
+                callback.onSuccess(visits);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    // Без сети PagingEngine берет старые страницы из кэша; handle отменяется вместе с движком
+    private RequestHandle loadCachedPage(int limit, Integer beforeId, Integer afterId,
+                                         ApiService.ApiCallback<List<Visit>> callback) {
+        return visitCache.loadBefore(beforeId, limit, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> cached) {
+                timeIndex.addAll(cached);
+                callback.onSuccess(cached);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    private void showWindow(List<Visit> visits) {
+        window = visits;
+        windowShown = true;
+        if (timeline == null && eventStream == null && started) {
+            openEventStream(visits.isEmpty() ? null : newestId(visits));
+        }
+        if (filter != null) {
+            return;
+        }
+        loadingProgress.setVisibility(View.GONE);
+        boolean hasMoreOlder = timeline != null ? timeline.hasMoreOlder() : pagingEngine.hasMoreOlder();
+        if (visits.isEmpty() && !hasMoreOlder) {
+            errorText.setText("Нет визитов");
+            errorText.setVisibility(View.VISIBLE);
+        } else {
+            errorText.setVisibility(View.GONE);
+        }
+        adapter.setVisits(visits);
+    }
+
+    // Новые визиты встают в голову списка без повторных запросов истории
+    private void openEventStream(Integer lastSeenId) {
+        eventStream = apiService.openEventStream(lastSeenId, new VisitEventStream.Listener() {
+            @Override
+            public void onVisit(Visit visit) {
+                List<Visit> visits = Collections.singletonList(visit);
+                timeIndex.addAll(visits);
+                pagingEngine.insertNewest(visits);
+                visitCache.putAll(visits);
+            }
+
+            @Override
+            public void onConnectionChanged(boolean connected) {
+                LOG.d("Event stream {}", connected ? "connected" : "disconnected");
             }
         });
     }
 
-    private void loadMoreVisits() {
-        loadVisits();
+    private void reportFirstRow(String source) {
+        if (firstRowShown) {
+            return;
+        }
+        firstRowShown = true;
+        LOG.d("Time to first row: {} ms ({})", SystemClock.elapsedRealtime() - openedAt, source);
+    }
+
+    private static int newestId(List<Visit> visits) {
+        int newest = Integer.MIN_VALUE;
+        for (Visit visit : visits) {
+            newest = Math.max(newest, visit.getId());
+        }
+        return newest;
+    }
+
+    // id у каждого входа свои; null - визитов этого входа в окне нет
+    private static Integer newestId(List<Visit> visits, Door door) {
+        Integer newest = null;
+        for (Visit visit : visits) {
+            Door from = visit.getDoor();
+            if (from != null && from.getId() == door.getId() && (newest == null || visit.getId() > newest)) {
+                newest = visit.getId();
+            }
+        }
+        return newest;
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        if (timeline != null) {
+            openDoorStreams();
+        } else if (windowShown) {
+            // До первого окна поток откроет showWindow: последний виденный id еще неизвестен
+            openEventStream(window.isEmpty() ? null : newestId(window));
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+        if (eventStream != null) {
+            eventStream.stop();
+            eventStream = null;
+        }
+        for (VisitEventStream stream : doorStreams) {
+            stream.stop();
+        }
+        doorStreams.clear();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (apiService != null) {
-            apiService.shutdown();
+        ClientMetrics.logSnapshot();
+        if (adapter != null) {
+            adapter.getPrefetcher().cancelAll();
+        }
+        if (cacheRead != null) {
+            cacheRead.cancel();
+        }
+        if (search != null) {
+            search.cancel();
+        }
+        if (export != null) {
+            export.cancel();
+        }
+        if (pagingEngine != null) {
+            pagingEngine.release();
+        }
+        if (timeline != null) {
+            timeline.release();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package com.example.frontend;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class VisitJsonAdapter extends TypeAdapter<Visit> {
+
+    @Override
+    public void write(JsonWriter out, Visit visit) throws IOException {
+        if (visit == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(visit.getId());
+        out.name("photo_url").value(visit.getPhotoKey());
+        out.name("photo_download_url").value(visit.getPhotoDownloadUrl());
+        out.name("timestamp").value(visit.getTimestamp());
+        out.endObject();
+    }
+
+    @Override
+    public Visit read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Visit visit = new Visit();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    visit.setId(in.nextInt());
+                    break;
+                case "photo_url":
+                    visit.setPhotoUrl(in.nextString());
+                    break;
+                case "photo_download_url":
+                    visit.setPhotoDownloadUrl(in.nextString());
+                    break;
+                case "timestamp":
+                    visit.setTimestamp(in.nextString());
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+        return visit;
+    }
+
+    public List<Visit> readList(JsonReader in) throws IOException {
+        List<Visit> visits = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            Visit visit = read(in);
+            if (visit != null) {
+                visits.add(visit);
+            }
+        }
+        in.endArray();
+        return visits;
+    }
+}
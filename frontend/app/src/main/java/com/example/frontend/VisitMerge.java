@@ -0,0 +1,47 @@
+package com.example.frontend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Порядок и слияние страниц истории; без Android, чтобы пейджинг и индекс проверялись в JVM
+public final class VisitMerge {
+    static final Comparator<Visit> NEWEST_FIRST = (a, b) -> {
+        int byTime = Long.compare(b.getTimestampMillis(), a.getTimestampMillis());
+        return byTime != 0 ? byTime : Integer.compare(b.getId(), a.getId());
+    };
+
+    private VisitMerge() {
+    }
+
+    // Страницы могут пересекаться, а новые визиты приходят в начало: сливаем по времени и убираем дубли по id
+    static List<Visit> merge(List<Visit> current, List<Visit> incoming) {
+        if (incoming.isEmpty()) {
+            return current;
+        }
+        Map<Integer, Visit> byId = new LinkedHashMap<>();
+        for (Visit visit : incoming) {
+            byId.put(visit.getId(), visit);
+        }
+        List<Visit> page = new ArrayList<>(byId.values());
+        Collections.sort(page, NEWEST_FIRST);
+
+        List<Visit> merged = new ArrayList<>(current.size() + page.size());
+        int i = 0;
+        int j = 0;
+        while (i < current.size() || j < page.size()) {
+            if (i < current.size() && byId.containsKey(current.get(i).getId())) {
+                i++;
+            } else if (j == page.size()
+                    || (i < current.size() && NEWEST_FIRST.compare(current.get(i), page.get(j)) <= 0)) {
+                merged.add(current.get(i++));
+            } else {
+                merged.add(page.get(j++));
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.frontend;
+
+import java.util.List;
+
+// Поиск по периоду и времени суток. Сразу отвечает тем, что уже есть в индексе, затем
+// догружает только недостающие интервалы id и обновляет ответ после каждой страницы.
+// Вызывается из главного потока, как PagingEngine
+public class VisitSearch {
+    private static final String TAG = "VisitSearch";
+    private static final AppLog LOG = AppLog.get(TAG);
+
+    public interface Listener {
+        // complete=false - страницы еще догружаются или поиск остановился на лимите (onPageLimit)
+        void onResults(List<Visit> visits, boolean complete);
+
+        // Пройдено MAX_PAGES страниц, а пропуски еще есть: показанный результат неполный,
+        // продолжить - loadMore()
+        void onPageLimit();
+
+        void onError(String error);
+    }
+
+    static final int PAGE_SIZE = PagingEngine.MAX_PAGE_SIZE;
+    // Период без даты может охватывать всю историю: больше стольких страниц подряд без спроса не грузим
+    static final int MAX_PAGES = 30;
+
+    private final VisitTimeIndex index;
+    private final PagingEngine.PageSource source;
+    private RequestHandle handle;
+    // Новый поиск отменяет прежний; ответы отмененного отбрасываются
+    private int generation;
+    private int pages;
+    // Сколько всего страниц можно загрузить до следующей остановки
+    private int pageBudget;
+    private VisitFilter filter;
+    private Listener listener;
+
+    public VisitSearch(VisitTimeIndex index, PagingEngine.PageSource source) {
+        this.index = index;
+        this.source = source;
+    }
+
+    public void search(VisitFilter filter, Listener listener) {
+        cancel();
+        this.filter = filter;
+        this.listener = listener;
+        pages = 0;
+        pageBudget = MAX_PAGES;
+        next(filter, listener, generation);
+    }
+
+    // Продолжает поиск, остановленный на лимите страниц или ошибкой, еще на MAX_PAGES страниц
+    public void loadMore() {
+        if (listener == null || handle != null) {
+            return;
+        }
+        pageBudget = pages + MAX_PAGES;
+        next(filter, listener, generation);
+    }
+
+    public void cancel() {
+        generation++;
+        filter = null;
+        listener = null;
+        if (handle != null) {
+            handle.cancel();
+            handle = null;
+        }
+    }
+
+    int pagesLoaded() {
+        return pages;
+    }
+
+    private void next(VisitFilter filter, Listener listener, int expected) {
+        VisitTimeIndex.Gap gap = index.nextGap(filter, PAGE_SIZE);
+        listener.onResults(index.query(filter), gap == null);
+        if (gap == null) {
+            LOG.d("Search done after {} pages, {} visits indexed", pages, index.size());
+            return;
+        }
+        if (pages >= pageBudget) {
+            LOG.d("Search paused after {} pages, {} visits indexed", pages, index.size());
+            listener.onPageLimit();
+            return;
+        }
+        pages++;
+        handle = source.load(PAGE_SIZE, gap.beforeId, gap.afterId, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                if (expected != generation) {
+                    return;
+                }
+                handle = null;
+                index.addPage(visits, gap.beforeId, gap.afterId, PAGE_SIZE);
+                next(filter, listener, expected);
+            }
+
+            @Override
+            public void onError(String error) {
+                if (expected != generation) {
+                    return;
+                }
+                handle = null;
+                listener.onError(error);
+            }
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.frontend;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Звонки по часам суток и по дням за последние weeks недель. Счетчики - массивы фиксированного
+// размера: дни лежат по кругу (слот = день по модулю длины окна), у каждого дня 24 часовых
+// счетчика, суммы по часам поддерживаются на лету. Визит учитывается за O(1): без разбора
+// строки времени и без прохода по истории; уходящий из окна день вычитается целиком.
+// Окно заканчивается днем самого нового визита. Час и день - по времени, как его пишет бэкенд
+// и показывает VisitFormat. Один и тот же визит (страница истории, поток событий, догрузка)
+// учитывается один раз
+public final class VisitStatistics {
+    public static final int DEFAULT_WEEKS = 4;
+    static final int HOURS = 24;
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final long MILLIS_PER_DAY = HOURS * MILLIS_PER_HOUR;
+    private static final long NO_DAY = Long.MIN_VALUE;
+
+    // Статистика каждого Pi живет весь процесс и пополняется из ApiService
+    private static final Map<String, VisitStatistics> BY_BACKEND = new ConcurrentHashMap<>();
+
+    private final int days;
+    private final long[] dayOfSlot;
+    private final int[] dayCounts;
+    private final int[] dayHourCounts;
+    private final int[] hourCounts = new int[HOURS];
+    private int total;
+    private long newestDay = NO_DAY;
+    private final IdRanges counted = new IdRanges();
+
+    public VisitStatistics(int weeks) {
+        if (weeks <= 0) {
+            throw new IllegalArgumentException("Weeks must be positive: " + weeks);
+        }
+        days = weeks * 7;
+        dayOfSlot = new long[days];
+        dayCounts = new int[days];
+        dayHourCounts = new int[days * HOURS];
+        Arrays.fill(dayOfSlot, NO_DAY);
+    }
+
+    public static VisitStatistics forBackend(String baseUrl) {
+        return BY_BACKEND.computeIfAbsent(baseUrl, key -> new VisitStatistics(DEFAULT_WEEKS));
+    }
+
+    public static VisitStatistics forDoor(Door door) {
+        return forBackend(door.getBaseUrl());
+    }
+
+    public synchronized void addAll(List<Visit> visits) {
+        for (int i = 0; i < visits.size(); i++) {
+            add(visits.get(i));
+        }
+    }
+
+    // false - визит уже учтен, без времени или старше окна
+    public synchronized boolean add(Visit visit) {
+        long millis = visit.getTimestampMillis();
+        if (millis == VisitFormat.INVALID_TIMESTAMP || counted.contains(visit.getId())) {
+            return false;
+        }
+        counted.add(visit.getId(), visit.getId());
+        long day = Math.floorDiv(millis, MILLIS_PER_DAY);
+        if (newestDay == NO_DAY || day > newestDay) {
+            advanceTo(day);
+        } else if (day <= newestDay - days) {
+            return false;
+        }
+        int slot = (int) Math.floorMod(day, (long) days);
+        int hour = (int) (Math.floorMod(millis, MILLIS_PER_DAY) / MILLIS_PER_HOUR);
+        dayCounts[slot]++;
+        dayHourCounts[slot * HOURS + hour]++;
+        hourCounts[hour]++;
+        total++;
+        return true;
+    }
+
+    public int getWeeks() {
+        return days / 7;
+    }
+
+    public synchronized int getTotal() {
+        return total;
+    }
+
+    public synchronized boolean isEmpty() {
+        return newestDay == NO_DAY;
+    }
+
+    // Начало окна; визиты раньше уже не учитываются, дальше их догружать незачем
+    public synchronized long windowStartMillis() {
+        return newestDay == NO_DAY ? Long.MIN_VALUE : (newestDay - days + 1) * MILLIS_PER_DAY;
+    }
+
+    public synchronized long newestDayMillis() {
+        return newestDay == NO_DAY ? Long.MIN_VALUE : newestDay * MILLIS_PER_DAY;
+    }
+
+    // Копия: звонки по часам суток за все окно
+    public synchronized int[] hourHistogram() {
+        return hourCounts.clone();
+    }
+
+    // Копия: звонки по дням окна, от самого старого дня к самому новому
+    public synchronized int[] dayHistogram() {
+        int[] result = new int[days];
+        if (newestDay == NO_DAY) {
+            return result;
+        }
+        for (int i = 0; i < days; i++) {
+            result[i] = dayCounts[(int) Math.floorMod(newestDay - days + 1 + i, (long) days)];
+        }
+        return result;
+    }
+
+    // Наибольший id не больше atMost, который еще не учтен: с него продолжает догрузка
+    synchronized long highestUncounted(long atMost) {
+        return counted.highestMissing(atMost);
+    }
+
+    // Новые дни занимают слоты ушедших из окна; часы ушедших дней вычитаются из сумм
+    private void advanceTo(long day) {
+        long first = newestDay == NO_DAY ? day - days + 1 : Math.max(newestDay + 1, day - days + 1);
+        for (long d = first; d <= day; d++) {
+            int slot = (int) Math.floorMod(d, (long) days);
+            if (dayOfSlot[slot] != NO_DAY) {
+                total -= dayCounts[slot];
+                for (int hour = 0; hour < HOURS; hour++) {
+                    hourCounts[hour] -= dayHourCounts[slot * HOURS + hour];
+                    dayHourCounts[slot * HOURS + hour] = 0;
+                }
+                dayCounts[slot] = 0;
+            }
+            dayOfSlot[slot] = d;
+        }
+        newestDay = day;
+    }
+}
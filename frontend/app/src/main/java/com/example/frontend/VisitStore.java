@@ -0,0 +1,426 @@
+package com.example.frontend;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+// История по столбцам: id в int[], время в long[], вход - байтом в таблицу входов, от имени фото -
+// только остаток после общего префикса в байтах UTF-8. Ссылка на скачивание не хранится, а собирается из id, как в VisitBinaryCodec.
+// Столбцы растут блоками по CHUNK строк: при росте заполненные блоки не копируются.
+// get() отдает легкую строку-представление; она и строки времени и адресов собираются при первом
+// обращении и запоминаются по индексу, так что bind и сравнение в AsyncListDiffer их не пересобирают.
+// Наполняется до публикации, дальше только читается - в том числе из потока AsyncListDiffer
+public final class VisitStore extends AbstractList<Visit> implements RandomAccess {
+    static final int CHUNK = 1024;
+
+    private int[][] ids = new int[0][];
+    private long[][] millis = new long[0][];
+    // Конец остатка имени фото в байтах блока; у визита без фото - ~конец
+    private int[][] photoEnds = new int[0][];
+    private byte[][] photoBytes = new byte[0][];
+    // Номер входа в doorTable плюс один, 0 - визит без входа
+    private byte[][] doorSlots = new byte[0][];
+    private Door[] doorTable = new Door[0];
+    private int size;
+
+    // Собранные при чтении представления и строки; блоки заводятся при первом обращении.
+    // Их могут заполнять одновременно главный поток и поток differ: объекты неизменяемы,
+    // и худшее, что случится при гонке, - одна строка соберется дважды
+    private Row[][] rows = new Row[0][];
+    private String[][] displayTexts = new String[0][];
+    private String[][] photoKeys = new String[0][];
+    private String[][] downloadUrls = new String[0][];
+
+    private String photoPrefix;
+    private String downloadPrefix;
+    private String downloadSuffix;
+    // Визиты, которые не ложатся в столбцы (чужой адрес, неразобранное время), храним целиком
+    private Map<Integer, Visit> irregular = Collections.emptyMap();
+
+    public static VisitStore copyOf(List<Visit> visits) {
+        VisitStore store = new VisitStore();
+        store.appendAll(visits);
+        return store;
+    }
+
+    public void appendAll(List<Visit> visits) {
+        if (visits instanceof VisitStore) {
+            VisitStore other = (VisitStore) visits;
+            for (int i = 0; i < other.size; i++) {
+                appendFrom(other, i);
+            }
+            return;
+        }
+        for (Visit visit : visits) {
+            append(visit);
+        }
+    }
+
+    public void append(Visit visit) {
+        if (visit instanceof Row) {
+            Row row = (Row) visit;
+            appendFrom(row.store, row.index);
+            return;
+        }
+        appendFields(visit);
+    }
+
+    private void appendFields(Visit visit) {
+        int chunk = ensureCapacity();
+        int row = size % CHUNK;
+        ids[chunk][row] = visit.getId();
+        millis[chunk][row] = visit.getTimestampMillis();
+        String key = visit.getPhotoKey();
+        int door = doorSlot(visit.getDoor());
+        doorSlots[chunk][row] = (byte) Math.max(0, door);
+        boolean regular = door >= 0 && visit.getTimestampMillis() != VisitFormat.INVALID_TIMESTAMP
+                && isDerivedDownloadUrl(visit.getId(), visit.getPhotoDownloadUrl())
+                && (key == null || key.startsWith(photoPrefix(key)));
+        if (regular) {
+            putPhoto(chunk, row, key == null ? null : key.substring(photoPrefix.length()).getBytes(StandardCharsets.UTF_8));
+        } else {
+            putPhoto(chunk, row, null);
+            putIrregular(size, visit);
+        }
+        size++;
+    }
+
+    @Override
+    public Visit get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        // Без чужих визитов не упаковываем индекс в Integer на каждый bind
+        Visit visit = irregular.isEmpty() ? null : irregular.get(index);
+        if (visit != null) {
+            return visit;
+        }
+        int chunk = index / CHUNK;
+        Row[] views = rows[chunk];
+        if (views == null) {
+            views = new Row[CHUNK];
+            rows[chunk] = views;
+        }
+        Row row = views[index % CHUNK];
+        if (row == null) {
+            row = new Row(this, index);
+            views[index % CHUNK] = row;
+        }
+        return row;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int idAt(int index) {
+        return ids[index / CHUNK][index % CHUNK];
+    }
+
+    public long timestampMillisAt(int index) {
+        return millis[index / CHUNK][index % CHUNK];
+    }
+
+    private Door doorAt(int index) {
+        int slot = doorSlots[index / CHUNK][index % CHUNK];
+        return slot == 0 ? null : doorTable[slot - 1];
+    }
+
+    private String displayTimestampAt(int index) {
+        String text = cached(displayTexts, index);
+        if (text == null) {
+            text = VisitFormat.formatTimestamp(timestampMillisAt(index));
+            cache(displayTexts, index, text);
+        }
+        return text;
+    }
+
+    private String photoKeyAt(int index) {
+        int chunk = index / CHUNK;
+        int row = index % CHUNK;
+        int end = photoEnds[chunk][row];
+        if (end < 0) {
+            return null;
+        }
+        String key = cached(photoKeys, index);
+        if (key == null) {
+            int start = row == 0 ? 0 : endOf(photoEnds[chunk][row - 1]);
+            key = photoPrefix.concat(new String(photoBytes[chunk], start, end - start, StandardCharsets.UTF_8));
+            cache(photoKeys, index, key);
+        }
+        return key;
+    }
+
+    private String downloadUrlAt(int index) {
+        String url = cached(downloadUrls, index);
+        if (url == null) {
+            url = downloadPrefix + idAt(index) + downloadSuffix;
+            cache(downloadUrls, index, url);
+        }
+        return url;
+    }
+
+    private static String cached(String[][] column, int index) {
+        String[] chunk = column[index / CHUNK];
+        return chunk == null ? null : chunk[index % CHUNK];
+    }
+
+    private static void cache(String[][] column, int index, String value) {
+        int chunk = index / CHUNK;
+        String[] values = column[chunk];
+        if (values == null) {
+            values = new String[CHUNK];
+            column[chunk] = values;
+        }
+        values[index % CHUNK] = value;
+    }
+
+    // Окно PagingEngine пересобирается из страниц при каждом изменении: уже собранные строки
+    // переходят в новое хранилище вместе со столбцами. Вызывается только при общих префиксах
+    private void carryStrings(VisitStore other, int otherIndex, int index) {
+        String text = cached(other.displayTexts, otherIndex);
+        if (text != null) {
+            cache(displayTexts, index, text);
+        }
+        String key = cached(other.photoKeys, otherIndex);
+        if (key != null) {
+            cache(photoKeys, index, key);
+        }
+        String url = cached(other.downloadUrls, otherIndex);
+        if (url != null) {
+            cache(downloadUrls, index, url);
+        }
+    }
+
+    // Строка другого хранилища: при общих префиксах переносим байты без сборки строк
+    private void appendFrom(VisitStore other, int index) {
+        Visit whole = other.irregular.get(index);
+        int otherChunk = index / CHUNK;
+        int otherRow = index % CHUNK;
+        int otherEnd = other.photoEnds[otherChunk][otherRow];
+        int door = whole == null ? doorSlot(other.doorAt(index)) : -1;
+        if (door < 0 || !adoptPrefixes(other, otherEnd >= 0)) {
+            // Строка соберется из полей: представление other.get() снова привело бы сюда
+            appendFields(whole != null ? whole : other.get(index));
+            return;
+        }
+        int chunk = ensureCapacity();
+        int row = size % CHUNK;
+        ids[chunk][row] = other.ids[otherChunk][otherRow];
+        millis[chunk][row] = other.millis[otherChunk][otherRow];
+        doorSlots[chunk][row] = (byte) door;
+        if (otherEnd < 0) {
+            putPhoto(chunk, row, null);
+        } else {
+            int otherStart = otherRow == 0 ? 0 : endOf(other.photoEnds[otherChunk][otherRow - 1]);
+            putPhoto(chunk, row, Arrays.copyOfRange(other.photoBytes[otherChunk], otherStart, otherEnd));
+        }
+        carryStrings(other, index, size);
+        size++;
+    }
+
+    private boolean adoptPrefixes(VisitStore other, boolean hasPhoto) {
+        if (downloadPrefix == null) {
+            downloadPrefix = other.downloadPrefix;
+            downloadSuffix = other.downloadSuffix;
+        }
+        if (hasPhoto && photoPrefix == null) {
+            photoPrefix = other.photoPrefix;
+        }
+        return downloadPrefix.equals(other.downloadPrefix) && downloadSuffix.equals(other.downloadSuffix)
+                && (!hasPhoto || photoPrefix.equals(other.photoPrefix));
+    }
+
+    // Входов единицы; если их больше, чем помещается в байт, визит уйдет в irregular
+    private int doorSlot(Door door) {
+        if (door == null) {
+            return 0;
+        }
+        for (int i = 0; i < doorTable.length; i++) {
+            if (doorTable[i] == door) {
+                return i + 1;
+            }
+        }
+        if (doorTable.length == Byte.MAX_VALUE) {
+            return -1;
+        }
+        doorTable = Arrays.copyOf(doorTable, doorTable.length + 1);
+        doorTable[doorTable.length - 1] = door;
+        return doorTable.length;
+    }
+
+    // Общий префикс - каталог первого фото, у бэкенда это "photos/"
+    private String photoPrefix(String key) {
+        if (photoPrefix == null) {
+            photoPrefix = key.substring(0, key.lastIndexOf('/') + 1);
+        }
+        return photoPrefix;
+    }
+
+    // Адрес вида префикс + id + суффикс; префикс и суффикс берем у первого визита
+    private boolean isDerivedDownloadUrl(int id, String url) {
+        if (url == null || id < 0) {
+            return false;
+        }
+        if (downloadPrefix == null) {
+            String digits = Integer.toString(id);
+            int at = url.lastIndexOf(digits);
+            if (at < 0) {
+                return false;
+            }
+            downloadPrefix = url.substring(0, at);
+            downloadSuffix = url.substring(at + digits.length());
+            return true;
+        }
+        int from = downloadPrefix.length();
+        int to = url.length() - downloadSuffix.length();
+        if (to <= from || to - from > 10 || (url.charAt(from) == '0' && to - from > 1)
+                || !url.startsWith(downloadPrefix) || !url.endsWith(downloadSuffix)) {
+            return false;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value == id;
+    }
+
+    private int ensureCapacity() {
+        int chunk = size / CHUNK;
+        if (chunk == ids.length) {
+            ids = Arrays.copyOf(ids, chunk + 1);
+            millis = Arrays.copyOf(millis, chunk + 1);
+            photoEnds = Arrays.copyOf(photoEnds, chunk + 1);
+            photoBytes = Arrays.copyOf(photoBytes, chunk + 1);
+            doorSlots = Arrays.copyOf(doorSlots, chunk + 1);
+            rows = Arrays.copyOf(rows, chunk + 1);
+            displayTexts = Arrays.copyOf(displayTexts, chunk + 1);
+            photoKeys = Arrays.copyOf(photoKeys, chunk + 1);
+            downloadUrls = Arrays.copyOf(downloadUrls, chunk + 1);
+            ids[chunk] = new int[CHUNK];
+            millis[chunk] = new long[CHUNK];
+            photoEnds[chunk] = new int[CHUNK];
+            photoBytes[chunk] = new byte[0];
+            doorSlots[chunk] = new byte[CHUNK];
+        }
+        return chunk;
+    }
+
+    private void putPhoto(int chunk, int row, byte[] rest) {
+        int start = row == 0 ? 0 : endOf(photoEnds[chunk][row - 1]);
+        if (rest == null) {
+            photoEnds[chunk][row] = ~start;
+            return;
+        }
+        int end = start + rest.length;
+        byte[] bytes = photoBytes[chunk];
+        if (end > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(end, bytes.length * 2));
+            photoBytes[chunk] = bytes;
+        }
+        System.arraycopy(rest, 0, bytes, start, rest.length);
+        photoEnds[chunk][row] = end;
+    }
+
+    private void putIrregular(int index, Visit visit) {
+        if (irregular.isEmpty()) {
+            irregular = new HashMap<>();
+        }
+        irregular.put(index, visit);
+    }
+
+    private static int endOf(int encoded) {
+        return encoded < 0 ? ~encoded : encoded;
+    }
+
+    // Представление строки: поля Visit не используются, все читается из столбцов хранилища
+    private static final class Row extends Visit {
+        final VisitStore store;
+        final int index;
+
+        Row(VisitStore store, int index) {
+            this.store = store;
+            this.index = index;
+        }
+
+        @Override
+        public int getId() {
+            return store.idAt(index);
+        }
+
+        @Override
+        public String getPhotoUrl() {
+            return store.downloadUrlAt(index);
+        }
+
+        @Override
+        public String getPhotoKey() {
+            return store.photoKeyAt(index);
+        }
+
+        @Override
+        public String getPhotoDownloadUrl() {
+            return store.downloadUrlAt(index);
+        }
+
+        @Override
+        public String getTimestamp() {
+            return VisitFormat.formatIsoTimestamp(getTimestampMillis());
+        }
+
+        @Override
+        public long getTimestampMillis() {
+            return store.timestampMillisAt(index);
+        }
+
+        @Override
+        public String getDisplayTimestamp() {
+            return store.displayTimestampAt(index);
+        }
+
+        @Override
+        public Door getDoor() {
+            return store.doorAt(index);
+        }
+
+        @Override
+        public void setDoor(Door door) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setId(int id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setPhotoUrl(String photo_url) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setPhotoDownloadUrl(String photo_download_url) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setTimestamp(String timestamp) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setTimestampMillis(long timestampMillis) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.frontend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Индекс времени визитов на устройстве. Строки отсортированы по (время, id) в параллельных
+// примитивных массивах и пополняются слиянием по мере прихода страниц; сами визиты лежат
+// по столбцам в VisitStore, индекс хранит номер строки. Запрос по периоду - два двоичных
+// поиска и проход только по найденному отрезку.
+// Отдельно помним интервалы id, которые уже целиком получены с сервера: по ним nextGap()
+// решает, что догрузить. id на Pi растут вместе со временем визита - на этом держатся и
+// границы периода в id, и оценка id по времени. Не потокобезопасен: работает на главном потоке
+public final class VisitTimeIndex {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final long NO_ESTIMATE = Long.MIN_VALUE;
+
+    private long[] millis = new long[INITIAL_CAPACITY];
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private int size;
+    private final VisitStore visits = new VisitStore();
+
+    // Интервалы id, полученные с сервера целиком
+    private final IdRanges covered = new IdRanges();
+
+    // Запрос истории, который закроет следующий недостающий интервал
+    public static final class Gap {
+        public final Integer beforeId;
+        public final Integer afterId;
+
+        Gap(Integer beforeId, Integer afterId) {
+            this.beforeId = beforeId;
+            this.afterId = afterId;
+        }
+
+        @Override
+        public String toString() {
+            return "before_id=" + beforeId + ", after_id=" + afterId;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Визиты без курсора (кэш, поток событий): что лежит между ними на сервере, неизвестно
+    public void addAll(List<Visit> page) {
+        insert(page);
+    }
+
+    // Ответ getVisitHistory(limit, beforeId, afterId): кроме визитов запоминаем закрытый им интервал id
+    public void addPage(List<Visit> page, Integer beforeId, Integer afterId, int limit) {
+        insert(page);
+        long upper = beforeId != null ? beforeId - 1L : Integer.MAX_VALUE;
+        long lower;
+        if (page.size() < limit) {
+            lower = afterId != null ? afterId + 1L : Integer.MIN_VALUE;
+        } else {
+            // Полная страница - самые новые id ниже beforeId, что старше нее, неизвестно
+            lower = Integer.MAX_VALUE;
+            for (Visit visit : page) {
+                lower = Math.min(lower, visit.getId());
+            }
+        }
+        if (lower <= upper) {
+            covered.add(lower, upper);
+        }
+    }
+
+    // Визиты периода с подходящим временем суток, от новых к старым
+    public VisitStore query(VisitFilter filter) {
+        int from = lowerBound(filter.getFromMillis(), Integer.MIN_VALUE);
+        int to = lowerBound(filter.getToMillis(), Integer.MIN_VALUE);
+        VisitStore result = new VisitStore();
+        for (int i = to - 1; i >= from; i--) {
+            if (filter.matchesTimeOfDay(millis[i])) {
+                result.append(visits.get(rows[i]));
+            }
+        }
+        return result;
+    }
+
+    // Что догрузить для фильтра, или null, если все визиты периода уже в индексе.
+    // Период в id ограничен ближайшими проиндексированными визитами до и после него;
+    // из этого диапазона берем самый новый еще не полученный интервал
+    public Gap nextGap(VisitFilter filter, int pageSize) {
+        int from = lowerBound(filter.getFromMillis(), Integer.MIN_VALUE);
+        int to = lowerBound(filter.getToMillis(), Integer.MIN_VALUE);
+        long lo = from > 0 ? ids[from - 1] + 1L : Integer.MIN_VALUE;
+        long hi = to < size ? ids[to] - 1L : Integer.MAX_VALUE;
+
+        long gapHi = covered.highestMissing(hi);
+        if (gapHi < lo) {
+            return null;
+        }
+        long below = covered.endBelow(gapHi);
+        long gapLo = below != IdRanges.NONE ? Math.max(lo, below + 1) : lo;
+
+        long requestHi = gapHi;
+        if (gapHi - gapLo >= pageSize) {
+            // Интервал длиннее страницы: прыгаем к оценке id конца периода, а не листаем сверху
+            long estimate = estimateId(filter.getToMillis());
+            if (estimate != NO_ESTIMATE) {
+                requestHi = Math.max(gapLo + pageSize - 1, Math.min(gapHi, estimate + pageSize / 4));
+            }
+        }
+        return new Gap(requestHi >= Integer.MAX_VALUE ? null : (int) (requestHi + 1),
+                gapLo <= Integer.MIN_VALUE ? null : (int) (gapLo - 1));
+    }
+
+    // id визита в момент time по двум соседним визитам индекса, за краями - по общему темпу звонков
+    long estimateId(long time) {
+        if (size < 2) {
+            return NO_ESTIMATE;
+        }
+        int at = lowerBound(time, Integer.MIN_VALUE);
+        int a = at > 0 && at < size ? at - 1 : 0;
+        int b = at > 0 && at < size ? at : size - 1;
+        if (millis[b] == millis[a]) {
+            return ids[Math.min(at, size - 1)];
+        }
+        double perMilli = (double) (ids[b] - ids[a]) / (millis[b] - millis[a]);
+        double estimate = ids[a] + (time - millis[a]) * perMilli;
+        return (long) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, estimate));
+    }
+
+    private int lowerBound(long time, int id) {
+        return lowerBound(time, id, size);
+    }
+
+    // Первая из строк [0, limit) с ключом не меньше (time, id)
+    private int lowerBound(long time, int id, int limit) {
+        int lo = 0;
+        int hi = limit;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (millis[mid] < time || (millis[mid] == time && ids[mid] < id)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private boolean contains(long time, int id) {
+        int at = lowerBound(time, id);
+        return at < size && millis[at] == time && ids[at] == id;
+    }
+
+    private void insert(List<Visit> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        List<Visit> sorted = new ArrayList<>(page);
+        Collections.sort(sorted, VisitMerge.NEWEST_FIRST);
+        long[] newMillis = new long[sorted.size()];
+        int[] newIds = new int[sorted.size()];
+        int[] newRows = new int[sorted.size()];
+        int count = 0;
+        // От старых к новым; без времени визит в период не попадет, повторы отбрасываем
+        for (int i = sorted.size() - 1; i >= 0; i--) {
+            Visit visit = sorted.get(i);
+            long time = visit.getTimestampMillis();
+            int id = visit.getId();
+            if (time == VisitFormat.INVALID_TIMESTAMP || contains(time, id)
+                    || (count > 0 && newMillis[count - 1] == time && newIds[count - 1] == id)) {
+                continue;
+            }
+            newMillis[count] = time;
+            newIds[count] = id;
+            newRows[count] = visits.size();
+            visits.append(visit);
+            count++;
+        }
+        ensureCapacity(size + count);
+        // Слияние с конца блоками: страница новее всего индекса просто дописывается в хвост
+        int end = size + count;
+        int existing = size;
+        for (int j = count - 1; j >= 0; j--) {
+            int at = lowerBound(newMillis[j], newIds[j], existing);
+            int moved = existing - at;
+            if (moved > 0) {
+                end -= moved;
+                System.arraycopy(millis, at, millis, end, moved);
+                System.arraycopy(ids, at, ids, end, moved);
+                System.arraycopy(rows, at, rows, end, moved);
+                existing = at;
+            }
+            end--;
+            millis[end] = newMillis[j];
+            ids[end] = newIds[j];
+            rows[end] = newRows[j];
+        }
+        size += count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= millis.length) {
+            return;
+        }
+        int grown = Math.max(capacity, millis.length * 2);
+        millis = Arrays.copyOf(millis, grown);
+        ids = Arrays.copyOf(ids, grown);
+        rows = Arrays.copyOf(rows, grown);
+    }
+}
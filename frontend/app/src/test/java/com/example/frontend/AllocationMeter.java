@@ -0,0 +1,15 @@
+package com.example.frontend;
+
+import java.lang.management.ManagementFactory;
+
+final class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private AllocationMeter() {
+    }
+
+    static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class ApiServiceConnectionTest {
+    private MockWebServer server;
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        baseUrl = server.url("").toString().replaceAll("/$", "");
+        HttpClientProvider.get().connectionPool().evictAll();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void sharesClientBetweenServices() {
+        assertSame(HttpClientProvider.get(), HttpClientProvider.get());
+        assertSame(HttpClientProvider.get().connectionPool(), HttpClientProvider.quick().connectionPool());
+        assertSame(HttpClientProvider.get().connectionPool(), HttpClientProvider.slow().connectionPool());
+        assertSame(HttpClientProvider.get().dispatcher(), HttpClientProvider.slow().dispatcher());
+    }
+
+    @Test
+    public void reusesConnectionAcrossServiceInstances() throws Exception {
+        int requests = 5;
+        long[] latencies = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            server.enqueue(new MockResponse().setBody("{\"message\":\"ok\"}"));
+        }
+
+        for (int i = 0; i < requests; i++) {
+            // Каждая итерация имитирует новый экран со своим ApiService; без окна схлопывания открытий
+            ApiService apiService = new ApiService(baseUrl, Runnable::run, 0);
+            long start = System.nanoTime();
+            unlockAndWait(apiService);
+            latencies[i] = System.nanoTime() - start;
+            apiService.shutdown();
+            awaitIdleConnection();
+        }
+
+        for (int i = 0; i < requests; i++) {
+            assertEquals(i, server.takeRequest().getSequenceNumber());
+        }
+        assertEquals(1, HttpClientProvider.get().connectionPool().connectionCount());
+
+        long warm = 0;
+        for (int i = 1; i < requests; i++) {
+            warm += latencies[i];
+        }
+        System.out.printf("first request: %.2f ms, following requests (avg): %.2f ms%n",
+                latencies[0] / 1e6, warm / 1e6 / (requests - 1));
+    }
+
+    @Test
+    public void nullRingBodyReportsError() throws Exception {
+        server.enqueue(new MockResponse().setBody("null"));
+        ApiService apiService = new ApiService(baseUrl, Runnable::run);
+        CountDownLatch latch = new CountDownLatch(1);
+        String[] error = new String[1];
+        apiService.ringDoorbell(new ApiService.ApiCallback<Visit>() {
+            @Override
+            public void onSuccess(Visit result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNotNull(error[0]);
+        apiService.shutdown();
+    }
+
+    // Колбэк приходит до закрытия Response, поэтому ждем возврата соединения в пул
+    private void awaitIdleConnection() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (HttpClientProvider.get().connectionPool().idleConnectionCount() == 0
+                && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void unlockAndWait(ApiService apiService) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        String[] error = new String[1];
+        apiService.unlockDoor(new ApiService.ApiCallback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNull(error[0]);
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class ApiServiceLifecycleTest {
+    private MockWebServer server;
+    // Ответы сервера ждут, пока тест их не отпустит
+    private final CountDownLatch serverRelease = new CountDownLatch(1);
+    private volatile boolean hold = true;
+    // Очередь главного потока: колбэки выполняются только по drainMainThread()
+    private final LinkedBlockingQueue<Runnable> mainThread = new LinkedBlockingQueue<>();
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (hold) {
+                    serverRelease.await(10, TimeUnit.SECONDS);
+                }
+                if (request.getPath().startsWith("/doorbell/events")) {
+                    return new MockResponse().setHeader("Content-Type", "text/event-stream").setBody(":\n\n");
+                }
+                if (request.getPath().startsWith("/doorbell/history")) {
+                    return new MockResponse().setBody("[]");
+                }
+                return new MockResponse().setBody("{\"message\":\"ok\"}");
+            }
+        });
+        server.start();
+        baseUrl = server.url("").toString().replaceAll("/$", "");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverRelease.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void shutdownCancelsInFlightCalls() throws Exception {
+        ApiService apiService = new ApiService(baseUrl, mainThread::add);
+        AtomicInteger callbacks = new AtomicInteger();
+        // Оба слота HISTORY заняты запросами, на которые сервер не отвечает
+        apiService.getVisitHistory(20, 100, 50, counting(callbacks));
+        apiService.getVisitHistory(20, 50, 10, counting(callbacks));
+        awaitRequests(2);
+        assertEquals(2, apiService.activeRequestCount());
+
+        apiService.shutdown();
+        assertEquals(0, apiService.activeRequestCount());
+
+        // Если бы вызовы не отменились, слоты освободились бы только через 10 с
+        hold = false;
+        ApiService next = new ApiService(baseUrl, Runnable::run);
+        CountDownLatch loaded = new CountDownLatch(1);
+        next.getVisitHistory(20, null, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> result) {
+                loaded.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+            }
+        });
+        assertTrue(loaded.await(3, TimeUnit.SECONDS));
+        next.shutdown();
+
+        Thread.sleep(100);
+        drainMainThread();
+        assertEquals(0, callbacks.get());
+    }
+
+    @Test
+    public void responseQueuedForMainThreadIsDroppedAfterCancel() throws Exception {
+        hold = false;
+        ApiService apiService = new ApiService(baseUrl, mainThread::add);
+        AtomicInteger callbacks = new AtomicInteger();
+        RequestHandle cancelled = apiService.getVisitHistory(20, null, counting(callbacks));
+        apiService.ringDoorbell(countingVisit(callbacks));
+
+        // Оба ответа пришли и ждут главного потока, но экран успели закрыть
+        awaitQueued(2);
+        cancelled.cancel();
+        apiService.shutdown();
+        drainMainThread();
+        assertEquals(0, callbacks.get());
+    }
+
+    @Test
+    public void destroyedScreenIsNotRetained() throws Exception {
+        ApiService apiService = new ApiService(baseUrl, mainThread::add);
+        Screen screen = new Screen();
+        WeakReference<Screen> screenRef = new WeakReference<>(screen);
+
+        // В полете: два диапазона истории, звонок, открытие двери и поток событий;
+        // третий диапазон ждет в очереди планировщика
+        apiService.getVisitHistory(20, 100, 50, screen.historyCallback());
+        apiService.getVisitHistory(20, 50, 10, screen.historyCallback());
+        apiService.getVisitHistory(20, 10, 1, screen.historyCallback());
+        apiService.ringDoorbell(screen.ringCallback());
+        PreparedUnlock prepared = apiService.prepareUnlock();
+        apiService.unlockDoor(prepared, screen.unlockCallback());
+        apiService.openEventStream(null, screen.eventListener());
+        awaitRequests(5);
+
+        apiService.shutdown();
+        screen = null;
+        prepared = null;
+
+        for (int i = 0; i < 50 && screenRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull("ApiService still reaches the destroyed screen", screenRef.get());
+
+        drainMainThread();
+        assertEquals(0, Screen.callbacks.get());
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getRequestCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, server.getRequestCount());
+    }
+
+    private void awaitQueued(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mainThread.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, mainThread.size());
+    }
+
+    private void drainMainThread() {
+        Runnable task;
+        while ((task = mainThread.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static ApiService.ApiCallback<List<Visit>> counting(AtomicInteger callbacks) {
+        return new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> result) {
+                callbacks.incrementAndGet();
+            }
+
+            @Override
+            public void onError(String error) {
+                callbacks.incrementAndGet();
+            }
+        };
+    }
+
+    private static ApiService.ApiCallback<Visit> countingVisit(AtomicInteger callbacks) {
+        return new ApiService.ApiCallback<Visit>() {
+            @Override
+            public void onSuccess(Visit result) {
+                callbacks.incrementAndGet();
+            }
+
+            @Override
+            public void onError(String error) {
+                callbacks.incrementAndGet();
+            }
+        };
+    }
+
+    // Экран, на который ссылаются колбэки, как анонимные классы в активити
+    private static class Screen {
+        static final AtomicInteger callbacks = new AtomicInteger();
+        // Чтобы удержание было заметно по памяти, а не только по WeakReference
+        final byte[] views = new byte[1 << 20];
+
+        void onCallback() {
+            callbacks.incrementAndGet();
+        }
+
+        ApiService.ApiCallback<List<Visit>> historyCallback() {
+            return new ApiService.ApiCallback<List<Visit>>() {
+                @Override
+                public void onSuccess(List<Visit> result) {
+                    onCallback();
+                }
+
+                @Override
+                public void onError(String error) {
+                    onCallback();
+                }
+            };
+        }
+
+        ApiService.ApiCallback<Visit> ringCallback() {
+            return new ApiService.ApiCallback<Visit>() {
+                @Override
+                public void onSuccess(Visit result) {
+                    onCallback();
+                }
+
+                @Override
+                public void onError(String error) {
+                    onCallback();
+                }
+            };
+        }
+
+        ApiService.ApiCallback<String> unlockCallback() {
+            return new ApiService.ApiCallback<String>() {
+                @Override
+                public void onSuccess(String result) {
+                    onCallback();
+                }
+
+                @Override
+                public void onError(String error) {
+                    onCallback();
+                }
+            };
+        }
+
+        VisitEventStream.Listener eventListener() {
+            return new VisitEventStream.Listener() {
+                @Override
+                public void onVisit(Visit visit) {
+                    onCallback();
+                }
+
+                @Override
+                public void onConnectionChanged(boolean connected) {
+                    onCallback();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.frontend;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AppLogTest {
+    private static final int CALLS = 100_000;
+
+    private final List<String> lines = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        AppLog.setSink(null);
+    }
+
+    @Test
+    public void disabledDebugDoesNotAllocate() {
+        AppLog.setSink((priority, tag, message) -> lines.add(message));
+        AppLog log = AppLog.get("ApiService");
+        log.setLevel(Log.INFO);
+        List<Visit> visits = Arrays.asList(new Visit[20]);
+        String url = "http://192.168.1.50:8000/doorbell/history?limit=20&before_id=123456";
+
+        // Прогрев: классы загружены, JIT отработал
+        for (int i = 0; i < CALLS; i++) {
+            logHistoryPage(log, visits, url, i);
+            concatenated(visits, url, i);
+        }
+        long before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < CALLS; i++) {
+            concatenated(visits, url, i);
+        }
+        long concatenatedBytes = AllocationMeter.allocatedBytes() - before;
+        long start = System.nanoTime();
+        before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < CALLS; i++) {
+            logHistoryPage(log, visits, url, i);
+        }
+        long disabledBytes = AllocationMeter.allocatedBytes() - before;
+        long disabledNanos = System.nanoTime() - start;
+
+        System.out.printf("debug off, per history page: %d B with concatenation, %d B and %d ns through AppLog%n",
+                concatenatedBytes / CALLS, disabledBytes / CALLS, disabledNanos / CALLS);
+        assertTrue(lines.isEmpty());
+        assertTrue(concatenatedBytes / CALLS > 100);
+        assertTrue(disabledBytes < 1024);
+    }
+
+    @Test
+    public void enabledDebugFormatsAndTruncatesLongValues() {
+        AppLog.setSink((priority, tag, message) -> lines.add(tag + " " + priority + " " + message));
+        AppLog log = AppLog.get("ApiService");
+        log.setLevel(Log.DEBUG);
+        char[] body = new char[5000];
+        Arrays.fill(body, 'x');
+
+        log.d("History page: {} visits", 20);
+        log.d("Unlock response in {} ms ({})", 42, "prewarmed");
+        log.d("Response body: {}", new String(body));
+        log.d(() -> new String(body));
+
+        assertEquals("ApiService 3 History page: 20 visits", lines.get(0));
+        assertEquals("ApiService 3 Unlock response in 42 ms (prewarmed)", lines.get(1));
+        assertEquals("ApiService 3 Response body: " + new String(body, 0, AppLog.MAX_VALUE_CHARS) + "…(+4800)",
+                lines.get(2));
+        assertTrue(lines.get(3).endsWith("…(+" + (5000 - AppLog.MAX_VALUE_CHARS * 4) + ")"));
+    }
+
+    @Test
+    public void sampledLogKeepsEveryNthDebugLineAndAllErrors() {
+        AppLog.setSink((priority, tag, message) -> lines.add(priority + " " + message));
+        AppLog log = AppLog.sampled("PhotoLoad", 10);
+        log.setLevel(Log.DEBUG);
+
+        for (int i = 0; i < 100; i++) {
+            log.d("visit {}: ready", i);
+        }
+        log.e("decode failed", null);
+
+        assertEquals(11, lines.size());
+        assertEquals("3 visit 0: ready", lines.get(0));
+        assertEquals("3 visit 90: ready", lines.get(9));
+        assertEquals("6 decode failed", lines.get(10));
+    }
+
+    private static void logHistoryPage(AppLog log, List<Visit> visits, String url, int i) {
+        log.d("History page: {} visits", visits.size());
+        log.d("Unlock response in {} ms ({})", i, "prewarmed");
+        log.d("Loading photo from URL: {}", url);
+    }
+
+    // Как логировали раньше: строка собирается до вызова, даже если logcat ее отбросит
+    private static void concatenated(List<Visit> visits, String url, int i) {
+        Log.d("ApiService", "History page: " + visits.size() + " visits");
+        Log.d("ApiService", "Unlock response in " + i + " ms (" + "prewarmed" + ")");
+        Log.d("ApiService", "Loading photo from URL: " + url);
+    }
+}
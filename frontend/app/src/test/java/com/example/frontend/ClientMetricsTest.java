@@ -0,0 +1,144 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.EventListener;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class ClientMetricsTest {
+    private static final int SAMPLES = 200_000;
+
+    @After
+    public void tearDown() {
+        ClientMetrics.setEnabled(false);
+    }
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        long[] values = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            // Логнормальное распределение с хвостом, как у сетевых задержек: медиана ~20 мс
+            values[i] = (long) Math.exp(Math.log(20_000) + random.nextGaussian());
+            histogram.recordMicros(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * SAMPLES) - 1];
+            long reported = histogram.percentileMicros(percentile);
+            assertTrue("p" + percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue("p" + percentile + ": " + reported + " vs " + exact, reported <= exact + exact / 16 + 1);
+        }
+        assertEquals(values[SAMPLES - 1], histogram.maxMicros());
+        assertEquals(SAMPLES, histogram.count());
+    }
+
+    @Test
+    public void bucketsCoverWholeRangeWithoutGaps() {
+        for (long micros = 0; micros < 1 << 20; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(micros <= LatencyHistogram.highestValueIn(bucket));
+            assertTrue(bucket == 0 || micros > LatencyHistogram.highestValueIn(bucket - 1));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        ClientMetrics.setEnabled(true);
+        // Прогрев: классы загружены, JIT отработал
+        for (int i = 0; i < SAMPLES; i++) {
+            ClientMetrics.record(ClientMetrics.Endpoint.HISTORY, ClientMetrics.Phase.PARSE, ClientMetrics.start());
+        }
+        long before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < SAMPLES; i++) {
+            ClientMetrics.record(ClientMetrics.Endpoint.HISTORY, ClientMetrics.Phase.PARSE, ClientMetrics.start());
+        }
+        long enabledBytes = AllocationMeter.allocatedBytes() - before;
+
+        ClientMetrics.setEnabled(false);
+        long start = System.nanoTime();
+        before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < SAMPLES; i++) {
+            ClientMetrics.record(ClientMetrics.Endpoint.HISTORY, ClientMetrics.Phase.PARSE, ClientMetrics.start());
+        }
+        long disabledBytes = AllocationMeter.allocatedBytes() - before;
+        long disabledNanos = System.nanoTime() - start;
+
+        System.out.println("metrics per timer: enabled " + enabledBytes / SAMPLES + " B, disabled "
+                + disabledBytes / SAMPLES + " B and " + disabledNanos / SAMPLES + " ns");
+        assertTrue(enabledBytes < 1024);
+        assertTrue(disabledBytes < 1024);
+        assertSame(EventListener.NONE, ClientMetrics.eventListenerFactory(ClientMetrics.Endpoint.OTHER)
+                .create(HttpClientProvider.get().newCall(new Request.Builder().url("http://localhost/").build())));
+    }
+
+    @Test
+    public void historyCallIsBrokenDownByPhase() throws Exception {
+        ClientMetrics.setEnabled(true);
+        ClientMetrics.reset();
+        MockWebServer server = new MockWebServer();
+        server.start();
+        StringBuilder body = new StringBuilder("[");
+        for (int id = 20; id > 0; id--) {
+            body.append(id < 20 ? "," : "").append(StubDoorbellBackend.visitJson(id));
+        }
+        server.enqueue(new MockResponse().setBody(body.append(']').toString())
+                .setHeadersDelay(30, TimeUnit.MILLISECONDS));
+        ApiService apiService = new ApiService(server.url("").toString().replaceAll("/$", ""), Runnable::run);
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            apiService.getVisitHistory(20, null, new ApiService.ApiCallback<List<Visit>>() {
+                @Override
+                public void onSuccess(List<Visit> result) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(String error) {
+                    fail(error);
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            awaitCalls(ClientMetrics.Endpoint.HISTORY, 1);
+        } finally {
+            apiService.shutdown();
+            server.shutdown();
+        }
+
+        ClientMetrics.Endpoint history = ClientMetrics.Endpoint.HISTORY;
+        for (ClientMetrics.Phase phase : new ClientMetrics.Phase[] {
+                ClientMetrics.Phase.TTFB, ClientMetrics.Phase.BODY, ClientMetrics.Phase.PARSE,
+                ClientMetrics.Phase.HANDOFF, ClientMetrics.Phase.CALL}) {
+            assertEquals(phase.toString(), 1, ClientMetrics.histogram(history, phase).count());
+        }
+        assertTrue(ClientMetrics.histogram(history, ClientMetrics.Phase.TTFB).maxMicros() >= 30_000);
+        assertTrue(ClientMetrics.bytes(history) > 0);
+        assertEquals(0, ClientMetrics.failures(history));
+        // Запрос помечен, поэтому в общий OTHER не попал
+        assertEquals(0, ClientMetrics.calls(ClientMetrics.Endpoint.OTHER));
+        System.out.print(ClientMetrics.dump());
+    }
+
+    // callEnd приходит при закрытии Response, уже после колбэка
+    private static void awaitCalls(ClientMetrics.Endpoint endpoint, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ClientMetrics.calls(endpoint) < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, ClientMetrics.calls(endpoint));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class HistoryPagingTest {
+    private static final int PAGE_SIZE = 20;
+    private static final int INITIAL_VISITS = 105;
+
+    private MockWebServer server;
+    private StubDoorbellBackend backend;
+    private ApiService apiService;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new StubDoorbellBackend();
+        backend.addVisits(INITIAL_VISITS);
+        server = new MockWebServer();
+        server.setDispatcher(backend);
+        server.start();
+        apiService = new ApiService(server.url("").toString().replaceAll("/$", ""), Runnable::run);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        apiService.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void cursorPagingSurvivesVisitsInsertedBetweenPages() throws Exception {
+        // После каждой страницы в дверь звонят еще дважды
+        backend.afterHistoryPage(() -> {
+            backend.addVisit();
+            backend.addVisit();
+        });
+
+        List<Visit> shown = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        Integer lastVisitId = null;
+        int pages = 0;
+        while (true) {
+            List<Visit> page = loadPage(lastVisitId);
+            pages++;
+            for (Visit visit : page) {
+                assertTrue("duplicate id " + visit.getId(), seen.add(visit.getId()));
+            }
+            shown = VisitMerge.merge(shown, page);
+            if (page.size() < PAGE_SIZE) {
+                break;
+            }
+            lastVisitId = page.get(page.size() - 1).getId();
+        }
+
+        assertEquals(INITIAL_VISITS / PAGE_SIZE + 1, pages);
+        assertEquals(INITIAL_VISITS, shown.size());
+        for (int id = 1; id <= INITIAL_VISITS; id++) {
+            assertTrue("missing id " + id, seen.contains(id));
+        }
+        for (int i = 1; i < shown.size(); i++) {
+            assertTrue(shown.get(i - 1).getId() > shown.get(i).getId());
+        }
+    }
+
+    private List<Visit> loadPage(Integer beforeId) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<Visit> result = new ArrayList<>();
+        String[] error = new String[1];
+        apiService.getVisitHistory(PAGE_SIZE, beforeId, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                result.addAll(visits);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNull(error[0]);
+        return result;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class HttpCacheTest {
+    private static final int PAGE = 20;
+    private static final int OPENS = 5;
+    private static final int THUMBNAIL_SIZE = 160;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private StubDoorbellBackend backend;
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new StubDoorbellBackend();
+        backend.addVisits(100);
+        server = new MockWebServer();
+        server.setDispatcher(backend);
+        server.start();
+        baseUrl = server.url("").toString().replaceAll("/$", "");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        closeCache();
+        HttpClientProvider.init((File) null);
+        server.shutdown();
+    }
+
+    @Test
+    public void repeatedOpensRevalidateHistoryAndSkipPhotos() throws Exception {
+        HttpClientProvider.init(folder.newFolder("http"));
+        openRepeatedly();
+        long cachedBytes = backend.bodyBytes();
+        int notModified = backend.notModified();
+        int photoRequests = backend.photoRequests();
+        int historyRequests = server.getRequestCount() - photoRequests;
+
+        closeCache();
+        HttpClientProvider.init((File) null);
+        server.shutdown();
+        setUp();
+        openRepeatedly();
+        long uncachedBytes = backend.bodyBytes();
+
+        System.out.printf("%d opens of history: %d KB without cache, %d KB with cache, "
+                        + "%d of %d history requests answered 304, %d photo requests%n",
+                OPENS, uncachedBytes / 1024, cachedBytes / 1024, notModified, historyRequests, photoRequests);
+        // Каждое открытие - две страницы. Заново скачаны только первое открытие и открытие после звонка:
+        // новый визит меняет первую страницу и сдвигает before_id второй
+        assertEquals(OPENS * 2 - 4, notModified);
+        // Фото неизменяемы: каждое превью скачано один раз, плюс новое после звонка
+        assertEquals(2 * PAGE + 1, photoRequests);
+        assertTrue(cachedBytes * 3 < uncachedBytes);
+    }
+
+    @Test
+    public void historyPageIsServedFromCacheAfterNotModified() throws Exception {
+        HttpClientProvider.init(folder.newFolder("http"));
+        List<Visit> first = history(null);
+        List<Visit> second = history(null);
+
+        assertEquals(1, backend.notModified());
+        assertEquals(PAGE, second.size());
+        assertEquals(first.get(0).getId(), second.get(0).getId());
+        assertEquals(1, HttpClientProvider.get().cache().hitCount());
+    }
+
+    private void openRepeatedly() throws Exception {
+        for (int open = 0; open < OPENS; open++) {
+            if (open == 3) {
+                // Между открытиями позвонили в дверь: первая страница изменилась
+                backend.addVisit();
+            }
+            openHistoryScreen();
+        }
+    }
+
+    // Экран истории: две страницы и превью к каждой строке, как их грузит Glide
+    private void openHistoryScreen() throws Exception {
+        List<Visit> page = history(null);
+        List<Visit> older = history(page.get(page.size() - 1).getId());
+        for (List<Visit> visits : Arrays.asList(page, older)) {
+            for (Visit visit : visits) {
+                Request request = new Request.Builder()
+                        .url(baseUrl + visit.getPhotoUrl() + "?size=" + THUMBNAIL_SIZE)
+                        .build();
+                try (Response response = HttpClientProvider.get().newCall(request).execute()) {
+                    assertEquals(200, response.code());
+                    assertEquals(StubDoorbellBackend.PHOTO_BYTES, response.body().bytes().length);
+                }
+            }
+        }
+    }
+
+    private List<Visit> history(Integer beforeId) throws InterruptedException {
+        ApiService apiService = new ApiService(baseUrl, Runnable::run);
+        @SuppressWarnings("unchecked")
+        List<Visit>[] result = new List[1];
+        CountDownLatch done = new CountDownLatch(1);
+        apiService.getVisitHistory(PAGE, beforeId, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                result[0] = visits;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                fail(error);
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        apiService.shutdown();
+        return result[0];
+    }
+
+    private static void closeCache() throws IOException {
+        if (HttpClientProvider.get().cache() != null) {
+            HttpClientProvider.get().cache().close();
+        }
+    }
+}
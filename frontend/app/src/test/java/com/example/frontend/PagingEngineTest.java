@@ -0,0 +1,288 @@
+package com.example.frontend;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PagingEngineTest {
+    private static final int VISIBLE_ROWS = 8;
+
+    @Test
+    public void scrollEventsNearEndIssueSinglePageRequest() {
+        Harness h = new Harness(1000, PagingEngine.MAX_WINDOW_ITEMS);
+        h.engine.start();
+        h.completeAll();
+        h.now += 16;
+        h.engine.onScrolled(0, VISIBLE_ROWS - 1, h.window.size());
+
+        for (int i = 0; i < 50; i++) {
+            h.now += 16;
+            h.engine.onScrolled(10, 10 + VISIBLE_ROWS - 1, h.window.size());
+        }
+
+        assertEquals(1, h.pending.size());
+    }
+
+    @Test
+    public void pageSizeFollowsScrollVelocity() {
+        Harness slow = new Harness(5000, PagingEngine.MAX_WINDOW_ITEMS);
+        slow.scroll(200, 1, 100);
+        Harness fast = new Harness(5000, PagingEngine.MAX_WINDOW_ITEMS);
+        fast.scroll(200, 4, 16);
+
+        System.out.println("Page size: " + slow.engine.pageSize() + " slow, " + fast.engine.pageSize() + " fast; round trips for 200 rows: "
+                + slow.requests + " slow, " + fast.requests + " fast");
+        assertEquals(PagingEngine.MIN_PAGE_SIZE, slow.engine.pageSize());
+        assertEquals(PagingEngine.MAX_PAGE_SIZE, fast.engine.pageSize());
+        assertTrue(fast.requests < slow.requests);
+    }
+
+    @Test
+    public void windowStaysBoundedAndDroppedPagesComeBack() {
+        Harness h = new Harness(2000, 200);
+        h.scroll(1500, 4, 16);
+
+        assertTrue("window " + h.window.size(), h.window.size() <= 200 + PagingEngine.MAX_PAGE_SIZE);
+        assertTrue(h.window.get(0).getId() < 2000);
+
+        // Возвращаемся к самому верху
+        h.scrollUpToTop(4, 16);
+
+        assertEquals(2000, h.window.get(0).getId());
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < h.window.size(); i++) {
+            int id = h.window.get(i).getId();
+            assertTrue("duplicate " + id, seen.add(id));
+            assertEquals(2000 - i, id);
+        }
+    }
+
+    @Test
+    public void failedPageIsRetriedWithBackoff() {
+        Harness h = new Harness(100, PagingEngine.MAX_WINDOW_ITEMS);
+        h.failures = 3;
+        h.engine.start();
+        h.completeAll();
+
+        assertEquals(3, h.delays.size());
+        assertEquals(Long.valueOf(500), h.delays.get(0));
+        assertEquals(Long.valueOf(1000), h.delays.get(1));
+        assertEquals(Long.valueOf(2000), h.delays.get(2));
+        assertEquals(PagingEngine.MIN_PAGE_SIZE, h.window.size());
+        assertTrue(h.errors.isEmpty());
+    }
+
+    @Test
+    public void giveUpAfterMaxAttemptsAndReportOnce() {
+        Harness h = new Harness(100, PagingEngine.MAX_WINDOW_ITEMS);
+        h.failures = Integer.MAX_VALUE;
+        h.engine.start();
+        h.completeAll();
+
+        assertEquals(PagingEngine.MAX_ATTEMPTS - 1, h.delays.size());
+        assertEquals(1, h.errors.size());
+        assertEquals(PagingEngine.MAX_ATTEMPTS, h.requests);
+
+        // Сразу после отказа прокрутка не запускает новую серию запросов
+        h.engine.onScrolled(0, 0, 0);
+        assertEquals(PagingEngine.MAX_ATTEMPTS, h.requests);
+    }
+
+    @Test
+    public void releaseDropsLateResponses() {
+        Harness h = new Harness(100, PagingEngine.MAX_WINDOW_ITEMS);
+        h.engine.start();
+        h.engine.release();
+        h.completeAll();
+
+        assertEquals(0, h.windowChanges);
+        assertTrue(h.cancelled);
+    }
+
+    @Test
+    public void newestVisitsMergeIntoHead() {
+        Harness h = new Harness(100, PagingEngine.MAX_WINDOW_ITEMS);
+        h.engine.start();
+        h.completeAll();
+
+        List<Visit> fresh = new ArrayList<>();
+        fresh.add(visit(102));
+        fresh.add(visit(101));
+        h.engine.insertNewest(fresh);
+
+        assertEquals(102, h.window.get(0).getId());
+        assertEquals(PagingEngine.MIN_PAGE_SIZE + 2, h.window.size());
+    }
+
+    @Test
+    public void shortCachedPageDoesNotEndHistory() {
+        Harness h = new Harness(100, PagingEngine.MAX_WINDOW_ITEMS);
+        h.engine.start();
+        h.completeAll();
+        h.cachedUpTo = 80;
+        h.cachedPage = 5;
+        h.failures = 1;
+        h.engine.onScrolled(10, 10 + VISIBLE_ROWS - 1, h.window.size());
+        h.pending.remove(h.pending.size() - 1).run();
+        h.pending.remove(h.pending.size() - 1).run();
+
+        assertEquals(1, h.cacheRequests);
+        assertEquals(PagingEngine.MIN_PAGE_SIZE + 5, h.window.size());
+        assertTrue(h.engine.hasMoreOlder());
+
+        // Сеть вернулась: следующая страница снова идет к серверу от самого старого визита из кэша
+        h.completeAll();
+        assertTrue(h.window.size() > PagingEngine.MIN_PAGE_SIZE + 5);
+        assertEquals(1, h.cacheRequests);
+    }
+
+    @Test
+    public void shortNetworkPageEndsHistory() {
+        Harness h = new Harness(PagingEngine.MIN_PAGE_SIZE + 5, PagingEngine.MAX_WINDOW_ITEMS);
+        h.scroll(PagingEngine.MIN_PAGE_SIZE + 5, 1, 100);
+
+        assertFalse(h.engine.hasMoreOlder());
+        assertEquals(PagingEngine.MIN_PAGE_SIZE + 5, h.window.size());
+        assertEquals(0, h.cacheRequests);
+    }
+
+    private static Visit visit(int id) {
+        return new Visit(id, "photos/" + id + ".jpg", "/doorbell/visit/" + id + "/photo", StubDoorbellBackend.timestamp(id));
+    }
+
+    // Источник страниц поверх визитов с id от total до 1, ответы отдаются вручную
+    private static class Harness implements PagingEngine.PageSource, PagingEngine.Listener {
+        final int total;
+        final PagingEngine engine;
+        final List<Runnable> pending = new ArrayList<>();
+        final List<Runnable> scheduled = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        List<Visit> window = new ArrayList<>();
+        // Визиты с id не больше cachedUpTo есть в локальном кэше, но не все: кэш отдает их не больше cachedPage
+        int cachedUpTo;
+        int cachedPage;
+        int cacheRequests;
+        long now = 1000;
+        int requests;
+        int failures;
+        int windowChanges;
+        boolean cancelled;
+
+        Harness(int total, int maxWindowItems) {
+            this.total = total;
+            engine = new PagingEngine(this, this::loadCached, (task, delay) -> {
+                delays.add(delay);
+                scheduled.add(task);
+            }, () -> now, this, maxWindowItems);
+        }
+
+        // Прокрутка по абсолютной строке; индекс в окне сдвигается, когда вытесняется голова
+        void scroll(int rows, int rowsPerFrame, int frameMillis) {
+            engine.start();
+            completeAll();
+            while (position < rows) {
+                int next = Math.min(position + rowsPerFrame, lastRow() - VISIBLE_ROWS + 1);
+                if (next <= position) {
+                    break;
+                }
+                position = next;
+                frame(frameMillis);
+            }
+        }
+
+        void scrollUpToTop(int rowsPerFrame, int frameMillis) {
+            int guard = 0;
+            while ((position > 0 || window.get(0).getId() != total) && guard++ < 10000) {
+                position = Math.max(Math.max(0, position - rowsPerFrame), firstRow());
+                frame(frameMillis);
+            }
+        }
+
+        int position;
+
+        private void frame(int frameMillis) {
+            now += frameMillis;
+            int first = position - firstRow();
+            engine.onScrolled(first, first + VISIBLE_ROWS - 1, window.size());
+            completeAll();
+        }
+
+        private int firstRow() {
+            return window.isEmpty() ? 0 : total - window.get(0).getId();
+        }
+
+        private int lastRow() {
+            return firstRow() + window.size() - 1;
+        }
+
+        void completeAll() {
+            while (!pending.isEmpty() || !scheduled.isEmpty()) {
+                List<Runnable> batch = new ArrayList<>(pending);
+                batch.addAll(scheduled);
+                pending.clear();
+                scheduled.clear();
+                for (Runnable action : batch) {
+                    action.run();
+                }
+            }
+        }
+
+        @Override
+        public RequestHandle load(int limit, Integer beforeId, Integer afterId,
+                                  ApiService.ApiCallback<List<Visit>> callback) {
+            requests++;
+            RequestHandle handle = new RequestHandle() {
+                @Override
+                public void cancel() {
+                    super.cancel();
+                    cancelled = true;
+                }
+            };
+            pending.add(() -> {
+                if (failures > 0) {
+                    failures--;
+                    callback.onError("Ошибка сети: timeout");
+                    return;
+                }
+                int upper = beforeId != null ? beforeId : Integer.MAX_VALUE;
+                int lower = afterId != null ? afterId : Integer.MIN_VALUE;
+                List<Visit> page = new ArrayList<>();
+                for (int id = Math.min(total, upper - 1); id > lower && id >= 1 && page.size() < limit; id--) {
+                    page.add(visit(id));
+                }
+                callback.onSuccess(page);
+            });
+            return handle;
+        }
+
+        RequestHandle loadCached(int limit, Integer beforeId, Integer afterId,
+                                 ApiService.ApiCallback<List<Visit>> callback) {
+            cacheRequests++;
+            pending.add(() -> {
+                List<Visit> page = new ArrayList<>();
+                for (int id = Math.min(cachedUpTo, beforeId - 1); id >= 1 && page.size() < Math.min(limit, cachedPage); id--) {
+                    page.add(visit(id));
+                }
+                callback.onSuccess(page);
+            });
+            return new RequestHandle();
+        }
+
+        @Override
+        public void onWindowChanged(List<Visit> visits) {
+            windowChanges++;
+            window = visits;
+        }
+
+        @Override
+        public void onLoadFailed(PagingEngine.Direction direction, String error) {
+            errors.add(error);
+        }
+    }
+}
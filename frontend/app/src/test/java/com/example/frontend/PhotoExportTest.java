@@ -0,0 +1,275 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+public class PhotoExportTest {
+    private static final int PHOTOS = 1000;
+    private static final int PHOTO_BYTES = 256 * 1024;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private PhotoBackend backend;
+    // Главный поток приложения: колбэки ApiService и PhotoExport
+    private ExecutorService main;
+    private ApiService apiService;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new PhotoBackend();
+        server = new MockWebServer();
+        server.setDispatcher(backend);
+        server.start();
+        main = Executors.newSingleThreadExecutor();
+        apiService = new ApiService(server.url("").toString().replaceAll("/$", ""), task -> {
+            if (!main.isShutdown()) {
+                main.execute(task);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        apiService.shutdown();
+        main.shutdownNow();
+        server.shutdown();
+    }
+
+    @Test
+    public void thousandPhotosStreamToDiskWithFlatHeap() throws Exception {
+        File directory = folder.newFolder("export");
+        HeapSampler heap = new HeapSampler();
+        long baseline = heap.liveBytes();
+        heap.start();
+        Result result = export(visits(PHOTOS), directory, -1);
+        heap.stopSampling();
+
+        long peakGrowth = heap.peak() - baseline;
+        int third = heap.samples.size() / 3;
+        long earlyPeak = heap.peak(0, third);
+        long latePeak = heap.peak(heap.samples.size() - third, heap.samples.size());
+        System.out.printf("%d photos, %d MB: %d MB/s, live heap peak +%d KB over baseline, "
+                        + "first third %d KB, last third %d KB (%d samples)%n",
+                PHOTOS, result.progress.bytes >> 20, result.progress.bytesPerSecond >> 20,
+                peakGrowth >> 10, earlyPeak >> 10, latePeak >> 10, heap.samples.size());
+        assertEquals(PHOTOS, result.progress.downloaded);
+        assertEquals((long) PHOTOS * PHOTO_BYTES, result.progress.bytes);
+        assertEquals(PHOTOS, directory.list().length);
+        assertEquals(PHOTO_BYTES, new File(directory, "visit_777.jpg").length());
+        assertTrue(heap.samples.size() > 6);
+        // Вместе фото весят 250 МБ, а куча не растет с их числом: к концу не больше, чем в начале
+        assertTrue(peakGrowth < 16 << 20);
+        assertTrue(latePeak < earlyPeak + (4 << 20));
+    }
+
+    @Test
+    public void sameIdFromTwoDoorsGetsTwoFiles() {
+        Visit main = new Visit(7, "photos/7.jpg", "/doorbell/visit/7/photo", "2025-12-08T14:30:00");
+        Visit gate = new Visit(7, "photos/7.jpg", "/doorbell/visit/7/photo", "2025-12-08T14:31:00");
+        main.setDoor(new Door(0, "Главный вход", "http://192.168.0.110:8000"));
+        gate.setDoor(new Door(1, "Калитка", "http://192.168.0.111:8000"));
+
+        assertNotEquals(PhotoExport.fileName(main), PhotoExport.fileName(gate));
+        // Визиты без входа называются как раньше: прерванная выгрузка докачивается
+        assertEquals("visit_7.jpg", PhotoExport.fileName(visits(7).get(0)));
+    }
+
+    @Test
+    public void bulkClientSharesPoolButNotBreaker() {
+        okhttp3.OkHttpClient bulk = HttpClientProvider.bulk();
+        for (okhttp3.Interceptor interceptor : bulk.interceptors()) {
+            assertFalse(interceptor instanceof TransportPolicy);
+        }
+        assertSame(HttpClientProvider.get().connectionPool(), bulk.connectionPool());
+        assertSame(HttpClientProvider.get().dispatcher(), bulk.dispatcher());
+    }
+
+    @Test
+    public void killedZipExportResumesWithoutDownloadingFinishedPhotosAgain() throws Exception {
+        List<Visit> visits = visits(200);
+        File zip = new File(folder.getRoot(), "visits.zip");
+
+        // Приложение убили после 120 фото: часть загрузок оборвана на середине
+        Result killed = export(visits, zip, 120);
+        int finished = killed.progress.downloaded;
+        int requestedBeforeKill = backend.requests.get();
+        assertFalse(zip.exists());
+
+        Result resumed = export(visits, zip, -1);
+
+        System.out.printf("killed after %d photos (%d requested), resumed: %d skipped, %d downloaded%n",
+                finished, requestedBeforeKill, resumed.progress.skipped, resumed.progress.downloaded);
+        // Загрузка, закончившаяся в момент отмены, тоже попадает в пропущенные
+        assertTrue(resumed.progress.skipped >= finished);
+        assertEquals(200, resumed.progress.skipped + resumed.progress.downloaded);
+        for (Visit visit : visits) {
+            int requests = backend.requestsFor.get(visit.getId());
+            assertTrue("visit " + visit.getId() + " requested " + requests + " times", requests >= 1);
+        }
+        // Готовые до обрыва фото второй раз не запрашивались
+        assertEquals(requestedBeforeKill + resumed.progress.downloaded, backend.requests.get());
+
+        assertEquals(zip, resumed.file);
+        try (ZipFile archive = new ZipFile(zip)) {
+            int entries = 0;
+            for (Enumeration<? extends ZipEntry> e = archive.entries(); e.hasMoreElements(); ) {
+                assertEquals(PHOTO_BYTES, e.nextElement().getSize());
+                entries++;
+            }
+            assertEquals(200, entries);
+        }
+        assertFalse(new File(zip.getPath() + ".files").exists());
+    }
+
+    private static final class Result {
+        PhotoExport.Progress progress;
+        File file;
+    }
+
+    // killAfter >= 0 - выгрузка отменяется, как только готово столько фото
+    private Result export(List<Visit> visits, File target, int killAfter) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Result result = new Result();
+        PhotoExport[] export = new PhotoExport[1];
+        String[] error = new String[1];
+        main.execute(() -> export[0] = apiService.exportPhotos(visits, target, new PhotoExport.Listener() {
+            @Override
+            public void onProgress(PhotoExport.Progress progress) {
+                result.progress = progress;
+                if (killAfter >= 0 && progress.downloaded >= killAfter) {
+                    export[0].cancel();
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onFinished(PhotoExport.Progress progress, File file) {
+                result.progress = progress;
+                result.file = file;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+                done.countDown();
+            }
+        }));
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertNull(error[0]);
+        // Оборванные загрузки успевают закрыть соединения
+        Thread.sleep(killAfter >= 0 ? 200 : 0);
+        return result;
+    }
+
+    private static List<Visit> visits(int count) {
+        List<Visit> visits = new ArrayList<>();
+        for (int id = count; id >= 1; id--) {
+            visits.add(new Visit(id, "photos/" + id + ".jpg", "/doorbell/visit/" + id + "/photo",
+                    "2025-12-01T10:00:00"));
+        }
+        return visits;
+    }
+
+    // Замер живой кучи: после сборки мусора в ней остается только то, что реально удерживается
+    private static final class HeapSampler extends Thread {
+        volatile boolean running = true;
+        final List<Long> samples = Collections.synchronizedList(new ArrayList<>());
+
+        HeapSampler() {
+            setDaemon(true);
+        }
+
+        long liveBytes() {
+            System.gc();
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                samples.add(liveBytes());
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long peak() {
+            return peak(0, samples.size());
+        }
+
+        long peak(int from, int to) {
+            long peak = 0;
+            for (int i = from; i < to; i++) {
+                peak = Math.max(peak, samples.get(i));
+            }
+            return peak;
+        }
+
+        void stopSampling() throws InterruptedException {
+            running = false;
+            join();
+        }
+    }
+
+    // Pi отдает фото по /doorbell/visit/{id}/photo; тело собирается заново на каждый запрос
+    private static final class PhotoBackend extends Dispatcher {
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicIntegerArray requestsFor = new AtomicIntegerArray(PHOTOS + 1);
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            HttpUrl url = request.getRequestUrl();
+            String path = url != null ? url.encodedPath() : "";
+            if (!path.startsWith("/doorbell/visit/") || !path.endsWith("/photo")) {
+                return new MockResponse().setResponseCode(404);
+            }
+            int id = Integer.parseInt(path.substring("/doorbell/visit/".length(), path.length() - "/photo".length()));
+            requests.incrementAndGet();
+            requestsFor.incrementAndGet(id);
+            Buffer body = new Buffer();
+            byte[] chunk = new byte[8192];
+            for (int written = 0; written < PHOTO_BYTES; written += chunk.length) {
+                chunk[0] = (byte) id;
+                body.write(chunk);
+            }
+            return new MockResponse()
+                    .setHeader("Content-Type", "image/jpeg")
+                    .setBody(body)
+                    // Медленный Pi: обрыв застает загрузки на середине
+                    .throttleBody(64 * 1024, 1, TimeUnit.MILLISECONDS);
+        }
+    }
+}
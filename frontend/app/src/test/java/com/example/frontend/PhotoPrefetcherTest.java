@@ -0,0 +1,193 @@
+package com.example.frontend;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PhotoPrefetcherTest {
+    private static final int ITEMS = 500;
+    private static final int VISIBLE_ROWS = 8;
+    private static final int LOAD_TICKS = 2;
+
+    @Test
+    public void flingHitsWarmCacheOnBind() {
+        FakeGlide withPrefetch = new FakeGlide(6, 3);
+        FakeGlide withoutPrefetch = new FakeGlide(0, 3);
+
+        withPrefetch.fling(0, 1, 400);
+        withoutPrefetch.fling(0, 1, 400);
+
+        System.out.println("Cache hits per bind: " + withPrefetch.hitRate() + " with prefetch, "
+                + withoutPrefetch.hitRate() + " without");
+        assertEquals(0.0, withoutPrefetch.hitRate(), 0.0);
+        assertTrue(withPrefetch.hitRate() > 0.95);
+        assertTrue(withPrefetch.maxInFlight <= 3);
+    }
+
+    @Test
+    public void fastFlingNeverExceedsConcurrencyCap() {
+        FakeGlide glide = new FakeGlide(6, 3);
+        glide.fling(0, 2, 100);
+
+        System.out.println("Fast fling: " + glide.hitRate() + " cache hits, " + glide.joinRate()
+                + " joined in-flight loads per bind");
+        assertTrue(glide.maxInFlight <= 3);
+        // Быстрее пропускной способности прогрева: строки не успевают в кэш,
+        // но видимый запрос присоединяется к уже начатой загрузке
+        assertTrue(glide.joinRate() > 0.3);
+    }
+
+    @Test
+    public void reversingDirectionCancelsPrefetchesBehind() {
+        FakeGlide glide = new FakeGlide(6, 3);
+        glide.fling(100, 1, 2);
+        assertEquals(3, glide.pending.size());
+        for (int[] load : glide.pending) {
+            assertTrue(load[0] > 100 + VISIBLE_ROWS);
+        }
+
+        glide.cancelled.clear();
+        glide.fling(glide.first, -1, 1);
+
+        assertEquals(3, glide.cancelled.size());
+        for (int[] load : glide.pending) {
+            assertTrue(load[0] < glide.first);
+        }
+    }
+
+    @Test
+    public void rowsWhoseKeysShareTheLowBitsAreBothPrefetched() {
+        // Визит 1 без входа и визит 0 входа 0: у ключей строк совпадает Long.hashCode
+        long[] keys = {7L, 1L, 1L << 32};
+        assertEquals(Long.hashCode(keys[1]), Long.hashCode(keys[2]));
+        List<Long> started = new ArrayList<>();
+        PhotoPrefetcher prefetcher = new PhotoPrefetcher(new PhotoPrefetcher.Loader() {
+            @Override
+            public Long keyAt(int position) {
+                return position < keys.length ? keys[position] : null;
+            }
+
+            @Override
+            public void start(int position, long key) {
+                started.add(key);
+            }
+
+            @Override
+            public void cancel(long key) {
+            }
+        }, 6, 3);
+
+        prefetcher.onScrolled(0, 0, keys.length, 1);
+
+        assertEquals(Arrays.asList(keys[1], keys[2]), started);
+        assertTrue(prefetcher.isInFlight(keys[1]));
+        assertTrue(prefetcher.isInFlight(keys[2]));
+    }
+
+    // Glide с задержкой загрузки в тиках и кэшем, который наполняют и прогрев, и показ строк
+    private static class FakeGlide implements PhotoPrefetcher.Loader {
+        final PhotoPrefetcher prefetcher;
+        final Set<Integer> cache = new HashSet<>();
+        final List<int[]> pending = new ArrayList<>();
+        final List<Integer> cancelled = new ArrayList<>();
+        int tick;
+        int first;
+        int maxInFlight;
+        int hits;
+        int joins;
+        int binds;
+
+        FakeGlide(int distance, int maxInFlight) {
+            prefetcher = new PhotoPrefetcher(this, distance, maxInFlight);
+        }
+
+        void fling(int from, int rowsPerTick, int ticks) {
+            int shownFirst = from;
+            int shownLast = from + VISIBLE_ROWS - 1;
+            first = from;
+            for (int i = 0; i < ticks; i++) {
+                tick++;
+                completeLoads();
+                first = Math.max(0, Math.min(ITEMS - VISIBLE_ROWS, first + rowsPerTick));
+                int last = first + VISIBLE_ROWS - 1;
+                for (int row = first; row <= last; row++) {
+                    if (row < shownFirst || row > shownLast) {
+                        bind(row);
+                    }
+                }
+                shownFirst = first;
+                shownLast = last;
+                prefetcher.onScrolled(first, last, ITEMS, rowsPerTick);
+            }
+        }
+
+        double hitRate() {
+            return binds == 0 ? 0 : (double) hits / binds;
+        }
+
+        double joinRate() {
+            return binds == 0 ? 0 : (double) joins / binds;
+        }
+
+        private void bind(int row) {
+            binds++;
+            if (cache.contains(row)) {
+                hits++;
+            } else if (isPending(row)) {
+                joins++;
+            } else {
+                cache.add(row);
+            }
+        }
+
+        private void completeLoads() {
+            List<int[]> done = new ArrayList<>();
+            for (int[] load : pending) {
+                if (load[1] <= tick) {
+                    done.add(load);
+                }
+            }
+            for (int[] load : done) {
+                pending.remove(load);
+                cache.add(load[0]);
+                prefetcher.onPrefetchFinished(load[0]);
+            }
+        }
+
+        private boolean isPending(int key) {
+            for (int[] load : pending) {
+                if (load[0] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Long keyAt(int position) {
+            return position >= 0 && position < ITEMS ? (long) position : null;
+        }
+
+        @Override
+        public void start(int position, long key) {
+            if (cache.contains(position)) {
+                prefetcher.onPrefetchFinished(key);
+                return;
+            }
+            pending.add(new int[]{position, tick + LOAD_TICKS});
+            maxInFlight = Math.max(maxInFlight, pending.size());
+        }
+
+        @Override
+        public void cancel(long key) {
+            cancelled.add((int) key);
+            pending.removeIf(load -> load[0] == key);
+        }
+    }
+}
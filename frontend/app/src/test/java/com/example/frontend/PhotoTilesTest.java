@@ -0,0 +1,142 @@
+package com.example.frontend;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PhotoTilesTest {
+    // Кадр Pi и экран телефона в портретной ориентации
+    private static final int FRAME_WIDTH = 1920;
+    private static final int FRAME_HEIGHT = 1080;
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 2340;
+
+    @Test
+    public void sampleSizeNeverStretchesBitmapPastMaxUpscale() {
+        assertEquals(1, PhotoTiles.sampleSize(2f));
+        assertEquals(1, PhotoTiles.sampleSize(1f));
+        assertEquals(1, PhotoTiles.sampleSize(0.7f));
+        assertEquals(2, PhotoTiles.sampleSize(0.5625f));
+        assertEquals(4, PhotoTiles.sampleSize(0.25f));
+        for (float scale = 0.01f; scale < 3f; scale += 0.01f) {
+            int sample = PhotoTiles.sampleSize(scale);
+            assertTrue(sample * scale <= PhotoTiles.MAX_UPSCALE || sample == 1);
+            // Вдвое более грубая выборка уже растянулась бы заметно
+            assertTrue(sample * 2 * scale > PhotoTiles.MAX_UPSCALE);
+        }
+    }
+
+    @Test
+    public void visibleTilesCoverViewportAndStayInsideFrame() {
+        PhotoTiles tiles = new PhotoTiles(FRAME_WIDTH, FRAME_HEIGHT);
+        float[][] viewports = {
+                {0, 0, FRAME_WIDTH, FRAME_HEIGHT},
+                {100.5f, 37.2f, 700.5f, 1000.9f},
+                {-50, -80, 300, 200},
+                {1700, 900, 2100, 1300},
+                {511.9f, 511.9f, 512.1f, 512.1f},
+        };
+        for (int sample = 1; sample <= 4; sample *= 2) {
+            for (float[] v : viewports) {
+                List<PhotoTiles.Tile> visible = tiles.visible(sample, v[0], v[1], v[2], v[3]);
+                Set<Long> keys = new HashSet<>();
+                for (PhotoTiles.Tile tile : visible) {
+                    assertTrue(keys.add(tile.key));
+                    assertEquals(sample, tile.sample);
+                    assertTrue(tile.left >= 0 && tile.top >= 0);
+                    assertTrue(tile.right <= FRAME_WIDTH && tile.bottom <= FRAME_HEIGHT);
+                    assertTrue(tile.right - tile.left <= PhotoTiles.TILE_SIZE * sample);
+                    // Тайл действительно задевает видимую область
+                    assertTrue(tile.right > v[0] && tile.left < v[2] && tile.bottom > v[1] && tile.top < v[3]);
+                }
+                // Каждый видимый пиксель кадра попадает ровно в один тайл
+                for (int y = (int) Math.max(0, v[1]); y < Math.min(FRAME_HEIGHT, v[3]); y += 7) {
+                    for (int x = (int) Math.max(0, v[0]); x < Math.min(FRAME_WIDTH, v[2]); x += 7) {
+                        int covering = 0;
+                        for (PhotoTiles.Tile tile : visible) {
+                            if (x >= tile.left && x < tile.right && y >= tile.top && y < tile.bottom) {
+                                covering++;
+                            }
+                        }
+                        assertEquals(1, covering);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bitmapMemoryFollowsScreenRatherThanFrame() {
+        // Два ориентира. Glide по умолчанию уменьшает кадр до размера ImageView: вписанный в экран
+        // bitmap - около 2,5 МБ, но при увеличении он размыт. Чтобы увеличение было резким, Glide
+        // пришлось бы грузить кадр целиком (SIZE_ORIGINAL) - это полный ARGB_8888.
+        // Время до первого кадра здесь не измерить: карточка и просмотр пишут его в лог на устройстве
+        long fullDecode = PhotoTiles.bytes(FRAME_WIDTH, FRAME_HEIGHT, 1);
+        long glideFitted = glideBytes(FRAME_WIDTH, FRAME_HEIGHT);
+        long fitted = peakBytes(FRAME_WIDTH, FRAME_HEIGHT, 1f);
+        System.out.printf("%dx%d frame: Glide fitted to screen %d KB, Glide full decode %d KB, "
+                        + "viewer fitted %d KB%n",
+                FRAME_WIDTH, FRAME_HEIGHT, glideFitted >> 10, fullDecode >> 10, fitted >> 10);
+        // Вписанный в экран кадр - один базовый слой с выборкой 2: не больше, чем у Glide без увеличения
+        assertEquals(fullDecode / 4, fitted);
+        assertTrue(fitted <= glideFitted);
+
+        // Пока на экране почти весь кадр, резкие тайлы - почти весь кадр; с увеличением их все меньше
+        for (float zoom = 1f; zoom <= 2f / fitScale(FRAME_WIDTH, FRAME_HEIGHT); zoom *= 1.1f) {
+            long peak = peakBytes(FRAME_WIDTH, FRAME_HEIGHT, zoom);
+            assertTrue("zoom " + zoom + ": " + peak, peak <= fullDecode + fitted);
+        }
+        assertTrue(peakBytes(FRAME_WIDTH, FRAME_HEIGHT, 3f) < fullDecode);
+
+        // Чем больше кадр, тем больше выигрыш: память зависит от экрана, а не от кадра
+        int bigWidth = 4056;
+        int bigHeight = 3040;
+        long bigFullDecode = PhotoTiles.bytes(bigWidth, bigHeight, 1);
+        long bigPeak = 0;
+        for (float zoom = 1f; zoom <= 2f / fitScale(bigWidth, bigHeight); zoom *= 1.1f) {
+            bigPeak = Math.max(bigPeak, peakBytes(bigWidth, bigHeight, zoom));
+        }
+        System.out.printf("%dx%d frame: Glide fitted to screen %d KB, Glide full decode %d KB, "
+                        + "viewer zoomed peak %d KB%n",
+                bigWidth, bigHeight, glideBytes(bigWidth, bigHeight) >> 10, bigFullDecode >> 10, bigPeak >> 10);
+        assertTrue(bigPeak < bigFullDecode * 2 / 3);
+    }
+
+    // Bitmap Glide для ImageView во весь экран с fitCenter: кадр уменьшен точно до вписанного размера
+    private static long glideBytes(int width, int height) {
+        float fitScale = fitScale(width, height);
+        return (long) Math.round(width * fitScale) * Math.round(height * fitScale) * 4;
+    }
+
+    private static float fitScale(int width, int height) {
+        return Math.min((float) SCREEN_WIDTH / width, (float) SCREEN_HEIGHT / height);
+    }
+
+    // Базовый слой и тайлы, которые TiledPhotoView держит при увеличении zoom; худший сдвиг по кадру
+    private static long peakBytes(int width, int height, float zoom) {
+        PhotoTiles tiles = new PhotoTiles(width, height);
+        float fitScale = fitScale(width, height);
+        int baseSample = PhotoTiles.sampleSize(fitScale);
+        float scale = fitScale * zoom;
+        int sample = PhotoTiles.sampleSize(scale);
+        float viewWidth = SCREEN_WIDTH / scale;
+        float viewHeight = SCREEN_HEIGHT / scale;
+        long peak = 0;
+        for (int step = 0; step <= 16; step++) {
+            float left = Math.max(0, width - viewWidth) * step / 16;
+            float top = Math.max(0, height - viewHeight) * step / 16;
+            long bytes = tiles.baseBytes(baseSample);
+            if (sample < baseSample) {
+                for (PhotoTiles.Tile tile : tiles.visible(sample, left, top, left + viewWidth, top + viewHeight)) {
+                    bytes += tile.bytes();
+                }
+            }
+            peak = Math.max(peak, bytes);
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class RequestCoalescingTest {
+    private static final int CALLERS = 100;
+
+    private MockWebServer server;
+    private String baseUrl;
+    private final AtomicInteger rings = new AtomicInteger();
+    private final AtomicInteger unlocks = new AtomicInteger();
+    private volatile int unlockStatus = 200;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().startsWith("/doorbell/ring")) {
+                    // Как на Pi: снимок и загрузка в MinIO занимают заметное время
+                    int id = rings.incrementAndGet();
+                    return new MockResponse().setBody(StubDoorbellBackend.visitJson(id))
+                            .setHeadersDelay(300, TimeUnit.MILLISECONDS);
+                }
+                unlocks.incrementAndGet();
+                return new MockResponse().setResponseCode(unlockStatus).setBody("{\"message\":\"ok\"}")
+                        .setHeadersDelay(100, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+        baseUrl = server.url("").toString().replaceAll("/$", "");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void parallelRingsShareOneRequest() throws Exception {
+        // Несколько экранов (поворот, уведомление) и по многу нажатий с каждого
+        ApiService[] screens = new ApiService[4];
+        for (int i = 0; i < screens.length; i++) {
+            screens[i] = new ApiService(baseUrl, Runnable::run);
+        }
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(CALLERS);
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        AtomicInteger errors = new AtomicInteger();
+        for (int i = 0; i < CALLERS; i++) {
+            ApiService apiService = screens[i % screens.length];
+            new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                apiService.ringDoorbell(new ApiService.ApiCallback<Visit>() {
+                    @Override
+                    public void onSuccess(Visit visit) {
+                        ids.add(visit.getId());
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        errors.incrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }).start();
+        }
+        go.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, ids.size());
+        for (ApiService apiService : screens) {
+            apiService.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelledCallerDoesNotCancelSharedRing() throws Exception {
+        ApiService leaving = new ApiService(baseUrl, Runnable::run);
+        ApiService staying = new ApiService(baseUrl, Runnable::run);
+        AtomicInteger leavingCallbacks = new AtomicInteger();
+        leaving.ringDoorbell(counting(leavingCallbacks));
+        // Экран повернули: старый закрыт, новый нажал кнопку еще раз
+        leaving.shutdown();
+        Visit[] result = new Visit[1];
+        CountDownLatch done = new CountDownLatch(1);
+        staying.ringDoorbell(new ApiService.ApiCallback<Visit>() {
+            @Override
+            public void onSuccess(Visit visit) {
+                result[0] = visit;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                fail(error);
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, result[0].getId());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, leavingCallbacks.get());
+        staying.shutdown();
+    }
+
+    @Test
+    public void unlocksInsideWindowCollapseButErrorsAreNotReused() throws Exception {
+        ApiService apiService = new ApiService(baseUrl, Runnable::run);
+        unlockStatus = 500;
+        assertEquals("Ошибка открытия двери: 500", unlockAndWait(apiService));
+        unlockStatus = 200;
+        assertEquals("Дверь открыта!", unlockAndWait(apiService));
+        assertEquals(2, unlocks.get());
+
+        // Повтор сразу за успешным ответом и двойное нажатие во время запроса
+        assertEquals("Дверь открыта!", unlockAndWait(apiService));
+        ApiService other = new ApiService(baseUrl, Runnable::run, 0);
+        CountDownLatch both = new CountDownLatch(2);
+        other.unlockDoor(countingDown(both));
+        other.unlockDoor(countingDown(both));
+        assertTrue(both.await(5, TimeUnit.SECONDS));
+        assertEquals(3, unlocks.get());
+        apiService.shutdown();
+        other.shutdown();
+    }
+
+    @Test
+    public void workThatFailsToStartReleasesTheKey() {
+        SingleFlight<String> flights = new SingleFlight<>();
+        String[] first = new String[1];
+        assertTrue(flights.join("unlock", 0, recording(first), done -> {
+            throw new IllegalStateException("scheduler shut down");
+        }));
+        assertEquals("Ошибка запуска запроса: scheduler shut down", first[0]);
+
+        // Следующий вызов не ждет упавшую работу, а запускает свою
+        String[] second = new String[1];
+        assertTrue(flights.join("unlock", 0, recording(second), done -> done.onSuccess("Дверь открыта!")));
+        assertEquals("Дверь открыта!", second[0]);
+    }
+
+    private static ApiService.ApiCallback<String> recording(String[] result) {
+        return new ApiService.ApiCallback<String>() {
+            @Override
+            public void onSuccess(String message) {
+                result[0] = message;
+            }
+
+            @Override
+            public void onError(String error) {
+                result[0] = error;
+            }
+        };
+    }
+
+    private static String unlockAndWait(ApiService apiService) throws InterruptedException {
+        String[] result = new String[1];
+        CountDownLatch done = new CountDownLatch(1);
+        apiService.unlockDoor(new ApiService.ApiCallback<String>() {
+            @Override
+            public void onSuccess(String message) {
+                result[0] = message;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                result[0] = error;
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    private static ApiService.ApiCallback<String> countingDown(CountDownLatch latch) {
+        return new ApiService.ApiCallback<String>() {
+            @Override
+            public void onSuccess(String message) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                fail(error);
+            }
+        };
+    }
+
+    private static ApiService.ApiCallback<Visit> counting(AtomicInteger callbacks) {
+        return new ApiService.ApiCallback<Visit>() {
+            @Override
+            public void onSuccess(Visit visit) {
+                callbacks.incrementAndGet();
+            }
+
+            @Override
+            public void onError(String error) {
+                callbacks.incrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class RequestSchedulerTest {
+    private ExecutorService workers;
+    private RequestScheduler scheduler;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        workers = Executors.newCachedThreadPool();
+        scheduler = new RequestScheduler(workers, 3);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void unlockLatencyStaysFlatWhileHistoryIsSaturated() throws Exception {
+        long idle = measureUnlockLatency();
+
+        CountDownLatch historyStarted = new CountDownLatch(RequestScheduler.Priority.HISTORY.maxConcurrent);
+        for (int i = 0; i < 50; i++) {
+            scheduler.submit(RequestScheduler.Priority.HISTORY, handle -> {
+                historyStarted.countDown();
+                awaitRelease();
+            });
+        }
+        assertTrue(historyStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(50 - RequestScheduler.Priority.HISTORY.maxConcurrent,
+                scheduler.queuedCount(RequestScheduler.Priority.HISTORY));
+
+        long saturated = measureUnlockLatency();
+        System.out.printf("unlock start latency: idle %.3f ms, history saturated %.3f ms%n",
+                idle / 1e6, saturated / 1e6);
+        // Запуск unlock не дольше нескольких холостых; миллисекунда - запас на шум планировщика ОС,
+        // когда холостой запуск занимает единицы микросекунд
+        assertTrue("idle " + idle + " ns, saturated " + saturated + " ns",
+                saturated < Math.max(idle * 5, TimeUnit.MILLISECONDS.toNanos(1)));
+        // История по-прежнему заблокирована, значит unlock прошел мимо ее очереди
+        assertEquals(50 - RequestScheduler.Priority.HISTORY.maxConcurrent,
+                scheduler.queuedCount(RequestScheduler.Priority.HISTORY));
+    }
+
+    @Test
+    public void higherPriorityRunsFirstWhenSharedSlotFrees() throws Exception {
+        CountDownLatch prefetchStarted = new CountDownLatch(2);
+        CountDownLatch historyStarted = new CountDownLatch(1);
+        CountDownLatch releaseHistory = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit(RequestScheduler.Priority.PREFETCH, handle -> {
+                prefetchStarted.countDown();
+                awaitRelease();
+            });
+        }
+        scheduler.submit(RequestScheduler.Priority.HISTORY, handle -> {
+            historyStarted.countDown();
+            awaitQuietly(releaseHistory);
+        });
+        assertTrue(prefetchStarted.await(5, TimeUnit.SECONDS));
+        assertTrue(historyStarted.await(5, TimeUnit.SECONDS));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(3);
+        scheduler.submit(RequestScheduler.Priority.PREFETCH, handle -> {
+            order.add("prefetch");
+            done.countDown();
+        });
+        scheduler.submit(RequestScheduler.Priority.HISTORY, handle -> {
+            order.add("history");
+            done.countDown();
+        });
+        scheduler.submit(RequestScheduler.Priority.RING, handle -> {
+            order.add("ring");
+            done.countDown();
+        });
+        assertTrue(order.isEmpty());
+
+        // Освобождается один общий слот: через него по очереди проходят звонок и история,
+        // а предзагрузка ждет своего лимита
+        releaseHistory.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (order.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, order.size());
+        assertEquals("ring", order.get(0));
+        assertEquals("history", order.get(1));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("prefetch", order.get(2));
+    }
+
+    @Test
+    public void newerRequestSupersedesQueuedOne() throws Exception {
+        Object key = new Object();
+        CountDownLatch blockersStarted = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            scheduler.submit(RequestScheduler.Priority.HISTORY, handle -> {
+                blockersStarted.countDown();
+                awaitRelease();
+            });
+        }
+        assertTrue(blockersStarted.await(5, TimeUnit.SECONDS));
+
+        AtomicBoolean staleRan = new AtomicBoolean();
+        CountDownLatch freshRan = new CountDownLatch(1);
+        RequestHandle stale = scheduler.submit(RequestScheduler.Priority.HISTORY, key, handle -> staleRan.set(true));
+        RequestHandle fresh = scheduler.submit(RequestScheduler.Priority.HISTORY, key, handle -> freshRan.countDown());
+
+        assertTrue(stale.isCancelled());
+        assertFalse(fresh.isCancelled());
+        release.countDown();
+        assertTrue(freshRan.await(5, TimeUnit.SECONDS));
+        assertFalse(staleRan.get());
+    }
+
+    @Test
+    public void stuckDoorDoesNotHoldOtherDoorsHistory() throws Exception {
+        // Молчащий Pi занял все слоты истории своей линии, и за ним в очереди еще запросы
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit(RequestScheduler.Priority.HISTORY, "dead-door", null, handle -> awaitRelease());
+        }
+        CountDownLatch otherDoors = new CountDownLatch(2);
+        scheduler.submit(RequestScheduler.Priority.HISTORY, "second-door", null, handle -> otherDoors.countDown());
+        scheduler.submit(RequestScheduler.Priority.HISTORY, handle -> otherDoors.countDown());
+
+        assertTrue(otherDoors.await(5, TimeUnit.SECONDS));
+        assertEquals(10 - RequestScheduler.Priority.HISTORY.maxConcurrent,
+                scheduler.queuedCount(RequestScheduler.Priority.HISTORY));
+    }
+
+    private long measureUnlockLatency() throws InterruptedException {
+        long total = 0;
+        int runs = 20;
+        for (int i = 0; i < runs; i++) {
+            CountDownLatch started = new CountDownLatch(1);
+            long start = System.nanoTime();
+            scheduler.submit(RequestScheduler.Priority.UNLOCK, handle -> started.countDown());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            total += System.nanoTime() - start;
+        }
+        return total / runs;
+    }
+
+    private void awaitRelease() {
+        awaitQuietly(release);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
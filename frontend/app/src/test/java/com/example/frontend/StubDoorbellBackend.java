@@ -0,0 +1,164 @@
+package com.example.frontend;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+// Упрощенный бэкенд звонка для тестов поверх MockWebServer. Заголовки кэширования как у
+// routers/doorbell.py: страницы истории с ETag и no-cache, фото неизменяемы
+class StubDoorbellBackend extends Dispatcher {
+    static final int PHOTO_BYTES = 12 * 1024;
+
+    private final List<Integer> ids = new ArrayList<>();
+    private int nextId = 1;
+    private Runnable afterHistoryPage;
+    private final AtomicLong bodyBytes = new AtomicLong();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger photoRequests = new AtomicInteger();
+
+    synchronized int addVisit() {
+        int id = nextId++;
+        ids.add(0, id);
+        return id;
+    }
+
+    synchronized void addVisits(int count) {
+        for (int i = 0; i < count; i++) {
+            addVisit();
+        }
+    }
+
+    synchronized void afterHistoryPage(Runnable action) {
+        this.afterHistoryPage = action;
+    }
+
+    long bodyBytes() {
+        return bodyBytes.get();
+    }
+
+    int notModified() {
+        return notModified.get();
+    }
+
+    int photoRequests() {
+        return photoRequests.get();
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        HttpUrl url = request.getRequestUrl();
+        if (url != null && url.encodedPath().startsWith("/doorbell/visit/")) {
+            photoRequests.incrementAndGet();
+            return conditional(request, photo(url), "image/jpeg", "public, max-age=31536000, immutable");
+        }
+        if (url != null && "/doorbell/history".equals(url.encodedPath())) {
+            MockResponse response = conditional(request, history(url).getBody().readByteArray(),
+                    "application/json", "no-cache");
+            Runnable action;
+            synchronized (this) {
+                action = afterHistoryPage;
+            }
+            if (action != null) {
+                action.run();
+            }
+            return response;
+        }
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private synchronized MockResponse history(HttpUrl url) {
+        int limit = intParam(url, "limit", 20);
+        int offset = intParam(url, "offset", 0);
+        String beforeId = url.queryParameter("before_id");
+        String afterId = url.queryParameter("after_id");
+
+        List<Integer> page = new ArrayList<>();
+        if (beforeId != null || afterId != null) {
+            int upper = beforeId != null ? Integer.parseInt(beforeId) : Integer.MAX_VALUE;
+            int lower = afterId != null ? Integer.parseInt(afterId) : Integer.MIN_VALUE;
+            for (int id : ids) {
+                if (id < upper && id > lower && page.size() < limit) {
+                    page.add(id);
+                }
+            }
+        } else {
+            for (int i = offset; i < ids.size() && page.size() < limit; i++) {
+                page.add(ids.get(i));
+            }
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(visitJson(page.get(i)));
+        }
+        return new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(json.append(']').toString());
+    }
+
+    // Фото - детерминированные байты: одинаковый адрес дает одинаковый ETag
+    private static byte[] photo(HttpUrl url) {
+        byte[] bytes = new byte[PHOTO_BYTES];
+        int seed = url.toString().hashCode();
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (seed + i * 31);
+        }
+        return bytes;
+    }
+
+    private MockResponse conditional(RecordedRequest request, byte[] body, String contentType, String cacheControl) {
+        String etag = "\"" + sha1(body) + "\"";
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.replace("W/", "").contains(etag)) {
+            notModified.incrementAndGet();
+            return new MockResponse().setResponseCode(304)
+                    .setHeader("ETag", etag)
+                    .setHeader("Cache-Control", cacheControl);
+        }
+        bodyBytes.addAndGet(body.length);
+        return new MockResponse()
+                .setHeader("Content-Type", contentType)
+                .setHeader("ETag", etag)
+                .setHeader("Cache-Control", cacheControl)
+                .setBody(new Buffer().write(body));
+    }
+
+    private static String sha1(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static String visitJson(int id) {
+        return "{\"timestamp\":\"" + timestamp(id) + "\",\"id\":" + id
+                + ",\"photo_url\":\"photos/" + id + ".jpg\""
+                + ",\"photo_download_url\":\"/doorbell/visit/" + id + "/photo\"}";
+    }
+
+    static String timestamp(int id) {
+        return String.format("2025-12-%02dT%02d:%02d:%02d", 1 + id / 86400 % 28, id / 3600 % 24, id / 60 % 60, id % 60);
+    }
+
+    private static int intParam(HttpUrl url, String name, int fallback) {
+        String value = url.queryParameter(name);
+        return value != null ? Integer.parseInt(value) : fallback;
+    }
+}
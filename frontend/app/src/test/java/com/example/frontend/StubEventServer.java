@@ -0,0 +1,152 @@
+package com.example.frontend;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Минимальный SSE-сервер /doorbell/events: держит соединения открытыми, умеет рвать их все разом
+// и отказывать в подключении, как перезапускающийся бэкенд
+class StubEventServer implements Closeable {
+    private final ServerSocket serverSocket;
+    private final List<OutputStream> clients = new ArrayList<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private final List<Integer> published = new ArrayList<>();
+    private final List<Long> connectNanos = new ArrayList<>();
+    private final List<String> lastEventIds = new ArrayList<>();
+    private volatile boolean refusing;
+    private volatile boolean closed;
+
+    StubEventServer() throws IOException {
+        serverSocket = new ServerSocket(0, 200, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "StubEventServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/doorbell/events";
+    }
+
+    void setRefusing(boolean refusing) {
+        this.refusing = refusing;
+    }
+
+    synchronized void publish(int id) {
+        published.add(id);
+        byte[] event = event(id);
+        List<OutputStream> dead = new ArrayList<>();
+        for (OutputStream client : clients) {
+            try {
+                client.write(event);
+                client.flush();
+            } catch (IOException e) {
+                dead.add(client);
+            }
+        }
+        clients.removeAll(dead);
+    }
+
+    synchronized void dropAll() {
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        sockets.clear();
+        clients.clear();
+    }
+
+    synchronized int openStreams() {
+        return clients.size();
+    }
+
+    synchronized List<Long> connectNanos() {
+        return new ArrayList<>(connectNanos);
+    }
+
+    synchronized List<String> lastEventIds() {
+        return new ArrayList<>(lastEventIds);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        dropAll();
+        serverSocket.close();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread handler = new Thread(() -> handle(socket), "StubEventServer-client");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String requestLine = reader.readLine();
+            String lastEventId = null;
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                if (line.toLowerCase(Locale.ROOT).startsWith("last-event-id:")) {
+                    lastEventId = line.substring("last-event-id:".length()).trim();
+                }
+            }
+            if (requestLine == null) {
+                closeQuietly(socket);
+                return;
+            }
+            OutputStream out = socket.getOutputStream();
+            synchronized (this) {
+                connectNanos.add(System.nanoTime());
+                lastEventIds.add(lastEventId);
+                if (refusing) {
+                    out.write(("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    closeQuietly(socket);
+                    return;
+                }
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/event-stream\r\nCache-Control: no-cache\r\n"
+                        + "Connection: close\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                int after = lastEventId != null ? Integer.parseInt(lastEventId) : Integer.MAX_VALUE;
+                for (int id : published) {
+                    if (id > after) {
+                        out.write(event(id));
+                    }
+                }
+                out.flush();
+                sockets.add(socket);
+                clients.add(out);
+            }
+        } catch (IOException e) {
+            closeQuietly(socket);
+        }
+    }
+
+    private static byte[] event(int id) {
+        return ("id: " + id + "\nevent: visit\ndata: " + StubDoorbellBackend.visitJson(id) + "\n\n")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
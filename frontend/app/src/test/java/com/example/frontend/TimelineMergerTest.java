@@ -0,0 +1,277 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+public class TimelineMergerTest {
+    private static final int VISITS_PER_DOOR = 150;
+    private static final long FAST_MILLIS = 20;
+    private static final long SLOW_MILLIS = 300;
+    private static final long START_MILLIS = VisitFormat.parseTimestamp("2025-12-01T08:00:00");
+
+    private final List<MockWebServer> servers = new ArrayList<>();
+    // Главный поток приложения: колбэки ApiService и отложенные задачи движков
+    private ScheduledExecutorService main;
+    private ApiService apiService;
+    private TimelineMerger timeline;
+
+    private volatile List<Visit> shown = new ArrayList<>();
+    private final List<String> violations = new ArrayList<>();
+    private volatile long firstRowMillis = -1;
+    private long startedAt;
+
+    @Before
+    public void setUp() {
+        main = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (apiService != null) {
+            apiService.shutdown();
+        }
+        main.shutdownNow();
+        for (MockWebServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void slowAndDeadDoorsDoNotDelayFirstRows() throws Exception {
+        // Входы звонят вперемешку: шаг у каждого свой, время сдвинуто
+        Door fast = door("Главный вход", new DoorBackend(VISITS_PER_DOOR, 60_000, 0, FAST_MILLIS));
+        Door slow = door("Двор", new DoorBackend(VISITS_PER_DOOR, 90_000, 17_000, SLOW_MILLIS));
+        DoorBackend deadBackend = new DoorBackend(VISITS_PER_DOOR, 45_000, 5_000, 0);
+        deadBackend.hangAfter = 0;
+        Door dead = door("Гараж", deadBackend);
+        start(fast, slow, dead);
+
+        long slowArrived = awaitRows(row -> row.getDoor() == slow, 10);
+        scrollToEnd(2 * VISITS_PER_DOOR);
+
+        System.out.printf("doors at %d ms, %d ms and dead: first row after %d ms, slow door merged in after %d ms, "
+                + "%d rows merged%n", FAST_MILLIS, SLOW_MILLIS, firstRowMillis, slowArrived, shown.size());
+        assertTrue(violations.toString(), violations.isEmpty());
+        assertTrue(firstRowMillis < SLOW_MILLIS);
+        assertEquals(2 * VISITS_PER_DOOR, shown.size());
+        assertOrderedAndTagged(shown, fast, slow);
+    }
+
+    @Test
+    public void doorThatStallsMidScrollStopsHoldingTheTimeline() throws Exception {
+        DoorBackend stallingBackend = new DoorBackend(VISITS_PER_DOOR, 60_000, 30_000, FAST_MILLIS);
+        // Первая страница приходит, дальше Pi пропал из сети
+        stallingBackend.hangAfter = 1;
+        Door stalling = door("Двор", stallingBackend);
+        Door healthy = door("Главный вход", new DoorBackend(VISITS_PER_DOOR, 60_000, 0, FAST_MILLIS));
+        start(healthy, stalling);
+        awaitRows(row -> row.getDoor() == stalling, 5);
+
+        long stalledAt = System.nanoTime();
+        scrollToEnd(VISITS_PER_DOOR + PagingEngine.MIN_PAGE_SIZE);
+        long releasedAfter = (System.nanoTime() - stalledAt) / 1_000_000;
+
+        System.out.printf("stalled door held the timeline for %d ms (deadline %d ms)%n",
+                releasedAfter, TimelineMerger.DOOR_DEADLINE_MILLIS);
+        assertTrue(violations.toString(), violations.isEmpty());
+        assertTrue(releasedAfter < TimelineMerger.DOOR_DEADLINE_MILLIS * 3);
+        assertOrderedAndTagged(shown, healthy, stalling);
+        // Относительный адрес фото ведет на Pi своего входа
+        Visit visit = firstOf(shown, stalling);
+        assertEquals(stalling.getBaseUrl() + "/doorbell/visit/" + visit.getId() + "/photo", ApiService.photoUrl(visit));
+    }
+
+    private Door door(String name, DoorBackend backend) throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(backend);
+        server.start();
+        servers.add(server);
+        return new Door(servers.size() - 1, name, server.url("").toString().replaceAll("/$", ""));
+    }
+
+    private void start(Door... doors) throws Exception {
+        // Ответы, пришедшие после остановки теста, просто отбрасываются
+        apiService = new ApiService(Arrays.asList(doors), task -> {
+            if (!main.isShutdown()) {
+                main.execute(task);
+            }
+        }, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        main.execute(() -> {
+            timeline = new TimelineMerger(apiService.getDoors(),
+                    door -> (limit, beforeId, afterId, callback) ->
+                            apiService.getVisitHistory(door, limit, beforeId, afterId, callback),
+                    (task, delayMillis) -> main.schedule(task, delayMillis, TimeUnit.MILLISECONDS),
+                    () -> System.nanoTime() / 1_000_000,
+                    new TimelineMerger.Listener() {
+                        @Override
+                        public void onTimelineChanged(List<Visit> visits) {
+                            check(visits);
+                            if (firstRowMillis < 0 && !visits.isEmpty()) {
+                                firstRowMillis = (System.nanoTime() - startedAt) / 1_000_000;
+                            }
+                            shown = visits;
+                        }
+
+                        @Override
+                        public void onDoorFailed(Door door, String error) {
+                        }
+                    });
+            startedAt = System.nanoTime();
+            timeline.start();
+            started.countDown();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    // Каждая опубликованная лента упорядочена по времени и без повторов внутри входа
+    private void check(List<Visit> visits) {
+        Set<Long> keys = new HashSet<>();
+        for (int i = 0; i < visits.size(); i++) {
+            Visit visit = visits.get(i);
+            if (!keys.add(VisitAdapter.itemId(visit))) {
+                violations.add("duplicate " + visit.getDoor() + " #" + visit.getId());
+            }
+            if (i > 0 && VisitMerge.NEWEST_FIRST.compare(visits.get(i - 1), visit) > 0) {
+                violations.add("out of order at " + i);
+            }
+        }
+    }
+
+    private interface RowMatcher {
+        boolean matches(Visit visit);
+    }
+
+    // Время с начала, когда в ленте появилось count строк, подходящих под matcher
+    private long awaitRows(RowMatcher matcher, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            int found = 0;
+            for (Visit visit : shown) {
+                if (matcher.matches(visit)) {
+                    found++;
+                }
+            }
+            if (found >= count) {
+                return (System.nanoTime() - startedAt) / 1_000_000;
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("rows did not arrive, shown " + shown.size());
+    }
+
+    // Пользователь листает вниз, пока в ленте не окажется expected строк
+    private void scrollToEnd(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+        while (shown.size() < expected && System.nanoTime() < deadline) {
+            main.execute(() -> {
+                int size = shown.size();
+                if (size > 0) {
+                    timeline.onScrolled(Math.max(0, size - 8), size - 1, size);
+                }
+            });
+            Thread.sleep(20);
+        }
+    }
+
+    private static void assertOrderedAndTagged(List<Visit> visits, Door... doors) {
+        AtomicInteger[] counts = new AtomicInteger[doors.length];
+        for (int i = 0; i < doors.length; i++) {
+            counts[i] = new AtomicInteger();
+        }
+        for (int i = 0; i < visits.size(); i++) {
+            Visit visit = visits.get(i);
+            int door = Arrays.asList(doors).indexOf(visit.getDoor());
+            assertTrue("untagged row " + i, door >= 0);
+            counts[door].incrementAndGet();
+            if (i > 0) {
+                assertTrue(visits.get(i - 1).getTimestampMillis() >= visit.getTimestampMillis());
+            }
+        }
+        for (AtomicInteger count : counts) {
+            assertTrue(count.get() > 0);
+        }
+    }
+
+    private static Visit firstOf(List<Visit> visits, Door door) {
+        for (Visit visit : visits) {
+            if (visit.getDoor() == door) {
+                return visit;
+            }
+        }
+        throw new AssertionError("no rows from " + door);
+    }
+
+    // Pi одного входа: визиты 1..count через stepMillis, страницы по before_id/after_id как у бэкенда
+    private static final class DoorBackend extends Dispatcher {
+        private final int count;
+        private final long stepMillis;
+        private final long offsetMillis;
+        private final long delayMillis;
+        private final AtomicInteger pages = new AtomicInteger();
+        // После стольких страниц Pi перестает отвечать; -1 - отвечает всегда
+        volatile int hangAfter = -1;
+
+        DoorBackend(int count, long stepMillis, long offsetMillis, long delayMillis) {
+            this.count = count;
+            this.stepMillis = stepMillis;
+            this.offsetMillis = offsetMillis;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            HttpUrl url = request.getRequestUrl();
+            if (url == null || !"/doorbell/history".equals(url.encodedPath())) {
+                return new MockResponse().setResponseCode(404);
+            }
+            if (hangAfter >= 0 && pages.getAndIncrement() >= hangAfter) {
+                return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+            }
+            int limit = Integer.parseInt(url.queryParameter("limit"));
+            String beforeId = url.queryParameter("before_id");
+            String afterId = url.queryParameter("after_id");
+            int upper = beforeId != null ? Integer.parseInt(beforeId) : Integer.MAX_VALUE;
+            int lower = afterId != null ? Integer.parseInt(afterId) : Integer.MIN_VALUE;
+            StringBuilder json = new StringBuilder("[");
+            int written = 0;
+            for (int id = count; id >= 1 && written < limit; id--) {
+                if (id < upper && id > lower) {
+                    if (written++ > 0) {
+                        json.append(',');
+                    }
+                    json.append("{\"timestamp\":\"")
+                            .append(VisitFormat.formatIsoTimestamp(START_MILLIS + offsetMillis + id * stepMillis))
+                            .append("\",\"id\":").append(id)
+                            .append(",\"photo_url\":\"photos/").append(id).append(".jpg\"")
+                            .append(",\"photo_download_url\":\"/doorbell/visit/").append(id).append("/photo\"}");
+                }
+            }
+            return new MockResponse()
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(json.append(']').toString())
+                    .setHeadersDelay(delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+public class TransportPolicyTest {
+    private static final int REQUESTS = 200;
+    // Дольше самой длинной паузы между повторами, иначе предохранитель успеет перейти к пробе
+    private static final long OPEN_MILLIS = 1000;
+
+    private MockWebServer server;
+    private String baseUrl;
+    private final Random faults = new Random(42);
+    private final AtomicInteger served = new AtomicInteger();
+    // Доли ответов 503 и оборванных соединений; каждый slowEvery-й ответ задерживается на секунду
+    private volatile double unavailableRate;
+    private volatile double disconnectRate;
+    private volatile int slowEvery;
+    private volatile boolean down;
+    // Следующий запрос истории ответит через секунду
+    private final AtomicBoolean slowOnce = new AtomicBoolean();
+
+    private OkHttpClient plain;
+    private OkHttpClient resilient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().startsWith("/hold")) {
+                    // Долгие запросы к тому же хосту - как загрузка превью в Glide
+                    return new MockResponse().setBody("[]").setHeadersDelay(2, TimeUnit.SECONDS);
+                }
+                int number = served.incrementAndGet();
+                double roll;
+                synchronized (faults) {
+                    roll = faults.nextDouble();
+                }
+                if (down || roll < unavailableRate) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                if (roll < unavailableRate + disconnectRate) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+                }
+                MockResponse response = new MockResponse().setBody("[]");
+                if ((slowEvery > 0 && number % slowEvery == 0) || slowOnce.getAndSet(false)) {
+                    response.setHeadersDelay(1, TimeUnit.SECONDS);
+                }
+                return response;
+            }
+        });
+        server.start();
+        baseUrl = server.url("").toString().replaceAll("/$", "");
+
+        // Как в приложении, но без политики: так клиент работал раньше
+        OkHttpClient.Builder builder = HttpClientProvider.get().newBuilder();
+        builder.interceptors().clear();
+        plain = builder.cache(null).build();
+        OkHttpClient[] self = new OkHttpClient[1];
+        TransportPolicy policy = new TransportPolicy(request -> self[0].newCall(request), OPEN_MILLIS, new Random(7));
+        resilient = plain.newBuilder().addInterceptor(policy).build();
+        self[0] = resilient;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void historyReadsSurviveFlakyWifi() throws Exception {
+        unavailableRate = 0.15;
+        disconnectRate = 0.10;
+        double[] before = run(plain, REQUESTS);
+        double[] after = run(resilient, REQUESTS);
+
+        System.out.printf("flaky Wi-Fi, %d history reads: success %.1f%% -> %.1f%%, p50 %.1f -> %.1f ms, "
+                        + "p99 %.1f -> %.1f ms%n", REQUESTS, before[0] * 100, after[0] * 100,
+                before[1], after[1], before[2], after[2]);
+        assertTrue(before[0] < 0.95);
+        assertTrue(after[0] > 0.97);
+    }
+
+    @Test
+    public void hedgedHistoryReadCutsSlowTail() throws Exception {
+        // Медленных меньше 5%, иначе p95 сам окажется медленным
+        slowEvery = 25;
+        // Статистика для p95 набирается на первых запросах
+        run(resilient, TransportPolicy.HEDGE_MIN_SAMPLES);
+        int requestsBefore = served.get();
+        double[] hedged = run(resilient, 100);
+        int hedges = served.get() - requestsBefore - 100;
+        double[] unhedged = run(plain, 100);
+
+        System.out.printf("every 25th response 1 s late: p99 %.1f ms without hedging, %.1f ms hedged, "
+                + "%d extra requests per 100%n", unhedged[2], hedged[2], hedges);
+        assertEquals(1.0, hedged[0], 0);
+        assertTrue(unhedged[2] >= 1000);
+        assertTrue(hedged[2] < 500);
+        assertTrue(hedges <= 10);
+    }
+
+    @Test
+    public void hedgeIsNotQueuedBehindBusyHost() throws Exception {
+        run(resilient, TransportPolicy.HEDGE_MIN_SAMPLES);
+        // Все слоты диспетчера на этот хост заняты долгими асинхронными запросами
+        CountDownLatch held = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            plain.newCall(new Request.Builder().url(baseUrl + "/hold").build()).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    held.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    held.countDown();
+                }
+            });
+        }
+        Thread.sleep(100);
+        slowOnce.set(true);
+        double[] hedged = run(resilient, 1);
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+
+        System.out.printf("slow history read next to 4 held requests: %.1f ms%n", hedged[1]);
+        assertEquals(1.0, hedged[0], 0);
+        assertTrue(hedged[1] < 1000);
+    }
+
+    @Test
+    public void unlockBypassesOpenBreaker() throws Exception {
+        down = true;
+        while (!isOpen()) {
+            try {
+                status(resilient);
+            } catch (TransportPolicy.CircuitOpenException e) {
+                // Предохранитель сработал посреди повторов
+            }
+        }
+        int requestsWhenOpened = server.getRequestCount();
+        Request unlock = new Request.Builder()
+                .url(baseUrl + "/doorbell/unlock")
+                .post(RequestBody.create("", MediaType.get("application/json; charset=utf-8")))
+                .tag(ClientMetrics.Endpoint.class, ClientMetrics.Endpoint.UNLOCK)
+                .build();
+        down = false;
+        try (Response response = resilient.newCall(unlock).execute()) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(requestsWhenOpened + 1, server.getRequestCount());
+        // История по-прежнему ждет пробного запроса
+        assertTrue(isOpen());
+    }
+
+    @Test
+    public void unlockIsNeverRetried() throws Exception {
+        disconnectRate = 1;
+        ApiService apiService = new ApiService(baseUrl, Runnable::run, 0);
+        String[] result = new String[1];
+        CountDownLatch done = new CountDownLatch(1);
+        apiService.unlockDoor(new ApiService.ApiCallback<String>() {
+            @Override
+            public void onSuccess(String message) {
+                result[0] = message;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                result[0] = error;
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(15, TimeUnit.SECONDS));
+        apiService.shutdown();
+
+        assertTrue(result[0], result[0].startsWith("Ошибка сети"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void breakerFailsFastWhileBackendIsDown() throws Exception {
+        down = true;
+        int failures = 0;
+        while (!isOpen()) {
+            failures++;
+            try {
+                assertEquals(503, status(resilient));
+            } catch (TransportPolicy.CircuitOpenException e) {
+                // Предохранитель сработал посреди повторов этого запроса
+            }
+        }
+        int requestsWhenOpened = server.getRequestCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            try {
+                status(resilient);
+                fail();
+            } catch (TransportPolicy.CircuitOpenException expected) {
+                // Сразу, без запроса к серверу
+            }
+        }
+        long failFastMicros = (System.nanoTime() - start) / 1000 / 50;
+        System.out.printf("breaker opened after %d requests (%d attempts), then failed fast in %d us%n",
+                failures, requestsWhenOpened, failFastMicros);
+        assertEquals(requestsWhenOpened, server.getRequestCount());
+        assertEquals(TransportPolicy.FAILURE_THRESHOLD, requestsWhenOpened);
+
+        // Бэкенд поднялся: после паузы пробный запрос проходит и предохранитель закрывается
+        down = false;
+        Thread.sleep(OPEN_MILLIS + 50);
+        assertEquals(200, status(resilient));
+        assertFalse(isOpen());
+        assertEquals(200, status(resilient));
+    }
+
+    private boolean isOpen() {
+        for (okhttp3.Interceptor interceptor : resilient.interceptors()) {
+            if (interceptor instanceof TransportPolicy) {
+                return ((TransportPolicy) interceptor).isOpen(server.url("/"));
+            }
+        }
+        throw new AssertionError("no TransportPolicy");
+    }
+
+    private int status(OkHttpClient client) throws IOException {
+        try (Response response = client.newCall(historyRequest()).execute()) {
+            return response.code();
+        }
+    }
+
+    private Request historyRequest() {
+        return new Request.Builder()
+                .url(baseUrl + "/doorbell/history?limit=20")
+                .tag(ClientMetrics.Endpoint.class, ClientMetrics.Endpoint.HISTORY)
+                .build();
+    }
+
+    // {доля успешных, p50 мс, p99 мс}; время - до ответа или ошибки, как его видит пользователь
+    private double[] run(OkHttpClient client, int requests) {
+        long[] latencies = new long[requests];
+        int succeeded = 0;
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            try (Response response = client.newCall(historyRequest()).execute()) {
+                response.body().string();
+                if (response.isSuccessful()) {
+                    succeeded++;
+                }
+            } catch (IOException e) {
+                // Ошибка сети дошла до пользователя
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return new double[] {(double) succeeded / requests, latencies[requests / 2] / 1e6,
+                latencies[(int) Math.ceil(requests * 0.99) - 1] / 1e6};
+    }
+}
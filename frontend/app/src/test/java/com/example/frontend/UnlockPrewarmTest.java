@@ -0,0 +1,159 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class UnlockPrewarmTest {
+    private MockWebServer server;
+    private ApiService apiService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        // Без окна схлопывания: каждый замер должен дойти до сервера
+        apiService = new ApiService(server.url("").toString().replaceAll("/$", ""), Runnable::run, 0);
+        HttpClientProvider.get().connectionPool().evictAll();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        apiService.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void firedUnlockGoesOverWarmedConnection() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"status\":\"ok\"}"));
+        server.enqueue(new MockResponse().setBody("{\"message\":\"Door unlocked successfully\"}"));
+
+        PreparedUnlock prepared = apiService.prepareUnlock();
+        RecordedRequest warmup = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("GET", warmup.getMethod());
+        assertEquals(0, warmup.getSequenceNumber());
+        awaitIdleConnection();
+
+        String[] result = new String[1];
+        CountDownLatch done = new CountDownLatch(1);
+        apiService.unlockDoor(prepared, callback(result, done));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        RecordedRequest unlock = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("/doorbell/unlock", unlock.getPath());
+        assertNotNull(unlock.getHeader("X-Api-Key"));
+        // Тот же сокет, что открыл прогрев
+        assertEquals(1, unlock.getSequenceNumber());
+        assertEquals("Дверь открыта!", result[0]);
+    }
+
+    @Test
+    public void pendingPreparationDoesNotDelayColdUnlock() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"status\":\"ok\"}"));
+        server.enqueue(new MockResponse().setBody("{\"message\":\"Door unlocked successfully\"}"));
+
+        PreparedUnlock prepared = apiService.prepareUnlock();
+        server.takeRequest(5, TimeUnit.SECONDS);
+        awaitIdleConnection();
+        // Прогрев закончился, подготовка ждет пальца, но ни слота, ни потока не держит
+        assertEquals(0, apiService.activeRequestCount());
+
+        String[] result = new String[1];
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+        apiService.unlockDoor(callback(result, done));
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        System.out.printf("cold unlock next to a pending preparation: %.2f ms%n", (System.nanoTime() - start) / 1e6);
+        assertEquals("Дверь открыта!", result[0]);
+        assertEquals("/doorbell/unlock", server.takeRequest(5, TimeUnit.SECONDS).getPath());
+        prepared.cancel();
+    }
+
+    @Test
+    public void cancelledPreparationFallsBackToColdUnlock() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"status\":\"ok\"}"));
+        server.enqueue(new MockResponse().setBody("{\"message\":\"Door unlocked successfully\"}"));
+
+        PreparedUnlock prepared = apiService.prepareUnlock();
+        server.takeRequest(5, TimeUnit.SECONDS);
+        prepared.cancel();
+
+        String[] result = new String[1];
+        CountDownLatch done = new CountDownLatch(1);
+        apiService.unlockDoor(prepared, callback(result, done));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("/doorbell/unlock", server.takeRequest(5, TimeUnit.SECONDS).getPath());
+    }
+
+    @Test
+    public void reportAuthSuccessToResponseWithAndWithoutPrewarm() throws Exception {
+        int rounds = 20;
+        long[] cold = new long[rounds];
+        long[] prewarmed = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            server.enqueue(new MockResponse().setBody("{\"message\":\"ok\"}"));
+            HttpClientProvider.get().connectionPool().evictAll();
+            long start = System.nanoTime();
+            unlockAndWait(null);
+            cold[i] = System.nanoTime() - start;
+
+            server.enqueue(new MockResponse().setBody("{\"status\":\"ok\"}"));
+            server.enqueue(new MockResponse().setBody("{\"message\":\"ok\"}"));
+            HttpClientProvider.get().connectionPool().evictAll();
+            PreparedUnlock prepared = apiService.prepareUnlock();
+            // Пользователь еще держит палец на сканере
+            awaitIdleConnection();
+            start = System.nanoTime();
+            unlockAndWait(prepared);
+            prewarmed[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(cold);
+        Arrays.sort(prewarmed);
+        // На loopback нет TCP/TLS-рукопожатия по Wi-Fi, поэтому разница здесь - нижняя оценка
+        System.out.printf("auth success to response, median: cold %.2f ms, prewarmed %.2f ms%n",
+                cold[rounds / 2] / 1e6, prewarmed[rounds / 2] / 1e6);
+        assertTrue(prewarmed[rounds / 2] <= cold[rounds / 2]);
+    }
+
+    private void unlockAndWait(PreparedUnlock prepared) throws InterruptedException {
+        String[] result = new String[1];
+        CountDownLatch done = new CountDownLatch(1);
+        apiService.unlockDoor(prepared, callback(result, done));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("Дверь открыта!", result[0]);
+    }
+
+    private void awaitIdleConnection() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (HttpClientProvider.get().connectionPool().idleConnectionCount() == 0
+                && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static ApiService.ApiCallback<String> callback(String[] result, CountDownLatch done) {
+        return new ApiService.ApiCallback<String>() {
+            @Override
+            public void onSuccess(String message) {
+                result[0] = message;
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                result[0] = error;
+                done.countDown();
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.frontend;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VisitAdapterDiffTest {
+
+    @Test
+    public void newVisitsAtHeadProduceSingleInsert() {
+        List<Visit> current = visits(5, 4, 3);
+        List<Visit> merged = VisitMerge.merge(current, visits(7, 6));
+
+        assertEquals(Arrays.asList(7, 6, 5, 4, 3), ids(merged));
+        assertEquals(Arrays.asList("insert 0 2"), diff(current, merged));
+    }
+
+    @Test
+    public void overlappingPageInsertsOnlyUnseenRows() {
+        List<Visit> current = visits(10, 9, 8, 7, 6);
+        List<Visit> merged = VisitMerge.merge(current, visits(7, 6, 5, 4));
+
+        assertEquals(Arrays.asList(10, 9, 8, 7, 6, 5, 4), ids(merged));
+        assertEquals(Arrays.asList("insert 5 2"), diff(current, merged));
+    }
+
+    @Test
+    public void duplicatesInsidePageAreDropped() {
+        List<Visit> merged = VisitMerge.merge(new ArrayList<>(), visits(3, 3, 2, 1, 2));
+        assertEquals(Arrays.asList(3, 2, 1), ids(merged));
+    }
+
+    @Test
+    public void changedPhotoIsPartialRebind() {
+        List<Visit> current = visits(3, 2, 1);
+        Visit updated = visit(2);
+        updated.setPhotoDownloadUrl("/doorbell/visit/2/photo?v=2");
+        List<Visit> merged = VisitMerge.merge(current, Arrays.asList(updated));
+
+        assertEquals(Arrays.asList(3, 2, 1), ids(merged));
+        assertEquals(Arrays.asList("change 1 1 " + VisitAdapter.PAYLOAD_PHOTO), diff(current, merged));
+    }
+
+    @Test
+    public void unchangedPageProducesNoOperations() {
+        List<Visit> current = visits(3, 2, 1);
+        List<Visit> merged = VisitMerge.merge(current, visits(2, 1));
+        assertTrue(diff(current, merged).isEmpty());
+    }
+
+    @Test
+    public void sameIdFromDifferentDoorsIsDifferentRow() {
+        List<Door> doors = ApiService.doors(new String[] {"Главный вход", "Калитка"},
+                new String[] {"http://192.168.0.110:8000/", "http://192.168.0.111:8000"});
+        assertEquals(1, doors.get(1).getId());
+        assertEquals("http://192.168.0.111:8000", doors.get(1).getBaseUrl());
+        assertEquals("http://192.168.0.110:8000", doors.get(0).getBaseUrl());
+
+        Visit unassigned = visit(7);
+        Visit main = visit(7);
+        main.setDoor(doors.get(0));
+        Visit gate = visit(7);
+        gate.setDoor(doors.get(1));
+        assertNotEquals(VisitAdapter.itemId(unassigned), VisitAdapter.itemId(main));
+        assertNotEquals(VisitAdapter.itemId(main), VisitAdapter.itemId(gate));
+        // Ключ не зависит от экземпляра Door: после пересоздания экрана строки те же
+        Visit reloaded = visit(7);
+        reloaded.setDoor(new Door(1, "Калитка", "http://192.168.0.111:8000"));
+        assertEquals(VisitAdapter.itemId(gate), VisitAdapter.itemId(reloaded));
+    }
+
+    private static List<String> diff(List<Visit> oldList, List<Visit> newList) {
+        // Тот же расчет, что делает AsyncListDiffer в фоне
+        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return VisitAdapter.DIFF_CALLBACK.areItemsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return VisitAdapter.DIFF_CALLBACK.areContentsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+            }
+
+            @Nullable
+            @Override
+            public Object getChangePayload(int oldPosition, int newPosition) {
+                return VisitAdapter.DIFF_CALLBACK.getChangePayload(oldList.get(oldPosition), newList.get(newPosition));
+            }
+        });
+
+        List<String> operations = new ArrayList<>();
+        result.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                operations.add("insert " + position + " " + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                operations.add("remove " + position + " " + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                operations.add("move " + fromPosition + " " + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                operations.add("change " + position + " " + count + " " + payload);
+            }
+        });
+        return operations;
+    }
+
+    private static List<Visit> visits(int... ids) {
+        List<Visit> visits = new ArrayList<>();
+        for (int id : ids) {
+            visits.add(visit(id));
+        }
+        return visits;
+    }
+
+    private static Visit visit(int id) {
+        String timestamp = String.format("2025-12-08T14:%02d:00", id);
+        return new Visit(id, "photos/" + id + ".jpg", "/doorbell/visit/" + id + "/photo", timestamp);
+    }
+
+    private static List<Integer> ids(List<Visit> visits) {
+        List<Integer> ids = new ArrayList<>();
+        for (Visit visit : visits) {
+            ids.add(visit.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.frontend;
+
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+public class VisitBinaryCodecTest {
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+    private static final String DOWNLOAD_PREFIX = "http://192.168.0.110:8000/doorbell/visit/";
+    private static final String DOWNLOAD_SUFFIX = "/photo";
+
+    // encode_visit_page() из backend/app/services/visit_codec.py для трех визитов, у последнего нет фото
+    private static final byte[] BACKEND_PAGE = {
+            86, 80, 1, 3, 14, 112, 104, 111, 116, 111, 115, 47, 50, 48, 50, 54, 49, 48, 49, 16, 47, 100, 111,
+            111, 114, 98, 101, 108, 108, 47, 118, 105, 115, 105, 116, 47, 6, 47, 112, 104, 111, 116, 111, 84,
+            -90, -91, -95, -37, -87, 104, 20, 56, 95, 48, 54, 51, 48, 49, 53, 95, 49, 50, 51, 52, 53, 54, 46,
+            106, 112, 103, 1, -89, -91, -86, 22, 20, 55, 95, 50, 51, 53, 57, 53, 57, 95, 57, 57, 57, 48, 48,
+            48, 46, 106, 112, 103, 3, -3, -97, -9, 54, 0};
+
+    private final VisitJsonAdapter adapter = new VisitJsonAdapter();
+
+    @Test
+    public void decodesBackendEncoding() throws Exception {
+        List<Visit> visits = VisitBinaryCodec.readList(new Buffer().write(BACKEND_PAGE));
+
+        assertEquals(3, visits.size());
+        // ApiService метит визиты страницы входом: кодек отдает обычные изменяемые Visit
+        assertSame(Visit.class, visits.get(0).getClass());
+        assertEquals(42, visits.get(0).getId());
+        assertEquals("2026-10-18T06:30:15.123", visits.get(0).getTimestamp());
+        assertEquals("18.10.2026 06:30:15", visits.get(0).getDisplayTimestamp());
+        assertEquals("photos/20261018_063015_123456.jpg", visits.get(0).getPhotoKey());
+        assertEquals("/doorbell/visit/42/photo", visits.get(0).getPhotoDownloadUrl());
+        assertEquals(41, visits.get(1).getId());
+        assertEquals(VisitFormat.parseTimestamp("2026-10-17T23:59:59.999"), visits.get(1).getTimestampMillis());
+        assertEquals(39, visits.get(2).getId());
+        assertNull(visits.get(2).getPhotoKey());
+        assertEquals("/doorbell/visit/39/photo", visits.get(2).getPhotoUrl());
+    }
+
+    @Test
+    public void binaryPageMatchesJsonPage() throws Exception {
+        byte[] json = jsonPage(500);
+        List<Visit> fromJson = decodeJson(json);
+        List<Visit> fromBinary = decodeBinary(binaryPage(fromJson));
+
+        assertEquals(fromJson.size(), fromBinary.size());
+        for (int i = 0; i < fromJson.size(); i++) {
+            Visit expected = fromJson.get(i);
+            Visit actual = fromBinary.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getTimestampMillis(), actual.getTimestampMillis());
+            assertEquals(expected.getDisplayTimestamp(), actual.getDisplayTimestamp());
+            assertEquals(expected.getPhotoKey(), actual.getPhotoKey());
+            assertEquals(expected.getPhotoDownloadUrl(), actual.getPhotoDownloadUrl());
+            assertEquals(0, VisitAdapter.changedParts(expected, actual));
+        }
+    }
+
+    @Test
+    public void rejectsForeignPayload() throws Exception {
+        try {
+            VisitBinaryCodec.readList(new Buffer().writeUtf8("[{\"id\":1}]"));
+            fail();
+        } catch (java.net.ProtocolException expected) {
+            // JSON вместо бинарной страницы
+        }
+    }
+
+    @Test
+    public void binaryIsSmallerAndCheaperToDecodeThanJson() throws Exception {
+        for (int size : new int[]{20, 100, 1000, 5000}) {
+            byte[] json = jsonPage(size);
+            byte[] binary = binaryPage(decodeJson(json));
+
+            long[] jsonCost = measure(() -> decodeJson(json));
+            long[] binaryCost = measure(() -> decodeBinary(binary));
+            System.out.printf("%5d visits: json %7d B %8.1f us %9d B/page | binary %6d B %8.1f us %9d B/page%n",
+                    size, json.length, jsonCost[0] / 1e3, jsonCost[1],
+                    binary.length, binaryCost[0] / 1e3, binaryCost[1]);
+
+            assertTrue(binary.length * 4 < json.length);
+            assertTrue(binaryCost[1] < jsonCost[1]);
+        }
+    }
+
+    private List<Visit> decodeJson(byte[] page) throws Exception {
+        // Как в ApiService: Gson читает из потока тела ответа
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(page), StandardCharsets.UTF_8));
+        return adapter.readList(reader);
+    }
+
+    private static List<Visit> decodeBinary(byte[] page) throws Exception {
+        return VisitBinaryCodec.readList(new Buffer().write(page));
+    }
+
+    private static byte[] binaryPage(List<Visit> visits) throws Exception {
+        Buffer buffer = new Buffer();
+        VisitBinaryCodec.writeList(visits, DOWNLOAD_PREFIX, DOWNLOAD_SUFFIX, buffer);
+        return buffer.readByteArray();
+    }
+
+    private long[] measure(Decoder decoder) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            decoder.decode();
+        }
+        long allocatedBefore = AllocationMeter.allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            decoder.decode();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = AllocationMeter.allocatedBytes() - allocatedBefore;
+        return new long[]{elapsed / MEASURED_ROUNDS, allocated / MEASURED_ROUNDS};
+    }
+
+    // Такая же страница, как отдает бэкенд: время с микросекундами, имя объекта по времени снимка
+    private static byte[] jsonPage(int size) {
+        List<String> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int id = 100000 - i;
+            String time = String.format("2025-12-08T14:%02d:%02d.%06d", (59 - i / 60 % 60), 59 - i % 60, 123456 + i);
+            items.add("{\"timestamp\":\"" + time + "\",\"id\":" + id
+                    + ",\"photo_url\":\"photos/" + time.replace("-", "").replace(":", "").replace('T', '_')
+                    .replace('.', '_') + ".jpg\",\"photo_download_url\":\"" + DOWNLOAD_PREFIX + id + DOWNLOAD_SUFFIX + "\"}");
+        }
+        return ("[" + String.join(",", items) + "]").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private interface Decoder {
+        Object decode() throws Exception;
+    }
+}
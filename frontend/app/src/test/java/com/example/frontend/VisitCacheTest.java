@@ -0,0 +1,228 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class VisitCacheTest {
+    private static final int PAGE_SIZE = 20;
+    private static final int CACHED_VISITS = 30;
+    private static final int NEW_VISITS = 25;
+    // Pi на домашнем Wi-Fi: ответ страницы истории приходит не раньше этого
+    private static final long NETWORK_DELAY_MILLIS = 150;
+
+    private MockWebServer server;
+    private StubDoorbellBackend backend;
+    private ApiService apiService;
+    private MemoryStore store;
+    private ExecutorService worker;
+    private VisitCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new StubDoorbellBackend();
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return backend.dispatch(request).setHeadersDelay(NETWORK_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+        apiService = new ApiService(server.url("").toString().replaceAll("/$", ""), Runnable::run);
+        store = new MemoryStore();
+        worker = Executors.newSingleThreadExecutor();
+        cache = new VisitCache(store, worker, Runnable::run);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        apiService.shutdown();
+        worker.shutdownNow();
+        server.shutdown();
+    }
+
+    @Test
+    public void roundTripKeepsVisitsNewestFirst() throws Exception {
+        List<Visit> visits = new ArrayList<>();
+        for (int id = 1; id <= 50; id++) {
+            visits.add(new Visit(id, "photos/" + id + ".jpg", "/doorbell/visit/" + id + "/photo",
+                    StubDoorbellBackend.timestamp(id)));
+        }
+        cache.putAll(visits);
+
+        List<Visit> newest = load(null, PAGE_SIZE);
+        List<Visit> older = load(newest.get(newest.size() - 1).getId(), PAGE_SIZE);
+
+        assertEquals(PAGE_SIZE, newest.size());
+        assertEquals(50, newest.get(0).getId());
+        assertEquals(31, newest.get(PAGE_SIZE - 1).getId());
+        assertEquals(30, older.get(0).getId());
+        assertEquals(11, older.get(PAGE_SIZE - 1).getId());
+        Visit original = visits.get(49);
+        assertEquals(original.getTimestampMillis(), newest.get(0).getTimestampMillis());
+        assertEquals(original.getPhotoKey(), newest.get(0).getPhotoKey());
+        assertEquals(original.getPhotoDownloadUrl(), newest.get(0).getPhotoDownloadUrl());
+    }
+
+    @Test
+    public void deliversCachedVisitsBeforeFreshOnes() throws Exception {
+        backend.addVisits(CACHED_VISITS);
+        long networkOnly = timeToFirstNetworkRow();
+        cache.putAll(history(CACHED_VISITS));
+        backend.addVisits(NEW_VISITS);
+
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        long[] firstRowNanos = new long[1];
+        CountDownLatch done = new CountDownLatch(3);
+        long start = System.nanoTime();
+        cache.loadNewestThenRefresh(100, PAGE_SIZE, apiService::getVisitHistory, new VisitCache.RefreshListener() {
+            @Override
+            public void onCached(List<Visit> cached) {
+                firstRowNanos[0] = System.nanoTime() - start;
+                events.add("cached " + cached.size() + " from " + cached.get(0).getId());
+                done.countDown();
+            }
+
+            @Override
+            public void onRefreshed(List<Visit> visits) {
+                events.add("fresh " + visits.size() + " from " + visits.get(0).getId());
+                done.countDown();
+            }
+
+            @Override
+            public void onRefreshFailed(String error) {
+                events.add("failed " + error);
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        System.out.printf("time to first row: cache %.1f ms, network only %.1f ms%n",
+                firstRowNanos[0] / 1e6, networkOnly / 1e6);
+        assertEquals(3, events.size());
+        assertEquals("cached 30 from 30", events.get(0));
+        assertEquals("fresh 20 from 55", events.get(1));
+        assertEquals("fresh 5 from 35", events.get(2));
+        assertTrue(firstRowNanos[0] < networkOnly);
+        // Догруженные визиты тоже легли в кэш
+        assertEquals(CACHED_VISITS + NEW_VISITS, load(null, 100).size());
+    }
+
+    @Test
+    public void cancelledReadDeliversNothing() throws Exception {
+        List<Runnable> queued = new ArrayList<>();
+        VisitCache gated = new VisitCache(store, queued::add, Runnable::run);
+        List<Visit> delivered = new ArrayList<>();
+
+        RequestHandle handle = gated.loadNewest(PAGE_SIZE, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                delivered.addAll(visits);
+            }
+
+            @Override
+            public void onError(String error) {
+                fail(error);
+            }
+        });
+        handle.cancel();
+        for (Runnable task : queued) {
+            task.run();
+        }
+
+        assertTrue(delivered.isEmpty());
+        assertEquals(0, store.queries);
+    }
+
+    private long timeToFirstNetworkRow() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        apiService.getVisitHistory(PAGE_SIZE, null, callback(new ArrayList<>(), latch));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return System.nanoTime() - start;
+    }
+
+    private List<Visit> history(int limit) throws Exception {
+        List<Visit> visits = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        apiService.getVisitHistory(limit, null, callback(visits, latch));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return visits;
+    }
+
+    private List<Visit> load(Integer beforeId, int limit) throws Exception {
+        List<Visit> visits = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        if (beforeId == null) {
+            cache.loadNewest(limit, callback(visits, latch));
+        } else {
+            cache.loadBefore(beforeId, limit, callback(visits, latch));
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return visits;
+    }
+
+    private static ApiService.ApiCallback<List<Visit>> callback(List<Visit> result, CountDownLatch latch) {
+        return new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                result.addAll(visits);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                fail(error);
+            }
+        };
+    }
+
+    // Порядок как у индекса visits_timestamp: сначала новые по времени, при равном времени - по id
+    private static final class MemoryStore implements VisitCache.Store {
+        private final Map<Integer, Visit> visits = new TreeMap<>();
+        int queries;
+
+        @Override
+        public synchronized List<Visit> query(Integer beforeId, int limit) {
+            queries++;
+            List<Visit> result = new ArrayList<>();
+            for (Visit visit : visits.values()) {
+                if (beforeId == null || visit.getId() < beforeId) {
+                    result.add(visit);
+                }
+            }
+            Collections.sort(result, (a, b) -> a.getTimestampMillis() != b.getTimestampMillis()
+                    ? Long.compare(b.getTimestampMillis(), a.getTimestampMillis())
+                    : Integer.compare(b.getId(), a.getId()));
+            return new ArrayList<>(result.subList(0, Math.min(limit, result.size())));
+        }
+
+        @Override
+        public synchronized void write(List<Visit> page) {
+            for (Visit visit : page) {
+                visits.put(visit.getId(), visit);
+            }
+        }
+
+        @Override
+        public void evict(long oldestAllowedMillis, int maxCount) {
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.frontend;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VisitEventStreamTest {
+    private static final long BASE_MILLIS = 50;
+    private static final long MAX_MILLIS = 800;
+
+    private StubEventServer server;
+    // Один поток колбэков, как главный поток приложения
+    private ExecutorService mainThread;
+    private final List<VisitEventStream> streams = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubEventServer();
+        mainThread = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (VisitEventStream stream : streams) {
+            stream.stop();
+        }
+        server.close();
+        mainThread.shutdownNow();
+    }
+
+    @Test
+    public void eventReachesMainThreadQuickly() throws Exception {
+        int events = 50;
+        long[] publishedAt = new long[events + 1];
+        long[] deliveredAt = new long[events + 1];
+        CountDownLatch connected = new CountDownLatch(1);
+        CountDownLatch delivered = new CountDownLatch(events);
+        open(null, new Recorder(connected) {
+            @Override
+            public void onVisit(Visit visit) {
+                deliveredAt[visit.getId()] = System.nanoTime();
+                delivered.countDown();
+            }
+        }, 1);
+        assertTrue(connected.await(5, TimeUnit.SECONDS));
+
+        for (int id = 1; id <= events; id++) {
+            publishedAt[id] = System.nanoTime();
+            server.publish(id);
+            Thread.sleep(5);
+        }
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+
+        long[] latencies = new long[events];
+        for (int id = 1; id <= events; id++) {
+            latencies[id - 1] = deliveredAt[id] - publishedAt[id];
+        }
+        Arrays.sort(latencies);
+        long p50 = latencies[events / 2] / 1000;
+        long p99 = latencies[events * 99 / 100] / 1000;
+        System.out.println("Event to main thread: p50=" + p50 + " us, p99=" + p99 + " us");
+        assertTrue(p99 < TimeUnit.MILLISECONDS.toMicros(200));
+    }
+
+    @Test
+    public void reconnectResumesFromLastSeenId() throws Exception {
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        CountDownLatch firstThree = new CountDownLatch(3);
+        CountDownLatch allFive = new CountDownLatch(5);
+        open(null, new Recorder(null) {
+            @Override
+            public void onVisit(Visit visit) {
+                received.add(visit.getId());
+                firstThree.countDown();
+                allFive.countDown();
+            }
+        }, 2);
+        awaitOpenStreams(1);
+
+        server.publish(1);
+        server.publish(2);
+        server.publish(3);
+        assertTrue(firstThree.await(5, TimeUnit.SECONDS));
+
+        server.dropAll();
+        // Пока клиент отключен, в дверь звонят еще дважды
+        server.publish(4);
+        server.publish(5);
+        assertTrue(allFive.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), received);
+        List<String> lastIds = server.lastEventIds();
+        assertNull(lastIds.get(0));
+        assertEquals("3", lastIds.get(lastIds.size() - 1));
+    }
+
+    @Test
+    public void reconnectStormIsSpreadAndBackedOff() throws Exception {
+        int clients = 30;
+        AtomicInteger resumed = new AtomicInteger();
+        CountDownLatch allResumed = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            open(null, new Recorder(null) {
+                @Override
+                public void onVisit(Visit visit) {
+                    if (visit.getId() == 2) {
+                        resumed.incrementAndGet();
+                        allResumed.countDown();
+                    }
+                }
+            }, 100 + i);
+        }
+        awaitOpenStreams(clients);
+        server.publish(1);
+        int connectsBefore = server.connectNanos().size();
+
+        // Бэкенд перезапускается: все соединения рвутся, новые подключения получают 503
+        server.setRefusing(true);
+        long droppedAt = System.nanoTime();
+        server.dropAll();
+        Thread.sleep(1500);
+
+        List<Long> attempts = server.connectNanos().subList(connectsBefore, server.connectNanos().size());
+        List<Long> firstWave = new ArrayList<>();
+        for (long at : attempts) {
+            if (at - droppedAt < TimeUnit.MILLISECONDS.toNanos(BASE_MILLIS)) {
+                firstWave.add(at);
+            }
+        }
+        Collections.sort(firstWave);
+        long spreadMillis = firstWave.isEmpty() ? 0
+                : TimeUnit.NANOSECONDS.toMillis(firstWave.get(firstWave.size() - 1) - firstWave.get(0));
+        System.out.println("Reconnect storm: " + attempts.size() + " attempts from " + clients
+                + " clients in 1.5 s, first wave spread " + spreadMillis + " ms");
+        // Без паузы каждый клиент долбил бы сервер сотни раз; с экспоненциальной паузой - единицы
+        assertTrue(attempts.size() <= clients * 8);
+        assertTrue(spreadMillis >= BASE_MILLIS / 3);
+
+        server.setRefusing(false);
+        server.publish(2);
+        assertTrue(allResumed.await(10, TimeUnit.SECONDS));
+        assertEquals(clients, resumed.get());
+    }
+
+    private void open(Integer lastSeenId, Recorder recorder, long seed) {
+        VisitEventStream stream = new VisitEventStream(server.url(), HttpClientProvider.stream(),
+                new VisitJsonAdapter(), lastSeenId, recorder, mainThread, BASE_MILLIS, MAX_MILLIS,
+                // Соседние seed дают у java.util.Random почти одинаковые первые числа
+                new Random(seed * 0x9E3779B97F4A7C15L));
+        streams.add(stream);
+        stream.start();
+    }
+
+    private void awaitOpenStreams(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.openStreams() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, server.openStreams());
+    }
+
+    private abstract static class Recorder implements VisitEventStream.Listener {
+        private final CountDownLatch connected;
+
+        Recorder(CountDownLatch connected) {
+            this.connected = connected;
+        }
+
+        @Override
+        public void onConnectionChanged(boolean isConnected) {
+            if (isConnected && connected != null) {
+                connected.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.frontend;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class VisitFormatTest {
+    private static final int BINDS = 10_000;
+
+    @Test
+    public void parsesBackendTimestampsAsUtc() throws Exception {
+        SimpleDateFormat utc = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        assertEquals(utc.parse("2025-12-08T14:30:00.000").getTime(),
+                VisitFormat.parseTimestamp("2025-12-08T14:30:00"));
+        assertEquals(utc.parse("2025-12-08T14:30:00.123").getTime(),
+                VisitFormat.parseTimestamp("2025-12-08T14:30:00.123456"));
+        assertEquals(utc.parse("2024-02-29T23:59:59.000").getTime(),
+                VisitFormat.parseTimestamp("2024-02-29T23:59:59Z"));
+        assertEquals(utc.parse("2025-12-08T11:30:00.000").getTime(),
+                VisitFormat.parseTimestamp("2025-12-08T14:30:00+03:00"));
+        assertEquals(VisitFormat.INVALID_TIMESTAMP, VisitFormat.parseTimestamp("вчера"));
+        assertEquals(VisitFormat.INVALID_TIMESTAMP, VisitFormat.parseTimestamp(null));
+    }
+
+    @Test
+    public void displayMatchesPreviousSimpleDateFormatOutput() throws Exception {
+        String[] samples = {"2025-12-08T14:30:00", "2025-01-01T00:00:09.5", "1999-12-31T23:59:59.999999",
+                "2024-02-29T07:05:03"};
+        for (String sample : samples) {
+            assertEquals(formatLikeBefore(sample), new Visit(1, null, null, sample).getDisplayTimestamp());
+        }
+        assertEquals("не дата", new Visit(1, null, null, "не дата").getDisplayTimestamp());
+    }
+
+    @Test
+    public void writesIdLabel() {
+        char[] buffer = new char[16];
+        assertEquals("ID: 0", new String(buffer, 0, VisitFormat.writeIdLabel(0, buffer)));
+        assertEquals("ID: 1234567", new String(buffer, 0, VisitFormat.writeIdLabel(1234567, buffer)));
+        assertEquals("ID: -2147483648",
+                new String(buffer, 0, VisitFormat.writeIdLabel(Integer.MIN_VALUE, buffer)));
+    }
+
+    @Test
+    public void bindTextAllocatesAlmostNothing() throws Exception {
+        List<Visit> visits = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            visits.add(new Visit(i, null, null, String.format(Locale.US, "2025-12-%02dT%02d:%02d:00",
+                    1 + i % 28, i % 24, i % 60)));
+        }
+
+        Object[] sink = new Object[1];
+        char[] idLabel = new char[16];
+        for (int i = 0; i < BINDS; i++) {
+            bindLikeBefore(visits.get(i % visits.size()), sink);
+            bindNow(visits.get(i % visits.size()), idLabel, sink);
+        }
+
+        long before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < BINDS; i++) {
+            bindLikeBefore(visits.get(i % visits.size()), sink);
+        }
+        long previous = AllocationMeter.allocatedBytes() - before;
+
+        before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < BINDS; i++) {
+            bindNow(visits.get(i % visits.size()), idLabel, sink);
+        }
+        long current = AllocationMeter.allocatedBytes() - before;
+
+        System.out.printf("%d binds: before %d B (%.1f B/bind), now %d B (%.2f B/bind)%n",
+                BINDS, previous, (double) previous / BINDS, current, (double) current / BINDS);
+        assertTrue(current < BINDS);
+    }
+
+    @Test
+    public void bindOnStoreRowsAllocatesAlmostNothing() {
+        List<Visit> visits = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            visits.add(new Visit(i, "photos/" + i + ".jpg", "/doorbell/visit/" + i + "/photo",
+                    String.format(Locale.US, "2025-12-%02dT%02d:%02d:00", 1 + i % 28, i % 24, i % 60)));
+        }
+        VisitStore store = VisitStore.copyOf(visits);
+
+        Object[] sink = new Object[1];
+        char[] idLabel = new char[16];
+        long before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < store.size(); i++) {
+            bindRow(store.get(i), idLabel, sink);
+        }
+        long firstPass = AllocationMeter.allocatedBytes() - before;
+
+        // Новое окно после подгрузки страницы: строки уже собранных визитов переезжают вместе с ними,
+        // заново создается только само представление строки
+        VisitStore window = new VisitStore();
+        window.appendAll(store);
+        before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < window.size(); i++) {
+            bindRow(window.get(i), idLabel, sink);
+        }
+        long windowPass = AllocationMeter.allocatedBytes() - before;
+
+        before = AllocationMeter.allocatedBytes();
+        for (int i = 0; i < BINDS; i++) {
+            bindRow(window.get(i % window.size()), idLabel, sink);
+        }
+        long current = AllocationMeter.allocatedBytes() - before;
+
+        System.out.printf("store rows: first bind %.1f B/row, rebuilt window %.1f B/row, %d rebinds %d B (%.2f B/bind)%n",
+                (double) firstPass / store.size(), (double) windowPass / window.size(), BINDS, current,
+                (double) current / BINDS);
+        assertTrue(windowPass < firstPass / 2);
+        assertTrue(current < BINDS);
+    }
+
+    private static void bindRow(Visit visit, char[] idLabel, Object[] sink) {
+        bindNow(visit, idLabel, sink);
+        sink[0] = visit.getPhotoDownloadUrl();
+        sink[0] = visit.getPhotoUrl();
+    }
+
+    private static void bindLikeBefore(Visit visit, Object[] sink) {
+        sink[0] = formatLikeBefore(visit.getTimestamp());
+        sink[0] = "ID: " + visit.getId();
+    }
+
+    private static void bindNow(Visit visit, char[] idLabel, Object[] sink) {
+        sink[0] = visit.getDisplayTimestamp();
+        sink[0] = VisitFormat.writeIdLabel(visit.getId(), idLabel) > 0 ? idLabel : null;
+    }
+
+    private static String formatLikeBefore(String timestamp) {
+        try {
+            SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.getDefault());
+            SimpleDateFormat outputFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss", Locale.getDefault());
+            Date date = inputFormat.parse(timestamp);
+            return date != null ? outputFormat.format(date) : timestamp;
+        } catch (Exception e) {
+            return timestamp;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.frontend;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VisitJsonBenchmarkTest {
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private final Gson gson = new Gson();
+    private final VisitJsonAdapter adapter = new VisitJsonAdapter();
+
+    @Test
+    public void skipsUnknownFieldsAndNulls() throws Exception {
+        String json = "[{\"id\":7,\"extra\":{\"a\":[1,2]},\"photo_url\":\"photos/7.jpg\","
+                + "\"photo_download_url\":null,\"timestamp\":\"2025-12-08T14:30:00\"}]";
+        List<Visit> visits = adapter.readList(new JsonReader(new StringReader(json)));
+
+        assertEquals(1, visits.size());
+        assertEquals(7, visits.get(0).getId());
+        assertEquals("photos/7.jpg", visits.get(0).getPhotoUrl());
+        assertNull(visits.get(0).getPhotoDownloadUrl());
+        assertEquals("2025-12-08T14:30:00", visits.get(0).getTimestamp());
+    }
+
+    @Test
+    public void streamingDecodeAllocatesLessThanStringAndReflection() throws Exception {
+        for (int size : new int[]{20, 200, 2000}) {
+            byte[] page = historyPage(size);
+
+            List<Visit> reference = decodeWithReflection(page);
+            List<Visit> streamed = decodeStreaming(page);
+            assertEquals(size, streamed.size());
+            for (int i = 0; i < size; i++) {
+                assertEquals(reference.get(i).getId(), streamed.get(i).getId());
+                assertEquals(reference.get(i).getPhotoUrl(), streamed.get(i).getPhotoUrl());
+                assertEquals(reference.get(i).getTimestamp(), streamed.get(i).getTimestamp());
+                assertEquals(reference.get(i).getDisplayTimestamp(), streamed.get(i).getDisplayTimestamp());
+            }
+
+            long[] reflection = measure(() -> decodeWithReflection(page));
+            long[] streaming = measure(() -> decodeStreaming(page));
+            System.out.printf("%5d visits: string+reflection %8.1f us %9d B/page | streaming %8.1f us %9d B/page%n",
+                    size, reflection[0] / 1e3, reflection[1], streaming[0] / 1e3, streaming[1]);
+
+            if (size >= 200) {
+                assertTrue(streaming[1] < reflection[1]);
+            }
+        }
+    }
+
+    private List<Visit> decodeWithReflection(byte[] page) {
+        // Повторяет прежний путь: response.body().string() + Gson через TypeToken
+        String json = new String(page, StandardCharsets.UTF_8);
+        Type listType = new TypeToken<List<Visit>>(){}.getType();
+        return gson.fromJson(json, listType);
+    }
+
+    private List<Visit> decodeStreaming(byte[] page) throws Exception {
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(page), StandardCharsets.UTF_8));
+        return adapter.readList(reader);
+    }
+
+    private long[] measure(Decoder decoder) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            decoder.decode();
+        }
+        long allocatedBefore = AllocationMeter.allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            decoder.decode();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = AllocationMeter.allocatedBytes() - allocatedBefore;
+        return new long[]{elapsed / MEASURED_ROUNDS, allocated / MEASURED_ROUNDS};
+    }
+
+    private static byte[] historyPage(int size) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            int id = 100000 - i;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"timestamp\":\"2025-12-08T14:")
+                    .append(String.format("%02d:%02d", (i / 60) % 60, i % 60))
+                    .append(".123456\",\"id\":").append(id)
+                    .append(",\"photo_url\":\"photos/20251208_143000_").append(id).append(".jpg\"")
+                    .append(",\"photo_download_url\":\"http://192.168.0.110:8000/doorbell/visit/")
+                    .append(id).append("/photo\"}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private interface Decoder {
+        Object decode() throws Exception;
+    }
+}
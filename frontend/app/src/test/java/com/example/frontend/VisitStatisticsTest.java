@@ -0,0 +1,151 @@
+package com.example.frontend;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class VisitStatisticsTest {
+    private static final int WEEKS = 4;
+    private static final long HOUR = 3_600_000L;
+    private static final long DAY = 24 * HOUR;
+    private static final long START_MILLIS = VisitFormat.parseTimestamp("2025-09-01T00:00:00");
+
+    @Test
+    public void countersMatchBruteForceWhileVisitsArriveInAnyOrder() {
+        // 70 дней звонков, больше окна; днем звонят чаще, чем ночью
+        Random random = new Random(7);
+        List<Visit> visits = new ArrayList<>();
+        long time = START_MILLIS;
+        for (int id = 1; time < START_MILLIS + 70 * DAY; id++) {
+            int hour = (int) (Math.floorMod(time, DAY) / HOUR);
+            time += 1 + random.nextInt(hour >= 8 && hour < 20 ? 20 : 120) * 60_000L;
+            visits.add(visit(id, time));
+        }
+
+        // Страницы истории, догрузка и поток событий приходят вперемешку и с повторами
+        List<Visit> arrivals = new ArrayList<>(visits);
+        for (int i = 0; i < visits.size() / 10; i++) {
+            arrivals.add(visits.get(random.nextInt(visits.size())));
+        }
+        Collections.shuffle(arrivals, random);
+
+        VisitStatistics statistics = new VisitStatistics(WEEKS);
+        List<Visit> seen = new ArrayList<>();
+        long countNanos = 0;
+        for (int start = 0; start < arrivals.size(); start += 500) {
+            List<Visit> batch = arrivals.subList(start, Math.min(arrivals.size(), start + 500));
+            long batchStart = System.nanoTime();
+            statistics.addAll(batch);
+            countNanos += System.nanoTime() - batchStart;
+            seen.addAll(batch);
+            assertMatchesBruteForce(statistics, seen);
+        }
+
+        long bruteStart = System.nanoTime();
+        int[][] expected = bruteForce(seen, WEEKS * 7);
+        long bruteNanos = System.nanoTime() - bruteStart;
+        System.out.printf("%d arrivals of %d visits: %d ns per visit counted, %d us to recount from scratch%n",
+                arrivals.size(), visits.size(), countNanos / arrivals.size(), bruteNanos / 1000);
+        assertArrayEquals(expected[0], statistics.hourHistogram());
+        assertTrue(statistics.getTotal() > 0);
+    }
+
+    @Test
+    public void backfillStopsAtWindowStartAndSkipsCountedVisits() {
+        // Звонки раз в час 100 дней; окно - 4 недели
+        int count = 100 * 24;
+        List<Integer> requested = new ArrayList<>();
+        PagingEngine.PageSource source = (limit, beforeId, afterId, callback) -> {
+            requested.add(beforeId);
+            List<Visit> page = new ArrayList<>();
+            for (int id = beforeId != null ? beforeId - 1 : count; id >= 1 && page.size() < limit; id--) {
+                page.add(at(id));
+            }
+            callback.onSuccess(page);
+            return new RequestHandle();
+        };
+
+        // Середину окна приложение уже получало, пока листали историю
+        VisitStatistics statistics = new VisitStatistics(WEEKS);
+        List<Visit> known = new ArrayList<>();
+        for (int id = count - 150; id > count - 350; id--) {
+            known.add(at(id));
+        }
+        statistics.addAll(known);
+
+        int[] pages = new int[1];
+        new StatisticsBackfill(statistics, source).start(new StatisticsBackfill.Listener() {
+            @Override
+            public void onProgress(int loaded) {
+            }
+
+            @Override
+            public void onDone(int loaded) {
+                pages[0] = loaded;
+            }
+
+            @Override
+            public void onError(String error) {
+                fail(error);
+            }
+        });
+
+        List<Visit> all = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            all.add(at(id));
+        }
+        System.out.printf("backfill of %d visits with a 4-week window: %d pages, before_id %s%n",
+                count, pages[0], requested);
+        assertMatchesBruteForce(statistics, all);
+        assertEquals(WEEKS * 7 * 24, statistics.getTotal());
+        // В окне 672 визита, 200 из них уже учтены и перепрыгиваются
+        assertTrue(pages[0] <= 7);
+        assertTrue(requested.contains(count - 350 + 1));
+    }
+
+    private static void assertMatchesBruteForce(VisitStatistics statistics, List<Visit> seen) {
+        int[][] expected = bruteForce(seen, WEEKS * 7);
+        assertArrayEquals(expected[0], statistics.hourHistogram());
+        assertArrayEquals(expected[1], statistics.dayHistogram());
+    }
+
+    // Пересчет с нуля: время каждый раз разбирается из строки, повторы отсеиваются по id
+    private static int[][] bruteForce(List<Visit> visits, int days) {
+        Set<Integer> ids = new HashSet<>();
+        long newestDay = Long.MIN_VALUE;
+        for (Visit visit : visits) {
+            newestDay = Math.max(newestDay, Math.floorDiv(VisitFormat.parseTimestamp(visit.getTimestamp()), DAY));
+        }
+        int[] byHour = new int[24];
+        int[] byDay = new int[days];
+        for (Visit visit : visits) {
+            if (!ids.add(visit.getId())) {
+                continue;
+            }
+            long millis = VisitFormat.parseTimestamp(visit.getTimestamp());
+            long day = Math.floorDiv(millis, DAY);
+            if (day > newestDay - days) {
+                byHour[(int) (Math.floorMod(millis, DAY) / HOUR)]++;
+                byDay[(int) (day - (newestDay - days + 1))]++;
+            }
+        }
+        return new int[][]{byHour, byDay};
+    }
+
+    // Звонок раз в час, в половине часа
+    private static Visit at(int id) {
+        return visit(id, START_MILLIS + (id - 1) * HOUR + HOUR / 2);
+    }
+
+    private static Visit visit(int id, long millis) {
+        return new Visit(id, "photos/" + id + ".jpg", "/doorbell/visit/" + id + "/photo",
+                VisitFormat.formatIsoTimestamp(millis));
+    }
+}
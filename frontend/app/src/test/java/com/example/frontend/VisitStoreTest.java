@@ -0,0 +1,168 @@
+package com.example.frontend;
+
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VisitStoreTest {
+    private static final String DOWNLOAD_PREFIX = "http://192.168.0.110:8000/doorbell/visit/";
+    private static final String DOWNLOAD_SUFFIX = "/photo";
+
+    @Test
+    public void rowsMatchSourceVisitsAcrossChunks() throws Exception {
+        List<Visit> visits = decodeJson(VisitStore.CHUNK * 2 + 500);
+        visits.get(3).setPhotoUrl(null);
+        // Не ложатся в столбцы: чужой адрес, фото вне каталога, время без разбора
+        visits.get(VisitStore.CHUNK).setPhotoDownloadUrl("http://cdn.example/" + visits.get(VisitStore.CHUNK).getId());
+        visits.get(VisitStore.CHUNK + 1).setPhotoUrl("archive/old.jpg");
+        visits.get(VisitStore.CHUNK + 2).setTimestamp("вчера");
+
+        VisitStore store = VisitStore.copyOf(visits);
+        assertRowsMatch(visits, store);
+        assertEquals(visits.get(7).getId(), store.idAt(7));
+        assertEquals(visits.get(7).getTimestampMillis(), store.timestampMillisAt(7));
+
+        // Окно PagingEngine склеивается из страниц-хранилищ
+        VisitStore window = new VisitStore();
+        window.appendAll(VisitStore.copyOf(visits.subList(0, 700)));
+        window.appendAll(VisitStore.copyOf(visits.subList(700, visits.size())));
+        assertRowsMatch(visits, window);
+        assertEquals(0, VisitAdapter.changedParts(visits.get(10), window.get(10)));
+    }
+
+    @Test
+    public void mergeAcceptsStoreRows() throws Exception {
+        List<Visit> visits = decodeJson(50);
+        VisitStore head = VisitStore.copyOf(visits.subList(10, 50));
+        List<Visit> merged = VisitStore.copyOf(VisitMerge.merge(head, visits.subList(0, 12)));
+
+        assertRowsMatch(visits, merged);
+    }
+
+    @Test
+    public void mergesStoresWithDifferentPrefixes() {
+        List<Visit> local = visits(100, 20, "photos/", "/doorbell/visit/");
+        List<Visit> remote = visits(80, 20, "archive/", "http://192.168.0.111:8000/doorbell/visit/");
+        VisitStore window = new VisitStore();
+        window.appendAll(VisitStore.copyOf(local));
+        // Раньше строка с чужими префиксами шла обратно через append(Row) и уходила в бесконечную рекурсию
+        window.appendAll(VisitStore.copyOf(remote));
+        window.append(VisitStore.copyOf(remote).get(0));
+
+        List<Visit> expected = new ArrayList<>(local);
+        expected.addAll(remote);
+        expected.add(remote.get(0));
+        assertRowsMatch(expected, window);
+    }
+
+    // Метку входа ставят ApiService и TimelineMerger на свежеразобранных визитах, до копирования в хранилище
+    @Test
+    public void decodedVisitsTakeTheDoorTagAndStoreRowsRejectWrites() throws Exception {
+        Door door = new Door(1, "Калитка", "http://192.168.0.111:8000");
+        List<Visit> page = decodeJson(3);
+        for (Visit visit : page) {
+            assertSame(Visit.class, visit.getClass());
+            visit.setDoor(door);
+        }
+
+        Visit row = VisitStore.copyOf(page).get(0);
+        assertNotSame(Visit.class, row.getClass());
+        assertSame(door, row.getDoor());
+        assertThrows(UnsupportedOperationException.class, () -> row.setDoor(null));
+        assertThrows(UnsupportedOperationException.class, () -> row.setId(1));
+        assertThrows(UnsupportedOperationException.class, () -> row.setPhotoUrl(null));
+        assertThrows(UnsupportedOperationException.class, () -> row.setPhotoDownloadUrl(null));
+        assertThrows(UnsupportedOperationException.class, () -> row.setTimestamp("2025-12-01T00:00:00"));
+        assertThrows(UnsupportedOperationException.class, () -> row.setTimestampMillis(0));
+        assertEquals(page.get(0).getId(), row.getId());
+    }
+
+    @Test
+    public void rowsAndTheirStringsAreBuiltOnce() throws Exception {
+        VisitStore store = VisitStore.copyOf(decodeJson(50));
+        Visit row = store.get(7);
+
+        assertSame(row, store.get(7));
+        assertSame(row.getDisplayTimestamp(), row.getDisplayTimestamp());
+        assertSame(row.getPhotoKey(), row.getPhotoKey());
+        assertSame(row.getPhotoDownloadUrl(), row.getPhotoDownloadUrl());
+
+        // Пересобранное окно забирает уже собранные строки
+        VisitStore window = new VisitStore();
+        window.appendAll(store);
+        assertSame(row.getDisplayTimestamp(), window.get(7).getDisplayTimestamp());
+        assertSame(row.getPhotoDownloadUrl(), window.get(7).getPhotoDownloadUrl());
+    }
+
+    @Test
+    public void storeIsSeveralTimesSmallerThanVisitObjects() throws Exception {
+        for (int size : new int[]{10_000, 100_000}) {
+            long before = usedHeap();
+            List<Visit> visits = decodeJson(size);
+            long listBytes = usedHeap() - before;
+
+            before = usedHeap();
+            VisitStore store = VisitStore.copyOf(visits);
+            long storeBytes = usedHeap() - before;
+
+            System.out.printf("%6d visits: ArrayList<Visit> %6d KB (%d B/visit), VisitStore %5d KB (%d B/visit)%n",
+                    size, listBytes / 1024, listBytes / size, storeBytes / 1024, storeBytes / size);
+            assertEquals(visits.size(), store.size());
+            assertTrue(storeBytes * 5 < listBytes);
+        }
+    }
+
+    private static void assertRowsMatch(List<Visit> expected, List<Visit> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Visit e = expected.get(i);
+            Visit a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getTimestampMillis(), a.getTimestampMillis());
+            assertEquals(e.getDisplayTimestamp(), a.getDisplayTimestamp());
+            assertEquals(e.getPhotoKey(), a.getPhotoKey());
+            assertEquals(e.getPhotoDownloadUrl(), a.getPhotoDownloadUrl());
+            assertEquals(e.getPhotoUrl(), a.getPhotoUrl());
+        }
+    }
+
+    private static List<Visit> visits(int newestId, int count, String photoDirectory, String downloadPrefix) {
+        List<Visit> visits = new ArrayList<>();
+        for (int id = newestId; id > newestId - count; id--) {
+            visits.add(new Visit(id, photoDirectory + id + ".jpg", downloadPrefix + id + DOWNLOAD_SUFFIX,
+                    StubDoorbellBackend.timestamp(id)));
+        }
+        return visits;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Страница в том виде, как ее отдает бэкенд, разобранная тем же адаптером, что и в приложении
+    private static List<Visit> decodeJson(int size) throws Exception {
+        StringBuilder json = new StringBuilder(size * 160).append('[');
+        for (int i = 0; i < size; i++) {
+            int id = 200_000 - i;
+            String time = String.format("2025-%02d-%02dT%02d:%02d:%02d.%06d",
+                    12 - i / 40_000, 28 - i / 1440 % 28, 23 - i / 60 % 24, 59 - i % 60, i * 7 % 60, 123456 + i % 800_000);
+            json.append(i > 0 ? "," : "").append("{\"timestamp\":\"").append(time).append("\",\"id\":").append(id)
+                    .append(",\"photo_url\":\"photos/").append(time.replace("-", "").replace(":", "")
+                            .replace('T', '_').replace('.', '_')).append(".jpg\",\"photo_download_url\":\"")
+                    .append(DOWNLOAD_PREFIX).append(id).append(DOWNLOAD_SUFFIX).append("\"}");
+        }
+        List<Visit> visits = new VisitJsonAdapter().readList(new JsonReader(new StringReader(json.append(']').toString())));
+        return new ArrayList<>(visits);
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.frontend;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class VisitTimeIndexTest {
+    private static final int VISITS = 100_000;
+    private static final int PAGE_SIZE = 100;
+    private static final int QUERIES = 2_000;
+    private static final long MINUTE = 60_000L;
+    private static final long START_MILLIS = VisitFormat.parseTimestamp("2025-01-01T00:00:00");
+
+    @Test
+    public void dayAndAfternoonQueryOver100kVisitsBeatsLinearScan() {
+        // Около тысячи звонков в день, интервалы неровные
+        Random random = new Random(42);
+        List<Visit> all = new ArrayList<>(VISITS);
+        long time = START_MILLIS;
+        for (int id = 1; id <= VISITS; id++) {
+            time += 1 + random.nextInt(6) * MINUTE / 2;
+            all.add(new Visit(id, "photos/" + id + ".jpg", "/doorbell/visit/" + id + "/photo",
+                    VisitFormat.formatIsoTimestamp(time)));
+        }
+        long days = (time - START_MILLIS) / (24 * 60 * MINUTE);
+
+        // Индекс наполняется страницами, как при прокрутке: от новых к старым
+        VisitTimeIndex index = new VisitTimeIndex();
+        long buildStart = System.nanoTime();
+        for (int end = VISITS; end > 0; end -= PAGE_SIZE) {
+            List<Visit> page = new ArrayList<>(all.subList(Math.max(0, end - PAGE_SIZE), end));
+            Collections.reverse(page);
+            index.addPage(page, end == VISITS ? null : end + 1, null, PAGE_SIZE);
+        }
+        long buildMillis = (System.nanoTime() - buildStart) / 1_000_000;
+        assertEquals(VISITS, index.size());
+
+        VisitFilter[] filters = new VisitFilter[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long day = START_MILLIS + random.nextInt((int) days) * 24 * 60 * MINUTE;
+            filters[i] = new VisitFilter(day, day + 24 * 60 * MINUTE, 12 * 60, 18 * 60);
+        }
+        for (VisitFilter filter : filters) {
+            assertEquals(ids(linearScan(all, filter)), ids(index.query(filter)));
+        }
+
+        long matched = 0;
+        long start = System.nanoTime();
+        for (VisitFilter filter : filters) {
+            matched += index.query(filter).size();
+        }
+        long indexedNanos = (System.nanoTime() - start) / QUERIES;
+        start = System.nanoTime();
+        for (VisitFilter filter : filters) {
+            matched -= linearScan(all, filter).size();
+        }
+        long linearNanos = (System.nanoTime() - start) / QUERIES;
+
+        System.out.printf("%d visits over %d days indexed in %d ms; day + 12:00-18:00 query: "
+                + "%d us indexed vs %d us linear scan of List<Visit>%n",
+                VISITS, days, buildMillis, indexedNanos / 1000, linearNanos / 1000);
+        assertEquals(0, matched);
+        assertTrue(indexedNanos * 5 < linearNanos);
+    }
+
+    @Test
+    public void searchFetchesOnlyTheMissingSpanOfAnOldPeriod() throws Exception {
+        // Визит в секунду: id 3600..4199 - с 01:00 до 01:10 первого декабря
+        StubDoorbellBackend backend = new StubDoorbellBackend();
+        backend.addVisits(20_000);
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(backend);
+        server.start();
+        ApiService apiService = new ApiService(server.url("").toString().replaceAll("/$", ""), Runnable::run);
+        try {
+            VisitTimeIndex index = new VisitTimeIndex();
+            VisitSearch search = new VisitSearch(index, apiService::searchVisitHistory);
+            // Открыта история: в индексе только первая страница
+            index.addPage(firstPage(apiService), null, null, PAGE_SIZE);
+            VisitFilter filter = new VisitFilter(VisitFormat.parseTimestamp("2025-12-01T01:00:00"),
+                    VisitFormat.parseTimestamp("2025-12-01T01:10:00"));
+
+            List<Visit> found = await(search, filter);
+            int pages = search.pagesLoaded();
+            List<Visit> again = await(search, filter);
+
+            System.out.printf("10 minutes of 20000 visits, %d pages back: found %d visits in %d pages, "
+                    + "repeated search %d pages%n", (20_000 - 4200) / PAGE_SIZE, found.size(), pages,
+                    search.pagesLoaded());
+            assertEquals(600, found.size());
+            for (int i = 0; i < found.size(); i++) {
+                assertEquals(4199 - i, found.get(i).getId());
+            }
+            assertTrue(pages <= 12);
+            assertEquals(0, search.pagesLoaded());
+            assertEquals(ids(found), ids(again));
+        } finally {
+            apiService.shutdown();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void searchDoesNotCancelOlderPageInFlight() throws Exception {
+        StubDoorbellBackend backend = new StubDoorbellBackend();
+        backend.addVisits(20_000);
+        MockWebServer server = new MockWebServer();
+        // Ответ идет долго: страница ленты еще в пути, когда начинается поиск
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return backend.dispatch(request).setHeadersDelay(200, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+        ApiService apiService = new ApiService(server.url("").toString().replaceAll("/$", ""), Runnable::run);
+        try {
+            VisitTimeIndex index = new VisitTimeIndex();
+            List<Visit> first = firstPage(apiService);
+            index.addPage(first, null, null, PAGE_SIZE);
+            CountDownLatch olderLoaded = new CountDownLatch(1);
+            List<Visit> older = new ArrayList<>();
+            // Тот же запрос, что шлет PagingEngine за старыми визитами: before_id без after_id
+            apiService.getVisitHistory(PAGE_SIZE, first.get(PAGE_SIZE - 1).getId(), null,
+                    new ApiService.ApiCallback<List<Visit>>() {
+                        @Override
+                        public void onSuccess(List<Visit> visits) {
+                            older.addAll(visits);
+                            olderLoaded.countDown();
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            fail(error);
+                        }
+                    });
+
+            // Период ниже всего индекса: пропуски поиска тоже без after_id
+            VisitSearch search = new VisitSearch(index, apiService::searchVisitHistory);
+            List<Visit> found = await(search, new VisitFilter(VisitFormat.parseTimestamp("2025-12-01T01:00:00"),
+                    VisitFormat.parseTimestamp("2025-12-01T01:10:00")));
+
+            assertTrue(olderLoaded.await(5, TimeUnit.SECONDS));
+            assertEquals(PAGE_SIZE, older.size());
+            assertEquals(first.get(PAGE_SIZE - 1).getId() - 1, older.get(0).getId());
+            assertEquals(600, found.size());
+        } finally {
+            apiService.shutdown();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void searchStopsAtPageLimitWithPartialResult() {
+        // Визит в минуту; полдень бывает раз в сутки, и искать его приходится по всей истории
+        int total = (VisitSearch.MAX_PAGES + 20) * VisitSearch.PAGE_SIZE;
+        List<Visit> all = new ArrayList<>();
+        for (int id = 1; id <= total; id++) {
+            all.add(new Visit(id, "photos/" + id + ".jpg", "/doorbell/visit/" + id + "/photo",
+                    VisitFormat.formatIsoTimestamp(START_MILLIS + id * MINUTE)));
+        }
+        Deque<Runnable> mainThread = new ArrayDeque<>();
+        PagingEngine.PageSource source = (limit, beforeId, afterId, callback) -> {
+            List<Visit> page = new ArrayList<>();
+            for (int id = beforeId != null ? beforeId - 1 : total; id >= 1 && page.size() < limit; id--) {
+                if (afterId != null && id <= afterId) {
+                    break;
+                }
+                page.add(all.get(id - 1));
+            }
+            mainThread.add(() -> callback.onSuccess(page));
+            return new RequestHandle();
+        };
+        VisitFilter noon = new VisitFilter(Long.MIN_VALUE, Long.MAX_VALUE).withTimeOfDay(12 * 60, 12 * 60 + 1);
+        VisitSearch search = new VisitSearch(new VisitTimeIndex(), source);
+        List<String> events = new ArrayList<>();
+        List<Visit> shown = new ArrayList<>();
+        search.search(noon, new VisitSearch.Listener() {
+            @Override
+            public void onResults(List<Visit> visits, boolean complete) {
+                shown.clear();
+                shown.addAll(visits);
+                if (complete) {
+                    events.add("complete " + visits.size());
+                }
+            }
+
+            @Override
+            public void onPageLimit() {
+                events.add("limit " + shown.size());
+            }
+
+            @Override
+            public void onError(String error) {
+                fail(error);
+            }
+        });
+        while (!mainThread.isEmpty()) {
+            mainThread.poll().run();
+        }
+        int expected = linearScan(all, noon).size();
+
+        assertEquals(VisitSearch.MAX_PAGES, search.pagesLoaded());
+        assertEquals(1, events.size());
+        assertTrue(events.get(0), events.get(0).startsWith("limit "));
+        assertTrue(shown.size() < expected);
+
+        search.loadMore();
+        while (!mainThread.isEmpty()) {
+            mainThread.poll().run();
+        }
+        assertEquals("complete " + expected, events.get(events.size() - 1));
+        assertEquals(ids(linearScan(all, noon)), ids(shown));
+        assertTrue(search.pagesLoaded() > VisitSearch.MAX_PAGES);
+    }
+
+    private static List<Visit> firstPage(ApiService apiService) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        List<Visit> result = new ArrayList<>();
+        apiService.getVisitHistory(PAGE_SIZE, null, null, new ApiService.ApiCallback<List<Visit>>() {
+            @Override
+            public void onSuccess(List<Visit> visits) {
+                result.addAll(visits);
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String error) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(PAGE_SIZE, result.size());
+        return result;
+    }
+
+    private static List<Visit> await(VisitSearch search, VisitFilter filter) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        List<Visit> result = new ArrayList<>();
+        String[] error = new String[1];
+        search.search(filter, new VisitSearch.Listener() {
+            @Override
+            public void onResults(List<Visit> visits, boolean complete) {
+                if (complete) {
+                    result.addAll(visits);
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onPageLimit() {
+                error[0] = "page limit";
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String message) {
+                error[0] = message;
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNull(error[0]);
+        return result;
+    }
+
+    private static List<Visit> linearScan(List<Visit> visits, VisitFilter filter) {
+        List<Visit> result = new ArrayList<>();
+        for (int i = visits.size() - 1; i >= 0; i--) {
+            Visit visit = visits.get(i);
+            if (filter.matches(visit.getTimestampMillis())) {
+                result.add(visit);
+            }
+        }
+        return result;
+    }
+
+    private static List<Integer> ids(List<Visit> visits) {
+        List<Integer> ids = new ArrayList<>(visits.size());
+        for (Visit visit : visits) {
+            ids.add(visit.getId());
+        }
+        return ids;
+    }
+}